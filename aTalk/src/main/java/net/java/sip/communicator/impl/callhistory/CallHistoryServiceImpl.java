@@ -485,6 +485,48 @@ public class CallHistoryServiceImpl implements CallHistoryService, CallListener,
         return result;
     }
 
+    /**
+     * Returns the supplied number of the most recent calls started at or before the given date.
+     *
+     * @param endDate Date the end date of the calls
+     * @param count calls count
+     * @return Collection of CallRecords with CallPeerRecord
+     */
+    public Collection<CallRecord> findLastBefore(Date endDate, int count) {
+        TreeSet<CallRecord> result = new TreeSet<>(new CallRecordComparator());
+
+        String[] args = {String.valueOf(endDate.getTime())};
+        Cursor cursor = mDB.query(CallHistoryService.TABLE_NAME, null,
+                CallHistoryService.CALL_START + "<=?", args, null, null, ORDER_DESC, String.valueOf(count));
+
+        while (cursor.moveToNext()) {
+            result.add(convertHistoryRecordToCallRecord(cursor));
+        }
+        cursor.close();
+        return result;
+    }
+
+    /**
+     * Returns the supplied number of the earliest calls started at or after the given date.
+     *
+     * @param startDate Date the start date of the calls
+     * @param count calls count
+     * @return Collection of CallRecords with CallPeerRecord
+     */
+    public Collection<CallRecord> findFirstAfter(Date startDate, int count) {
+        TreeSet<CallRecord> result = new TreeSet<>(new CallRecordComparator());
+
+        String[] args = {String.valueOf(startDate.getTime())};
+        Cursor cursor = mDB.query(CallHistoryService.TABLE_NAME, null,
+                CallHistoryService.CALL_START + ">=?", args, null, null, ORDER_ASC, String.valueOf(count));
+
+        while (cursor.moveToNext()) {
+            result.add(convertHistoryRecordToCallRecord(cursor));
+        }
+        cursor.close();
+        return result;
+    }
+
     /**
      * Find the calls made by the supplied peer address
      *
@@ -347,6 +347,12 @@ public class MetaContactGroupImpl implements MetaContactGroup
      */
     public MetaContact findMetaContactByMetaUID(String metaUID)
     {
+        MetaContactListIndex index = getAttachedIndex();
+        if (index != null) {
+            MetaContactImpl metaContact = index.findMetaContactByMetaUID(metaUID);
+            return (metaContact != null) && isAncestorOf(metaContact) ? metaContact : null;
+        }
+
         // first go through the contacts that are direct children of this method.
         Iterator<MetaContact> contactsIter = getChildContacts();
 
@@ -383,6 +389,12 @@ public class MetaContactGroupImpl implements MetaContactGroup
         if (metaUID.equals(groupUID))
             return this;
 
+        MetaContactListIndex index = getAttachedIndex();
+        if (index != null) {
+            MetaContactGroupImpl group = index.findMetaContactGroupByMetaUID(metaUID);
+            return (group != null) && isAncestorOf(group) ? group : null;
+        }
+
         // if we didn't find it here, let's try in the subgroups
         Iterator<MetaContactGroup> groupsIter = getSubgroups();
 
@@ -501,6 +513,15 @@ public class MetaContactGroupImpl implements MetaContactGroup
      */
     public MetaContact findMetaContactByContact(Contact protoContact)
     {
+        MetaContactListIndex index = getAttachedIndex();
+        if (index != null) {
+            MetaContactImpl metaContact = index.findMetaContact(protoContact.getAddress(),
+                    protoContact.getProtocolProvider().getAccountID().getAccountUniqueID());
+            return (metaContact != null) && isAncestorOf(metaContact)
+                    && (metaContact.getContact(protoContact.getAddress(), protoContact.getProtocolProvider()) != null)
+                    ? metaContact : null;
+        }
+
         // first go through the contacts that are direct children of this method.
         Iterator<MetaContact> contactsIter = getChildContacts();
 
@@ -539,6 +560,12 @@ public class MetaContactGroupImpl implements MetaContactGroup
      */
     public MetaContact findMetaContactByContact(String contactAddress, String accountID)
     {
+        MetaContactListIndex index = getAttachedIndex();
+        if (index != null) {
+            MetaContactImpl metaContact = index.findMetaContact(contactAddress, accountID);
+            return (metaContact != null) && isAncestorOf(metaContact) ? metaContact : null;
+        }
+
         // first go through the contacts that are direct children of this method.
         Iterator<MetaContact> contactsIter = getChildContacts();
 
@@ -575,6 +602,15 @@ public class MetaContactGroupImpl implements MetaContactGroup
         if (mProtoGroups.contains(protoContactGroup))
             return this;
 
+        MetaContactListIndex index = getAttachedIndex();
+        if (index != null) {
+            MetaContactGroupImpl group = index.findMetaContactGroupByContactGroup(protoContactGroup);
+            // The index compares the protocol groups by identity, so an equal copy falls back to the
+            // walk of the (few) groups below.
+            if ((group != null) && isAncestorOf(group) && group.mProtoGroups.contains(protoContactGroup))
+                return group;
+        }
+
         // if we didn't find it here, let's try in the subgroups
         Iterator<MetaContactGroup> groupsIter = getSubgroups();
 
@@ -611,6 +647,10 @@ public class MetaContactGroupImpl implements MetaContactGroup
         // set this group as a callback in the meta contact
         metaContact.setParentGroup(this);
         lightAddMetaContact(metaContact);
+
+        MetaContactListIndex index = getAttachedIndex();
+        if (index != null)
+            index.addMetaContact(metaContact);
     }
 
     /**
@@ -657,8 +697,15 @@ public class MetaContactGroupImpl implements MetaContactGroup
      */
     void removeMetaContact(MetaContactImpl metaContact)
     {
+        // Keep the index if the meta contact has already been added to its new group.
+        boolean isParent = (metaContact.getParentGroup() == this);
+
         metaContact.unsetParentGroup(this);
         lightRemoveMetaContact(metaContact);
+
+        MetaContactListIndex index = getAttachedIndex();
+        if (isParent && (index != null))
+            index.removeMetaContact(metaContact);
     }
 
     /**
@@ -829,6 +876,10 @@ public class MetaContactGroupImpl implements MetaContactGroup
     void addProtoGroup(ContactGroup protoGroup)
     {
         mProtoGroups.add(protoGroup);
+
+        MetaContactListIndex index = getAttachedIndex();
+        if (index != null)
+            index.addProtoGroup(protoGroup, this);
     }
 
     /**
@@ -840,6 +891,10 @@ public class MetaContactGroupImpl implements MetaContactGroup
     void removeProtoGroup(ContactGroup protoGroup)
     {
         mProtoGroups.remove(protoGroup);
+
+        MetaContactListIndex index = getAttachedIndex();
+        if (index != null)
+            index.removeProtoGroup(protoGroup, this);
     }
 
     /**
@@ -854,6 +909,10 @@ public class MetaContactGroupImpl implements MetaContactGroup
         ((MetaContactGroupImpl) subgroup).parentMetaContactGroup = this;
 
         this.subgroupsOrderedCopy = new LinkedList<>(subgroups);
+
+        MetaContactListIndex index = getAttachedIndex();
+        if (index != null)
+            index.addGroup((MetaContactGroupImpl) subgroup);
     }
 
     /**
@@ -865,11 +924,15 @@ public class MetaContactGroupImpl implements MetaContactGroup
     MetaContactGroupImpl removeSubgroup(int index)
     {
         MetaContactGroupImpl subgroup = (MetaContactGroupImpl) subgroupsOrderedCopy.get(index);
+        MetaContactListIndex mclIndex = getAttachedIndex();
 
         if (subgroups.remove(subgroup))
             subgroup.parentMetaContactGroup = null;
 
         subgroupsOrderedCopy = new LinkedList<>(subgroups);
+
+        if (mclIndex != null)
+            mclIndex.removeGroup(subgroup);
         return subgroup;
     }
 
@@ -900,6 +963,48 @@ public class MetaContactGroupImpl implements MetaContactGroup
         return mclServiceImpl;
     }
 
+    /**
+     * Returns the index of the contact list if this group is attached to its root group, i.e. the
+     * children of this group are (to be) indexed.
+     *
+     * @return the <code>MetaContactListIndex</code> of the contact list or <code>null</code> if this
+     * group is not attached to the root group
+     */
+    MetaContactListIndex getAttachedIndex()
+    {
+        MetaContactGroupImpl group = this;
+        while (group.parentMetaContactGroup != null)
+            group = group.parentMetaContactGroup;
+
+        return (group == mclServiceImpl.rootMetaGroup) ? mclServiceImpl.getIndex() : null;
+    }
+
+    /**
+     * Determines whether a specific group is this group or one of its descendants.
+     *
+     * @param group the group to check
+     * @return <code>true</code> if <code>group</code> is in the subtree of this group
+     */
+    private boolean isAncestorOf(MetaContactGroupImpl group)
+    {
+        for (; group != null; group = group.parentMetaContactGroup) {
+            if (group == this)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Determines whether a specific meta contact is a child of this group or of its descendants.
+     *
+     * @param metaContact the meta contact to check
+     * @return <code>true</code> if <code>metaContact</code> is in the subtree of this group
+     */
+    private boolean isAncestorOf(MetaContactImpl metaContact)
+    {
+        return isAncestorOf(metaContact.getParentGroup());
+    }
+
     /**
      * Implements {@link MetaContactGroup#getData(Object)}.
      *
@@ -710,9 +710,14 @@ public class MetaContactImpl extends DataObject implements MetaContact
                 this.displayName = contact.getDisplayName();
             }
 
-            if (parentGroup != null)
+            if (parentGroup != null) {
                 parentGroup.lightAddMetaContact(this);
 
+                MetaContactListIndex index = parentGroup.getAttachedIndex();
+                if (index != null)
+                    index.addProtoContact(contact, this);
+            }
+
             ProtocolProviderService contactProvider = contact.getProtocolProvider();
 
             // Check if the capabilities operation set is available for this
@@ -788,9 +793,14 @@ public class MetaContactImpl extends DataObject implements MetaContact
                 displayName = getDefaultContact().getDisplayName();
             }
 
-            if (parentGroup != null)
+            if (parentGroup != null) {
                 parentGroup.lightAddMetaContact(this);
 
+                MetaContactListIndex index = parentGroup.getAttachedIndex();
+                if (index != null)
+                    index.removeProtoContact(contact, this);
+            }
+
             ProtocolProviderService contactProvider = contact.getProtocolProvider();
 
             // Check if the capabilities operation set is available for this
@@ -815,6 +825,8 @@ public class MetaContactImpl extends DataObject implements MetaContact
     {
         boolean modified = false;
         Iterator<Contact> contactsIter = protoContacts.iterator();
+        MetaContactGroupImpl parentGroup = this.parentGroup;
+        MetaContactListIndex index = (parentGroup == null) ? null : parentGroup.getAttachedIndex();
 
         while (contactsIter.hasNext()) {
             Contact contact = contactsIter.next();
@@ -822,6 +834,8 @@ public class MetaContactImpl extends DataObject implements MetaContact
             if (contact.getProtocolProvider() == provider) {
                 contactsIter.remove();
                 modified = true;
+                if (index != null)
+                    index.removeProtoContact(contact, this);
             }
         }
         // if the default contact has been modified, set it to null
@@ -841,12 +855,16 @@ public class MetaContactImpl extends DataObject implements MetaContact
     {
         boolean modified = false;
         Iterator<Contact> contacts = protoContacts.iterator();
+        MetaContactGroupImpl parentGroup = this.parentGroup;
+        MetaContactListIndex index = (parentGroup == null) ? null : parentGroup.getAttachedIndex();
 
         while (contacts.hasNext()) {
             Contact contact = contacts.next();
             if (contact.getParentContactGroup() == protoGroup) {
                 contacts.remove();
                 modified = true;
+                if (index != null)
+                    index.removeProtoContact(contact, this);
             }
         }
         // if the default contact has been modified, set it to null
@@ -0,0 +1,323 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ * the specific language governing permissions
+ * and limitations under the License.
+ */
+package net.java.sip.communicator.impl.contactlist;
+
+import net.java.sip.communicator.service.contactlist.MetaContact;
+import net.java.sip.communicator.service.contactlist.MetaContactGroup;
+import net.java.sip.communicator.service.protocol.Contact;
+import net.java.sip.communicator.service.protocol.ContactGroup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The hash indexes of the meta contact list of a <code>MetaContactListServiceImpl</code>, so that
+ * finding the <code>MetaContact</code> of a protocol contact (e.g. for every incoming message or
+ * presence change) does not walk the whole group tree.
+ * <p>
+ * The indexes cover exactly the groups and meta contacts attached to the root group. They are
+ * updated incrementally by <code>MetaContactGroupImpl</code> and <code>MetaContactImpl</code> as
+ * meta contacts, protocol contacts, protocol groups and subgroups are added and removed. The
+ * lookups are lock free; the updates are serialized on this index.
+ * </p>
+ *
+ * @author Eng Chong Meng
+ */
+final class MetaContactListIndex
+{
+    /**
+     * The meta contacts by the address of their protocol contacts, by the unique ID of the
+     * account of the protocol contacts.
+     */
+    private final Map<String, Map<String, MetaContactImpl>> contactsByAccount = new ConcurrentHashMap<>();
+
+    /**
+     * The meta contacts by the address of their protocol contacts, over all accounts.
+     */
+    private final Map<String, Set<MetaContactImpl>> contactsByAddress = new ConcurrentHashMap<>();
+
+    /**
+     * The meta contacts by their meta UID.
+     */
+    private final Map<String, MetaContactImpl> contactsByUID = new ConcurrentHashMap<>();
+
+    /**
+     * The meta contact groups by their meta UID.
+     */
+    private final Map<String, MetaContactGroupImpl> groupsByUID = new ConcurrentHashMap<>();
+
+    /**
+     * The meta contact groups by the protocol groups they encapsulate. The protocol groups are
+     * compared by identity because their hash codes may change when they are renamed.
+     */
+    private final Map<ContactGroup, MetaContactGroupImpl> groupsByProtoGroup
+            = Collections.synchronizedMap(new IdentityHashMap<ContactGroup, MetaContactGroupImpl>());
+
+    /**
+     * Gets the meta contact of the protocol contact with a specific address in a specific account.
+     *
+     * @param contactAddress the address of the protocol contact
+     * @param accountID the unique ID of the account of the protocol contact
+     * @return the <code>MetaContactImpl</code> of the protocol contact or <code>null</code>
+     */
+    MetaContactImpl findMetaContact(String contactAddress, String accountID)
+    {
+        Map<String, MetaContactImpl> contacts = contactsByAccount.get(accountID);
+        return (contacts == null) ? null : contacts.get(contactAddress);
+    }
+
+    /**
+     * Gets the meta contacts of the protocol contacts with a specific address in any account.
+     *
+     * @param contactAddress the address of the protocol contacts
+     * @return the <code>MetaContact</code>s of the protocol contacts; possibly empty
+     */
+    List<MetaContact> findMetaContacts(String contactAddress)
+    {
+        Set<MetaContactImpl> metaContacts = contactsByAddress.get(contactAddress);
+        if (metaContacts == null)
+            return new ArrayList<>();
+
+        synchronized (metaContacts) {
+            return new ArrayList<MetaContact>(metaContacts);
+        }
+    }
+
+    /**
+     * Gets the meta contact with a specific meta UID.
+     *
+     * @param metaUID the meta UID of the meta contact
+     * @return the <code>MetaContactImpl</code> with <code>metaUID</code> or <code>null</code>
+     */
+    MetaContactImpl findMetaContactByMetaUID(String metaUID)
+    {
+        return contactsByUID.get(metaUID);
+    }
+
+    /**
+     * Gets the meta contact group with a specific meta UID.
+     *
+     * @param metaUID the meta UID of the meta contact group
+     * @return the <code>MetaContactGroupImpl</code> with <code>metaUID</code> or <code>null</code>
+     */
+    MetaContactGroupImpl findMetaContactGroupByMetaUID(String metaUID)
+    {
+        return groupsByUID.get(metaUID);
+    }
+
+    /**
+     * Gets the meta contact group which encapsulates a specific protocol group.
+     *
+     * @param protoGroup the protocol group
+     * @return the <code>MetaContactGroupImpl</code> of <code>protoGroup</code> or <code>null</code>
+     */
+    MetaContactGroupImpl findMetaContactGroupByContactGroup(ContactGroup protoGroup)
+    {
+        return groupsByProtoGroup.get(protoGroup);
+    }
+
+    /**
+     * Indexes a meta contact group which has been attached to the root group, together with all
+     * its protocol groups, meta contacts and subgroups.
+     *
+     * @param group the attached group
+     */
+    synchronized void addGroup(MetaContactGroupImpl group)
+    {
+        groupsByUID.put(group.getMetaUID(), group);
+
+        Iterator<ContactGroup> protoGroups = group.getContactGroups();
+        while (protoGroups.hasNext())
+            groupsByProtoGroup.put(protoGroups.next(), group);
+
+        Iterator<MetaContact> metaContacts = group.getChildContacts();
+        while (metaContacts.hasNext())
+            addMetaContact((MetaContactImpl) metaContacts.next());
+
+        Iterator<MetaContactGroup> subgroups = group.getSubgroups();
+        while (subgroups.hasNext())
+            addGroup((MetaContactGroupImpl) subgroups.next());
+    }
+
+    /**
+     * Removes from the index a meta contact group which has been detached from the root group,
+     * together with all its protocol groups, meta contacts and subgroups.
+     *
+     * @param group the detached group
+     */
+    synchronized void removeGroup(MetaContactGroupImpl group)
+    {
+        if (groupsByUID.get(group.getMetaUID()) == group)
+            groupsByUID.remove(group.getMetaUID());
+
+        Iterator<ContactGroup> protoGroups = group.getContactGroups();
+        while (protoGroups.hasNext())
+            removeProtoGroup(protoGroups.next(), group);
+
+        Iterator<MetaContact> metaContacts = group.getChildContacts();
+        while (metaContacts.hasNext())
+            removeMetaContact((MetaContactImpl) metaContacts.next());
+
+        Iterator<MetaContactGroup> subgroups = group.getSubgroups();
+        while (subgroups.hasNext())
+            removeGroup((MetaContactGroupImpl) subgroups.next());
+    }
+
+    /**
+     * Indexes a protocol group which has been added to an attached meta contact group.
+     *
+     * @param protoGroup the added protocol group
+     * @param group the meta contact group of <code>protoGroup</code>
+     */
+    synchronized void addProtoGroup(ContactGroup protoGroup, MetaContactGroupImpl group)
+    {
+        groupsByProtoGroup.put(protoGroup, group);
+    }
+
+    /**
+     * Removes from the index a protocol group which has been removed from an attached meta
+     * contact group, unless it has been indexed for another meta contact group since.
+     *
+     * @param protoGroup the removed protocol group
+     * @param group the meta contact group <code>protoGroup</code> has been removed from
+     */
+    synchronized void removeProtoGroup(ContactGroup protoGroup, MetaContactGroupImpl group)
+    {
+        if (groupsByProtoGroup.get(protoGroup) == group)
+            groupsByProtoGroup.remove(protoGroup);
+    }
+
+    /**
+     * Indexes a meta contact which has been attached to the root group, together with all its
+     * protocol contacts.
+     *
+     * @param metaContact the attached meta contact
+     */
+    synchronized void addMetaContact(MetaContactImpl metaContact)
+    {
+        contactsByUID.put(metaContact.getMetaUID(), metaContact);
+
+        Iterator<Contact> protoContacts = metaContact.getContacts();
+        while (protoContacts.hasNext())
+            addProtoContact(protoContacts.next(), metaContact);
+    }
+
+    /**
+     * Removes from the index a meta contact which has been detached from the root group,
+     * together with all its protocol contacts.
+     *
+     * @param metaContact the detached meta contact
+     */
+    synchronized void removeMetaContact(MetaContactImpl metaContact)
+    {
+        if (contactsByUID.get(metaContact.getMetaUID()) == metaContact)
+            contactsByUID.remove(metaContact.getMetaUID());
+
+        Iterator<Contact> protoContacts = metaContact.getContacts();
+        while (protoContacts.hasNext())
+            removeProtoContact(protoContacts.next(), metaContact, false);
+    }
+
+    /**
+     * Indexes a protocol contact which has been added to an attached meta contact.
+     *
+     * @param protoContact the added protocol contact
+     * @param metaContact the meta contact of <code>protoContact</code>
+     */
+    synchronized void addProtoContact(Contact protoContact, MetaContactImpl metaContact)
+    {
+        String address = protoContact.getAddress();
+        String accountID = getAccountID(protoContact);
+
+        Map<String, MetaContactImpl> contacts = contactsByAccount.get(accountID);
+        if (contacts == null) {
+            contacts = new ConcurrentHashMap<>();
+            contactsByAccount.put(accountID, contacts);
+        }
+        contacts.put(address, metaContact);
+
+        Set<MetaContactImpl> metaContacts = contactsByAddress.get(address);
+        if (metaContacts == null) {
+            metaContacts = Collections.synchronizedSet(Collections.newSetFromMap(
+                    new IdentityHashMap<MetaContactImpl, Boolean>()));
+            contactsByAddress.put(address, metaContacts);
+        }
+        metaContacts.add(metaContact);
+    }
+
+    /**
+     * Removes from the index a protocol contact which has been removed from an attached meta
+     * contact, unless it has been indexed for another meta contact since.
+     *
+     * @param protoContact the removed protocol contact
+     * @param metaContact the meta contact <code>protoContact</code> has been removed from
+     */
+    synchronized void removeProtoContact(Contact protoContact, MetaContactImpl metaContact)
+    {
+        removeProtoContact(protoContact, metaContact, true);
+    }
+
+    /**
+     * Removes a protocol contact of a specific meta contact from the index.
+     *
+     * @param protoContact the protocol contact to remove
+     * @param metaContact the meta contact of <code>protoContact</code>
+     * @param retained <code>true</code> if <code>metaContact</code> stays in the index, so that it is
+     * still found by the address of <code>protoContact</code> if it holds another protocol contact
+     * with the same address in another account
+     */
+    private void removeProtoContact(Contact protoContact, MetaContactImpl metaContact, boolean retained)
+    {
+        String address = protoContact.getAddress();
+
+        Map<String, MetaContactImpl> contacts = contactsByAccount.get(getAccountID(protoContact));
+        if ((contacts != null) && (contacts.get(address) == metaContact))
+            contacts.remove(address);
+
+        if (retained) {
+            Iterator<Contact> protoContacts = metaContact.getContacts();
+            while (protoContacts.hasNext()) {
+                Contact other = protoContacts.next();
+                if ((other != protoContact) && other.getAddress().equals(address))
+                    return;
+            }
+        }
+
+        Set<MetaContactImpl> metaContacts = contactsByAddress.get(address);
+        if (metaContacts != null) {
+            metaContacts.remove(metaContact);
+            if (metaContacts.isEmpty())
+                contactsByAddress.remove(address);
+        }
+    }
+
+    /**
+     * Gets the unique ID of the account of a specific protocol contact.
+     *
+     * @param protoContact the protocol contact
+     * @return the unique ID of the account of <code>protoContact</code>
+     */
+    private static String getAccountID(Contact protoContact)
+    {
+        return protoContact.getProtocolProvider().getAccountID().getAccountUniqueID();
+    }
+}
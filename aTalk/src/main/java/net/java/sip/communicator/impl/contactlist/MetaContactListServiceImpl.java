@@ -143,12 +143,28 @@ public class MetaContactListServiceImpl implements MetaContactListService, Servi
      */
     private final MclStorageManager storageManager = new MclStorageManager();
 
+    /**
+     * The hash indexes of the groups and meta contacts attached to {@link #rootMetaGroup}.
+     */
+    private final MetaContactListIndex index = new MetaContactListIndex();
+
     /**
      * Creates an instance of this class.
      */
     public MetaContactListServiceImpl()
     {
         rootMetaGroup = new MetaContactGroupImpl(this, ContactGroup.ROOT_GROUP_NAME, ContactGroup.ROOT_GROUP_UID);
+        index.addGroup(rootMetaGroup);
+    }
+
+    /**
+     * Returns the hash indexes of the groups and meta contacts of this contact list.
+     *
+     * @return the <code>MetaContactListIndex</code> of this contact list
+     */
+    MetaContactListIndex getIndex()
+    {
+        return index;
     }
 
     /**
@@ -1258,46 +1274,7 @@ public class MetaContactListServiceImpl implements MetaContactListService, Servi
      */
     public Iterator<MetaContact> findAllMetaContactsForAddress(String contactAddress)
     {
-        List<MetaContact> resultList = new LinkedList<>();
-        findAllMetaContactsForAddress(rootMetaGroup, contactAddress, resultList);
-        return resultList.iterator();
-    }
-
-    /**
-     * Returns a list of all <code>MetaContact</code>s containing a protocol contact corresponding to
-     * the given <code>contactAddress</code> string.
-     *
-     * @param contactAddress the contact address for which we're looking for a parent <code>MetaContact</code>.
-     * @param metaContactGroup the parent group.
-     * @param resultList the list containing the result of the search.
-     */
-    private void findAllMetaContactsForAddress(MetaContactGroup metaContactGroup,
-            String contactAddress, List<MetaContact> resultList)
-    {
-        Iterator<MetaContact> childContacts = metaContactGroup.getChildContacts();
-        while (childContacts.hasNext()) {
-            MetaContact metaContact = childContacts.next();
-
-            Iterator<Contact> protocolContacts = metaContact.getContacts();
-
-            while (protocolContacts.hasNext()) {
-                Contact protocolContact = protocolContacts.next();
-
-                if (protocolContact.getAddress().equals(contactAddress)
-                        || protocolContact.getDisplayName().equals(contactAddress))
-                    resultList.add(metaContact);
-            }
-        }
-
-        Iterator<MetaContactGroup> subGroups = metaContactGroup.getSubgroups();
-        while (subGroups.hasNext()) {
-            MetaContactGroup subGroup = subGroups.next();
-
-            Iterator<ContactGroup> protocolSubgroups = subGroup.getContactGroups();
-            if (protocolSubgroups.hasNext()) {
-                findAllMetaContactsForAddress(subGroup, contactAddress, resultList);
-            }
-        }
+        return index.findMetaContacts(contactAddress).iterator();
     }
 
     /**
@@ -20,6 +20,7 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
+import net.java.sip.communicator.impl.msghistory.MessageHistoryWriter;
 import net.java.sip.communicator.impl.protocol.jabber.OutgoingFileSendEntityImpl;
 import net.java.sip.communicator.service.contactlist.MetaContact;
 import net.java.sip.communicator.service.filehistory.FileHistoryService;
@@ -231,7 +232,7 @@ public class FileHistoryServiceImpl implements FileHistoryService, ServiceListen
             if (fileTransfer.getDirection() == FileTransfer.IN) {
                 String[] args = {fileTransfer.getID()};
                 contentValues.put(ChatMessage.FILE_PATH, fileName);
-                mDB.update(ChatMessage.TABLE_NAME, contentValues, ChatMessage.UUID + "=?", args);
+                MessageHistoryWriter.getInstance().update(ChatMessage.TABLE_NAME, contentValues, ChatMessage.UUID + "=?", args);
             }
             else if (fileTransfer.getDirection() == FileTransfer.OUT) {
                 insertRecordToDB(event, fileName);
@@ -326,7 +327,7 @@ public class FileHistoryServiceImpl implements FileHistoryService, ServiceListen
         contentValues.put(ChatMessage.DIRECTION, direction);
         contentValues.put(ChatMessage.STATUS, FileRecord.STATUS_WAITING);
         contentValues.put(ChatMessage.FILE_PATH, fileName);
-        mDB.insert(ChatMessage.TABLE_NAME, null, contentValues);
+        MessageHistoryWriter.getInstance().insert(ChatMessage.TABLE_NAME, contentValues);
     }
 
     /* ============= File Transfer Handlers - Update file transfer status =============
@@ -339,10 +340,8 @@ public class FileHistoryServiceImpl implements FileHistoryService, ServiceListen
      * @param fileName local fileName path for http downloaded file; null => no change and keep the link in MSG_BODY
      * @param encType IMessage.ENCRYPTION_NONE, ENCRYPTION_OMEMO, ENCRYPTION_OTR
      * @param msgType File Transfer message type
-     *
-     * @return the number of records being updated; zero means there is no record to update historyLog disabled
      */
-    public int updateFTStatusToDB(String msgUuid, int status, String fileName, int encType, int msgType) {
+    public void updateFTStatusToDB(String msgUuid, int status, String fileName, int encType, int msgType) {
         // Timber.w(new Exception("### File in/out transfer status changes to: " + status));
         String[] args = {msgUuid};
         ContentValues contentValues = new ContentValues();
@@ -353,7 +352,7 @@ public class FileHistoryServiceImpl implements FileHistoryService, ServiceListen
         }
         contentValues.put(ChatMessage.ENC_TYPE, encType);
         contentValues.put(ChatMessage.MSG_TYPE, msgType);
-        return mDB.update(ChatMessage.TABLE_NAME, contentValues, ChatMessage.UUID + "=?", args);
+        MessageHistoryWriter.getInstance().update(ChatMessage.TABLE_NAME, contentValues, ChatMessage.UUID + "=?", args);
     }
 
     /**
@@ -369,7 +368,7 @@ public class FileHistoryServiceImpl implements FileHistoryService, ServiceListen
             purgeLocallyStoredHistory(null, cursor.getString(0));
         }
         cursor.close();
-        mDB.delete(ChatMessage.TABLE_NAME, null, null);
+        MessageHistoryWriter.getInstance().delete(ChatMessage.TABLE_NAME, null, null);
 
     }
 
@@ -396,11 +395,12 @@ public class FileHistoryServiceImpl implements FileHistoryService, ServiceListen
      */
     private void purgeLocallyStoredHistory(Contact contact, String sessionUuid) {
         String[] args = {sessionUuid};
+        MessageHistoryWriter writer = MessageHistoryWriter.getInstance();
         if (contact != null) {
-            mDB.delete(ChatMessage.TABLE_NAME, ChatMessage.SESSION_UUID + "=?", args);
+            writer.delete(ChatMessage.TABLE_NAME, ChatMessage.SESSION_UUID + "=?", args);
         }
         else {
-            mDB.delete(ChatSession.TABLE_NAME, ChatSession.SESSION_UUID + "=?", args);
+            writer.delete(ChatSession.TABLE_NAME, ChatSession.SESSION_UUID + "=?", args);
         }
     }
 
@@ -5,11 +5,9 @@
  */
 package net.java.sip.communicator.impl.history;
 
-import net.java.sip.communicator.service.history.History;
 import net.java.sip.communicator.service.history.HistoryID;
 import net.java.sip.communicator.service.history.records.HistoryRecordStructure;
 
-import org.atalk.util.xml.XMLUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -21,11 +19,12 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 
-import javax.xml.parsers.DocumentBuilder;
-
 /**
+ * Reads the <code>dbstruct.dat</code> file of a history directory of the former XML history store,
+ * for the import of the history into the <code>HistoryStore</code>.
  *
  * @author Alexander Pelov
+ * @author Eng Chong Meng
  */
 public class DBStructSerializer
 {
@@ -42,67 +41,6 @@ public class DBStructSerializer
 		this.historyService = historyService;
 	}
 
-	/**
-	 * Write the history.
-	 *
-	 * @param dbDatFile
-	 *        the database file
-	 * @param history
-	 *        the history to write
-	 * @throws IOException
-	 *         if write failed for any reason
-	 */
-	public void writeHistory(File dbDatFile, History history)
-		throws IOException
-	{
-		DocumentBuilder builder = this.historyService.getDocumentBuilder();
-		Document doc = builder.newDocument();
-
-		Element root = doc.createElement("dbstruct");
-		root.setAttribute("version", "1.0");
-
-		Element structure = this.createStructureTag(doc, history.getHistoryRecordsStructure());
-		Element id = this.createIDTag(doc, history.getID());
-
-		root.appendChild(structure);
-		root.appendChild(id);
-
-		doc.appendChild(root);
-
-		XMLUtils.writeXML(doc, dbDatFile);
-	}
-
-	private Element createIDTag(Document doc, HistoryID historyID)
-	{
-		Element idroot = doc.createElement("id");
-		Element current = idroot;
-
-		String[] idelements = historyID.getID();
-		for (int i = 0; i < idelements.length; i++) {
-			Element idnode = doc.createElement("component");
-			idnode.setAttribute("value", idelements[i]);
-
-			current.appendChild(idnode);
-			current = idnode;
-		}
-
-		return idroot;
-	}
-
-	private Element createStructureTag(Document doc, HistoryRecordStructure recordStructure)
-	{
-		Element structure = doc.createElement("structure");
-		String[] propertyNames = recordStructure.getPropertyNames();
-		int count = recordStructure.getPropertyCount();
-		for (int i = 0; i < count; i++) {
-			Element property = doc.createElement("property");
-			property.setAttribute("name", propertyNames[i]);
-			structure.appendChild(property);
-		}
-
-		return structure;
-	}
-
 	/**
 	 * This method parses an XML file, and returns a History object created with the information from it. The parsing is
 	 * non-validating, so if a malformed XML is passed the results are undefined. The file should be with the following
@@ -116,7 +54,7 @@ public class DBStructSerializer
 	 *
 	 * @param dbDatFile
 	 *        The file to be parsed.
-	 * @return A History object corresponding to this dbstruct file.
+	 * @return A HistoryImpl object corresponding to this dbstruct file.
 	 * @throws SAXException
 	 *         Thrown if an error occurs during XML parsing.
 	 * @throws IOException
@@ -124,7 +62,7 @@ public class DBStructSerializer
 	 * @throws ParseException
 	 *         Thrown if there is error in the XML data format.
 	 */
-	public History loadHistory(File dbDatFile)
+	public HistoryImpl loadHistory(File dbDatFile)
 		throws SAXException, IOException, ParseException
 	{
 		Document doc = historyService.parse(dbDatFile);
@@ -133,7 +71,7 @@ public class DBStructSerializer
 		HistoryID id = loadID(root);
 		HistoryRecordStructure structure = loadStructure(root);
 
-		return new HistoryImpl(id, dbDatFile.getParentFile(), structure, historyService);
+		return new HistoryImpl(id, structure, historyService);
 	}
 
 	/**
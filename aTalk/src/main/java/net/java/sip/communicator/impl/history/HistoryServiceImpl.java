@@ -18,6 +18,7 @@ package net.java.sip.communicator.impl.history;
 
 import android.database.sqlite.SQLiteDatabase;
 
+import net.java.sip.communicator.impl.msghistory.MessageHistoryWriter;
 import net.java.sip.communicator.service.history.History;
 import net.java.sip.communicator.service.history.HistoryID;
 import net.java.sip.communicator.service.history.HistoryService;
@@ -29,27 +30,19 @@ import org.atalk.android.gui.chat.ChatMessage;
 import org.atalk.android.gui.chat.ChatSession;
 import org.atalk.android.plugin.timberlog.TimberLog;
 import org.atalk.persistance.DatabaseBackend;
-import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.fileaccess.FileAccessService;
 import org.atalk.service.fileaccess.FileCategory;
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.ServiceReference;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.Vector;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -57,6 +50,9 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import timber.log.Timber;
 
 /**
+ * The <code>HistoryService</code> implementation keeping the histories in the SQLite
+ * <code>HistoryStore</code>. The histories of the former XML store are imported on first use.
+ *
  * @author Alexander Pelov
  * @author Damian Minkov
  * @author Lubomir Marinov
@@ -65,12 +61,12 @@ import timber.log.Timber;
 public class HistoryServiceImpl implements HistoryService
 {
     /**
-     * The data directory.
+     * The data directory of the former XML history store.
      */
     public static final String DATA_DIRECTORY = "history_ver1.0";
 
     /**
-     * The data file.
+     * The data file of a history in the former XML history store.
      */
     public static final String DATA_FILE = "dbstruct.dat";
 
@@ -81,20 +77,15 @@ public class HistoryServiceImpl implements HistoryService
 
     private final DocumentBuilder builder;
 
-    private final boolean cacheEnabled;
+    private final HistoryStore store;
 
     private SQLiteDatabase mDB;
 
     /**
-     * Characters and their replacement in created folder names
+     * Whether the histories of the former XML store have been imported and all the histories
+     * have been loaded.
      */
-    private final static String[][] ESCAPE_SEQUENCES = new String[][]{
-            {"&", "&_amp"}, {"/", "&_sl"}, {"\\\\", "&_bs"}, // the char \
-            {":", "&_co"}, {"\\*", "&_as"}, // the char *
-            {"\\?", "&_qm"}, // the char ?
-            {"\"", "&_pa"}, // the char "
-            {"<", "&_lt"}, {">", "&_gt"}, {"\\|", "&_pp"} // the char |
-    };
+    private boolean loaded = false;
 
     /**
      * Constructor.
@@ -106,39 +97,43 @@ public class HistoryServiceImpl implements HistoryService
             throws Exception
     {
         this.builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        this.cacheEnabled = getConfigurationService(bundleContext).getBoolean(CACHE_ENABLED_PROPERTY, false);
         this.fileAccessService = getFileAccessService(bundleContext);
         mDB = DatabaseBackend.getWritableDB();
+        store = new HistoryStore(mDB);
     }
 
-    public Iterator<HistoryID> getExistingIDs()
+    /**
+     * Imports the histories of the former XML store which have not been imported yet, and loads
+     * all the histories of the store, once.
+     */
+    private void loadHistories()
     {
-        List<File> vect = new Vector<>();
-        File histDir;
-        try {
-            String userSetDataDirectory = System.getProperty("HistoryServiceDirectory");
-            histDir = getFileAccessService().getPrivatePersistentDirectory((userSetDataDirectory == null)
-                    ? DATA_DIRECTORY : userSetDataDirectory, FileCategory.PROFILE);
-
-            findDatFiles(vect, histDir);
-        } catch (Exception e) {
-            Timber.e(e, "Error opening directory");
-        }
+        synchronized (this.histories) {
+            if (loaded)
+                return;
+            loaded = true;
+
+            try {
+                String userSetDataDirectory = System.getProperty("HistoryServiceDirectory");
+                File histDir = getFileAccessService().getPrivatePersistentDirectory((userSetDataDirectory == null)
+                        ? DATA_DIRECTORY : userSetDataDirectory, FileCategory.PROFILE);
+
+                if ((histDir != null) && histDir.isDirectory())
+                    new XmlHistoryImporter(this, store).importHistories(histDir);
+            } catch (Exception e) {
+                Timber.e(e, "Error importing XML histories");
+            }
 
-        DBStructSerializer structParse = new DBStructSerializer(this);
-        for (File f : vect) {
-            synchronized (this.histories) {
-                try {
-                    History hist = structParse.loadHistory(f);
-                    if (!this.histories.containsKey(hist.getID())) {
-                        this.histories.put(hist.getID(), hist);
-                    }
-                } catch (Exception e) {
-                    Timber.e(e, "Could not load history from file: %s", f.getAbsolutePath());
-                }
+            for (HistoryImpl history : store.loadHistories(this)) {
+                if (!this.histories.containsKey(history.getID()))
+                    this.histories.put(history.getID(), history);
             }
         }
+    }
 
+    public Iterator<HistoryID> getExistingIDs()
+    {
+        loadHistories();
         synchronized (this.histories) {
             return this.histories.keySet().iterator();
         }
@@ -146,6 +141,7 @@ public class HistoryServiceImpl implements HistoryService
 
     public boolean isHistoryExisting(HistoryID id)
     {
+        loadHistories();
         return this.histories.containsKey(id);
     }
 
@@ -154,6 +150,7 @@ public class HistoryServiceImpl implements HistoryService
     {
         History retVal = null;
 
+        loadHistories();
         synchronized (this.histories) {
             if (histories.containsKey(id)) {
                 retVal = histories.get(id);
@@ -170,18 +167,19 @@ public class HistoryServiceImpl implements HistoryService
     {
         History retVal = null;
 
+        loadHistories();
         synchronized (this.histories) {
             if (this.histories.containsKey(id)) {
                 retVal = this.histories.get(id);
                 retVal.setHistoryRecordsStructure(recordStructure);
             }
             else {
-                File dir = this.createHistoryDirectories(id);
-                HistoryImpl history = new HistoryImpl(id, dir, recordStructure, this);
-
-                File dbDatFile = new File(dir, HistoryServiceImpl.DATA_FILE);
-                DBStructSerializer dbss = new DBStructSerializer(this);
-                dbss.writeHistory(dbDatFile, history);
+                HistoryImpl history = new HistoryImpl(id, recordStructure, this);
+                try {
+                    store.putHistory(id, recordStructure);
+                } catch (RuntimeException e) {
+                    throw new IOException("Could not create history " + id, e);
+                }
 
                 this.histories.put(id, history);
                 retVal = history;
@@ -195,96 +193,34 @@ public class HistoryServiceImpl implements HistoryService
         return this.fileAccessService;
     }
 
-    protected DocumentBuilder getDocumentBuilder()
-    {
-        return builder;
-    }
-
     /**
-     * Parse documents. Synchronized to avoid exception when concurrently parsing with same
-     * DocumentBuilder
+     * Returns the <code>HistoryStore</code> holding the histories of this service.
      *
-     * @param file File the file to parse
-     * @return Document the result document
-     * @throws SAXException exception
-     * @throws IOException exception
+     * @return the <code>HistoryStore</code> of this service
      */
-    protected synchronized Document parse(File file)
-            throws SAXException, IOException
+    HistoryStore getStore()
     {
-        FileInputStream fis = new FileInputStream(file);
-        Document doc = builder.parse(fis);
-        fis.close();
-        return doc;
+        return store;
     }
 
     /**
      * Parse documents. Synchronized to avoid exception when concurrently parsing with same
      * DocumentBuilder
      *
-     * @param in ByteArrayInputStream the stream to parse
+     * @param file File the file to parse
      * @return Document the result document
      * @throws SAXException exception
      * @throws IOException exception
      */
-    protected synchronized Document parse(ByteArrayInputStream in)
+    protected synchronized Document parse(File file)
             throws SAXException, IOException
     {
-        return builder.parse(in);
-    }
-
-    private void findDatFiles(List<File> vect, File directory)
-    {
-        File[] files = directory.listFiles();
-        for (int i = 0; i < files.length; i++) {
-            if (files[i].isDirectory()) {
-                findDatFiles(vect, files[i]);
-            }
-            else if (DATA_FILE.equalsIgnoreCase(files[i].getName())) {
-                vect.add(files[i]);
-            }
-        }
-    }
-
-    private File createHistoryDirectories(HistoryID id)
-            throws IOException
-    {
-        String[] idComponents = id.getID();
-
-        // escape chars in directory names
-        escapeCharacters(idComponents);
-
-        String userSetDataDirectory = System.getProperty("HistoryServiceDirectory");
-        File dir = new File(userSetDataDirectory != null ? userSetDataDirectory : DATA_DIRECTORY);
-
-        for (String s : idComponents) {
-            dir = new File(dir, s);
-        }
-
-        File directory = null;
+        FileInputStream fis = new FileInputStream(file);
         try {
-            directory = getFileAccessService().getPrivatePersistentDirectory(dir.toString(),
-                    FileCategory.PROFILE);
-        } catch (Exception e) {
-            IOException ioe = new IOException("Could not create history due to file system error");
-            ioe.initCause(e);
-            throw ioe;
-        }
-
-        if (!directory.exists() && !directory.mkdirs()) {
-            throw new IOException("Could not create requested history service files:" + directory.getAbsolutePath());
+            return builder.parse(fis);
+        } finally {
+            fis.close();
         }
-        return directory;
-    }
-
-    /**
-     * Returns whether caching of read documents is enabled or disabled.
-     *
-     * @return boolean
-     */
-    protected boolean isCacheEnabled()
-    {
-        return cacheEnabled;
     }
 
     /**
@@ -296,21 +232,26 @@ public class HistoryServiceImpl implements HistoryService
     public void purgeLocallyStoredHistory(HistoryID id)
             throws IOException
     {
-        // get the history directory corresponding the given id
-        File dir = this.createHistoryDirectories(id);
-        Timber.log(TimberLog.FINER, "Removing history directory %s", dir);
-        deleteDirAndContent(dir);
+        loadHistories();
+        Timber.log(TimberLog.FINER, "Removing history %s", id);
+        try {
+            store.deleteHistory(id);
+        } catch (RuntimeException e) {
+            throw new IOException("Could not remove history " + id, e);
+        }
 
         History history = histories.remove(id);
         if (history == null) {
             // well this can be global delete, so lets remove all matching sub-histories
             String[] ids = id.getID();
 
-            Iterator<Map.Entry<HistoryID, History>> iter = histories.entrySet().iterator();
-            while (iter.hasNext()) {
-                Map.Entry<HistoryID, History> entry = iter.next();
-                if (isSubHistory(ids, entry.getKey())) {
-                    iter.remove();
+            synchronized (this.histories) {
+                Iterator<Map.Entry<HistoryID, History>> iter = histories.entrySet().iterator();
+                while (iter.hasNext()) {
+                    Map.Entry<HistoryID, History> entry = iter.next();
+                    if (isSubHistory(ids, entry.getKey())) {
+                        iter.remove();
+                    }
                 }
             }
         }
@@ -324,20 +265,25 @@ public class HistoryServiceImpl implements HistoryService
     public void purgeLocallyStoredHistory(Contact contact, String sessionUuid)
     {
         String[] args = {sessionUuid};
+        // Queued behind the pending message writes, which may belong to this session.
+        MessageHistoryWriter writer = MessageHistoryWriter.getInstance();
         if (contact != null) {
-            mDB.delete(ChatMessage.TABLE_NAME, ChatMessage.SESSION_UUID + "=?", args);
+            writer.delete(ChatMessage.TABLE_NAME, ChatMessage.SESSION_UUID + "=?", args);
         }
         else {
-            mDB.delete(ChatSession.TABLE_NAME, ChatSession.SESSION_UUID + "=?", args);
+            writer.delete(ChatSession.TABLE_NAME, ChatSession.SESSION_UUID + "=?", args);
         }
     }
 
     /**
-     * Clears locally(in memory) cached histories.
+     * Clears locally(in memory) cached histories; they are loaded again from the store on next use.
      */
     public void purgeLocallyCachedHistories()
     {
-        histories.clear();
+        synchronized (this.histories) {
+            histories.clear();
+            loaded = false;
+        }
     }
 
     /**
@@ -364,63 +310,14 @@ public class HistoryServiceImpl implements HistoryService
         return true;
     }
 
-    /**
-     * Deletes given directory and its content
-     *
-     * @param dir File
-     * @throws IOException
-     */
-    private void deleteDirAndContent(File dir)
-            throws IOException
-    {
-        if (!dir.isDirectory())
-            return;
-
-        File[] content = dir.listFiles();
-
-        File tmp;
-        for (int i = 0; i < content.length; i++) {
-            tmp = content[i];
-            if (tmp.isDirectory())
-                deleteDirAndContent(tmp);
-            else
-                tmp.delete();
-        }
-        dir.delete();
-    }
-
-    /**
-     * Replacing the characters that we must escape used for the created filename.
-     *
-     * @param ids Ids - folder names as we are using FileSystem for storing files.
-     */
-    private void escapeCharacters(String[] ids)
-    {
-        for (int i = 0; i < ids.length; i++) {
-            String currId = ids[i];
-
-            for (int j = 0; j < ESCAPE_SEQUENCES.length; j++) {
-                currId = currId.replaceAll(ESCAPE_SEQUENCES[j][0], ESCAPE_SEQUENCES[j][1]);
-            }
-            ids[i] = currId;
-        }
-    }
-
-    private static ConfigurationService getConfigurationService(BundleContext bundleContext)
-    {
-        ServiceReference serviceReference = bundleContext.getServiceReference(ConfigurationService.class.getName());
-        return (serviceReference == null) ? null : (ConfigurationService) bundleContext.getService(serviceReference);
-    }
-
     private static FileAccessService getFileAccessService(BundleContext bundleContext)
     {
         return ServiceUtils.getService(bundleContext, FileAccessService.class);
     }
 
     /**
-     * Moves the content of oldId history to the content of the newId. Moves the content from the
-     * oldId folder to the
-     * newId folder. Old folder must exist.
+     * Moves the content of oldId history, and of its sub-histories, to the newId history. The oldId
+     * history must exist and the newId history must not.
      *
      * @param oldId old and existing history
      * @param newId the place where content of oldId will be moved
@@ -429,64 +326,32 @@ public class HistoryServiceImpl implements HistoryService
     public void moveHistory(HistoryID oldId, HistoryID newId)
             throws IOException
     {
-        if (!isHistoryCreated(oldId))// || !isHistoryExisting(newId))
+        if (!isHistoryCreated(oldId))
             return;
 
-        File oldDir = this.createHistoryDirectories(oldId);
-        File newDir = getDirForHistory(newId);
-
-        // make sure parent path is existing
-        newDir.getParentFile().mkdirs();
-
-        if (!oldDir.renameTo(newDir)) {
+        if (isHistoryCreated(newId)) {
             Timber.w("Cannot move history!");
             throw new IOException("Cannot move history!");
         }
 
-        histories.remove(oldId);
-    }
-
-    /**
-     * Returns the folder for the given history without creating it.
-     *
-     * @param id the history
-     * @return the folder for the history
-     */
-    private File getDirForHistory(HistoryID id)
-    {
-        // put together subfolder names.
-        String[] dirNames = id.getID();
-        StringBuilder dirName = new StringBuilder();
-        for (int i = 0; i < dirNames.length; i++) {
-            if (i > 0)
-                dirName.append(File.separatorChar);
-            dirName.append(dirNames[i]);
-        }
-
-        // get the parent directory
-        File histDir = null;
         try {
-            String userSetDataDirectory = System.getProperty("HistoryServiceDirectory");
-
-            histDir = getFileAccessService().getPrivatePersistentDirectory(
-                    (userSetDataDirectory == null) ? DATA_DIRECTORY : userSetDataDirectory,
-                    FileCategory.PROFILE);
-        } catch (Exception e) {
-            Timber.e(e, "Error opening directory");
+            store.moveHistory(oldId, newId);
+        } catch (RuntimeException e) {
+            throw new IOException("Cannot move history!", e);
         }
-
-        return new File(histDir, dirName.toString());
+        histories.remove(oldId);
     }
 
     /**
-     * Checks whether a history is created and stored. Exists in the file system.
+     * Checks whether a history is created and stored.
      *
      * @param id the history to check
      * @return whether a history is created and stored.
      */
     public boolean isHistoryCreated(HistoryID id)
     {
-        return getDirForHistory(id).exists();
+        loadHistories();
+        return store.isHistoryCreated(id);
     }
 
     /**
@@ -499,68 +364,7 @@ public class HistoryServiceImpl implements HistoryService
     public List<HistoryID> getExistingHistories(String[] rawId)
             throws IllegalArgumentException
     {
-        File histDir = null;
-        try {
-            histDir = getFileAccessService().getPrivatePersistentDirectory(DATA_DIRECTORY,
-                    FileCategory.PROFILE);
-        } catch (Exception e) {
-            Timber.e(e, "Error opening directory");
-        }
-
-        if (histDir == null || !histDir.exists())
-            return new ArrayList<>();
-
-        StringBuilder folderPath = new StringBuilder();
-        // history_ver1.0/messages/default
-        for (String id : rawId)
-            folderPath.append(id).append(File.separator);
-
-        File srcFolder = new File(histDir, folderPath.toString());
-        if (!srcFolder.exists())
-            return new ArrayList<>();
-
-        TreeMap<File, HistoryID> recentFiles = new TreeMap<>(new Comparator<File>()
-        {
-            @Override
-            public int compare(File o1, File o2)
-            {
-                return o1.getName().compareTo(o2.getName());
-            }
-        });
-
-        getExistingFiles(srcFolder, Arrays.asList(rawId), recentFiles);
-        // return non duplicate
-        List<HistoryID> result = new ArrayList<>();
-        for (Map.Entry<File, HistoryID> entry : recentFiles.entrySet()) {
-            HistoryID hid = entry.getValue();
-
-            if (result.contains(hid))
-                continue;
-            result.add(hid);
-        }
-        return result;
-    }
-
-    /**
-     * Get existing files in <code>res</code> and their corresponding historyIDs.
-     *
-     * @param sourceFolder the folder to search into.
-     * @param rawID the rawID.
-     * @param res the result map.
-     */
-    private void getExistingFiles(File sourceFolder, List<String> rawID, Map<File, HistoryID> res)
-    {
-        for (File f : sourceFolder.listFiles()) {
-            if (f.isDirectory()) {
-                List<String> newRawID = new ArrayList<>(rawID);
-                newRawID.add(f.getName());
-                getExistingFiles(f, newRawID, res);
-            }
-            else {
-                if (f.getName().equals(DATA_FILE))
-                    continue;
-                res.put(f, HistoryID.createFromRawStrings(rawID.toArray(new String[0])));
-            }
-        }
+        loadHistories();
+        return store.getExistingHistories(rawId);
     }
 }
@@ -0,0 +1,572 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.history;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import net.java.sip.communicator.service.history.HistoryID;
+import net.java.sip.communicator.service.history.HistoryWriter.HistoryRecordUpdater;
+import net.java.sip.communicator.service.history.records.HistoryRecord;
+import net.java.sip.communicator.service.history.records.HistoryRecordStructure;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SQLite store of the <code>HistoryService</code>, replacing the per history directories of XML
+ * files. A history is a row of {@link #TABLE_NAME} holding its record structure; its records are
+ * appended to {@link #TBL_RECORDS}, indexed on (history, timestamp), with their properties in
+ * {@link #TBL_PROPERTIES}. Adding a record is thus a few inserts instead of rewriting a whole XML
+ * file, and the date and count bounded queries read only the records they return.
+ * <p>
+ * A history is keyed by the components of its <code>HistoryID</code> joined by <code>'/'</code>, which
+ * is never part of a component, so that the sub-histories of a history are a range of the key.
+ * </p>
+ *
+ * @author Eng Chong Meng
+ */
+public class HistoryStore
+{
+    public static final String TABLE_NAME = "histories";
+    public static final String HISTORY_ID = "historyId";
+    public static final String STRUCTURE = "structure";
+
+    public static final String TBL_RECORDS = "historyRecords";
+    public static final String RECORD_ID = "recordId";
+    public static final String TIME_STAMP = "timeStamp";
+
+    public static final String TBL_PROPERTIES = "historyProperties";
+    public static final String NAME = "name";
+    public static final String VALUE = "value";
+
+    /**
+     * The separator of the components of a history key.
+     */
+    private static final char ID_SEPARATOR = '/';
+
+    /**
+     * The suffix of the property names which were stored as CDATA sections in the XML files; the
+     * records are read back without it.
+     */
+    private static final String CDATA_SUFFIX = "_CDATA";
+
+    public static final String[] CREATE_STATEMENTS = {
+            "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                    + HISTORY_ID + " TEXT PRIMARY KEY, "
+                    + STRUCTURE + " TEXT);",
+            "CREATE TABLE IF NOT EXISTS " + TBL_RECORDS + " ("
+                    + RECORD_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + HISTORY_ID + " TEXT, "
+                    + TIME_STAMP + " NUMBER);",
+            "CREATE INDEX IF NOT EXISTS " + TBL_RECORDS + "_history_time_idx ON "
+                    + TBL_RECORDS + "(" + HISTORY_ID + ", " + TIME_STAMP + ", " + RECORD_ID + ");",
+            "CREATE TABLE IF NOT EXISTS " + TBL_PROPERTIES + " ("
+                    + RECORD_ID + " INTEGER, "
+                    + NAME + " TEXT, "
+                    + VALUE + " TEXT);",
+            "CREATE INDEX IF NOT EXISTS " + TBL_PROPERTIES + "_record_idx ON "
+                    + TBL_PROPERTIES + "(" + RECORD_ID + ");"
+    };
+
+    private final SQLiteDatabase mDB;
+
+    /**
+     * Creates the tables and indexes of the history store.
+     *
+     * @param db SQLite database
+     */
+    public static void create(SQLiteDatabase db)
+    {
+        for (String statement : CREATE_STATEMENTS) {
+            db.execSQL(statement);
+        }
+    }
+
+    /**
+     * Creates a <code>HistoryStore</code> on a specific database.
+     *
+     * @param db the database holding the history tables
+     */
+    HistoryStore(SQLiteDatabase db)
+    {
+        mDB = db;
+    }
+
+    /**
+     * Gets the key of a specific history.
+     *
+     * @param id the <code>HistoryID</code> of the history
+     * @return the key of the history in the store
+     */
+    static String toKey(HistoryID id)
+    {
+        return toKey(id.getID());
+    }
+
+    private static String toKey(String[] components)
+    {
+        return TextUtils.join(String.valueOf(ID_SEPARATOR), components);
+    }
+
+    /**
+     * Gets the selection of a history and all its sub-histories.
+     *
+     * @param key the key of the history
+     * @param args the list to add the arguments of the selection to
+     * @return the selection of the history and its sub-histories
+     */
+    private static String subtreeSelection(String key, List<String> args)
+    {
+        args.add(key);
+        args.add(key + ID_SEPARATOR);
+        args.add(key + (char) (ID_SEPARATOR + 1));
+        return "(" + HISTORY_ID + "=? OR (" + HISTORY_ID + ">=? AND " + HISTORY_ID + "<?))";
+    }
+
+    /**
+     * Gets whether a specific history exists.
+     *
+     * @param id the <code>HistoryID</code> of the history
+     * @return <code>true</code> if the history exists
+     */
+    boolean isHistoryCreated(HistoryID id)
+    {
+        Cursor cursor = mDB.query(TABLE_NAME, new String[]{HISTORY_ID}, HISTORY_ID + "=?",
+                new String[]{toKey(id)}, null, null, null);
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Creates a history or replaces the record structure of an existing one.
+     *
+     * @param id the <code>HistoryID</code> of the history
+     * @param structure the record structure of the history
+     */
+    void putHistory(HistoryID id, HistoryRecordStructure structure)
+    {
+        ContentValues values = new ContentValues();
+        values.put(HISTORY_ID, toKey(id));
+        values.put(STRUCTURE, TextUtils.join(" ", structure.getPropertyNames()));
+        mDB.insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Loads all the histories of the store.
+     *
+     * @param historyService the <code>HistoryServiceImpl</code> the histories belong to
+     * @return the histories of the store
+     */
+    List<HistoryImpl> loadHistories(HistoryServiceImpl historyService)
+    {
+        List<HistoryImpl> histories = new ArrayList<>();
+        Cursor cursor = mDB.query(TABLE_NAME, new String[]{HISTORY_ID, STRUCTURE},
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                HistoryID id = HistoryID.createFromRawStrings(
+                        TextUtils.split(cursor.getString(0), String.valueOf(ID_SEPARATOR)));
+                String structure = cursor.getString(1);
+                String[] names = TextUtils.isEmpty(structure) ? new String[0] : structure.split(" ");
+                histories.add(new HistoryImpl(id, new HistoryRecordStructure(names), historyService));
+            }
+        } finally {
+            cursor.close();
+        }
+        return histories;
+    }
+
+    /**
+     * Gets the histories with records whose <code>HistoryID</code> starts with specific components,
+     * the history with the oldest record first.
+     *
+     * @param rawId the first components of the <code>HistoryID</code>s
+     * @return the <code>HistoryID</code>s of the histories
+     */
+    List<HistoryID> getExistingHistories(String[] rawId)
+    {
+        List<String> args = new ArrayList<>();
+        String selection = subtreeSelection(toKey(rawId), args);
+
+        List<HistoryID> result = new ArrayList<>();
+        Cursor cursor = mDB.rawQuery("SELECT " + HISTORY_ID + ", MIN(" + TIME_STAMP + ") AS first FROM "
+                + TBL_RECORDS + " WHERE " + selection + " GROUP BY " + HISTORY_ID + " ORDER BY first",
+                args.toArray(new String[0]));
+        try {
+            while (cursor.moveToNext()) {
+                result.add(HistoryID.createFromRawStrings(
+                        TextUtils.split(cursor.getString(0), String.valueOf(ID_SEPARATOR))));
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    /**
+     * Deletes a history and all its sub-histories with their records.
+     *
+     * @param id the <code>HistoryID</code> of the history
+     */
+    void deleteHistory(HistoryID id)
+    {
+        List<String> args = new ArrayList<>();
+        String selection = subtreeSelection(toKey(id), args);
+        String[] selectionArgs = args.toArray(new String[0]);
+
+        mDB.beginTransaction();
+        try {
+            mDB.delete(TBL_PROPERTIES, RECORD_ID + " IN (SELECT " + RECORD_ID + " FROM " + TBL_RECORDS
+                    + " WHERE " + selection + ")", selectionArgs);
+            mDB.delete(TBL_RECORDS, selection, selectionArgs);
+            mDB.delete(TABLE_NAME, selection, selectionArgs);
+            mDB.setTransactionSuccessful();
+        } finally {
+            mDB.endTransaction();
+        }
+    }
+
+    /**
+     * Moves a history and all its sub-histories with their records to another <code>HistoryID</code>.
+     *
+     * @param oldId the <code>HistoryID</code> of the existing history
+     * @param newId the <code>HistoryID</code> to move the history to
+     */
+    void moveHistory(HistoryID oldId, HistoryID newId)
+    {
+        String oldKey = toKey(oldId);
+        List<String> args = new ArrayList<>();
+        args.add(toKey(newId));
+        args.add(String.valueOf(oldKey.length() + 1));
+        String selection = subtreeSelection(oldKey, args);
+        Object[] bindArgs = args.toArray();
+
+        mDB.beginTransaction();
+        try {
+            for (String table : new String[]{TABLE_NAME, TBL_RECORDS}) {
+                mDB.execSQL("UPDATE " + table + " SET " + HISTORY_ID + "=? || substr(" + HISTORY_ID
+                        + ", ?) WHERE " + selection, bindArgs);
+            }
+            mDB.setTransactionSuccessful();
+        } finally {
+            mDB.endTransaction();
+        }
+    }
+
+    /**
+     * Appends a record to a history, keeping at most a specific number of its newest records.
+     *
+     * @param id the <code>HistoryID</code> of the history
+     * @param propertyNames the names of the properties of the record
+     * @param propertyValues the values of the properties of the record; <code>null</code> values are not stored
+     * @param timestamp the timestamp of the record
+     * @param maxNumberOfRecords the maximum number of records to keep or -1 to keep them all
+     */
+    void addRecord(HistoryID id, String[] propertyNames, String[] propertyValues, Date timestamp,
+            int maxNumberOfRecords)
+    {
+        String key = toKey(id);
+
+        mDB.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            values.put(HISTORY_ID, key);
+            values.put(TIME_STAMP, timestamp.getTime());
+            long recordId = mDB.insert(TBL_RECORDS, null, values);
+
+            for (int i = 0; i < propertyNames.length; i++) {
+                if (propertyValues[i] != null)
+                    putProperty(recordId, propertyNames[i], propertyValues[i]);
+            }
+
+            if (maxNumberOfRecords > -1) {
+                String oldest = "SELECT " + RECORD_ID + " FROM " + TBL_RECORDS + " WHERE " + HISTORY_ID
+                        + "=? ORDER BY " + TIME_STAMP + " DESC, " + RECORD_ID + " DESC LIMIT -1 OFFSET "
+                        + maxNumberOfRecords;
+                mDB.delete(TBL_PROPERTIES, RECORD_ID + " IN (" + oldest + ")", new String[]{key});
+                mDB.delete(TBL_RECORDS, RECORD_ID + " IN (" + oldest + ")", new String[]{key});
+            }
+            mDB.setTransactionSuccessful();
+        } finally {
+            mDB.endTransaction();
+        }
+    }
+
+    /**
+     * Adds a property to a record.
+     *
+     * @param recordId the id of the record
+     * @param name the name of the property
+     * @param value the value of the property
+     */
+    private void putProperty(long recordId, String name, String value)
+    {
+        if (name.endsWith(CDATA_SUFFIX))
+            name = name.substring(0, name.length() - CDATA_SUFFIX.length());
+
+        ContentValues values = new ContentValues();
+        values.put(RECORD_ID, recordId);
+        values.put(NAME, name);
+        values.put(VALUE, value.replace('\0', ' '));
+        mDB.insert(TBL_PROPERTIES, null, values);
+    }
+
+    /**
+     * Finds the records of a history within a period whose properties contain keywords.
+     *
+     * @param id the <code>HistoryID</code> of the history
+     * @param startDate the inclusive start of the period or <code>null</code>
+     * @param endDate the exclusive end of the period or <code>null</code>
+     * @param keywords the keywords all of which the records must contain or <code>null</code>
+     * @param field the property which must contain the keywords or <code>null</code> for any property
+     * @param caseSensitive whether the keywords are matched case sensitively
+     * @param last <code>true</code> to find the newest <code>count</code> records instead of the oldest
+     * @param count the maximum number of records to find or -1 for all of them
+     * @return the found records, oldest first
+     */
+    List<HistoryRecord> findRecords(HistoryID id, Date startDate, Date endDate, String[] keywords,
+            String field, boolean caseSensitive, boolean last, int count)
+    {
+        List<String> args = new ArrayList<>();
+        StringBuilder where = new StringBuilder(HISTORY_ID + "=?");
+        args.add(toKey(id));
+
+        if (startDate != null) {
+            where.append(" AND " + TIME_STAMP + ">=?");
+            args.add(String.valueOf(startDate.getTime()));
+        }
+        if (endDate != null) {
+            where.append(" AND " + TIME_STAMP + "<?");
+            args.add(String.valueOf(endDate.getTime()));
+        }
+        if (keywords != null) {
+            for (String keyword : keywords) {
+                where.append(" AND EXISTS (SELECT 1 FROM " + TBL_PROPERTIES + " k WHERE k." + RECORD_ID
+                        + "=" + TBL_RECORDS + "." + RECORD_ID);
+                if (field != null) {
+                    where.append(" AND k." + NAME + "=?");
+                    args.add(field);
+                }
+                if (caseSensitive) {
+                    where.append(" AND instr(k." + VALUE + ", ?)>0)");
+                    args.add(keyword);
+                }
+                else {
+                    where.append(" AND k." + VALUE + " LIKE ? ESCAPE '\\')");
+                    args.add("%" + keyword.replace("\\", "\\\\").replace("%", "\\%")
+                            .replace("_", "\\_") + "%");
+                }
+            }
+        }
+
+        String order = last ? " DESC" : " ASC";
+        String records = "SELECT " + RECORD_ID + ", " + TIME_STAMP + " FROM " + TBL_RECORDS
+                + " WHERE " + where + " ORDER BY " + TIME_STAMP + order + ", " + RECORD_ID + order
+                + " LIMIT " + count;
+
+        return readRecords("SELECT r." + RECORD_ID + ", r." + TIME_STAMP + ", p." + NAME + ", p." + VALUE
+                + " FROM (" + records + ") r LEFT JOIN " + TBL_PROPERTIES + " p ON p." + RECORD_ID
+                + "=r." + RECORD_ID + " ORDER BY r." + TIME_STAMP + ", r." + RECORD_ID + ", p.rowid",
+                args.toArray(new String[0]), null);
+    }
+
+    /**
+     * Reads the records of a query selecting the id, the timestamp and the property name and value
+     * of the records, ordered by record.
+     *
+     * @param sql the query
+     * @param args the arguments of the query
+     * @param recordIds the list to add the ids of the read records to or <code>null</code>
+     * @return the read records
+     */
+    private List<HistoryRecord> readRecords(String sql, String[] args, List<Long> recordIds)
+    {
+        List<HistoryRecord> result = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        long recordId = -1;
+        long timestamp = 0;
+
+        Cursor cursor = mDB.rawQuery(sql, args);
+        try {
+            while (cursor.moveToNext()) {
+                long nextId = cursor.getLong(0);
+                if ((nextId != recordId) && (recordId != -1)) {
+                    result.add(newRecord(names, values, timestamp));
+                    if (recordIds != null)
+                        recordIds.add(recordId);
+                }
+                recordId = nextId;
+                timestamp = cursor.getLong(1);
+                if (!cursor.isNull(2)) {
+                    names.add(cursor.getString(2));
+                    values.add(cursor.getString(3));
+                }
+            }
+            if (recordId != -1) {
+                result.add(newRecord(names, values, timestamp));
+                if (recordIds != null)
+                    recordIds.add(recordId);
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    /**
+     * Creates a <code>HistoryRecord</code> and clears the property lists it is created from.
+     */
+    private static HistoryRecord newRecord(List<String> names, List<String> values, long timestamp)
+    {
+        HistoryRecord record = new HistoryRecord(names.toArray(new String[0]),
+                values.toArray(new String[0]), new Date(timestamp));
+        names.clear();
+        values.clear();
+        return record;
+    }
+
+    /**
+     * Counts the records of a history.
+     *
+     * @param id the <code>HistoryID</code> of the history
+     * @return the number of records of the history
+     */
+    int countRecords(HistoryID id)
+    {
+        Cursor cursor = mDB.rawQuery("SELECT COUNT(*) FROM " + TBL_RECORDS + " WHERE " + HISTORY_ID + "=?",
+                new String[]{toKey(id)});
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Sets a property of the newest record of a history having a specific id property, and its
+     * timestamp to the current time to reflect the change.
+     *
+     * @param id the <code>HistoryID</code> of the history
+     * @param idProperty the name of the id property
+     * @param idValue the value of the id property
+     * @param property the property to set
+     * @param newValue the new value of the property
+     */
+    void updateRecord(HistoryID id, String idProperty, String idValue, String property, String newValue)
+    {
+        mDB.beginTransaction();
+        try {
+            Cursor cursor = mDB.rawQuery("SELECT r." + RECORD_ID + " FROM " + TBL_RECORDS + " r JOIN "
+                    + TBL_PROPERTIES + " p ON p." + RECORD_ID + "=r." + RECORD_ID + " WHERE r." + HISTORY_ID
+                    + "=? AND p." + NAME + "=? AND p." + VALUE + "=? ORDER BY r." + TIME_STAMP
+                    + " DESC LIMIT 1", new String[]{toKey(id), idProperty, idValue});
+            long recordId;
+            try {
+                if (!cursor.moveToFirst())
+                    return;
+                recordId = cursor.getLong(0);
+            } finally {
+                cursor.close();
+            }
+
+            String[] args = {String.valueOf(recordId), property};
+            ContentValues values = new ContentValues();
+            values.put(VALUE, newValue);
+            if (mDB.update(TBL_PROPERTIES, values, RECORD_ID + "=? AND " + NAME + "=?", args) == 0)
+                putProperty(recordId, property, newValue);
+
+            touchRecord(recordId);
+            mDB.setTransactionSuccessful();
+        } finally {
+            mDB.endTransaction();
+        }
+    }
+
+    /**
+     * Updates the existing properties of the records of a history matched by a specific
+     * <code>HistoryRecordUpdater</code>, and their timestamps to the current time to reflect the change.
+     *
+     * @param id the <code>HistoryID</code> of the history
+     * @param updater the <code>HistoryRecordUpdater</code> matching and updating the records
+     */
+    void updateRecords(HistoryID id, HistoryRecordUpdater updater)
+    {
+        List<Long> recordIds = new ArrayList<>();
+        List<HistoryRecord> records = readRecords("SELECT r." + RECORD_ID + ", r." + TIME_STAMP + ", p."
+                + NAME + ", p." + VALUE + " FROM " + TBL_RECORDS + " r LEFT JOIN " + TBL_PROPERTIES
+                + " p ON p." + RECORD_ID + "=r." + RECORD_ID + " WHERE r." + HISTORY_ID + "=? ORDER BY r."
+                + TIME_STAMP + ", r." + RECORD_ID + ", p.rowid", new String[]{toKey(id)}, recordIds);
+
+        mDB.beginTransaction();
+        try {
+            for (int i = 0; i < records.size(); i++) {
+                updater.setHistoryRecord(records.get(i));
+                if (!updater.isMatching())
+                    continue;
+
+                String recordId = String.valueOf(recordIds.get(i));
+                for (Map.Entry<String, String> change : updater.getUpdateChanges().entrySet()) {
+                    ContentValues values = new ContentValues();
+                    values.put(VALUE, change.getValue());
+                    mDB.update(TBL_PROPERTIES, values, RECORD_ID + "=? AND " + NAME + "=?",
+                            new String[]{recordId, change.getKey()});
+                }
+                touchRecord(recordIds.get(i));
+            }
+            mDB.setTransactionSuccessful();
+        } finally {
+            mDB.endTransaction();
+        }
+    }
+
+    /**
+     * Sets the timestamp of a record to the current time.
+     *
+     * @param recordId the id of the record
+     */
+    private void touchRecord(long recordId)
+    {
+        ContentValues values = new ContentValues();
+        values.put(TIME_STAMP, System.currentTimeMillis());
+        mDB.update(TBL_RECORDS, values, RECORD_ID + "=?", new String[]{String.valueOf(recordId)});
+    }
+
+    /**
+     * Runs a specific task in a transaction of the store.
+     *
+     * @param task the task to run
+     */
+    void runInTransaction(Runnable task)
+    {
+        mDB.beginTransaction();
+        try {
+            task.run();
+            mDB.setTransactionSuccessful();
+        } finally {
+            mDB.endTransaction();
+        }
+    }
+}
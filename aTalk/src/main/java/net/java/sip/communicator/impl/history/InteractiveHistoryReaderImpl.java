@@ -5,23 +5,13 @@
  */
 package net.java.sip.communicator.impl.history;
 
-import static net.java.sip.communicator.service.history.HistoryService.DATE_FORMAT;
-
 import net.java.sip.communicator.service.history.HistoryQuery;
 import net.java.sip.communicator.service.history.InteractiveHistoryReader;
 import net.java.sip.communicator.service.history.event.HistoryQueryStatusEvent;
 import net.java.sip.communicator.service.history.records.HistoryRecord;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Iterator;
-import java.util.Locale;
-import java.util.Vector;
+import java.util.List;
 
 /**
  * The <code>InteractiveHistoryReaderImpl</code> is an implementation of the
@@ -124,7 +114,7 @@ public class InteractiveHistoryReaderImpl implements InteractiveHistoryReader
 	}
 
 	/**
-	 * Finds the history results corresponding to the given criteria.
+	 * Finds the history results corresponding to the given criteria, the most recent first.
 	 *
 	 * @param startDate
 	 * 		the start date
@@ -144,43 +134,12 @@ public class InteractiveHistoryReaderImpl implements InteractiveHistoryReader
 	private void find(Date startDate, Date endDate, String[] keywords, String field,
 			boolean caseSensitive, int resultCount, HistoryQueryImpl query)
 	{
-		Vector<String> fileList = HistoryReaderImpl.filterFilesByDate(history.getFileList(),
-				startDate, endDate, true);
-		Iterator<String> fileIterator = fileList.iterator();
-
-		SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT, Locale.US);
-		while (fileIterator.hasNext() && resultCount > 0 && !query.isCanceled()) {
-			String filename = fileIterator.next();
-			Document doc = history.getDocumentForFile(filename);
-
-			if (doc == null)
-				continue;
+		if (!query.isCanceled()) {
+			List<HistoryRecord> records = history.getStore().findRecords(history.getID(), startDate,
+					endDate, keywords, field, caseSensitive, true, resultCount);
 
-			NodeList nodes = doc.getElementsByTagName("record");
-
-			for (int i = nodes.getLength() - 1; i >= 0 && !query.isCanceled(); i--) {
-				Node node = nodes.item(i);
-				Date timestamp;
-				String ts = node.getAttributes().getNamedItem("timestamp").getNodeValue();
-				try {
-					timestamp = sdf.parse(ts);
-				}
-				catch (ParseException e) {
-					timestamp = new Date(Long.parseLong(ts));
-				}
-
-				if (HistoryReaderImpl.isInPeriod(timestamp, startDate, endDate)) {
-					NodeList propertyNodes = node.getChildNodes();
-
-					HistoryRecord record = HistoryReaderImpl.filterByKeyword(propertyNodes,
-							timestamp, keywords, field, caseSensitive);
-
-					if (record != null) {
-						query.addHistoryRecord(record);
-						resultCount--;
-					}
-				}
-			}
+			for (int i = records.size() - 1; i >= 0 && !query.isCanceled(); i--)
+				query.addHistoryRecord(records.get(i));
 		}
 
 		if (query.isCanceled())
@@ -0,0 +1,177 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.history;
+
+import static net.java.sip.communicator.service.history.HistoryService.DATE_FORMAT;
+
+import net.java.sip.communicator.service.history.HistoryID;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import timber.log.Timber;
+
+/**
+ * Imports the histories of the former XML history store, one directory per history holding a
+ * <code>dbstruct.dat</code> file and the XML files of its records, into the <code>HistoryStore</code>.
+ * <p>
+ * Each history is imported in a single transaction, after which its <code>dbstruct.dat</code> is renamed
+ * so that it is not imported again; the XML files are left in place. A history whose import fails
+ * is retried on the next start.
+ * </p>
+ *
+ * @author Eng Chong Meng
+ */
+final class XmlHistoryImporter
+{
+    /**
+     * The suffix appended to the name of the <code>dbstruct.dat</code> file of an imported history.
+     */
+    private static final String IMPORTED_SUFFIX = ".imported";
+
+    private final HistoryServiceImpl historyService;
+
+    private final HistoryStore store;
+
+    XmlHistoryImporter(HistoryServiceImpl historyService, HistoryStore store)
+    {
+        this.historyService = historyService;
+        this.store = store;
+    }
+
+    /**
+     * Imports the histories of a directory tree which have not been imported yet.
+     *
+     * @param directory the directory of the XML history store
+     */
+    void importHistories(File directory)
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+
+        for (File file : files) {
+            if (file.isDirectory())
+                importHistories(file);
+            else if (HistoryServiceImpl.DATA_FILE.equalsIgnoreCase(file.getName()))
+                importHistory(file);
+        }
+    }
+
+    /**
+     * Imports the history of a specific <code>dbstruct.dat</code> file with its records.
+     *
+     * @param dbDatFile the <code>dbstruct.dat</code> file of the history
+     */
+    private void importHistory(File dbDatFile)
+    {
+        final HistoryImpl history;
+        try {
+            history = new DBStructSerializer(historyService).loadHistory(dbDatFile);
+        } catch (Exception e) {
+            Timber.e(e, "Could not load history from file: %s", dbDatFile.getAbsolutePath());
+            return;
+        }
+
+        final File[] files = dbDatFile.getParentFile().listFiles();
+        try {
+            store.runInTransaction(() -> {
+                store.putHistory(history.getID(), history.getHistoryRecordsStructure());
+                if (files != null) {
+                    for (File file : files) {
+                        if (file.isFile() && file.getName().endsWith(".xml"))
+                            importRecords(history.getID(), file);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            Timber.e(e, "Could not import history %s", history.getID());
+            return;
+        }
+
+        if (!dbDatFile.renameTo(new File(dbDatFile.getPath() + IMPORTED_SUFFIX)))
+            Timber.w("Could not mark history %s as imported", history.getID());
+        Timber.i("Imported history %s", history.getID());
+    }
+
+    /**
+     * Imports the records of a specific XML file of a history. A file which cannot be parsed is
+     * skipped.
+     *
+     * @param id the <code>HistoryID</code> of the history
+     * @param file the XML file of records
+     */
+    private void importRecords(HistoryID id, File file)
+    {
+        Document doc;
+        try {
+            doc = historyService.parse(file);
+        } catch (Exception e) {
+            Timber.e(e, "Skipping history file which cannot be parsed: %s", file.getAbsolutePath());
+            return;
+        }
+
+        SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT, Locale.US);
+        List<String> names = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        NodeList nodes = doc.getElementsByTagName("record");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element node = (Element) nodes.item(i);
+
+            Date timestamp;
+            String ts = node.getAttribute("timestamp");
+            try {
+                timestamp = sdf.parse(ts);
+            } catch (ParseException e) {
+                try {
+                    timestamp = new Date(Long.parseLong(ts));
+                } catch (NumberFormatException nfe) {
+                    Timber.w("Skipping history record without timestamp in %s", file.getName());
+                    continue;
+                }
+            }
+
+            NodeList propertyNodes = node.getChildNodes();
+            for (int j = 0; j < propertyNodes.getLength(); j++) {
+                Node propertyNode = propertyNodes.item(j);
+                if (propertyNode.getNodeType() == Node.ELEMENT_NODE) {
+                    Node nestedNode = propertyNode.getFirstChild();
+                    if (nestedNode != null) {
+                        names.add(propertyNode.getNodeName());
+                        // unescape xml chars, they have been escaped when writing values
+                        values.add(StringEscapeUtils.unescapeXml(nestedNode.getNodeValue()));
+                    }
+                }
+            }
+
+            store.addRecord(id, names.toArray(new String[0]), values.toArray(new String[0]), timestamp, -1);
+            names.clear();
+            values.clear();
+        }
+    }
+}
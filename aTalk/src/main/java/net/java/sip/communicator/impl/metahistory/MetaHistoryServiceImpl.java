@@ -23,6 +23,7 @@ import net.java.sip.communicator.service.protocol.event.ChatRoomMessageReceivedE
 import net.java.sip.communicator.service.protocol.event.MessageDeliveredEvent;
 import net.java.sip.communicator.service.protocol.event.MessageReceivedEvent;
 
+import org.atalk.util.concurrent.ExecutorFactory;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
@@ -36,13 +37,18 @@ import java.util.Date;
 import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import timber.log.Timber;
 
 /**
  * The Meta History Service is wrapper around the other known history services. Query them all at
- * once, sort the result and return all merged records in one collection.
+ * once, sort the result and return all merged records in one collection. The queries for a number
+ * of records run on the services concurrently and their sorted results are merged lazily.
  *
  * @author Damian Minkov
  * @author Eng Chong Meng
@@ -61,6 +67,11 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
 
     private final List<HistorySearchProgressListener> progressListeners = new ArrayList<>();
 
+    /**
+     * The executor which runs the queries of the wrapped history services concurrently.
+     */
+    private final ExecutorService queryExecutor = ExecutorFactory.createCachedThreadPool("MetaHistoryService-");
+
     /**
      * Returns all the records for the descriptor after the given date.
      *
@@ -353,42 +364,35 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
      */
     public Collection<Object> findLast(String[] services, Object descriptor, int count)
     {
-        MessageProgressWrapper listenWrapper = new MessageProgressWrapper(services.length);
-        TreeSet<Object> result = new TreeSet<>(new RecordsComparator());
-
-        for (int i = 0; i < services.length; i++) {
-            String name = services[i];
-            Object serv = getService(name);
+        List<List<Object>> sources = query(services, (serv, listenWrapper) -> {
             if (serv instanceof MessageHistoryService) {
                 MessageHistoryService mhs = (MessageHistoryService) serv;
-                listenWrapper.setIx(i);
                 mhs.addSearchProgressListener(listenWrapper);
-
-                // will also get fileHistory for metaContact and chatRoom
-                if (descriptor instanceof MetaContact) {
-                    result.addAll(mhs.findLast((MetaContact) descriptor, count));
-                }
-                else if (descriptor instanceof ChatRoom) {
-                    result.addAll(mhs.findLast((ChatRoom) descriptor, count));
+                try {
+                    // will also get fileHistory for metaContact and chatRoom
+                    if (descriptor instanceof MetaContact) {
+                        return new ArrayList<>(mhs.findLast((MetaContact) descriptor, count));
+                    }
+                    else if (descriptor instanceof ChatRoom) {
+                        return new ArrayList<>(mhs.findLast((ChatRoom) descriptor, count));
+                    }
+                } finally {
+                    mhs.removeSearchProgressListener(listenWrapper);
                 }
-                mhs.removeSearchProgressListener(listenWrapper);
             }
             else if (serv instanceof CallHistoryService) {
                 CallHistoryService chs = (CallHistoryService) serv;
-                listenWrapper.setIx(i);
                 chs.addSearchProgressListener(listenWrapper);
-                result.addAll(chs.findLast(count));
-                chs.removeSearchProgressListener(listenWrapper);
+                try {
+                    return sort(chs.findLast(count));
+                } finally {
+                    chs.removeSearchProgressListener(listenWrapper);
+                }
             }
-        }
-        listenWrapper.fireLastProgress(null, null, null);
-
-        LinkedList<Object> resultAsList = new LinkedList<>(result);
-        int startIndex = resultAsList.size() - count;
-
-        if (startIndex < 0)
-            startIndex = 0;
-        return resultAsList.subList(startIndex, resultAsList.size());
+            return null;
+        });
+        new MessageProgressWrapper(services.length).fireLastProgress(null, null, null);
+        return merge(sources, count, true);
     }
 
     /**
@@ -402,50 +406,34 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
      */
     public Collection<Object> findFirstMessagesAfter(String[] services, Object descriptor, Date date, int count)
     {
-        MessageProgressWrapper listenWrapper = new MessageProgressWrapper(services.length);
-
-        TreeSet<Object> result = new TreeSet<>(new RecordsComparator());
-        for (int i = 0; i < services.length; i++) {
-            String name = services[i];
-            Object serv = getService(name);
+        List<List<Object>> sources = query(services, (serv, listenWrapper) -> {
             if (serv instanceof MessageHistoryService) {
                 MessageHistoryService mhs = (MessageHistoryService) serv;
-                listenWrapper.setIx(i);
                 mhs.addSearchProgressListener(listenWrapper);
-
-                if (descriptor instanceof MetaContact) {
-                    result.addAll(mhs.findFirstMessagesAfter((MetaContact) descriptor, date, count));
-                }
-                else if (descriptor instanceof ChatRoom) {
-                    result.addAll(mhs.findFirstMessagesAfter((ChatRoom) descriptor, date, count));
+                try {
+                    if (descriptor instanceof MetaContact) {
+                        return new ArrayList<>(mhs.findFirstMessagesAfter((MetaContact) descriptor, date, count));
+                    }
+                    else if (descriptor instanceof ChatRoom) {
+                        return new ArrayList<>(mhs.findFirstMessagesAfter((ChatRoom) descriptor, date, count));
+                    }
+                } finally {
+                    mhs.removeSearchProgressListener(listenWrapper);
                 }
-                mhs.removeSearchProgressListener(listenWrapper);
             }
             else if (serv instanceof CallHistoryService) {
                 CallHistoryService chs = (CallHistoryService) serv;
-                listenWrapper.setIx(i);
                 chs.addSearchProgressListener(listenWrapper);
-
-                Collection<CallRecord> col = chs.findByStartDate(date);
-                if (col.size() > count) {
-                    // before we make a sublist make sure there are sorted in the right order
-                    List<CallRecord> l = new LinkedList<>(col);
-                    Collections.sort(l, new RecordsComparator());
-                    result.addAll(l.subList(0, count));
+                try {
+                    return sort(chs.findFirstAfter(date, count));
+                } finally {
+                    chs.removeSearchProgressListener(listenWrapper);
                 }
-                else
-                    result.addAll(col);
-                chs.removeSearchProgressListener(listenWrapper);
             }
-        }
-        listenWrapper.fireLastProgress(date, null, null);
-        LinkedList<Object> resultAsList = new LinkedList<>(result);
-
-        int toIndex = count;
-        if (toIndex > resultAsList.size())
-            toIndex = resultAsList.size();
-
-        return resultAsList.subList(0, toIndex);
+            return null;
+        });
+        new MessageProgressWrapper(services.length).fireLastProgress(date, null, null);
+        return merge(sources, count, false);
     }
 
     /**
@@ -459,48 +447,134 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
      */
     public Collection<Object> findLastMessagesBefore(String[] services, Object descriptor, Date date, int count)
     {
-        MessageProgressWrapper listenWrapper = new MessageProgressWrapper(services.length);
+        return findLastMessagesBefore(services, descriptor, date, null, count);
+    }
 
-        TreeSet<Object> result = new TreeSet<>(new RecordsComparator());
-        for (int i = 0; i < services.length; i++) {
-            String name = services[i];
-            Object serv = getService(name);
+    /**
+     * Returns the supplied number of recent records which precede the given (date, msgUuid) position
+     *
+     * @param services the services classNames we will query
+     * @param descriptor CallPeer address(String), MetaContact or ChatRoom.
+     * @param date the date of the message msgUuid
+     * @param msgUuid the uuid of the oldest message already fetched; null for all records before date
+     * @param count messages count
+     * @return Collection sorted result that consists of records returned from the services we wrap
+     */
+    public Collection<Object> findLastMessagesBefore(String[] services, Object descriptor, Date date, String msgUuid,
+            int count)
+    {
+        List<List<Object>> sources = query(services, (serv, listenWrapper) -> {
             if (serv instanceof MessageHistoryService) {
                 MessageHistoryService mhs = (MessageHistoryService) serv;
-                listenWrapper.setIx(i);
                 mhs.addSearchProgressListener(listenWrapper);
-
-                if (descriptor instanceof MetaContact) {
-                    result.addAll(mhs.findLastMessagesBefore((MetaContact) descriptor, date, count));
-                }
-                else if (descriptor instanceof ChatRoom) {
-                    result.addAll(mhs.findLastMessagesBefore((ChatRoom) descriptor, date, count));
+                try {
+                    if (descriptor instanceof MetaContact) {
+                        return new ArrayList<>(mhs.findLastMessagesBefore((MetaContact) descriptor, date, msgUuid, count));
+                    }
+                    else if (descriptor instanceof ChatRoom) {
+                        return new ArrayList<>(mhs.findLastMessagesBefore((ChatRoom) descriptor, date, msgUuid, count));
+                    }
+                } finally {
+                    mhs.removeSearchProgressListener(listenWrapper);
                 }
-                mhs.removeSearchProgressListener(listenWrapper);
             }
             else if (serv instanceof CallHistoryService) {
                 CallHistoryService chs = (CallHistoryService) serv;
-                listenWrapper.setIx(i);
                 chs.addSearchProgressListener(listenWrapper);
-
-                Collection<CallRecord> col = chs.findByEndDate(date);
-                if (col.size() > count) {
-                    List<CallRecord> l = new LinkedList<>(col);
-                    result.addAll(l.subList(l.size() - count, l.size()));
+                try {
+                    return sort(chs.findLastBefore(date, count));
+                } finally {
+                    chs.removeSearchProgressListener(listenWrapper);
                 }
-                else
-                    result.addAll(col);
-                chs.removeSearchProgressListener(listenWrapper);
             }
+            return null;
+        });
+        new MessageProgressWrapper(services.length).fireLastProgress(date, null, null);
+        return merge(sources, count, true);
+    }
+
+    /**
+     * Runs a query on each of the given services concurrently, so that e.g. the message and the call
+     * history are read at the same time, and waits for all of them.
+     *
+     * @param services the services classNames we will query
+     * @param query the query to run on each service
+     * @return the records returned by the services, each in ascending order of their date
+     */
+    private List<List<Object>> query(String[] services, ServiceQuery query)
+    {
+        List<Future<List<Object>>> futures = new ArrayList<>(services.length);
+        for (int i = 0; i < services.length; i++) {
+            Object serv = getService(services[i]);
+            MessageProgressWrapper listenWrapper = new MessageProgressWrapper(services.length);
+            listenWrapper.setIx(i);
+            futures.add(queryExecutor.submit(() -> query.query(serv, listenWrapper)));
         }
-        listenWrapper.fireLastProgress(date, null, null);
 
-        LinkedList<Object> resultAsList = new LinkedList<>(result);
-        int startIndex = resultAsList.size() - count;
-        if (startIndex < 0)
-            startIndex = 0;
+        List<List<Object>> sources = new ArrayList<>(futures.size());
+        for (Future<List<Object>> future : futures) {
+            try {
+                List<Object> records = future.get();
+                if ((records != null) && !records.isEmpty())
+                    sources.add(records);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                Timber.e(e.getCause(), "History query failed");
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Sorts the records of a service in ascending order of their date, e.g. the call records which
+     * the <code>CallHistoryService</code> returns most recent first.
+     *
+     * @param records the records of a service
+     * @return the records in ascending order of their date
+     */
+    private static List<Object> sort(Collection<?> records)
+    {
+        List<Object> result = new ArrayList<Object>(records);
+        Collections.sort(result, new RecordsComparator());
+        return result;
+    }
+
+    /**
+     * Merges lazily the records of the services, each in ascending order of their date, into the
+     * first or the last <code>count</code> records of them all; stops as soon as <code>count</code> records
+     * are taken, instead of sorting all the records returned by the services.
+     *
+     * @param sources the records of the services, each in ascending order of their date
+     * @param count the number of records to take
+     * @param last <code>true</code> to take the most recent records; <code>false</code> to take the earliest
+     * @return the taken records in ascending order of their date
+     */
+    static List<Object> merge(List<List<Object>> sources, int count, boolean last)
+    {
+        final Comparator<Object> recordsComparator = new RecordsComparator();
+        PriorityQueue<RecordCursor> cursors = new PriorityQueue<>(Math.max(1, sources.size()),
+                (c1, c2) -> last
+                        ? recordsComparator.compare(c2.current(), c1.current())
+                        : recordsComparator.compare(c1.current(), c2.current()));
+
+        int total = 0;
+        for (List<Object> records : sources) {
+            cursors.add(new RecordCursor(records, last));
+            total += records.size();
+        }
 
-        return resultAsList.subList(startIndex, resultAsList.size());
+        List<Object> result = new ArrayList<>(Math.max(0, Math.min(count, total)));
+        while ((result.size() < count) && !cursors.isEmpty()) {
+            RecordCursor cursor = cursors.poll();
+            result.add(cursor.current());
+            if (cursor.advance())
+                cursors.add(cursor);
+        }
+        if (last)
+            Collections.reverse(result);
+        return result;
     }
 
     /**
@@ -647,6 +721,57 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
         }
     }
 
+    /**
+     * A position in the records returned by a service, moving from the earliest or from the most recent.
+     */
+    private static class RecordCursor
+    {
+        private final List<Object> records;
+
+        private final boolean backward;
+
+        private int index;
+
+        RecordCursor(List<Object> records, boolean backward)
+        {
+            this.records = records;
+            this.backward = backward;
+            index = backward ? records.size() - 1 : 0;
+        }
+
+        Object current()
+        {
+            return records.get(index);
+        }
+
+        /**
+         * Moves to the next record.
+         *
+         * @return <code>true</code> if there is a next record; otherwise, <code>false</code>
+         */
+        boolean advance()
+        {
+            index += backward ? -1 : 1;
+            return (index >= 0) && (index < records.size());
+        }
+    }
+
+    /**
+     * A query to run on one of the wrapped history services.
+     */
+    private interface ServiceQuery
+    {
+        /**
+         * Runs the query on a history service.
+         *
+         * @param serv the history service
+         * @param listenWrapper the progress listener to register with the history service
+         * @return the records in ascending order of their date or <code>null</code> if the service does
+         * not support the query
+         */
+        List<Object> query(Object serv, MessageProgressWrapper listenWrapper);
+    }
+
     private class MessageProgressWrapper implements MessageHistorySearchProgressListener, CallHistorySearchProgressListener
     {
         private final int count;
@@ -82,7 +82,9 @@ import org.atalk.android.gui.chat.chatsession.ChatSessionFragment;
 import org.atalk.android.gui.chat.chatsession.ChatSessionRecord;
 import org.atalk.android.plugin.timberlog.TimberLog;
 import org.atalk.persistance.DatabaseBackend;
+import org.atalk.persistance.MessageSearchIndex;
 import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.util.concurrent.ExecutorFactory;
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.packet.ExtensionElement;
 import org.jivesoftware.smack.packet.Message;
@@ -121,6 +123,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.EventObject;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
@@ -128,6 +131,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 
 import timber.log.Timber;
 
@@ -147,10 +151,21 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         AdHocChatRoomMessageListener, ServiceListener, LocalUserChatRoomPresenceListener,
         LocalUserAdHocChatRoomPresenceListener, ReceiptReceivedListener {
     /**
-     * Sort database message records by TimeStamp in ASC or DESC
+     * Sort database message records by TimeStamp in ASC or DESC; the message uuid breaks ties so that
+     * keyset paging on (TimeStamp, uuid) neither skips nor repeats messages. Both orders are served
+     * by the messages session/time index without sorting.
      */
-    private static final String ORDER_ASC = ChatMessage.TIME_STAMP + " ASC";
-    private static final String ORDER_DESC = ChatMessage.TIME_STAMP + " DESC";
+    private static final String ORDER_ASC = ChatMessage.TIME_STAMP + " ASC, " + ChatMessage.UUID + " ASC";
+    private static final String ORDER_DESC = ChatMessage.TIME_STAMP + " DESC, " + ChatMessage.UUID + " DESC";
+
+    /**
+     * Keyset condition for the messages of a session before a given (TimeStamp, uuid) position.
+     * The first term bounds the index range scan; the second excludes the position itself and the
+     * messages with the same TimeStamp but a higher uuid.
+     */
+    private static final String BEFORE_KEYSET = ChatMessage.SESSION_UUID + "=? AND "
+            + ChatMessage.TIME_STAMP + "<=? AND (" + ChatMessage.TIME_STAMP + "<? OR "
+            + ChatMessage.UUID + "<?)";
     /**
      * Indicates if history logging is enabled.
      */
@@ -177,6 +192,13 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
     private ServiceRegistration<?> messageSourceServiceReg = null;
 
     private SQLiteDatabase mDB;
+    private MessageHistoryWriter mWriter;
+
+    /**
+     * Runs the backfill of the message search index; its thread is released once the backfill completes.
+     */
+    private final ExecutorService backfillExecutor
+            = ExecutorFactory.createFixedThreadPool(1, "MessageSearchIndexBackfill");
     private final ContentValues contentValues = new ContentValues();
 
     /**
@@ -188,6 +210,10 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
     public void start(BundleContext bc) {
         this.bundleContext = bc;
         mDB = DatabaseBackend.getWritableDB();
+        mWriter = MessageHistoryWriter.getInstance();
+
+        // Index the messages stored before the search index was created, if not done yet.
+        backfillExecutor.execute(() -> MessageSearchIndex.backfill(mDB));
 
         ServiceReference<?> refConfig = bundleContext.getServiceReference(ConfigurationService.class.getName());
         configService = (ConfigurationService) bundleContext.getService(refConfig);
@@ -227,6 +253,20 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
             configService.removePropertyChangeListener(msgHistoryPropListener);
 
         stopMessageHistoryService();
+        // Commit the messages still pending in the history writer.
+        mWriter.flush();
+    }
+
+    /**
+     * Gets the database to read the messages table, after the writes pending in the history writer
+     * are committed; so that e.g. the ChatPanel reads the messages just stored. The messages table
+     * is written through the history writer only.
+     *
+     * @return the SQLite database
+     */
+    private SQLiteDatabase getMessageDB() {
+        mWriter.awaitCommitted();
+        return mDB;
     }
 
     /**
@@ -398,7 +438,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         String sessionUuid = getSessionUuidByJid(contact);
         Cursor cursor;
         String[] args = {sessionUuid, startTimeStamp};
-        cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+        cursor = getMessageDB().query(ChatMessage.TABLE_NAME, null,
                 ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=?",
                 args, null, null, ORDER_ASC);
 
@@ -425,7 +465,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         String sessionUuid = getSessionUuidByJid(contact);
         Cursor cursor;
         String[] args = {sessionUuid, endTimeStamp};
-        cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+        cursor = getMessageDB().query(ChatMessage.TABLE_NAME, null,
                 ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + "<?",
                 args, null, null, ORDER_ASC);
 
@@ -454,7 +494,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         String sessionUuid = getSessionUuidByJid(contact);
         Cursor cursor;
         String[] args = {sessionUuid, startTimeStamp, endTimeStamp};
-        cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+        cursor = getMessageDB().query(ChatMessage.TABLE_NAME, null,
                 ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=? AND "
                         + ChatMessage.TIME_STAMP + "<?", args, null, null, ORDER_ASC);
 
@@ -522,12 +562,13 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
             String sessionUuid = getSessionUuidByJid(contact);
             Cursor cursor;
             String[] args = {sessionUuid};
-            cursor = mDB.query(ChatMessage.TABLE_NAME, null, ChatMessage.SESSION_UUID
+            cursor = getMessageDB().query(ChatMessage.TABLE_NAME, null, ChatMessage.SESSION_UUID
                     + "=?", args, null, null, ORDER_DESC, String.valueOf(count));
 
             while (cursor.moveToNext()) {
                 result.add(convertHistoryRecordToMessageEvent(cursor, contact));
             }
+            cursor.close();
         }
         Collections.sort(result, new MessageEventComparator<>());
         return result;
@@ -553,13 +594,14 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
             String sessionUuid = getSessionUuidByJid(contact);
             String[] args = {sessionUuid, startTimeStamp};
             Cursor cursor;
-            cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+            cursor = getMessageDB().query(ChatMessage.TABLE_NAME, null,
                     ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=?",
                     args, null, null, ORDER_ASC, String.valueOf(count));
 
             while (cursor.moveToNext()) {
                 result.add(convertHistoryRecordToMessageEvent(cursor, contact));
             }
+            cursor.close();
         }
         Collections.sort(result, new MessageEventComparator<>());
         return result;
@@ -576,8 +618,23 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
      * @return Collection of MessageReceivedEvents or MessageDeliveredEvents
      */
     public Collection<EventObject> findLastMessagesBefore(MetaContact metaContact, Date endDate, int count) {
+        return findLastMessagesBefore(metaContact, endDate, null, count);
+    }
+
+    /**
+     * Returns the supplied number of recent messages exchanged by all the contacts in the supplied
+     * metaContact which precede the given (date, msgUuid) position in the history, i.e. the next
+     * page of older messages after the one starting with message msgUuid.
+     *
+     * @param metaContact MetaContact
+     * @param endDate the date of the oldest message already fetched
+     * @param msgUuid the uuid of the oldest message already fetched; null to get the messages before endDate
+     * @param count messages count
+     *
+     * @return Collection of MessageReceivedEvents or MessageDeliveredEvents
+     */
+    public Collection<EventObject> findLastMessagesBefore(MetaContact metaContact, Date endDate, String msgUuid, int count) {
         LinkedList<EventObject> result = new LinkedList<>();
-        String endTimeStamp = String.valueOf(endDate.getTime());
 
         // cmeng - metaUid is also the sessionUid for metaChatSession
         // String sessionUuid = metaContact.getMetaUID();
@@ -585,20 +642,45 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         while (contacts.hasNext()) {
             Contact contact = contacts.next();
             String sessionUuid = getSessionUuidByJid(contact);
-            Cursor cursor;
-            String[] args = {sessionUuid, endTimeStamp};
-            cursor = mDB.query(ChatMessage.TABLE_NAME, null,
-                    ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + "<?",
-                    args, null, null, ORDER_DESC, String.valueOf(count));
+            Cursor cursor = queryMessagesBefore(getMessageDB(), sessionUuid, endDate, msgUuid, count);
 
             while (cursor.moveToNext()) {
                 result.add(convertHistoryRecordToMessageEvent(cursor, contact));
             }
+            cursor.close();
         }
         Collections.sort(result, new MessageEventComparator<>());
         return result;
     }
 
+    /**
+     * Queries the given number of messages of a chat session which precede the (endDate, msgUuid)
+     * position, most recent first. The query is a range scan of the messages session/time index,
+     * so its cost does not depend on the size of the history.
+     *
+     * @param db the database holding the messages table
+     * @param sessionUuid the chat session uuid
+     * @param endDate the date of the position
+     * @param msgUuid the uuid of the message at the position; null to get the messages before endDate
+     * @param count messages count
+     *
+     * @return the cursor of the query; must be closed by the caller
+     */
+    static Cursor queryMessagesBefore(SQLiteDatabase db, String sessionUuid, Date endDate, String msgUuid,
+            int count) {
+        String endTimeStamp = String.valueOf(endDate.getTime());
+
+        if (msgUuid == null) {
+            String[] args = {sessionUuid, endTimeStamp};
+            return db.query(ChatMessage.TABLE_NAME, null,
+                    ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + "<?",
+                    args, null, null, ORDER_DESC, String.valueOf(count));
+        }
+        String[] args = {sessionUuid, endTimeStamp, endTimeStamp, msgUuid};
+        return db.query(ChatMessage.TABLE_NAME, null, BEFORE_KEYSET,
+                args, null, null, ORDER_DESC, String.valueOf(count));
+    }
+
     // ============== ChatSessionFragment utilities ======================
 
     /**
@@ -674,7 +756,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         if (!TextUtils.isEmpty(sessionUuid)) {
             String[] columns = {ChatMessage.MSG_BODY};
             String[] args = {sessionUuid, endTimeStamp};
-            Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, columns, ChatMessage.SESSION_UUID + "=? AND "
+            Cursor cursor = getMessageDB().query(ChatMessage.TABLE_NAME, columns, ChatMessage.SESSION_UUID + "=? AND "
                     + ChatMessage.TIME_STAMP + "<?", args, null, null, ORDER_DESC, "1");
 
             while (cursor.moveToNext()) {
@@ -697,7 +779,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 
         String[] columns = {ChatMessage.TIME_STAMP};
         String[] args = {sessionUuid, endTimeStamp};
-        Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, columns, ChatMessage.SESSION_UUID + "=? AND "
+        Cursor cursor = getMessageDB().query(ChatMessage.TABLE_NAME, columns, ChatMessage.SESSION_UUID + "=? AND "
                 + ChatMessage.TIME_STAMP + "<?", args, null, null, ORDER_DESC, "1");
 
         String mamDate = "-1";
@@ -802,7 +884,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
             timeStamp = forwarded.getDelayInformation().getStamp();
 
             String[] args = {msgId, chatId};
-            Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null, ChatMessage.UUID
+            Cursor cursor = getMessageDB().query(ChatMessage.TABLE_NAME, null, ChatMessage.UUID
                     + "=? AND " + ChatMessage.SESSION_UUID + "=?", args, null, null, null);
             int msgCount = cursor.getCount();
             cursor.close();
@@ -915,7 +997,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
             }
             args = argList.toArray(new String[0]);
 
-            cursorMsg = mDB.query(ChatMessage.TABLE_NAME, null, whereCondition, args,
+            cursorMsg = getMessageDB().query(ChatMessage.TABLE_NAME, null, whereCondition, args,
                     null, null, ORDER_DESC, String.valueOf(count));
 
 
@@ -979,7 +1061,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         int msgCount = 0;
         if (!TextUtils.isEmpty(sessionUuid)) {
             String[] args = {sessionUuid};
-            Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null, ChatMessage.SESSION_UUID + "=?", args,
+            Cursor cursor = getMessageDB().query(ChatMessage.TABLE_NAME, null, ChatMessage.SESSION_UUID + "=?", args,
                     null, null, null);
             msgCount = cursor.getCount();
             cursor.close();
@@ -1471,7 +1553,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         String[] args = {receiptId};
         contentValues.clear();
         contentValues.put(ChatMessage.READ, ChatMessage.MESSAGE_DELIVERY_RECEIPT);
-        mDB.update(ChatMessage.TABLE_NAME, contentValues, ChatMessage.SERVER_MSG_ID + "=?", args);
+        mWriter.update(ChatMessage.TABLE_NAME, contentValues, ChatMessage.SERVER_MSG_ID + "=?", args);
     }
 
     // //////////////////////////////////////////////////////////////////////////
@@ -1759,7 +1841,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
                     ? FileRecord.STATUS_UNKNOWN : ChatMessage.MESSAGE_IN);
             contentValues.put(ChatMessage.REMOTE_MSG_ID, message.getMessageUID());
         }
-        mDB.insert(ChatMessage.TABLE_NAME, null, contentValues);
+        mWriter.insert(ChatMessage.TABLE_NAME, contentValues);
     }
 
     //============ service change events handler ================//
@@ -1843,11 +1925,6 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         HashSet<EventObject> result = new HashSet<>();
         String startTimeStamp = String.valueOf(startDate.getTime());
         String endTimeStamp = String.valueOf(endDate.getTime());
-        StringBuilder filterLike = new StringBuilder("( ");
-        for (String word : keywords) {
-            filterLike.append(ChatMessage.MSG_BODY + " LIKE '%").append(word).append("%' OR ");
-        }
-        filterLike = new StringBuilder(filterLike.substring(0, filterLike.length() - 4) + " )");
 
         Iterator<Contact> contacts = metaContact.getContacts();
         while (contacts.hasNext()) {
@@ -1855,13 +1932,14 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
             String sessionUuid = getSessionUuidByJid(contact);
             String[] args = {sessionUuid, startTimeStamp, endTimeStamp};
 
-            Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+            Cursor cursor = MessageSearchIndex.query(getMessageDB(),
                     ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=? AND "
-                            + ChatMessage.TIME_STAMP + "<? AND " + filterLike, args, null, null, ORDER_ASC);
+                            + ChatMessage.TIME_STAMP + "<?", args, keywords, caseSensitive, false, ORDER_ASC, null);
 
             while (cursor.moveToNext()) {
                 result.add(convertHistoryRecordToMessageEvent(cursor, contact));
             }
+            cursor.close();
         }
         return result;
     }
@@ -1878,8 +1956,22 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
      */
     public Collection<EventObject> findByKeyword(MetaContact metaContact, String keyword,
             boolean caseSensitive) {
+        return findByKeywords(metaContact, new String[]{keyword}, caseSensitive);
+    }
+
+    /**
+     * Returns all the messages exchanged by all the contacts in the supplied metaContact
+     * having the given keywords
+     *
+     * @param metaContact MetaContact
+     * @param keywords keyword
+     * @param caseSensitive is keywords search case sensitive
+     *
+     * @return Collection of MessageReceivedEvents or MessageDeliveredEvents
+     */
+    public Collection<EventObject> findByKeywords(MetaContact metaContact,
+            String[] keywords, boolean caseSensitive) {
         HashSet<EventObject> result = new HashSet<>();
-        String filterLike = "( " + ChatMessage.MSG_BODY + " LIKE '%" + keyword + "%' )";
 
         Iterator<Contact> contacts = metaContact.getContacts();
         while (contacts.hasNext()) {
@@ -1887,48 +1979,56 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
             String sessionUuid = getSessionUuidByJid(contact);
             String[] args = {sessionUuid};
 
-            Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
-                    ChatMessage.SESSION_UUID + "=? AND " + filterLike, args, null, null, ORDER_ASC);
+            Cursor cursor = MessageSearchIndex.query(getMessageDB(), ChatMessage.SESSION_UUID + "=?", args,
+                    keywords, caseSensitive, false, ORDER_ASC, null);
 
             while (cursor.moveToNext()) {
                 result.add(convertHistoryRecordToMessageEvent(cursor, contact));
             }
+            cursor.close();
         }
         return result;
     }
 
     /**
-     * Returns all the messages exchanged by all the contacts in the supplied metaContact
-     * having the given keywords
+     * Returns a page of the messages exchanged by all the contacts in the supplied metaContact
+     * having any of the given keywords, the most relevant first when the search index supports
+     * ranking, otherwise the most recent first.
      *
      * @param metaContact MetaContact
-     * @param keywords keyword
+     * @param keywords keywords
      * @param caseSensitive is keywords search case sensitive
+     * @param offset the number of matching messages to skip
+     * @param count the maximum number of messages to return
      *
-     * @return Collection of MessageReceivedEvents or MessageDeliveredEvents
+     * @return List of MessageReceivedEvents or MessageDeliveredEvents
      */
-    public Collection<EventObject> findByKeywords(MetaContact metaContact,
-            String[] keywords, boolean caseSensitive) {
-        HashSet<EventObject> result = new HashSet<>();
-        StringBuilder filterLike = new StringBuilder("( ");
-        for (String word : keywords) {
-            filterLike.append(ChatMessage.MSG_BODY + " LIKE '%").append(word).append("%' OR ");
-        }
-        filterLike = new StringBuilder(filterLike.substring(0, filterLike.length() - 4) + " )");
+    public List<EventObject> findByKeywords(MetaContact metaContact, String[] keywords,
+            boolean caseSensitive, int offset, int count) {
+        List<EventObject> result = new ArrayList<>();
+        Map<String, Contact> sessionContacts = new HashMap<>();
 
         Iterator<Contact> contacts = metaContact.getContacts();
         while (contacts.hasNext()) {
             Contact contact = contacts.next();
             String sessionUuid = getSessionUuidByJid(contact);
-            String[] args = {sessionUuid};
+            if (sessionUuid != null)
+                sessionContacts.put(sessionUuid, contact);
+        }
+        if (sessionContacts.isEmpty())
+            return result;
 
-            Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
-                    ChatMessage.SESSION_UUID + "=? AND " + filterLike, args, null, null, ORDER_ASC);
+        String[] args = sessionContacts.keySet().toArray(new String[0]);
+        String selection = ChatMessage.SESSION_UUID + " IN ("
+                + TextUtils.join(",", Collections.nCopies(args.length, "?")) + ")";
+        Cursor cursor = MessageSearchIndex.query(getMessageDB(), selection, args, keywords, caseSensitive,
+                true, ORDER_DESC, offset + "," + count);
 
-            while (cursor.moveToNext()) {
-                result.add(convertHistoryRecordToMessageEvent(cursor, contact));
-            }
+        while (cursor.moveToNext()) {
+            String sessionUuid = cursor.getString(cursor.getColumnIndexOrThrow(ChatMessage.SESSION_UUID));
+            result.add(convertHistoryRecordToMessageEvent(cursor, sessionContacts.get(sessionUuid)));
         }
+        cursor.close();
         return result;
     }
 
@@ -1946,7 +2046,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         String sessionUuid = getSessionUuidByJid(room);
         String[] args = {sessionUuid, startTimeStamp};
 
-        Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+        Cursor cursor = getMessageDB().query(ChatMessage.TABLE_NAME, null,
                 ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=?",
                 args, null, null, ORDER_ASC);
 
@@ -1970,7 +2070,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         String sessionUuid = getSessionUuidByJid(room);
         String[] args = {sessionUuid, endTimeStamp};
 
-        Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+        Cursor cursor = getMessageDB().query(ChatMessage.TABLE_NAME, null,
                 ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + "<?",
                 args, null, null, ORDER_ASC);
 
@@ -1996,7 +2096,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         String sessionUuid = getSessionUuidByJid(room);
         String[] args = {sessionUuid, startTimeStamp, endTimeStamp};
 
-        Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+        Cursor cursor = getMessageDB().query(ChatMessage.TABLE_NAME, null,
                 ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=? AND "
                         + ChatMessage.TIME_STAMP + "<?", args, null, null, ORDER_ASC);
 
@@ -2041,19 +2141,15 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         String endTimeStamp = String.valueOf(endDate.getTime());
         String sessionUuid = getSessionUuidByJid(room);
         String[] args = {sessionUuid, startTimeStamp, endTimeStamp};
-        StringBuilder filterLike = new StringBuilder("( ");
-        for (String word : keywords) {
-            filterLike.append(ChatMessage.MSG_BODY + " LIKE '%").append(word).append("%' OR ");
-        }
-        filterLike = new StringBuilder(filterLike.substring(0, filterLike.length() - 4) + " )");
 
-        Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+        Cursor cursor = MessageSearchIndex.query(getMessageDB(),
                 ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=? AND "
-                        + ChatMessage.TIME_STAMP + "<? AND " + filterLike, args, null, null, ORDER_ASC);
+                        + ChatMessage.TIME_STAMP + "<?", args, keywords, caseSensitive, false, ORDER_ASC, null);
 
         while (cursor.moveToNext()) {
             result.add(convertHistoryRecordToMessageEvent(cursor, room));
         }
+        cursor.close();
         return result;
     }
 
@@ -2081,18 +2177,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
      */
     public Collection<EventObject> findByKeyword(ChatRoom room, String keyword,
             boolean caseSensitive) {
-        HashSet<EventObject> result = new HashSet<>();
-        String sessionUuid = getSessionUuidByJid(room);
-        String[] args = {sessionUuid};
-        String filterLike = "( " + ChatMessage.MSG_BODY + " LIKE '%" + keyword + "%' )";
-
-        Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
-                ChatMessage.SESSION_UUID + "=? AND " + filterLike, args, null, null, ORDER_ASC);
-
-        while (cursor.moveToNext()) {
-            result.add(convertHistoryRecordToMessageEvent(cursor, room));
-        }
-        return result;
+        return findByKeywords(room, new String[]{keyword}, caseSensitive);
     }
 
     /**
@@ -2123,18 +2208,43 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         HashSet<EventObject> result = new HashSet<>();
         String sessionUuid = getSessionUuidByJid(room);
         String[] args = {sessionUuid};
-        StringBuilder filterLike = new StringBuilder("( ");
-        for (String word : keywords) {
-            filterLike.append(ChatMessage.MSG_BODY + " LIKE '%").append(word).append("%' OR ");
+
+        Cursor cursor = MessageSearchIndex.query(getMessageDB(), ChatMessage.SESSION_UUID + "=?", args,
+                keywords, caseSensitive, false, ORDER_ASC, null);
+
+        while (cursor.moveToNext()) {
+            result.add(convertHistoryRecordToMessageEvent(cursor, room));
         }
-        filterLike = new StringBuilder(filterLike.substring(0, filterLike.length() - 4) + " )");
+        cursor.close();
+        return result;
+    }
 
-        Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
-                ChatMessage.SESSION_UUID + "=? AND " + filterLike, args, null, null, ORDER_ASC);
+    /**
+     * Returns a page of the messages exchanged in the supplied chat room having any of the given
+     * keywords, the most relevant first when the search index supports ranking, otherwise the
+     * most recent first.
+     *
+     * @param room The chat room
+     * @param keywords keywords
+     * @param caseSensitive is keywords search case sensitive
+     * @param offset the number of matching messages to skip
+     * @param count the maximum number of messages to return
+     *
+     * @return List of MessageReceivedEvents or MessageDeliveredEvents
+     */
+    public List<EventObject> findByKeywords(ChatRoom room, String[] keywords, boolean caseSensitive,
+            int offset, int count) {
+        List<EventObject> result = new ArrayList<>();
+        String sessionUuid = getSessionUuidByJid(room);
+        String[] args = {sessionUuid};
+
+        Cursor cursor = MessageSearchIndex.query(getMessageDB(), ChatMessage.SESSION_UUID + "=?", args,
+                keywords, caseSensitive, true, ORDER_DESC, offset + "," + count);
 
         while (cursor.moveToNext()) {
             result.add(convertHistoryRecordToMessageEvent(cursor, room));
         }
+        cursor.close();
         return result;
     }
 
@@ -2151,12 +2261,13 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         String sessionUuid = getSessionUuidByJid(room);
         String[] args = {sessionUuid};
 
-        Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null, ChatMessage.SESSION_UUID
+        Cursor cursor = getMessageDB().query(ChatMessage.TABLE_NAME, null, ChatMessage.SESSION_UUID
                 + "=?", args, null, null, ORDER_DESC, String.valueOf(count));
 
         while (cursor.moveToNext()) {
             result.add(convertHistoryRecordToMessageEvent(cursor, room));
         }
+        cursor.close();
 
         Collections.sort(result, new MessageEventComparator<>());
         return result;
@@ -2179,13 +2290,14 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         String sessionUuid = getSessionUuidByJid(room);
         String[] args = {sessionUuid, startTimeStamp};
 
-        Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+        Cursor cursor = getMessageDB().query(ChatMessage.TABLE_NAME, null,
                 ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=?",
-                args, null, null, ORDER_DESC, String.valueOf(count));
+                args, null, null, ORDER_ASC, String.valueOf(count));
 
         while (cursor.moveToNext()) {
             result.add(convertHistoryRecordToMessageEvent(cursor, room));
         }
+        cursor.close();
 
         Collections.sort(result, new ChatRoomMessageEventComparator<>());
         return result;
@@ -2202,18 +2314,29 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
      * @return Collection of MessageReceivedEvents or MessageDeliveredEvents
      */
     public Collection<EventObject> findLastMessagesBefore(ChatRoom room, Date endDate, int count) {
+        return findLastMessagesBefore(room, endDate, null, count);
+    }
+
+    /**
+     * Returns the supplied number of recent messages exchanged in the supplied chat room which
+     * precede the given (date, msgUuid) position in the history.
+     *
+     * @param room The chat room
+     * @param endDate the date of the oldest message already fetched
+     * @param msgUuid the uuid of the oldest message already fetched; null to get the messages before endDate
+     * @param count messages count
+     *
+     * @return Collection of MessageReceivedEvents or MessageDeliveredEvents
+     */
+    public Collection<EventObject> findLastMessagesBefore(ChatRoom room, Date endDate, String msgUuid, int count) {
         LinkedList<EventObject> result = new LinkedList<>();
-        String endTimeStamp = String.valueOf(endDate.getTime());
         String sessionUuid = getSessionUuidByJid(room);
-        String[] args = {sessionUuid, endTimeStamp};
-
-        Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
-                ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + "<?",
-                args, null, null, ORDER_DESC, String.valueOf(count));
 
+        Cursor cursor = queryMessagesBefore(getMessageDB(), sessionUuid, endDate, msgUuid, count);
         while (cursor.moveToNext()) {
             result.add(convertHistoryRecordToMessageEvent(cursor, room));
         }
+        cursor.close();
 
         Collections.sort(result, new ChatRoomMessageEventComparator<>());
         return result;
@@ -2376,7 +2499,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
     private void purgeLocallyStoredHistory(List<String> msgUUIDs) {
         for (String uuid : msgUUIDs) {
             String[] args = {uuid};
-            mDB.delete(ChatMessage.TABLE_NAME, ChatMessage.UUID + "=?", args);
+            mWriter.delete(ChatMessage.TABLE_NAME, ChatMessage.UUID + "=?", args);
         }
     }
 
@@ -2392,9 +2515,11 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         for (String uuid : sessionUuids) {
             String[] args = {uuid};
             // purged all messages with the same sessionUuid
-            mDB.delete(ChatMessage.TABLE_NAME, ChatMessage.SESSION_UUID + "=?", args);
+            mWriter.delete(ChatMessage.TABLE_NAME, ChatMessage.SESSION_UUID + "=?", args);
 
-            // Purge the sessionUuid in the ChatSession if true
+            // Purge the sessionUuid in the ChatSession if true. The ChatSession table is read and written
+            // directly, so delete it now for getSessionUuid() not to reuse it; the messages of the session
+            // still queued in the writer are removed by the queued delete above.
             if (eraseSid) {
                 mDB.delete(ChatSession.TABLE_NAME, ChatSession.SESSION_UUID + "=?", args);
             }
@@ -2431,7 +2556,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
             String[] args = {sessionUuid};
             String[] columns = {ChatMessage.FILE_PATH};
 
-            Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, columns, ChatMessage.SESSION_UUID + "=?",
+            Cursor cursor = getMessageDB().query(ChatMessage.TABLE_NAME, columns, ChatMessage.SESSION_UUID + "=?",
                     args, null, null, null);
             while (cursor.moveToNext()) {
                 filePath = cursor.getString(0);
@@ -2454,7 +2579,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
         String filePath;
         String[] columns = {ChatMessage.FILE_PATH};
 
-        Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, columns, ChatMessage.FILE_PATH + " IS NOT NULL",
+        Cursor cursor = getMessageDB().query(ChatMessage.TABLE_NAME, columns, ChatMessage.FILE_PATH + " IS NOT NULL",
                 null, null, null, null);
         while (cursor.moveToNext()) {
             filePath = cursor.getString(0);
@@ -0,0 +1,248 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.msghistory;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.atalk.persistance.DatabaseBackend;
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.util.concurrent.ExecutorFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import timber.log.Timber;
+
+/**
+ * A write-behind writer of the message history: the message inserts and the message status updates
+ * are queued and committed in batched transactions, either when {@link #BATCH_SIZE_PNAME} writes are
+ * pending or {@link #FLUSH_DELAY_PNAME} ms after the first pending write; instead of one autocommit
+ * transaction (and fsync) per message when e.g. the MAM catch-up replays hundreds of messages.
+ * <p>
+ * The writes are applied in the order they were queued. The writers of the messages table queue their
+ * writes, deletes included, so that they are ordered without waiting for a commit. A reader calls
+ * {@link #awaitCommitted()} first, so that it sees the writes queued so far: the pending writes are
+ * committed on the writer thread, and the reader waits for them. The readers which load the history
+ * for display do so off the UI thread, e.g. the <code>LoadHistoryTask</code> of the chat fragment.
+ * <p>
+ * The queued writes are in memory only: if the process dies, the writes queued in the last
+ * {@link #FLUSH_DELAY_PNAME} ms (100 ms by default) are lost. A received message lost this way is
+ * retrieved again by the MAM catch-up of the next login, but not a sent one; so keep the delay short.
+ *
+ * @author Eng Chong Meng
+ */
+public class MessageHistoryWriter {
+    /**
+     * The property name of the number of pending writes which triggers an immediate flush.
+     */
+    public static final String BATCH_SIZE_PNAME = MessageHistoryWriter.class.getName() + ".BATCH_SIZE";
+
+    /**
+     * The property name of the maximum time in ms a write stays pending, i.e. the writes which may be
+     * lost if the process dies.
+     */
+    public static final String FLUSH_DELAY_PNAME = MessageHistoryWriter.class.getName() + ".FLUSH_DELAY";
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_FLUSH_DELAY = 100;
+
+    private static MessageHistoryWriter instance = null;
+
+    private final SQLiteDatabase mDB;
+    private final int batchSize;
+    private final long flushDelay;
+
+    private final ScheduledExecutorService executor
+            = ExecutorFactory.createSingleThreadScheduledExecutor("MessageHistoryWriter", 60, TimeUnit.SECONDS);
+
+    /**
+     * The writes queued and not taken by a flush yet; guarded by <code>this</code>.
+     */
+    private List<Write> pendingWrites = new ArrayList<>();
+
+    /**
+     * The scheduled deadline flush of {@link #pendingWrites}; guarded by <code>this</code>.
+     */
+    private ScheduledFuture<?> scheduledFlush = null;
+
+    /**
+     * The number of writes queued and not committed yet, for the fast path of {@link #flush()}.
+     */
+    private final AtomicInteger uncommitted = new AtomicInteger();
+
+    /**
+     * Serializes the flushes so that the batches are committed in the order they were queued, and a
+     * flush returns only after the batch taken by a concurrent flush is committed too.
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * Gets the writer of the message history, creating it on first use.
+     *
+     * @return the <code>MessageHistoryWriter</code> of the aTalk database
+     */
+    public static synchronized MessageHistoryWriter getInstance() {
+        if (instance == null) {
+            ConfigurationService cfg = MessageHistoryActivator.getConfigurationService();
+            int batchSize = DEFAULT_BATCH_SIZE;
+            int flushDelay = DEFAULT_FLUSH_DELAY;
+            if (cfg != null) {
+                batchSize = cfg.getInt(BATCH_SIZE_PNAME, batchSize);
+                flushDelay = cfg.getInt(FLUSH_DELAY_PNAME, flushDelay);
+            }
+            instance = new MessageHistoryWriter(DatabaseBackend.getWritableDB(), batchSize, flushDelay);
+        }
+        return instance;
+    }
+
+    MessageHistoryWriter(SQLiteDatabase db, int batchSize, long flushDelay) {
+        mDB = db;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushDelay = Math.max(0, flushDelay);
+    }
+
+    /**
+     * Queues the insert of a row.
+     *
+     * @param table the table to insert the row into
+     * @param values the row; the writer takes a copy
+     */
+    public void insert(String table, ContentValues values) {
+        ContentValues row = new ContentValues(values);
+        queue(db -> db.insert(table, null, row));
+    }
+
+    /**
+     * Queues the update of rows.
+     *
+     * @param table the table to update
+     * @param values the new column values; the writer takes a copy
+     * @param whereClause the WHERE clause
+     * @param whereArgs the arguments of <code>whereClause</code>
+     */
+    public void update(String table, ContentValues values, String whereClause, String[] whereArgs) {
+        ContentValues row = new ContentValues(values);
+        queue(db -> db.update(table, row, whereClause, whereArgs));
+    }
+
+    /**
+     * Queues the deletion of rows.
+     *
+     * @param table the table to delete from
+     * @param whereClause the WHERE clause
+     * @param whereArgs the arguments of <code>whereClause</code>
+     */
+    public void delete(String table, String whereClause, String[] whereArgs) {
+        queue(db -> db.delete(table, whereClause, whereArgs));
+    }
+
+    private void queue(Write write) {
+        boolean flushNow;
+        uncommitted.incrementAndGet();
+        synchronized (this) {
+            pendingWrites.add(write);
+            flushNow = (pendingWrites.size() >= batchSize);
+            if (flushNow) {
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+            }
+            else if (scheduledFlush == null) {
+                scheduledFlush = executor.schedule(this::flush, flushDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (flushNow)
+            executor.execute(this::flush);
+    }
+
+    /**
+     * Waits until the writes queued before the call are committed, for a reader to see them; the reader
+     * never reads without them. The writes are committed on the writer thread, not on the caller's,
+     * which should not be the UI thread. Returns at once if no write is pending.
+     */
+    public void awaitCommitted() {
+        if (uncommitted.get() == 0)
+            return;
+
+        Future<?> commit = executor.submit(this::flush);
+        try {
+            commit.get();
+        } catch (ExecutionException e) {
+            Timber.e(e.getCause(), "Message history commit failed");
+        } catch (InterruptedException e) {
+            // Commit on the caller thread instead: flush() returns only when the writes are committed.
+            flush();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Commits all the queued writes in a single transaction, on the calling thread. Returns when all
+     * the writes queued before the call are committed; for the shutdown, the readers use
+     * {@link #awaitCommitted()}.
+     */
+    public void flush() {
+        if (uncommitted.get() == 0)
+            return;
+
+        synchronized (flushLock) {
+            List<Write> writes;
+            synchronized (this) {
+                writes = pendingWrites;
+                if (writes.isEmpty())
+                    return;
+                pendingWrites = new ArrayList<>();
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+            }
+
+            mDB.beginTransaction();
+            try {
+                for (Write write : writes) {
+                    try {
+                        write.apply(mDB);
+                    } catch (SQLException e) {
+                        // Do not lose the whole batch for a single bad row.
+                        Timber.e(e, "Message history write failed");
+                    }
+                }
+                mDB.setTransactionSuccessful();
+            } finally {
+                mDB.endTransaction();
+                uncommitted.addAndGet(-writes.size());
+            }
+        }
+    }
+
+    /**
+     * A queued database write.
+     */
+    private interface Write {
+        void apply(SQLiteDatabase db);
+    }
+}
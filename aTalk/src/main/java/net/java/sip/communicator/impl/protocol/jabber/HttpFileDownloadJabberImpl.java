@@ -16,49 +16,39 @@
  */
 package net.java.sip.communicator.impl.protocol.jabber;
 
-import android.app.DownloadManager;
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.database.Cursor;
 import android.net.Uri;
-import android.os.Handler;
 
 import net.java.sip.communicator.service.protocol.AbstractFileTransfer;
 import net.java.sip.communicator.service.protocol.Contact;
 import net.java.sip.communicator.service.protocol.IMessage;
 import net.java.sip.communicator.service.protocol.event.FileTransferStatusChangeEvent;
 
-import org.atalk.android.R;
-import org.atalk.android.aTalkApp;
-import org.atalk.persistance.FileBackend;
-import org.atalk.persistance.FilePathHelper;
+import org.atalk.service.httputil.HttpConnectionManager;
+import org.atalk.service.httputil.HttpFileDownloader;
+import org.jivesoftware.smackx.omemo_media_sharing.AesgcmStreamDecryptor;
 import org.jivesoftware.smackx.omemo_media_sharing.AesgcmUrl;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.util.Hashtable;
-import java.util.Map;
-
-import javax.crypto.Cipher;
-import javax.crypto.CipherOutputStream;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import timber.log.Timber;
 
 /**
  * The Jabber protocol HttpFileDownloadJabberImpl extension of the <code>AbstractFileTransfer</code>.
+ * The file is downloaded by a {@link HttpFileDownloader}, which decrypts an OMEMO media sharing
+ * file as it is received and resumes an interrupted download.
  *
  * @author Eng Chong Meng
  */
 public class HttpFileDownloadJabberImpl extends AbstractFileTransfer {
-    /* DownloadManager Broadcast Receiver Handler */
-    private DownloadReceiver downloadReceiver = null;
-    private final DownloadManager downloadManager = aTalkApp.getDownloadManager();
-
-    /* previousDownloads <DownloadJobId, Download Link> */
-    private final Hashtable<Long, String> previousDownloads = new Hashtable<>();
+    /**
+     * The maximum time in ms to wait for the server to return the file size.
+     */
+    private static final long FILE_SIZE_QUERY_TIMEOUT = 3000;
 
     private final String msgUuid;
     private final Contact mSender;
@@ -75,7 +65,17 @@ public class HttpFileDownloadJabberImpl extends AbstractFileTransfer {
     private final String dnLink;
     // https download uri link; extracted from dnLink if it is AesgcmUrl
     private final Uri mUri;
-    private long mFileSize;
+    private volatile long mFileSize;
+
+    /**
+     * The number of bytes received so far, including a resumed part.
+     */
+    private volatile long mTransferredBytes = -1;
+
+    /**
+     * The downloader of the file while it is being downloaded.
+     */
+    private volatile HttpFileDownloader mDownloader;
 
     /**
      * The transfer file full path for saving the received file.
@@ -125,11 +125,13 @@ public class HttpFileDownloadJabberImpl extends AbstractFileTransfer {
     }
 
     /**
-     * Unregister the HttpDownload transfer downloadReceiver.
+     * Cancels the download in progress and deletes its partially received file.
      */
     @Override
     public void cancel() {
-        doCleanup();
+        HttpFileDownloader downloader = mDownloader;
+        if (downloader != null)
+            downloader.cancel();
     }
 
     /**
@@ -207,308 +209,88 @@ public class HttpFileDownloadJabberImpl extends AbstractFileTransfer {
     // ********************************************************************************************//
     // Routines supporting HTTP File Download
 
+    /**
+     * Returns the number of bytes received so far.
+     *
+     * @return the number of bytes received so far or -1 before the download starts
+     */
+    @Override
+    public long getTransferredBytes() {
+        return mTransferredBytes;
+    }
+
     /**
      * Method fired when the chat message is clicked. {@inheritDoc}
      * Trigger from @see ChatFragment#
-     *
-     * @param checkFileSize check acceptable file Size limit before download if true
      */
     public void initHttpFileDownload() {
-        if (previousDownloads.contains(dnLink))
-            return;
-
-        // queryFileSize will also trigger onReceived; just ignore
-        if (downloadReceiver == null) {
-            downloadReceiver = new DownloadReceiver();
-            aTalkApp.getGlobalContext().registerReceiver(downloadReceiver,
-                    new IntentFilter(DownloadManager.ACTION_DOWNLOAD_COMPLETE));
-        }
-        if (mFileSize == -1) {
+        if ((mDownloader == null) && (mFileSize == -1)) {
             mFileSize = queryFileSize();
         }
-        // Timber.d("Download receiver registered %s: file size: %s", downloadReceiver, mFileSize);
     }
 
     /**
-     * Query the http uploaded file size for auto download.
+     * Query the http uploaded file size for auto download, waiting up to FILE_SIZE_QUERY_TIMEOUT
+     * for a slow server. The query runs off the calling (UI) thread.
      */
     private long queryFileSize() {
-        mFileSize = -1;
-        DownloadManager.Request request = new DownloadManager.Request(mUri);
-        long id = downloadManager.enqueue(request);
-        DownloadManager.Query query = new DownloadManager.Query();
-        query.setFilterById(id);
-
-        // allow loop for 3 seconds for slow server. Server can return size == 0 ?
-        int wait = 3;
-        while ((wait-- > 0) && (mFileSize <= 0)) {
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                Timber.w("Download Manager query file size exception: %s", e.getMessage());
-                return -1;
-            }
-            Cursor cursor = downloadManager.query(query);
-            if (cursor.moveToFirst()) {
-                mFileSize = cursor.getInt(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_TOTAL_SIZE_BYTES));
-            }
-            cursor.close();
+        FutureTask<Long> query = new FutureTask<>(() -> HttpFileDownloader.queryFileSize(mUri.toString()));
+        HttpConnectionManager.EXECUTOR.execute(query);
+        try {
+            return query.get(FILE_SIZE_QUERY_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            Timber.w("Query file size exception: %s", e.getMessage());
+            query.cancel(true);
+            return -1;
         }
-
-        // Timber.d("Download Manager file size query id: %s %s (%s)", id, mFileSize, wait);
-        return mFileSize;
     }
 
     /**
-     * Schedules media file download.
+     * Schedules media file download; resumes a previously interrupted download of the same file.
      */
     public void download(File xferFile) {
+        if (mDownloader != null)
+            return;
         mXferFile = xferFile;
 
-        DownloadManager.Request request = new DownloadManager.Request(mUri);
-        request.setNotificationVisibility(DownloadManager.Request.VISIBILITY_VISIBLE_NOTIFY_COMPLETED);
-
-        try {
-            File tmpFile = new File(FileBackend.getaTalkStore(FileBackend.TMP, true), mFileName);
-            request.setDestinationUri(Uri.fromFile(tmpFile));
-
-            long jobId = downloadManager.enqueue(request);
-            if (jobId > 0) {
-                previousDownloads.put(jobId, dnLink);
-                startProgressChecker();
-                // Timber.d("Download Manager HttpFileDownload Size: %s %s", mFileSize, previousDownloads.toString());
-                fireStatusChangeEvent(FileTransferStatusChangeEvent.IN_PROGRESS, null);
-
-                // Send a fake progressChangeEvent to show progressBar
-                fireProgressChangeEvent(System.currentTimeMillis(), 100);
-            }
-        } catch (SecurityException e) {
-            aTalkApp.showToastMessage(e.getMessage());
-        } catch (Exception e) {
-            aTalkApp.showToastMessage(R.string.service_gui_FILE_DOES_NOT_EXIST);
-        }
-    }
-
-    /**
-     * Queries the <code>DownloadManager</code> for the status of download job identified by given <code>id</code>.
-     *
-     * @param id download identifier which status will be returned.
-     *
-     * @return download status of the job identified by given id. If given job is not found
-     * {@link DownloadManager#STATUS_FAILED} will be returned.
-     */
-    private int checkDownloadStatus(long id) {
-        DownloadManager.Query query = new DownloadManager.Query();
-        query.setFilterById(id);
-
-        try (Cursor cursor = downloadManager.query(query)) {
-            if (!cursor.moveToFirst())
-                return DownloadManager.STATUS_FAILED;
-            else {
-                // update fileSize if last queryFileSize failed within the given timeout
-                if (mFileSize <= 0) {
-                    mFileSize = cursor.getInt(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_TOTAL_SIZE_BYTES));
-                }
-                return cursor.getInt(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_STATUS));
+        AesgcmStreamDecryptor decryptor = null;
+        if (mEncryption == IMessage.ENCRYPTION_OMEMO) {
+            try {
+                decryptor = new AesgcmUrl(dnLink).getStreamDecryptor();
+            } catch (GeneralSecurityException e) {
+                fireStatusChangeEvent(FileTransferStatusChangeEvent.FAILED,
+                        "Failed to decrypt OMEMO media file: " + e.getMessage());
+                return;
             }
         }
-    }
 
-    private class DownloadReceiver extends BroadcastReceiver {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            // Fetching the download id received with the broadcast and
-            // if the received broadcast is for our enqueued download by matching download id
-            long lastDownloadId = intent.getLongExtra(DownloadManager.EXTRA_DOWNLOAD_ID, -1);
-            int lastJobStatus = checkDownloadStatus(lastDownloadId);
-            // Timber.d("Download receiver %s (%s): %s", lastDownloadId, previousDownloads, lastJobStatus);
-
-            // Just ignore all unrelated download JobId.
-            if (previousDownloads.containsKey(lastDownloadId)) {
-                if (lastJobStatus == DownloadManager.STATUS_SUCCESSFUL) {
-                    String dnLink = previousDownloads.get(lastDownloadId);
-
-                    Uri fileUri = downloadManager.getUriForDownloadedFile(lastDownloadId);
-                    File inFile = new File(FilePathHelper.getFilePath(context, fileUri));
-
-                    // update fileSize for progress bar update, in case it is still not updated by download Manager
-                    mFileSize = inFile.length();
-
-                    if (inFile.exists()) {
-                        // OMEMO media file sharing - need to decrypt file content
-                        if ((dnLink != null) && dnLink.matches("^aesgcm:.*")) {
-                            try {
-                                AesgcmUrl aesgcmUrl = new AesgcmUrl(dnLink);
-                                Cipher decryptCipher = aesgcmUrl.getDecryptionCipher();
-
-                                FileInputStream fis = new FileInputStream(inFile);
-                                FileOutputStream outputStream = new FileOutputStream(mXferFile);
-                                CipherOutputStream cipherOutputStream = new CipherOutputStream(outputStream, decryptCipher);
-
-                                int count;
-                                byte[] buffer = new byte[4096];
-                                while ((count = fis.read(buffer)) != -1) {
-                                    cipherOutputStream.write(buffer, 0, count);
-                                }
-
-                                fis.close();
-                                outputStream.flush();
-                                cipherOutputStream.close();
-                                // inFile.delete();
-
-                                fireStatusChangeEvent(FileTransferStatusChangeEvent.COMPLETED, null);
-                            } catch (Exception e) {
-                                fireStatusChangeEvent(FileTransferStatusChangeEvent.FAILED,
-                                        "Failed to decrypt OMEMO media file: " + inFile);
-                            }
-                        }
-                        else {
-                            // Plain media file sharing; rename will move the infile to outfile dir.
-                            if (inFile.renameTo(mXferFile)) {
-                                fireStatusChangeEvent(FileTransferStatusChangeEvent.COMPLETED, null);
-                            }
-                        }
-
-                        // Timber.d("Downloaded fileSize: %s (%s)", outFile.length(), fileSize);
-                        previousDownloads.remove(lastDownloadId);
-                        // Remove lastDownloadId from downloadManager record and delete the tmp file
-                        downloadManager.remove(lastDownloadId);
-                    }
-                }
-                else if (lastJobStatus == DownloadManager.STATUS_FAILED) {
+        final HttpFileDownloader downloader = new HttpFileDownloader(mUri.toString(), xferFile, decryptor,
+                (received, total) -> {
+                    if ((mFileSize <= 0) && (total > 0))
+                        mFileSize = total;
+                    mTransferredBytes = received;
+                    fireProgressChangeEvent(System.currentTimeMillis(), received);
+                });
+        mDownloader = downloader;
+        fireStatusChangeEvent(FileTransferStatusChangeEvent.IN_PROGRESS, null);
+
+        HttpConnectionManager.EXECUTOR.execute(() -> {
+            try {
+                downloader.download();
+                fireStatusChangeEvent(FileTransferStatusChangeEvent.COMPLETED, null);
+            } catch (GeneralSecurityException e) {
+                Timber.e("OMEMO media file decryption failed: %s", e.getMessage());
+                fireStatusChangeEvent(FileTransferStatusChangeEvent.FAILED,
+                        "Failed to decrypt OMEMO media file: " + xferFile.getName());
+            } catch (Exception e) {
+                // A cancelled download is reported by the UI
+                if (!downloader.isCancelled()) {
+                    Timber.w("Http file download failed: %s", e.getMessage());
                     fireStatusChangeEvent(FileTransferStatusChangeEvent.FAILED, dnLink);
                 }
-                doCleanup();
-            }
-        }
-    }
-
-    /**
-     * Get the jobId for the given dnLink
-     *
-     * @param dnLink previously download link
-     *
-     * @return jobId for the dnLink if available else -1
-     */
-    private long getJobId(String dnLink) {
-        for (Map.Entry<Long, String> entry : previousDownloads.entrySet()) {
-            if (entry.getValue().equals(dnLink)) {
-                return entry.getKey();
+            } finally {
+                mDownloader = null;
             }
-        }
-        return -1;
+        });
     }
-
-    /**
-     * Perform cleanup at end of http file transfer process: passed, failed or cancel.
-     */
-    private void doCleanup() {
-        stopProgressChecker();
-        long jobId = getJobId(dnLink);
-        if (jobId != -1) {
-            previousDownloads.remove(jobId);
-            downloadManager.remove(jobId);
-        }
-
-        // Unregister the HttpDownload transfer downloadReceiver.
-        // Receiver not registered exception - may occur if window is refreshed while download is in progress?
-        if (downloadReceiver != null) {
-            try {
-                aTalkApp.getGlobalContext().unregisterReceiver(downloadReceiver);
-            } catch (IllegalArgumentException ie) {
-                Timber.w("Unregister download receiver exception: %s", ie.getMessage());
-            }
-            downloadReceiver = null;
-        }
-        // Timber.d("Download Manager for JobId: %s; File: %s (status: %s)", jobId, dnLink, status);
-    }
-
-    //=========================================================
-    /*
-     * Monitoring file download progress at PROGRESS_DELAY ms interval
-     */
-    private static final int PROGRESS_DELAY = 500;
-
-    // Maximum download idle time, 60s = MAX_IDLE_TIME * PROGRESS_DELAY mS before giving up and force to stop
-    private static final int MAX_IDLE_TIME = 120;
-
-    private boolean isProgressCheckerRunning = false;
-    private final Handler handler = new Handler();
-
-    private long previousProgress;
-    private int waitTime;
-
-    /**
-     * Checks http download progress.
-     */
-    private void checkProgress() {
-        long lastDownloadId = getJobId(dnLink);
-        int lastJobStatus = checkDownloadStatus(lastDownloadId);
-        // Timber.d("Downloading file last jobId: %s; lastJobStatus: %s; dnProgress: %s (%s)",
-        //       lastDownloadId, lastJobStatus, previousProgress, waitTime);
-
-        // Terminate downloading task if failed or idleTime timeout
-        if (lastJobStatus == DownloadManager.STATUS_FAILED || waitTime < 0) {
-            File tmpFile = new File(FileBackend.getaTalkStore(FileBackend.TMP, true), mFileName);
-            Timber.d("Downloaded fileSize (failed): %s (%s)", tmpFile.length(), mFileSize);
-            fireStatusChangeEvent(FileTransferStatusChangeEvent.FAILED, null);
-            doCleanup();
-            return;
-        }
-
-        DownloadManager.Query query = new DownloadManager.Query();
-        query.setFilterByStatus(~(DownloadManager.STATUS_FAILED | DownloadManager.STATUS_SUCCESSFUL));
-        Cursor cursor = downloadManager.query(query);
-
-        if (!cursor.moveToFirst()) {
-            waitTime--;
-        } else {
-            do {
-                long progress = cursor.getLong(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR));
-                if (progress <= previousProgress)
-                    waitTime--;
-                else {
-                    waitTime = MAX_IDLE_TIME;
-                    previousProgress = progress;
-                    fireProgressChangeEvent(System.currentTimeMillis(), progress);
-                }
-            } while (cursor.moveToNext());
-        }
-        cursor.close();
-    }
-
-    /**
-     * Starts watching download progress.
-     *
-     * This method is safe to call multiple times. Starting an already running progress checker is a no-op.
-     */
-    private void startProgressChecker() {
-        if (!isProgressCheckerRunning) {
-            isProgressCheckerRunning = true;
-            waitTime = MAX_IDLE_TIME;
-            previousProgress = -1;
-            progressChecker.run();
-        }
-    }
-
-    /**
-     * Stops watching download progress.
-     */
-    private void stopProgressChecker() {
-        isProgressCheckerRunning = false;
-        handler.removeCallbacks(progressChecker);
-    }
-
-    /**
-     * Checks download progress and updates status, then re-schedules itself.
-     */
-    private final Runnable progressChecker = new Runnable() {
-        @Override
-        public void run() {
-            if (isProgressCheckerRunning) {
-                checkProgress();
-                handler.postDelayed(this, PROGRESS_DELAY);
-            }
-        }
-    };
 }
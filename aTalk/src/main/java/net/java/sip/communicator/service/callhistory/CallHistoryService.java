@@ -124,6 +124,24 @@ public interface CallHistoryService
      */
     Collection<CallRecord> findLast(int count);
 
+    /**
+     * Returns the supplied number of the most recent calls started at or before the given date.
+     *
+     * @param endDate Date the end date of the calls
+     * @param count calls count
+     * @return Collection of CallRecords with CallPeerRecord
+     */
+    Collection<CallRecord> findLastBefore(Date endDate, int count);
+
+    /**
+     * Returns the supplied number of the earliest calls started at or after the given date.
+     *
+     * @param startDate Date the start date of the calls
+     * @param count calls count
+     * @return Collection of CallRecords with CallPeerRecord
+     */
+    Collection<CallRecord> findFirstAfter(Date startDate, int count);
+
     /**
      * Find the calls made by the supplied peer address
      *
@@ -152,6 +152,20 @@ public interface MetaHistoryService
      */
     Collection<Object> findLastMessagesBefore(String[] services, Object descriptor, Date date, int count);
 
+    /**
+     * Returns the supplied number of recent records which precede the given (date, msgUuid)
+     * position; the message history services page on the message uuid as well, call history
+     * records are selected by date only.
+     *
+     * @param services the services classNames we will query
+     * @param descriptor CallPeer address(String), MetaContact or ChatRoom.
+     * @param date the date of the message msgUuid
+     * @param msgUuid the uuid of the oldest message already fetched; null for all records before date
+     * @param count messages count
+     * @return Collection sorted result that consists of records returned from the services we wrap
+     */
+    Collection<Object> findLastMessagesBefore(String[] services, Object descriptor, Date date, String msgUuid, int count);
+
     /**
      * Adding progress listener for monitoring progress of search process
      *
@@ -136,6 +136,20 @@ public interface MessageHistoryService
      */
     Collection<EventObject> findByKeywords(MetaContact contact, String[] keywords, boolean caseSensitive);
 
+    /**
+     * Returns a page of the messages exchanged by all the contacts in the supplied metaContact having any of
+     * the given keywords, the most relevant (or the most recent) first
+     *
+     * @param contact MetaContact
+     * @param keywords keywords
+     * @param caseSensitive is keywords search case sensitive
+     * @param offset the number of matching messages to skip
+     * @param count the maximum number of messages to return
+     * @return List of MessageReceivedEvents or MessageDeliveredEvents
+     */
+    List<EventObject> findByKeywords(MetaContact contact, String[] keywords, boolean caseSensitive,
+            int offset, int count);
+
     /**
      * Returns the supplied number of recent messages exchanged by all the contacts in the supplied metaContact
      *
@@ -167,6 +181,19 @@ public interface MessageHistoryService
      */
     Collection<EventObject> findLastMessagesBefore(MetaContact contact, Date date, int count);
 
+    /**
+     * Returns the supplied number of recent messages exchanged by all the contacts in the supplied
+     * metaContact which precede the given (date, msgUuid) position, i.e. the page of history
+     * preceding the message msgUuid.
+     *
+     * @param contact MetaContact
+     * @param date the date of the message msgUuid
+     * @param msgUuid the uuid of the oldest message already fetched; null for all messages before date
+     * @param count messages count
+     * @return Collection of MessageReceivedEvents or MessageDeliveredEvents
+     */
+    Collection<EventObject> findLastMessagesBefore(MetaContact contact, Date date, String msgUuid, int count);
+
     /**
      * Returns all the chat session record created by the supplied accountUid before the given date
      *
@@ -295,6 +322,20 @@ public interface MessageHistoryService
      */
     Collection<EventObject> findByKeywords(ChatRoom room, String[] keywords, boolean caseSensitive);
 
+    /**
+     * Returns a page of the messages exchanged in the supplied chat room having any of the given keywords,
+     * the most relevant (or the most recent) first
+     *
+     * @param room The chat room
+     * @param keywords keywords
+     * @param caseSensitive is keywords search case sensitive
+     * @param offset the number of matching messages to skip
+     * @param count the maximum number of messages to return
+     * @return List of MessageReceivedEvents or MessageDeliveredEvents
+     */
+    List<EventObject> findByKeywords(ChatRoom room, String[] keywords, boolean caseSensitive,
+            int offset, int count);
+
     /**
      * Returns the supplied number of recent messages exchanged in the supplied chat room
      *
@@ -324,6 +365,18 @@ public interface MessageHistoryService
      */
     Collection<EventObject> findLastMessagesBefore(ChatRoom room, Date date, int count);
 
+    /**
+     * Returns the supplied number of recent messages exchanged in the supplied chat room which
+     * precede the given (date, msgUuid) position, i.e. the page of history preceding the message msgUuid.
+     *
+     * @param room The chat room
+     * @param date the date of the message msgUuid
+     * @param msgUuid the uuid of the oldest message already fetched; null for all messages before date
+     * @param count messages count
+     * @return Collection of MessageReceivedEvents or MessageDeliveredEvents
+     */
+    Collection<EventObject> findLastMessagesBefore(ChatRoom room, Date date, String msgUuid, int count);
+
     /**
      * Permanently removes all locally stored message history for the specified chatMode.
      * @param chatMode i.e. ChatSession.MODE_SINGLE or ChatSession.MODE_MULTI
@@ -510,7 +510,8 @@ public class CallInfoDialogFragment extends OSGiDialogFragment
         setTextViewValue(container, R.id.adaptiveJitterBuffer, mediaStreamStats.isAdaptiveBufferEnabled() ? "enabled" : "disabled");
 
         // Jitter buffer delay.
-        String jitterDelayStr = "~" + mediaStreamStats.getJitterBufferDelayMs() + "ms; currently in queue: "
+        String jitterDelayStr = "~" + mediaStreamStats.getJitterBufferDelayMs() + "ms (target "
+                + mediaStreamStats.getJitterBufferTargetDelayMs() + "ms); currently in queue: "
                 + mediaStreamStats.getPacketQueueCountPackets() + "/" + mediaStreamStats.getPacketQueueSize() + " packets";
         setTextViewValue(container, R.id.jitterBuffer, jitterDelayStr);
 
@@ -142,6 +142,11 @@ public class ChatPanel implements Chat, MessageListener {
 
     private Date mLastMsgFetchDate = null;
 
+    /**
+     * The uid of the oldest fetched message; with mLastMsgFetchDate, the keyset of the next history page.
+     */
+    private String mLastMsgFetchUid = null;
+
     /**
      * Current chat session type: mChatSession can either be one of the following:
      * MetaContactChatSession, ConferenceChatSession or AdHocConferenceChatSession
@@ -480,9 +485,10 @@ public class ChatPanel implements Chat, MessageListener {
             }
 
             if (mLastMsgFetchDate == null) {
-                mLastMsgFetchDate = msgCache.get(0).getDate();
+                setLastMsgFetch(msgCache);
             }
-            history = metaHistory.findLastMessagesBefore(chatHistoryFilter, descriptor, mLastMsgFetchDate, HISTORY_CHUNK_SIZE);
+            history = metaHistory.findLastMessagesBefore(chatHistoryFilter, descriptor,
+                    mLastMsgFetchDate, mLastMsgFetchUid, HISTORY_CHUNK_SIZE);
 
             // cmeng (20221229): was introduced in v.2.6; msgCache should have been properly updated now,
             // so omit and simplify mergeCachedMessage process.
@@ -533,19 +539,42 @@ public class ChatPanel implements Chat, MessageListener {
                 // Timber.d("Merged cached messages: %s => %s", history.size(), msgCache.size());
             }
 
-            if (!msgCache.isEmpty()) {
-                mLastMsgFetchDate = msgCache.get(0).getDate();
-            }
+            setLastMsgFetch(msgCache);
             return msgCache;
         }
         else {
-            if (!msgHistory.isEmpty()) {
-                mLastMsgFetchDate = msgHistory.get(0).getDate();
-            }
+            setLastMsgFetch(msgHistory);
             return msgHistory;
         }
     }
 
+    /**
+     * Sets the position of the next paged history fetch to the oldest message record of the given
+     * messages. The status, system and error messages shown in the chat are not saved in the history,
+     * so their UID cannot position the fetch.
+     *
+     * @param messages the messages in ascending date order
+     */
+    private void setLastMsgFetch(List<ChatMessage> messages) {
+        for (ChatMessage message : messages) {
+            switch (message.getMessageType()) {
+                case ChatMessage.MESSAGE_STATUS:
+                case ChatMessage.MESSAGE_SYSTEM:
+                case ChatMessage.MESSAGE_ERROR:
+                    continue;
+                default:
+                    mLastMsgFetchDate = message.getDate();
+                    mLastMsgFetchUid = message.getMessageUID();
+                    return;
+            }
+        }
+        // No message record: fetch the history before the oldest message shown
+        if (!messages.isEmpty()) {
+            mLastMsgFetchDate = messages.get(0).getDate();
+            mLastMsgFetchUid = null;
+        }
+    }
+
     /**
      * Merges given lists of messages. Output list is ordered by received date.
      *
@@ -41,7 +41,6 @@ import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smack.roster.Roster;
 import org.jivesoftware.smackx.chatstates.ChatState;
-import org.jivesoftware.smackx.hashes.HashManager;
 import org.jivesoftware.smackx.httpfileupload.HttpFileUploadManager;
 import org.jivesoftware.smackx.jet.JetManager;
 import org.jivesoftware.smackx.jet.component.JetSecurityImpl;
@@ -754,7 +753,8 @@ public class MetaContactChatTransport implements ChatTransport, ContactPresenceS
         JingleFile jingleFile = null;
         String mimeType = FileBackend.getMimeType(ctx, Uri.fromFile(file));
         try {
-            jingleFile = JingleFile.fromFile(file, null, mimeType, HashManager.ALGORITHM.SHA3_256);
+            // The file is hashed while streaming; its checksum is sent at the end of the transfer.
+            jingleFile = JingleFile.fromFile(file, null, mimeType, null);
         } catch (NoSuchAlgorithmException | IOException e) {
             Timber.e("JingleFile creation error: %s", e.getMessage());
         }
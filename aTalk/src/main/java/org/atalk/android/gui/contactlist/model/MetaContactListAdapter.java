@@ -5,6 +5,7 @@
  */
 package org.atalk.android.gui.contactlist.model;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import net.java.sip.communicator.service.contactlist.MetaContact;
@@ -30,9 +31,13 @@ import org.atalk.android.gui.contactlist.ContactListFragment;
 import org.atalk.android.gui.contactlist.PresenceFilter;
 import org.atalk.android.plugin.timberlog.TimberLog;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.TreeSet;
 import java.util.regex.Pattern;
 
@@ -110,6 +115,41 @@ public class MetaContactListAdapter extends BaseContactListAdapter
      */
     private boolean mDialogMode = false;
 
+    /**
+     * The time in ms within which the contact presence changes and the resulting reorders that
+     * follow an update of the contact list view are coalesced into a single next update, e.g. for
+     * the presence flood of a big roster after login. A change after a quiet period is applied
+     * at once.
+     */
+    private static final long PRESENCE_BATCH_DELAY = 300;
+
+    /**
+     * The <code>MetaContact</code>s whose presence status has changed since the last batched update.
+     */
+    private final Set<MetaContact> pendingStatusUpdates = new HashSet<>();
+
+    /**
+     * The <code>MetaContactGroup</code>s whose child contacts have been reordered since the last
+     * batched update; guarded by {@link #pendingStatusUpdates}.
+     */
+    private final Set<MetaContactGroup> pendingReorderedGroups = new HashSet<>();
+
+    /**
+     * Whether a batched update has been posted and not run yet; guarded by {@link #pendingStatusUpdates}.
+     */
+    private boolean batchedUpdatePosted = false;
+
+    /**
+     * The {@link SystemClock#uptimeMillis()} time of the last batched update; guarded by
+     * {@link #pendingStatusUpdates}.
+     */
+    private long lastBatchedUpdateTime = 0;
+
+    /**
+     * Runs {@link #applyBatchedUpdate()}; kept so that a pending batched update can be removed on dispose.
+     */
+    private final Runnable batchedUpdate = this::applyBatchedUpdate;
+
     public MetaContactListAdapter(ContactListFragment contactListFragment, boolean mainContactList)
     {
         super(contactListFragment, mainContactList);
@@ -141,6 +181,13 @@ public class MetaContactListAdapter extends BaseContactListAdapter
             contactListService.removeMetaContactListListener(this);
             removeContacts(contactListService.getRoot());
         }
+
+        uiHandler.removeCallbacks(batchedUpdate);
+        synchronized (pendingStatusUpdates) {
+            pendingStatusUpdates.clear();
+            pendingReorderedGroups.clear();
+            batchedUpdatePosted = false;
+        }
     }
 
     /**
@@ -687,37 +734,46 @@ public class MetaContactListAdapter extends BaseContactListAdapter
      */
     public void childContactsReordered(MetaContactGroupEvent evt)
     {
-        Timber.d("CHILD CONTACTS REORDERED: %s", evt.getSourceMetaContactGroup());
-        uiHandler.post(() -> {
-            MetaContactGroup group = evt.getSourceMetaContactGroup();
-            int origGroupIndex = originalGroups.indexOf(group);
-            int groupIndex = groups.indexOf(group);
-
-            if (origGroupIndex >= 0) {
-                TreeSet<MetaContact> contactList = getOriginalCList(origGroupIndex);
-
-                if (contactList != null) {
-                    // Timber.w("Modify originalGroups: " + origGroupIndex + " / " + originalGroups.size());
-                    synchronized (originalContacts) {
-                        originalContacts.add(origGroupIndex, new TreeSet<>(contactList));
-                        originalContacts.remove(origGroupIndex + 1);
-                    }
+        Timber.log(TimberLog.FINER, "CHILD CONTACTS REORDERED: %s", evt.getSourceMetaContactGroup());
+        synchronized (pendingStatusUpdates) {
+            pendingReorderedGroups.add(evt.getSourceMetaContactGroup());
+            postBatchedUpdate();
+        }
+    }
+
+    /**
+     * Re-sorts the child contacts of the given group after they have been reordered.
+     *
+     * @param group the <code>MetaContactGroup</code> whose child contacts have been reordered
+     */
+    private void reorderChildContacts(MetaContactGroup group)
+    {
+        int origGroupIndex = originalGroups.indexOf(group);
+        int groupIndex = groups.indexOf(group);
+
+        if (origGroupIndex >= 0) {
+            TreeSet<MetaContact> contactList = getOriginalCList(origGroupIndex);
+
+            if (contactList != null) {
+                // Timber.w("Modify originalGroups: " + origGroupIndex + " / " + originalGroups.size());
+                synchronized (originalContacts) {
+                    originalContacts.add(origGroupIndex, new TreeSet<>(contactList));
+                    originalContacts.remove(origGroupIndex + 1);
                 }
             }
+        }
 
-            if (groupIndex >= 0) {
-                TreeSet<MetaContact> contactList = getContactList(groupIndex);
+        if (groupIndex >= 0) {
+            TreeSet<MetaContact> contactList = getContactList(groupIndex);
 
-                if (contactList != null) {
-                    // Timber.w("Modify groups: " + groupIndex + " / " + groups.size());
-                    synchronized (contacts) {
-                        contacts.add(groupIndex, new TreeSet<>(contactList));
-                        contacts.remove(groupIndex + 1);
-                    }
+            if (contactList != null) {
+                // Timber.w("Modify groups: " + groupIndex + " / " + groups.size());
+                synchronized (contacts) {
+                    contacts.add(groupIndex, new TreeSet<>(contactList));
+                    contacts.remove(groupIndex + 1);
                 }
             }
-            notifyDataSetChanged();
-        });
+        }
     }
 
     /**
@@ -922,22 +978,70 @@ public class MetaContactListAdapter extends BaseContactListAdapter
     @Override
     public void contactPresenceStatusChanged(final ContactPresenceStatusChangeEvent event)
     {
-        uiHandler.post(() -> {
-            //  mDialogMode: just update the status icon without sorting
-            if (mDialogMode) {
-                Contact sourceContact = event.getSourceContact();
-                Timber.d("Contact presence status changed: %s", sourceContact.getAddress());
-
-                MetaContact metaContact = contactListService.findMetaContactByContact(sourceContact);
-                // metaContact is already existing, just update it
-                if (metaContact != null) {
-                    updateStatus(metaContact);
-                }
-            }
-            else {
-                refreshModelData();
-            }
-        });
+        Contact sourceContact = event.getSourceContact();
+        Timber.log(TimberLog.FINER, "Contact presence status changed: %s", sourceContact.getAddress());
+
+        MetaContact metaContact = contactListService.findMetaContactByContact(sourceContact);
+        // ignore the contacts which are not in the contact list
+        if (metaContact == null)
+            return;
+
+        // The changes of the same contact within the batch window collapse into a single update.
+        synchronized (pendingStatusUpdates) {
+            pendingStatusUpdates.add(metaContact);
+            postBatchedUpdate();
+        }
+    }
+
+    /**
+     * Posts the batched update of the contact list view unless it is already pending: at once if
+     * the last one is older than {@link #PRESENCE_BATCH_DELAY}, else at the end of that window.
+     * Must be called while holding the lock of {@link #pendingStatusUpdates}.
+     */
+    private void postBatchedUpdate()
+    {
+        if (!batchedUpdatePosted) {
+            batchedUpdatePosted = true;
+            long delay = lastBatchedUpdateTime + PRESENCE_BATCH_DELAY - SystemClock.uptimeMillis();
+            if (delay > 0)
+                uiHandler.postDelayed(batchedUpdate, delay);
+            else
+                uiHandler.post(batchedUpdate);
+        }
+    }
+
+    /**
+     * Applies in one pass all the presence status changes and reorders received within the batch
+     * window, followed by a single notification of the view.
+     *
+     * mDialogMode: just update the status icons without sorting
+     */
+    private void applyBatchedUpdate()
+    {
+        List<MetaContact> statusUpdates;
+        List<MetaContactGroup> reorderedGroups;
+        synchronized (pendingStatusUpdates) {
+            statusUpdates = new ArrayList<>(pendingStatusUpdates);
+            reorderedGroups = new ArrayList<>(pendingReorderedGroups);
+            pendingStatusUpdates.clear();
+            pendingReorderedGroups.clear();
+            batchedUpdatePosted = false;
+            lastBatchedUpdateTime = SystemClock.uptimeMillis();
+        }
+
+        if (!mDialogMode && !statusUpdates.isEmpty()) {
+            // The refresh re-sorts all the groups, so covers the reorders too.
+            refreshModelData();
+        }
+        else {
+            for (MetaContactGroup group : reorderedGroups)
+                reorderChildContacts(group);
+            for (MetaContact metaContact : statusUpdates)
+                updateStatus(metaContact);
+        }
+
+        if (!reorderedGroups.isEmpty() || !mDialogMode)
+            notifyDataSetChanged();
     }
 
     /**
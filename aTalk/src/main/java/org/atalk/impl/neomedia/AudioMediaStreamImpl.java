@@ -131,6 +131,12 @@ public class AudioMediaStreamImpl extends MediaStreamImpl implements AudioMediaS
 
     private SsrcTransformEngine ssrcTransformEngine;
 
+    /**
+     * The <code>JitterBufferController</code> which sizes the receive jitter buffer of this stream from
+     * its measured jitter or <code>null</code> if disabled.
+     */
+    private JitterBufferController jitterBufferController;
+
     /**
      * The instance that is aware of all of the {@link org.atalk.impl.neomedia.rtp.RTPEncodingDesc} of the remote endpoint.
      */
@@ -298,6 +304,10 @@ public class AudioMediaStreamImpl extends MediaStreamImpl implements AudioMediaS
             ssrcTransformEngine.close();
             ssrcTransformEngine = null;
         }
+        if (jitterBufferController != null) {
+            jitterBufferController.stop();
+            jitterBufferController = null;
+        }
 
         if (audioSystemChangeNotifier != null)
             audioSystemChangeNotifier.removePropertyChangeListener(this);
@@ -324,12 +334,15 @@ public class AudioMediaStreamImpl extends MediaStreamImpl implements AudioMediaS
          * most is that it's proportional to the latency of the playback.
          */
         long bufferLength = 120;
+        boolean bufferLengthConfigured = false;
         if (cfg != null) {
             String bufferLengthStr = cfg.getString(PROPERTY_NAME_RECEIVE_BUFFER_LENGTH);
 
             try {
-                if ((bufferLengthStr != null) && (bufferLengthStr.length() > 0))
+                if ((bufferLengthStr != null) && (bufferLengthStr.length() > 0)) {
                     bufferLength = Long.parseLong(bufferLengthStr);
+                    bufferLengthConfigured = true;
+                }
             } catch (NumberFormatException nfe) {
                 Timber.w(nfe, "%s is not a valid receive buffer length/long value", bufferLengthStr);
             }
@@ -346,6 +359,20 @@ public class AudioMediaStreamImpl extends MediaStreamImpl implements AudioMediaS
 
         bufferControl.setEnabledThreshold(minimumThreshold > 0);
         bufferControl.setMinimumThreshold(minimumThreshold);
+
+        if (jitterBufferController == null)
+            jitterBufferController
+                    = JitterBufferController.start(this, bufferControl, bufferLength, bufferLengthConfigured);
+    }
+
+    /**
+     * Gets the <code>JitterBufferController</code> which sizes the receive jitter buffer of this stream.
+     *
+     * @return the <code>JitterBufferController</code> of this stream or <code>null</code> if disabled
+     */
+    JitterBufferController getJitterBufferController()
+    {
+        return jitterBufferController;
     }
 
     /**
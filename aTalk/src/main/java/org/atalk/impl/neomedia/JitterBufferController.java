@@ -0,0 +1,243 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia;
+
+import org.atalk.android.plugin.timberlog.TimberLog;
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.util.concurrent.PeriodicRunnable;
+import org.atalk.util.concurrent.RecurringRunnableExecutor;
+
+import javax.media.control.BufferControl;
+import javax.media.control.JitterBufferControl;
+
+import timber.log.Timber;
+
+/**
+ * Sizes the receive jitter buffer of an audio <code>MediaStreamImpl</code> from the measured
+ * interarrival jitter of its receive streams, instead of leaving it at the fixed
+ * {@link MediaStreamImpl#PROPERTY_NAME_RECEIVE_BUFFER_LENGTH}. On by default, unless the buffer
+ * length is configured explicitly, which it would then override; {@link #ENABLED_PNAME} turns it
+ * on or off regardless.
+ * <p>
+ * Once per second the target delay is computed as one packet plus four times the RTP interarrival
+ * jitter, within {@link #MIN_DELAY_PNAME} and {@link #MAX_DELAY_PNAME}. A packet which has been
+ * discarded for arriving too late raises the target immediately by two packets; a lower jitter
+ * lowers it by at most {@link #RELEASE_STEP} ms per second, so that a single quiet second does not
+ * undo the adaptation to a bursty network. The target is applied to the <code>BufferControl</code>
+ * of the <code>RTPManager</code> and reported by {@link MediaStreamStatsImpl#getJitterBufferTargetDelayMs()}.
+ * </p>
+ * <p>
+ * The playout itself (the packet queue, the handling of its underruns and the loss concealment by
+ * the decoders e.g. SILK PLC and Opus FEC) stays with FMJ. Note that while the adaptive jitter
+ * buffer of FMJ is enabled (<code>neomedia.adaptive_jitter_buffer.ENABLE</code>) FMJ sizes the packet
+ * queue from its own history of late packets and the target delay is informative only.
+ * </p>
+ *
+ * @author Eng Chong Meng
+ */
+public class JitterBufferController extends PeriodicRunnable
+{
+    /**
+     * The name of the <code>ConfigurationService</code> property which specifies whether the receive
+     * jitter buffer of audio streams is sized from their measured jitter. The default is <code>true</code>
+     * unless {@link MediaStreamImpl#PROPERTY_NAME_RECEIVE_BUFFER_LENGTH} is set.
+     */
+    public static final String ENABLED_PNAME = JitterBufferController.class.getName() + ".ENABLED";
+
+    /**
+     * The name of the <code>ConfigurationService</code> property which specifies the minimum target
+     * delay in ms of the receive jitter buffer.
+     */
+    public static final String MIN_DELAY_PNAME = JitterBufferController.class.getName() + ".MIN_DELAY";
+
+    /**
+     * The name of the <code>ConfigurationService</code> property which specifies the maximum target
+     * delay in ms of the receive jitter buffer.
+     */
+    public static final String MAX_DELAY_PNAME = JitterBufferController.class.getName() + ".MAX_DELAY";
+
+    /**
+     * The default value of {@link #MIN_DELAY_PNAME}.
+     */
+    private static final int DEFAULT_MIN_DELAY = 40;
+
+    /**
+     * The default value of {@link #MAX_DELAY_PNAME}.
+     */
+    private static final int DEFAULT_MAX_DELAY = 400;
+
+    /**
+     * The duration in ms of a packet which is assumed until the jitter buffer reports its delay.
+     */
+    private static final int DEFAULT_PACKET_DURATION = 20;
+
+    /**
+     * The number of times the interarrival jitter the target delay covers.
+     */
+    private static final int JITTER_FACTOR = 4;
+
+    /**
+     * The maximum decrease in ms of the target delay per period.
+     */
+    private static final long RELEASE_STEP = 10;
+
+    /**
+     * The period in ms of the adaptation.
+     */
+    private static final long PERIOD = 1000;
+
+    /**
+     * The executor which runs the <code>JitterBufferController</code>s of all audio streams.
+     */
+    private static final RecurringRunnableExecutor recurringRunnableExecutor
+            = new RecurringRunnableExecutor(JitterBufferController.class.getSimpleName());
+
+    /**
+     * The <code>MediaStreamImpl</code> whose receive jitter buffer is sized.
+     */
+    private final MediaStreamImpl stream;
+
+    /**
+     * The <code>BufferControl</code> of the <code>RTPManager</code> of {@link #stream}.
+     */
+    private final BufferControl bufferControl;
+
+    /**
+     * The minimum target delay in ms.
+     */
+    private final long minDelay;
+
+    /**
+     * The maximum target delay in ms.
+     */
+    private final long maxDelay;
+
+    /**
+     * The number of late packets discarded by the jitter buffer at the previous period.
+     */
+    private int discardedLate = 0;
+
+    /**
+     * The current target delay in ms.
+     */
+    private volatile long targetDelay;
+
+    /**
+     * Starts sizing the receive jitter buffer of a specific stream from its measured jitter, unless
+     * disabled by {@link #ENABLED_PNAME} or by an explicitly configured buffer length.
+     *
+     * @param stream the <code>MediaStreamImpl</code> whose receive jitter buffer is to be sized
+     * @param bufferControl the <code>BufferControl</code> of the <code>RTPManager</code> of <code>stream</code>
+     * @param initialDelay the buffer length in ms to start from
+     * @param bufferLengthConfigured whether <code>initialDelay</code> was set explicitly by
+     * {@link MediaStreamImpl#PROPERTY_NAME_RECEIVE_BUFFER_LENGTH}
+     * @return the started <code>JitterBufferController</code> or <code>null</code> if disabled
+     */
+    static JitterBufferController start(MediaStreamImpl stream, BufferControl bufferControl, long initialDelay,
+            boolean bufferLengthConfigured)
+    {
+        ConfigurationService cfg = LibJitsi.getConfigurationService();
+        long minDelay = DEFAULT_MIN_DELAY;
+        long maxDelay = DEFAULT_MAX_DELAY;
+
+        if (cfg != null) {
+            if (!cfg.getBoolean(ENABLED_PNAME, !bufferLengthConfigured))
+                return null;
+            minDelay = cfg.getInt(MIN_DELAY_PNAME, DEFAULT_MIN_DELAY);
+            maxDelay = cfg.getInt(MAX_DELAY_PNAME, DEFAULT_MAX_DELAY);
+        }
+        else if (bufferLengthConfigured) {
+            return null;
+        }
+
+        JitterBufferController controller = new JitterBufferController(stream, bufferControl,
+                minDelay, Math.max(minDelay, maxDelay), initialDelay);
+        recurringRunnableExecutor.registerRecurringRunnable(controller);
+        return controller;
+    }
+
+    /**
+     * Initializes a new <code>JitterBufferController</code>.
+     *
+     * @param stream the <code>MediaStreamImpl</code> whose receive jitter buffer is to be sized
+     * @param bufferControl the <code>BufferControl</code> of the <code>RTPManager</code> of <code>stream</code>
+     * @param minDelay the minimum target delay in ms
+     * @param maxDelay the maximum target delay in ms
+     * @param initialDelay the target delay in ms to start from
+     */
+    private JitterBufferController(MediaStreamImpl stream, BufferControl bufferControl,
+            long minDelay, long maxDelay, long initialDelay)
+    {
+        super(PERIOD);
+
+        this.stream = stream;
+        this.bufferControl = bufferControl;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        targetDelay = Math.max(minDelay, Math.min(maxDelay, initialDelay));
+    }
+
+    /**
+     * Stops sizing the receive jitter buffer.
+     */
+    void stop()
+    {
+        recurringRunnableExecutor.deRegisterRecurringRunnable(this);
+    }
+
+    /**
+     * Gets the current target delay of the receive jitter buffer.
+     *
+     * @return the current target delay in ms
+     */
+    public long getTargetDelay()
+    {
+        return targetDelay;
+    }
+
+    /**
+     * Adapts the target delay to the jitter and the late packets measured since the previous period.
+     */
+    @Override
+    public void run()
+    {
+        super.run();
+
+        MediaStreamStatsImpl stats = stream.getMediaStreamStats();
+        int packetDuration = DEFAULT_PACKET_DURATION;
+        int late = 0;
+
+        for (JitterBufferControl jbc : stats.getJitterBufferControls()) {
+            late += jbc.getDiscardedLate();
+
+            int packets = jbc.getCurrentDelayPackets();
+            if (packets > 0)
+                packetDuration = Math.max(1, jbc.getCurrentDelayMs() / packets);
+        }
+
+        long delay = targetDelay;
+        long jitterDelay = packetDuration + (long) (JITTER_FACTOR * stats.getDownloadJitterMs());
+
+        if (late > discardedLate)
+            delay = Math.max(jitterDelay, delay + 2 * packetDuration);
+        else if (jitterDelay > delay)
+            delay = jitterDelay;
+        else
+            delay = Math.max(jitterDelay, delay - RELEASE_STEP);
+        discardedLate = late;
+
+        delay = Math.max(minDelay, Math.min(maxDelay, delay));
+        if (delay != targetDelay) {
+            targetDelay = delay;
+            bufferControl.setBufferLength(delay);
+            // Keeps the threshold at half the buffer length, as configured by the stream.
+            if (bufferControl.getEnabledThreshold())
+                bufferControl.setMinimumThreshold(delay / 2);
+            Timber.log(TimberLog.FINER, "Set receiver buffer length to %s ms for %s", delay, stream);
+        }
+    }
+}
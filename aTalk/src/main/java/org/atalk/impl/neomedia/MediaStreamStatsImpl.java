@@ -498,7 +498,7 @@ public class MediaStreamStatsImpl implements MediaStreamStats
      * @return the set of <code>PacketQueueControls</code> found for all the <code>DataSource</code>s of
      * all the <code>ReceiveStream</code>s. The set contains only non-null elements.
      */
-    private Set<JitterBufferControl> getJitterBufferControls()
+    Set<JitterBufferControl> getJitterBufferControls()
     {
         Set<JitterBufferControl> set = new HashSet<>();
         if (mediaStreamImpl.isStarted()) {
@@ -530,6 +530,29 @@ public class MediaStreamStatsImpl implements MediaStreamStats
         return delay;
     }
 
+    /**
+     * Returns the target delay in milliseconds of the jitter buffer. If the jitter buffer is sized by
+     * a <code>JitterBufferController</code>, returns its target delay; otherwise, returns the biggest
+     * nominal delay of the jitter buffers of the <code>ReceiveStreams</code>.
+     *
+     * @return the target delay in milliseconds of the jitter buffer
+     */
+    public int getJitterBufferTargetDelayMs()
+    {
+        if (mediaStreamImpl instanceof AudioMediaStreamImpl) {
+            JitterBufferController controller
+                    = ((AudioMediaStreamImpl) mediaStreamImpl).getJitterBufferController();
+            if (controller != null)
+                return (int) controller.getTargetDelay();
+        }
+
+        int delay = 0;
+        for (JitterBufferControl pqc : getJitterBufferControls())
+            if (pqc.getNominalDelay() > delay)
+                delay = pqc.getNominalDelay();
+        return delay;
+    }
+
     /**
      * Returns the delay in number of packets introduced by the jitter buffer. Since there might be
      * multiple <code>ReceiveStreams</code>, returns the biggest delay found in any of them.
@@ -1309,10 +1332,7 @@ public class MediaStreamStatsImpl implements MediaStreamStats
     public void srReceived(RTCPSRPacket sr)
     {
         if (sr != null) {
-            long emissionTime = TimeUtils.toNtpShortFormat(TimeUtils.constructNtp(sr.ntptimestampmsw, sr.ntptimestamplsw));
-
-            long arrivalTime = TimeUtils.toNtpShortFormat(TimeUtils.toNtpTime(System.currentTimeMillis()));
-            emission2reception.put(emissionTime, arrivalTime);
+            srReceived(sr.ntptimestampmsw, sr.ntptimestamplsw);
             synchronized (rtcpPacketListeners) {
                 for (RTCPPacketListener listener : rtcpPacketListeners) {
                     listener.srReceived(sr);
@@ -1321,6 +1341,32 @@ public class MediaStreamStatsImpl implements MediaStreamStats
         }
     }
 
+    /**
+     * Notifies this instance that an RTCP SR packet with a specific NTP timestamp was received,
+     * without notifying the <code>RTCPPacketListener</code>s; for the purposes of the RTT computation.
+     *
+     * @param ntpTimestampMsw the most significant word of the NTP timestamp of the SR
+     * @param ntpTimestampLsw the least significant word of the NTP timestamp of the SR
+     */
+    public void srReceived(long ntpTimestampMsw, long ntpTimestampLsw)
+    {
+        long emissionTime = TimeUtils.toNtpShortFormat(TimeUtils.constructNtp(ntpTimestampMsw, ntpTimestampLsw));
+
+        long arrivalTime = TimeUtils.toNtpShortFormat(TimeUtils.toNtpTime(System.currentTimeMillis()));
+        emission2reception.put(emissionTime, arrivalTime);
+    }
+
+    /**
+     * Determines whether any <code>RTCPPacketListener</code> is registered with this instance, so that
+     * received RTCP packets need to be parsed into <code>RTCPPacket</code>s for them.
+     *
+     * @return <code>true</code> if any <code>RTCPPacketListener</code> is registered; otherwise, <code>false</code>
+     */
+    public boolean hasRTCPPacketListeners()
+    {
+        return !rtcpPacketListeners.isEmpty();
+    }
+
     /**
      * {@inheritDoc}
      */
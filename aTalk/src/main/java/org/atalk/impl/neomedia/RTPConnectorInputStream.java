@@ -12,6 +12,7 @@ import org.atalk.impl.neomedia.jmfext.media.protocol.AbstractPushBufferStream;
 import org.atalk.impl.neomedia.protocol.PushBufferStreamAdapter;
 import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.RawPacket;
+import org.atalk.service.neomedia.RawPacketPool;
 import org.atalk.util.ArrayUtils;
 import org.atalk.util.concurrent.MonotonicAtomicLong;
 import org.ice4j.socket.DatagramPacketFilter;
@@ -20,8 +21,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.SocketTimeoutException;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.nio.channels.DatagramChannel;
 
 import javax.media.Buffer;
 import javax.media.protocol.ContentDescriptor;
@@ -133,14 +133,15 @@ public abstract class RTPConnectorInputStream<T extends Closeable> implements Pu
     private final PushBufferStream pushBufferStream;
 
     /**
-     * The pool of <code>RawPacket</code> instances to reduce their allocations and garbage collection.
+     * The background/daemon <code>Thread</code> which invokes {@link #receive(DatagramPacket)}.
      */
-    private final Queue<RawPacket> rawPacketPool = new ArrayBlockingQueue<>(RTPConnectorOutputStream.POOL_CAPACITY);
+    private Thread receiveThread;
 
     /**
-     * The background/daemon <code>Thread</code> which invokes {@link #receive(DatagramPacket)}.
+     * Whether this stream receives its packets through the shared {@link RTPConnectorReceiveEngine}
+     * instead of its own {@link #receiveThread}.
      */
-    private Thread receiveThread;
+    private boolean receiveEngineRegistered = false;
 
     protected final T socket;
 
@@ -303,24 +304,9 @@ public abstract class RTPConnectorInputStream<T extends Closeable> implements Pu
     {
         RawPacket[] pkts = new RawPacket[1];
 
-        RawPacket pkt = rawPacketPool.poll();
-        if (pkt == null)
-            pkt = new RawPacket();
-
-        byte[] buffer = pkt.getBuffer();
-        int length = datagramPacket.getLength();
-        if (buffer == null || buffer.length < length) {
-            buffer = new byte[length];
-            pkt.setBuffer(buffer);
-        }
-
-        System.arraycopy(datagramPacket.getData(), datagramPacket.getOffset(), buffer, 0, length);
-        pkt.setBuffer(buffer);
-        pkt.setOffset(0);
-        pkt.setLength(length);
-        pkt.setFlags(0);
-
-        pkts[0] = pkt;
+        // The packet is drawn from the shared RawPacketPool and released into it once read.
+        pkts[0] = RawPacketPool.copyOf(datagramPacket.getData(), datagramPacket.getOffset(),
+                datagramPacket.getLength());
         return pkts;
     }
 
@@ -410,6 +396,18 @@ public abstract class RTPConnectorInputStream<T extends Closeable> implements Pu
         return 2 * 1024; // twice the MTU size, just to be safe.
     }
 
+    /**
+     * Gets the <code>DatagramChannel</code> of the socket of this stream which the shared
+     * {@link RTPConnectorReceiveEngine} may select on. The default implementation returns
+     * <code>null</code> so that the stream uses its own receive thread.
+     *
+     * @return the <code>DatagramChannel</code> of the socket of this stream or <code>null</code>
+     */
+    protected DatagramChannel getDatagramChannel()
+    {
+        return null;
+    }
+
     /**
      * Returns the number of received bytes for the stream.
      *
@@ -422,8 +420,20 @@ public abstract class RTPConnectorInputStream<T extends Closeable> implements Pu
 
     private synchronized void maybeStartReceiveThread()
     {
+        if (receiveEngineRegistered)
+            return;
+
         if (receiveThread == null) {
             if ((socket != null) && !closed && (transferHandler != null)) {
+                RTPConnectorReceiveEngine receiveEngine = RTPConnectorReceiveEngine.getInstance();
+                if (receiveEngine != null) {
+                    DatagramChannel channel = getDatagramChannel();
+                    if ((channel != null) && receiveEngine.register(channel, this)) {
+                        receiveEngineRegistered = true;
+                        return;
+                    }
+                }
+
                 receiveThread = new Thread()
                 {
                     @Override
@@ -446,17 +456,13 @@ public abstract class RTPConnectorInputStream<T extends Closeable> implements Pu
 
     /**
      * Pools the specified <code>RawPacket</code> in order to avoid future allocations and to reduce
-     * the
-     * effects of garbage collection.
+     * the effects of garbage collection.
      *
-     * @param pkt the <code>RawPacket</code> to be offered to {@link #rawPacketPool}
+     * @param pkt the <code>RawPacket</code> to be released into the {@link RawPacketPool}
      */
     private void poolRawPacket(RawPacket pkt)
     {
-        pkt.setFlags(0);
-        pkt.setLength(0);
-        pkt.setOffset(0);
-        rawPacketPool.offer(pkt);
+        pkt.release();
     }
 
     /**
@@ -588,20 +594,47 @@ public abstract class RTPConnectorInputStream<T extends Closeable> implements Pu
                 break;
             }
 
-            numberOfReceivedBytes += p.getLength();
-            try {
-                // Do the DatagramPacketFilters accept the received DatagramPacket?
-                if (accept(p)) {
-                    RawPacket[] pkts = createRawPacket(p);
-                    transferData(pkts);
-                }
-            } catch (Exception e) {
-                // The receive thread should not die as a result of a failure in
-                // the packetization (converting to RawPacket[] and transforming)
-                // or a failure in any of the DatagramPacketFilters.
-                Timber.e(e, "Failed to receive a packet: ");
+            handleReceivedPacket(p);
+        }
+    }
+
+    /**
+     * Handles a <code>DatagramPacket</code> received either by {@link #receiveThread} or by the
+     * shared {@link RTPConnectorReceiveEngine}: runs it through the <code>DatagramPacketFilter</code>s
+     * and, if accepted, makes it available for reading.
+     *
+     * @param p the received <code>DatagramPacket</code>
+     * @return <code>true</code> if this stream is to continue receiving; <code>false</code> if it is closed
+     */
+    boolean handleReceivedPacket(DatagramPacket p)
+    {
+        numberOfReceivedBytes += p.getLength();
+        try {
+            // Do the DatagramPacketFilters accept the received DatagramPacket?
+            if (accept(p)) {
+                RawPacket[] pkts = createRawPacket(p);
+                transferData(pkts);
             }
+        } catch (Exception e) {
+            // The receive thread should not die as a result of a failure in
+            // the packetization (converting to RawPacket[] and transforming)
+            // or a failure in any of the DatagramPacketFilters.
+            Timber.e(e, "Failed to receive a packet: ");
         }
+        return !closed;
+    }
+
+    /**
+     * Notifies this stream that the shared {@link RTPConnectorReceiveEngine} failed to receive from
+     * its channel and will no longer deliver packets to it.
+     *
+     * @param ioe the <code>IOException</code> which occurred
+     */
+    void receiveEngineFailed(IOException ioe)
+    {
+        if (!closed)
+            Timber.w(ioe, "Failed to receive through the RTP receive engine.");
+        ioError = true;
     }
 
     /**
@@ -656,7 +689,7 @@ public abstract class RTPConnectorInputStream<T extends Closeable> implements Pu
      *
      * @param pkts the set of <code>RawPacket</code>s to push out of this <code>PushSourceStream</code>
      */
-    private void transferData(RawPacket[] pkts)
+    protected void transferData(RawPacket[] pkts)
     {
         for (int i = 0; i < pkts.length; i++) {
             RawPacket pkt = pkts[i];
@@ -11,6 +11,7 @@ import org.atalk.android.plugin.timberlog.TimberLog;
 import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.RawPacket;
+import org.atalk.service.neomedia.RawPacketPool;
 import org.atalk.util.ConfigUtils;
 import org.ice4j.util.QueueStatistics;
 import org.ice4j.util.RateStatistics;
@@ -18,11 +19,11 @@ import org.ice4j.util.RateStatistics;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.LockSupport;
 
@@ -70,6 +71,24 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
      */
     private static final boolean USE_SEND_THREAD;
 
+    /**
+     * The flag which controls whether the send thread drains the packets queued by
+     * {@link #write(byte[], int, int)} in batches (e.g. all the packets of a video frame) which are
+     * transformed through a single {@link #transform(RawPacket[], Object)} call and sent in one burst;
+     * instead of one packet at a time.
+     */
+    private static final boolean BATCH_SEND;
+
+    /**
+     * The name of the property which controls the value of {@link #BATCH_SEND}.
+     */
+    private static final String BATCH_SEND_PNAME = RTPConnectorOutputStream.class.getName() + ".BATCH_SEND";
+
+    /**
+     * The maximum number of queued packets the send thread processes as one batch.
+     */
+    private static final int MAX_BATCH_SIZE = 32;
+
     /**
      * The name of the property which controls the value of {@link #USE_SEND_THREAD}.
      */
@@ -98,6 +117,7 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
 
         // Set USE_SEND_THREAD
         USE_SEND_THREAD = ConfigUtils.getBoolean(cfg, USE_SEND_THREAD_PNAME, true);
+        BATCH_SEND = USE_SEND_THREAD && ConfigUtils.getBoolean(cfg, BATCH_SEND_PNAME, false);
         POOL_CAPACITY = ConfigUtils.getInt(cfg, POOL_CAPACITY_PNAME, 100);
         AVERAGE_BITRATE_WINDOW_MS = ConfigUtils.getInt(cfg, AVERAGE_BITRATE_WINDOW_MS_PNAME, 5000);
 
@@ -149,12 +169,6 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
      */
     private int numDroppedPackets = 0;
 
-    /**
-     * The pool of <code>RawPacket</code> instances which reduces the number of allocations performed by
-     * {@link #packetize(byte[], int, int, Object)}.
-     */
-    private final LinkedBlockingQueue<RawPacket> rawPacketPool = new LinkedBlockingQueue<>(POOL_CAPACITY);
-
     /**
      * Stream targets' IP addresses and ports.
      */
@@ -219,7 +233,9 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
      * Returns an array of one or more elements, with the created <code>RawPacket</code> as its first
      * element (and <code>null</code> for all other elements)
      *
-     * Allows extenders to intercept the array and possibly filter and/or modify it.
+     * Allows extenders to intercept the array and possibly filter and/or modify it. The packets are
+     * then passed to {@link #transform(RawPacket[], Object)}, one at a time or, in batch mode, together
+     * with the packets of the other buffers of the batch.
      *
      * @param buf the packet data to be sent to the targets of this instance. The contents of
      * {@code buf} starting at {@code off} with the specified {@code len} is copied into the
@@ -234,33 +250,24 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
     protected RawPacket[] packetize(byte[] buf, int off, int len, Object context)
     {
         RawPacket[] pkts = new RawPacket[1];
-        RawPacket pkt = rawPacketPool.poll();
-        byte[] pktBuffer;
 
-        if (pkt == null) {
-            pktBuffer = new byte[len];
-            pkt = new RawPacket();
-        }
-        else {
-            pktBuffer = pkt.getBuffer();
-        }
-
-        if (pktBuffer.length < len) {
-            /*
-             * XXX It may be argued that if the buffer length is insufficient once, it will be
-             * insufficient more than once. That is why we recreate it without returning a packet to
-             * the pool.
-             */
-            pktBuffer = new byte[len];
-        }
-
-        pkt.setBuffer(pktBuffer);
-        pkt.setFlags(0);
-        pkt.setLength(len);
-        pkt.setOffset(0);
+        // The packet is drawn from the shared RawPacketPool and released into it by send().
+        pkts[0] = RawPacketPool.copyOf(buf, off, len);
+        return pkts;
+    }
 
-        System.arraycopy(buf, off, pktBuffer, 0, len);
-        pkts[0] = pkt;
+    /**
+     * Transforms the packets created by {@link #packetize(byte[], int, int, Object)} before they are
+     * sent. It is called on every send path; the send thread calls it once for a whole batch of packets
+     * when {@link #BATCH_SEND} is enabled. The implementation of {@code RTPConnectorOutputStream}
+     * returns {@code pkts}.
+     *
+     * @param pkts the packets to transform
+     * @param context the {@code Object} provided to {@link #write(byte[], int, int, java.lang.Object)}
+     * @return the transformed packets
+     */
+    protected RawPacket[] transform(RawPacket[] pkts, Object context)
+    {
         return pkts;
     }
 
@@ -323,7 +330,7 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
     private boolean send(RawPacket packet)
     {
         if (!isSocketValid()) {
-            rawPacketPool.offer(packet);
+            packet.release();
             return false;
         }
 
@@ -332,14 +339,14 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
             try {
                 sendToTarget(packet, target);
             } catch (IOException ioe) {
-                rawPacketPool.offer(packet);
+                packet.release();
                 // too many msg hangs the system, show only once per 100
                 if ((numberOfPackets % 100) == 0)
                     Timber.w("Failed to send 100 packets to target %s: %s", target, ioe.getMessage());
                 return false;
             }
         }
-        rawPacketPool.offer(packet);
+        packet.release();
         return true;
     }
 
@@ -443,7 +450,7 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
     private int syncWrite(byte[] buf, int off, int len, Object context)
     {
         int result = -1;
-        RawPacket[] pkts = packetize(buf, off, len, context);
+        RawPacket[] pkts = packetizeAndTransform(buf, off, len, context);
         if (pkts != null) {
             if (write(pkts)) {
                 result = len;
@@ -455,6 +462,44 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
         return result;
     }
 
+    /**
+     * Packetizes a specific <code>byte[]</code> buffer through {@link #packetize(byte[], int, int, Object)}
+     * and transforms the resulting packets through {@link #transform(RawPacket[], Object)}.
+     *
+     * @param buf the packet data
+     * @param off the offset of the packet data in <code>buf</code>
+     * @param len the length of the packet data in <code>buf</code>
+     * @param context the {@code Object} provided to {@link #write(byte[], int, int, java.lang.Object)}
+     * @return the packets to send, or <code>null</code> if there is nothing to send
+     */
+    private RawPacket[] packetizeAndTransform(byte[] buf, int off, int len, Object context)
+    {
+        RawPacket[] pkts = packetize(buf, off, len, context);
+        if (pkts == null)
+            return null;
+
+        try {
+            return transform(pkts, context);
+        } catch (RuntimeException e) {
+            // The packets will not be sent: return them to the RawPacketPool.
+            release(pkts);
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the non-<code>null</code> packets of a specific array into the <code>RawPacketPool</code>.
+     *
+     * @param pkts the packets which will not be sent
+     */
+    private static void release(RawPacket[] pkts)
+    {
+        for (RawPacket pkt : pkts) {
+            if (pkt != null)
+                pkt.release();
+        }
+    }
+
     /**
      * Implements {@link OutputDataStream#write(byte[], int, int)}. Allows extenders to provide a context
      * {@code Object} to invoked overridable methods such as {@link #packetize(byte[], int, int, Object)}.
@@ -519,7 +564,7 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
                     }
                 }
                 else {
-                    rawPacketPool.offer(pkt);
+                    pkt.release();
                 }
             }
         }
@@ -587,6 +632,21 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
          */
         QueueStatistics queueStats = null;
 
+        /**
+         * The {@link Buffer}s of the batch being processed by {@link #sendThread}.
+         */
+        private final List<Buffer> batch = new ArrayList<>(MAX_BATCH_SIZE);
+
+        /**
+         * The packets of the run of {@link #batch} being packetized by {@link #sendThread}.
+         */
+        private final List<RawPacket> batchPkts = new ArrayList<>(MAX_BATCH_SIZE);
+
+        /**
+         * The array used to send a paced batch one packet at a time.
+         */
+        private final RawPacket[] singlePacket = new RawPacket[1];
+
         /**
          * Initializes a new {@link Queue} instance and starts its send thread.
          */
@@ -688,6 +748,24 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
                     if (buffer == null) {
                         continue;
                     }
+                    if (BATCH_SEND) {
+                        batch.add(buffer);
+                        queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                        if (queueStats != null) {
+                            long now = System.currentTimeMillis();
+                            for (int i = 0; i < batch.size(); i++)
+                                queueStats.remove(now);
+                        }
+                        try {
+                            sendBatch();
+                        } finally {
+                            for (Buffer b : batch)
+                                pool.offer(b);
+                            batch.clear();
+                        }
+                        continue;
+                    }
+
                     if (queueStats != null) {
                         queueStats.remove(System.currentTimeMillis());
                     }
@@ -696,7 +774,7 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
                         // We will sooner or later process the Buffer. Since this
                         // may take a non-negligible amount of time, do it
                         // before taking pacing into account.
-                        pkts = packetize(buffer.buf, 0, buffer.len, buffer.context);
+                        pkts = packetizeAndTransform(buffer.buf, 0, buffer.len, buffer.context);
                     } catch (Exception e) {
                         // The sending thread must not die because of a failure
                         // in the conversion to RawPacket[] or any of the
@@ -707,32 +785,111 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
                         pool.offer(buffer);
                     }
 
-                    if (perNanos > 0 && maxBuffers > 0) {
-                        long time = System.nanoTime();
-                        long nanosRemainingTime = time - intervalStartTimeNanos;
-
-                        if (nanosRemainingTime >= perNanos) {
-                            intervalStartTimeNanos = time;
-                            buffersProcessedInCurrentInterval = 0;
-                        }
-                        else if (buffersProcessedInCurrentInterval >= maxBuffers) {
-                            LockSupport.parkNanos(nanosRemainingTime);
-                        }
-                    }
-
+                    pace();
                     try {
                         RTPConnectorOutputStream.this.write(pkts);
                     } catch (Exception e) {
                         Timber.e(e, "Failed to send a packet.");
-                        continue;
                     }
-                    buffersProcessedInCurrentInterval++;
                 }
             } finally {
                 queue.clear();
             }
         }
 
+        /**
+         * Packetizes each of the {@link Buffer}s of {@link #batch} through
+         * {@link RTPConnectorOutputStream#packetize(byte[], int, int, Object)}, transforms the packets
+         * of each run of them with the same context through a single
+         * {@link RTPConnectorOutputStream#transform(RawPacket[], Object)} call and sends the resulting
+         * packets; in one burst unless pacing is enabled.
+         */
+        private void sendBatch()
+        {
+            int size = batch.size();
+            int end;
+            for (int start = 0; start < size; start = end) {
+                Object context = batch.get(start).context;
+                end = start + 1;
+                while (end < size && batch.get(end).context == context)
+                    end++;
+
+                for (int i = start; i < end; i++) {
+                    Buffer buffer = batch.get(i);
+                    try {
+                        RawPacket[] bufferPkts = packetize(buffer.buf, 0, buffer.len, context);
+                        if (bufferPkts != null) {
+                            for (RawPacket pkt : bufferPkts) {
+                                if (pkt != null)
+                                    batchPkts.add(pkt);
+                            }
+                        }
+                    } catch (Exception e) {
+                        Timber.e(e, "Failed to handle an outgoing packet.");
+                    }
+                }
+                if (batchPkts.isEmpty())
+                    continue;
+
+                RawPacket[] packetized = batchPkts.toArray(new RawPacket[0]);
+                batchPkts.clear();
+                RawPacket[] pkts;
+                try {
+                    pkts = transform(packetized, context);
+                } catch (Exception e) {
+                    Timber.e(e, "Failed to handle outgoing packets.");
+                    release(packetized);
+                    continue;
+                }
+                if (pkts == null)
+                    continue;
+
+                try {
+                    if (perNanos > 0 && maxBuffers > 0) {
+                        for (int i = 0; i < pkts.length; i++) {
+                            if (pkts[i] == null)
+                                continue;
+                            pace();
+                            singlePacket[0] = pkts[i];
+                            pkts[i] = null;
+                            RTPConnectorOutputStream.this.write(singlePacket);
+                        }
+                    }
+                    else {
+                        RTPConnectorOutputStream.this.write(pkts);
+                    }
+                } catch (Exception e) {
+                    Timber.e(e, "Failed to send packets.");
+                } finally {
+                    singlePacket[0] = null;
+                }
+            }
+        }
+
+        /**
+         * Waits, if a pacing policy is configured, until one more {@link Buffer} (or packet) may be
+         * sent in the current <code>perNanos</code> interval.
+         */
+        private void pace()
+        {
+            if (perNanos <= 0 || maxBuffers <= 0)
+                return;
+
+            long time = System.nanoTime();
+            long nanosElapsed = time - intervalStartTimeNanos;
+
+            if (nanosElapsed >= perNanos) {
+                intervalStartTimeNanos = time;
+                buffersProcessedInCurrentInterval = 0;
+            }
+            else if (buffersProcessedInCurrentInterval >= maxBuffers) {
+                LockSupport.parkNanos(perNanos - nanosElapsed);
+                intervalStartTimeNanos = System.nanoTime();
+                buffersProcessedInCurrentInterval = 0;
+            }
+            buffersProcessedInCurrentInterval++;
+        }
+
         public void setMaxPacketsPerMillis(int maxPackets, long perMillis)
         {
             if (maxPackets < 1) {
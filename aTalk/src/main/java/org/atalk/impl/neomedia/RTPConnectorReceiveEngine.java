@@ -0,0 +1,389 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia;
+
+import net.sf.fmj.media.util.MediaThread;
+
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.service.neomedia.DefaultStreamConnector;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import timber.log.Timber;
+
+/**
+ * A selector based receive engine which multiplexes the <code>DatagramChannel</code>s of all
+ * <code>RTPConnectorInputStream</code>s (of all <code>MediaStreamImpl</code> instances) onto a small
+ * fixed pool of threads instead of dedicating a blocking receive thread to each socket. Received
+ * datagrams are handed back to their <code>RTPConnectorInputStream</code> which runs them through
+ * its <code>DatagramPacketFilter</code>s and transform path exactly like its own receive thread would.
+ * <p>
+ * The engine is optional and disabled by default. Only streams whose socket is backed by a
+ * <code>DatagramChannel</code> may be registered; all others keep using their own receive thread.
+ *
+ * @author Eng Chong Meng
+ */
+public class RTPConnectorReceiveEngine
+{
+    /**
+     * The name of the <code>ConfigurationService</code> property which enables the shared selector
+     * based receive engine. It is the property which makes <code>DefaultStreamConnector</code> create
+     * the <code>DatagramChannel</code> backed sockets the engine selects on.
+     */
+    public static final String ENABLED_PNAME = DefaultStreamConnector.DATAGRAM_CHANNEL_PROPERTY_NAME;
+
+    /**
+     * The name of the <code>ConfigurationService</code> property which specifies the number of
+     * selector threads of the receive engine.
+     */
+    public static final String THREAD_COUNT_PNAME = RTPConnectorReceiveEngine.class.getName() + ".THREAD_COUNT";
+
+    /**
+     * The maximum number of datagrams read from a single channel before the selector thread moves
+     * on to the next ready channel, so that a busy video stream cannot starve the others.
+     */
+    private static final int MAX_RECEIVES_PER_SELECT = 32;
+
+    /**
+     * The single instance of the receive engine, created on demand.
+     */
+    private static RTPConnectorReceiveEngine instance;
+
+    /**
+     * Determines whether the shared receive engine is enabled in the <code>ConfigurationService</code>.
+     *
+     * @return <code>true</code> if the shared receive engine is to be used; otherwise, <code>false</code>
+     */
+    public static boolean isEnabled()
+    {
+        ConfigurationService cfg = LibJitsi.getConfigurationService();
+        return (cfg != null) && cfg.getBoolean(ENABLED_PNAME, false);
+    }
+
+    /**
+     * Gets the shared receive engine.
+     *
+     * @return the shared <code>RTPConnectorReceiveEngine</code> or <code>null</code> if it is disabled
+     */
+    public static synchronized RTPConnectorReceiveEngine getInstance()
+    {
+        if (instance == null && isEnabled()) {
+            ConfigurationService cfg = LibJitsi.getConfigurationService();
+            int threadCount = Math.min(2, Runtime.getRuntime().availableProcessors());
+            threadCount = cfg.getInt(THREAD_COUNT_PNAME, threadCount);
+            instance = new RTPConnectorReceiveEngine(Math.max(1, threadCount));
+        }
+        return instance;
+    }
+
+    /**
+     * The selector loops of this engine, each running in its own thread.
+     */
+    private final SelectorLoop[] loops;
+
+    /**
+     * The index used to distribute newly registered channels over {@link #loops}.
+     */
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    /**
+     * Initializes a new <code>RTPConnectorReceiveEngine</code> instance.
+     *
+     * @param threadCount the number of selector threads
+     */
+    private RTPConnectorReceiveEngine(int threadCount)
+    {
+        loops = new SelectorLoop[threadCount];
+    }
+
+    /**
+     * Registers a specific <code>DatagramChannel</code> to receive packets on behalf of a specific
+     * <code>RTPConnectorInputStream</code>. The channel is switched to non-blocking mode.
+     *
+     * @param channel the <code>DatagramChannel</code> to receive from
+     * @param stream the <code>RTPConnectorInputStream</code> to deliver the received packets to
+     * @return <code>true</code> if the channel was registered; <code>false</code> if the caller is to
+     * fall back to a dedicated receive thread
+     */
+    public boolean register(DatagramChannel channel, RTPConnectorInputStream<?> stream)
+    {
+        SelectorLoop loop;
+        try {
+            loop = getLoop();
+            channel.configureBlocking(false);
+        } catch (IOException ioe) {
+            Timber.w(ioe, "Failed to register channel with the RTP receive engine.");
+            return false;
+        }
+        loop.register(channel, stream);
+        return true;
+    }
+
+    /**
+     * Moves the channels of a failed <code>SelectorLoop</code> to a new one, so that their streams
+     * keep receiving.
+     *
+     * @param failedLoop the <code>SelectorLoop</code> whose selector failed
+     * @param registrations the channels registered with <code>failedLoop</code> or pending registration
+     */
+    private void rehome(SelectorLoop failedLoop, List<Registration> registrations)
+    {
+        synchronized (this) {
+            if (loops[failedLoop.index] == failedLoop)
+                loops[failedLoop.index] = null;
+        }
+        for (Registration registration : registrations) {
+            if (!registration.channel.isOpen())
+                continue;
+
+            SelectorLoop loop;
+            try {
+                loop = getLoop();
+            } catch (IOException ioe) {
+                registration.stream.receiveEngineFailed(ioe);
+                continue;
+            }
+            loop.register(registration.channel, registration.stream);
+        }
+    }
+
+    /**
+     * Gets the next <code>SelectorLoop</code> in round-robin fashion, starting it if necessary.
+     *
+     * @return the <code>SelectorLoop</code> to register the next channel with
+     * @throws IOException if a new <code>Selector</code> could not be opened
+     */
+    private synchronized SelectorLoop getLoop()
+            throws IOException
+    {
+        int index = (nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length;
+        SelectorLoop loop = loops[index];
+
+        if (loop == null) {
+            loop = new SelectorLoop(this, Selector.open(), index);
+            loops[index] = loop;
+            loop.start();
+        }
+        return loop;
+    }
+
+    /**
+     * A <code>DatagramChannel</code> and the <code>RTPConnectorInputStream</code> it receives for.
+     */
+    private static class Registration
+    {
+        final DatagramChannel channel;
+
+        final RTPConnectorInputStream<?> stream;
+
+        Registration(DatagramChannel channel, RTPConnectorInputStream<?> stream)
+        {
+            this.channel = channel;
+            this.stream = stream;
+        }
+    }
+
+    /**
+     * A <code>Thread</code> which selects over a set of <code>DatagramChannel</code>s and dispatches
+     * the received datagrams to their <code>RTPConnectorInputStream</code>s. If its selector fails,
+     * the loop ends and hands its channels over to a new loop of the engine.
+     */
+    private static class SelectorLoop extends Thread
+    {
+        /**
+         * The registrations to be performed by this thread on its next wake up. A channel may only
+         * be registered without blocking from the thread which selects.
+         */
+        private final Queue<Registration> pendingRegistrations = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The channels registered with {@link #selector}, to be moved to a new loop if it fails. Only
+         * accessed by this thread.
+         */
+        private final Map<DatagramChannel, RTPConnectorInputStream<?>> registered = new HashMap<>();
+
+        /**
+         * Whether {@link #selector} has failed and this loop has ended.
+         */
+        private volatile boolean failed = false;
+
+        /**
+         * The receive buffer shared by all channels of this loop; received data is copied out of it
+         * by {@link RTPConnectorInputStream#createRawPacket(DatagramPacket)}.
+         */
+        private final ByteBuffer receiveBuffer
+                = ByteBuffer.allocate(RTPConnectorInputStream.PACKET_RECEIVE_BUFFER_LENGTH);
+
+        /**
+         * The <code>DatagramPacket</code> which adapts {@link #receiveBuffer} to the
+         * <code>DatagramPacketFilter</code> API.
+         */
+        private final DatagramPacket packet = new DatagramPacket(receiveBuffer.array(), 0);
+
+        private final RTPConnectorReceiveEngine engine;
+
+        private final Selector selector;
+
+        private final int index;
+
+        SelectorLoop(RTPConnectorReceiveEngine engine, Selector selector, int index)
+        {
+            this.engine = engine;
+            this.selector = selector;
+            this.index = index;
+            setDaemon(true);
+            setName(RTPConnectorReceiveEngine.class.getName() + ".selectorThread-" + index);
+            RTPConnectorInputStream.setThreadPriority(this, MediaThread.getNetworkPriority());
+        }
+
+        /**
+         * Schedules the registration of a channel with the <code>Selector</code> of this loop.
+         *
+         * @param channel the <code>DatagramChannel</code> to register
+         * @param stream the <code>RTPConnectorInputStream</code> to attach to the registration
+         */
+        void register(DatagramChannel channel, RTPConnectorInputStream<?> stream)
+        {
+            pendingRegistrations.add(new Registration(channel, stream));
+            if (failed)
+                rehomePendingRegistrations();
+            else
+                selector.wakeup();
+        }
+
+        /**
+         * Moves the registrations still pending on this failed loop to a new loop.
+         */
+        private void rehomePendingRegistrations()
+        {
+            List<Registration> registrations = new ArrayList<>();
+            Registration registration;
+            while ((registration = pendingRegistrations.poll()) != null)
+                registrations.add(registration);
+            if (!registrations.isEmpty())
+                engine.rehome(this, registrations);
+        }
+
+        /**
+         * Performs a pending registration on this thread.
+         *
+         * @param registration the channel to register with {@link #selector}
+         */
+        private void register(Registration registration)
+        {
+            try {
+                registration.channel.register(selector, SelectionKey.OP_READ, registration.stream);
+                registered.put(registration.channel, registration.stream);
+            } catch (ClosedChannelException cce) {
+                Timber.d("Channel closed before registration with the RTP receive engine.");
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                while (true) {
+                    Registration registration;
+                    while ((registration = pendingRegistrations.poll()) != null)
+                        register(registration);
+
+                    selector.select();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        if (key.isValid() && key.isReadable())
+                            receive(key);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                Timber.e(e, "RTP receive engine selector failed; moving its channels to a new selector.");
+            }
+
+            List<Registration> registrations = new ArrayList<>();
+            for (Map.Entry<DatagramChannel, RTPConnectorInputStream<?>> entry : registered.entrySet())
+                registrations.add(new Registration(entry.getKey(), entry.getValue()));
+            registered.clear();
+            try {
+                // Deregisters the channels, which may then be registered with another selector.
+                selector.close();
+            } catch (IOException ioe) {
+                Timber.w(ioe, "Failed to close the RTP receive engine selector.");
+            }
+            engine.rehome(this, registrations);
+
+            // Registrations made before the failure was known; later ones are moved by register().
+            failed = true;
+            rehomePendingRegistrations();
+        }
+
+        /**
+         * Reads the datagrams available on the channel of a specific <code>SelectionKey</code> and
+         * hands them to the attached <code>RTPConnectorInputStream</code>.
+         *
+         * @param key the <code>SelectionKey</code> which is ready for reading
+         */
+        private void receive(SelectionKey key)
+        {
+            DatagramChannel channel = (DatagramChannel) key.channel();
+            RTPConnectorInputStream<?> stream = (RTPConnectorInputStream<?>) key.attachment();
+
+            for (int i = 0; i < MAX_RECEIVES_PER_SELECT; i++) {
+                SocketAddress sender;
+
+                receiveBuffer.clear();
+                try {
+                    sender = channel.receive(receiveBuffer);
+                } catch (IOException ioe) {
+                    cancel(key);
+                    stream.receiveEngineFailed(ioe);
+                    return;
+                }
+                if (sender == null)
+                    break;
+
+                // Reset the packet, because a DatagramPacketFilter might have changed it.
+                packet.setData(receiveBuffer.array(), 0, receiveBuffer.position());
+                packet.setSocketAddress(sender);
+                if (!stream.handleReceivedPacket(packet)) {
+                    cancel(key);
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Stops receiving on the channel of a specific <code>SelectionKey</code>.
+         *
+         * @param key the <code>SelectionKey</code> to cancel
+         */
+        private void cancel(SelectionKey key)
+        {
+            key.cancel();
+            registered.remove(key.channel());
+        }
+    }
+}
@@ -10,6 +10,7 @@ import org.atalk.impl.neomedia.transform.TransformInputStream;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.nio.channels.DatagramChannel;
 
 /**
  * RTPConnectorInputStream implementation for UDP protocol.
@@ -42,6 +43,17 @@ public class RTPConnectorUDPInputStream extends TransformInputStream<DatagramSoc
         socket.receive(p);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Returns the <code>DatagramChannel</code> of the UDP socket, if the socket was created by one.
+     */
+    @Override
+    protected DatagramChannel getDatagramChannel()
+    {
+        return socket.getChannel();
+    }
+
     @Override
     protected void setReceiveBufferSize(int receiveBufferSize)
             throws IOException
@@ -11,6 +11,10 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import timber.log.Timber;
 
 /**
  * RTPConnectorOutputStream implementation for UDP protocol.
@@ -24,6 +28,12 @@ public class RTPConnectorUDPOutputStream extends RTPConnectorOutputStream
      */
     private final DatagramSocket socket;
 
+    /**
+     * The number of packets dropped because the send buffer of the non-blocking channel of
+     * {@link #socket} was full.
+     */
+    private int numDroppedPackets = 0;
+
     /**
      * Initializes a new <code>RTPConnectorUDPOutputStream</code>.
      *
@@ -47,6 +57,23 @@ public class RTPConnectorUDPOutputStream extends RTPConnectorOutputStream
     protected void sendToTarget(RawPacket packet, InetSocketAddress target)
             throws IOException
     {
+        /*
+         * A socket whose channel is selected on by the RTPConnectorReceiveEngine is in non-blocking
+         * mode and cannot be sent through with DatagramSocket#send. Sending through the channel also
+         * saves the DatagramPacket (and its lock) per packet on the batched send path.
+         */
+        DatagramChannel channel = socket.getChannel();
+        if (channel != null) {
+            // A non-blocking channel sends nothing rather than wait for room in the send buffer.
+            if (channel.send(ByteBuffer.wrap(packet.getBuffer(), packet.getOffset(), packet.getLength()), target) == 0) {
+                numDroppedPackets++;
+                if (logDroppedPacket(numDroppedPackets)) {
+                    Timber.w("Packets dropped on a full socket send buffer (hashCode = %s): %s",
+                            hashCode(), numDroppedPackets);
+                }
+            }
+            return;
+        }
         socket.send(new DatagramPacket(packet.getBuffer(), packet.getOffset(), packet.getLength(),
                 target.getAddress(), target.getPort()));
     }
@@ -39,18 +39,33 @@ public class AudioLevelCalculator
 	 */
 	public static byte calculateAudioLevel(byte[] samples, int offset, int length)
 	{
-		double rms = 0; // root mean square (RMS) amplitude
+		long energy = 0;
+		int end = offset + length - 1;
 
-		for (; offset < length; offset += 2) {
-			double sample = ArrayIOUtils.readShort(samples, offset);
+		for (; offset < end; offset += 2) {
+			int sample = ArrayIOUtils.readShort(samples, offset);
 
-			sample /= Short.MAX_VALUE;
-			rms += sample * sample;
+			energy += sample * sample;
 		}
+		return calculateAudioLevel(energy, length / 2);
+	}
 
-		int sampleCount = length / 2;
-		rms = (sampleCount == 0) ? 0 : Math.sqrt(rms / sampleCount);
-
+	/**
+	 * Calculates the audio level of a 16-bit signal from its energy i.e. the sum of the squares of
+	 * its samples, allowing callers which already iterate over the samples (e.g. the audio mixer) to
+	 * measure the audio level in the same pass.
+	 *
+	 * @param energy
+	 * 		the sum of the squares of the samples of the signal
+	 * @param sampleCount
+	 * 		the number of samples of the signal
+	 * @return the audio level of the specified signal
+	 */
+	public static byte calculateAudioLevel(long energy, int sampleCount)
+	{
+		// root mean square (RMS) amplitude
+		double rms = (sampleCount <= 0)
+				? 0 : Math.sqrt((double) energy / sampleCount) / Short.MAX_VALUE;
 		double db;
 
 		if (rms > 0) {
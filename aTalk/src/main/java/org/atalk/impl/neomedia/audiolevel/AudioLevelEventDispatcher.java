@@ -53,6 +53,12 @@ public class AudioLevelEventDispatcher {
      */
     private SimpleAudioLevelListener listener;
 
+    /**
+     * The audio level in -dBov already measured by the provider of the media, to be dispatched
+     * instead of calculating it from {@link #data}; <code>-1</code> if there is none.
+     */
+    private int measuredLevel = -1;
+
     /**
      * The SSRC of the stream we are measuring that we should use as a key for entries of the
      * levelMap level cache.
@@ -96,6 +102,7 @@ public class AudioLevelEventDispatcher {
 
             byte[] data;
             int dataLength;
+            int measuredLevel;
 
             synchronized (this) {
                 if (!Thread.currentThread().equals(thread))
@@ -112,11 +119,12 @@ public class AudioLevelEventDispatcher {
 
                 data = this.data;
                 dataLength = this.dataLength;
+                measuredLevel = this.measuredLevel;
                 /*
                  * If there is no data to calculate the audio level of, wait for such data to be
                  * provided.
                  */
-                if ((data == null) || (dataLength < 1)) {
+                if (((data == null) || (dataLength < 1)) && (measuredLevel == -1)) {
                     // The current thread is idle.
                     if (idleTimeoutStart == -1)
                         idleTimeoutStart = System.currentTimeMillis();
@@ -138,11 +146,13 @@ public class AudioLevelEventDispatcher {
                 // The values of data and dataLength seem valid so consume them.
                 this.data = null;
                 this.dataLength = 0;
+                this.measuredLevel = -1;
                 // The current thread is no longer idle.
                 idleTimeoutStart = -1;
             }
 
-            int level = AudioLevelCalculator.calculateAudioLevel(data, 0, dataLength);
+            int level = (measuredLevel != -1)
+                    ? measuredLevel : AudioLevelCalculator.calculateAudioLevel(data, 0, dataLength);
 
             // FIXME The audio level is expressed in -dBov.
             level = AudioLevelCalculator.MIN_AUDIO_LEVEL - level;
@@ -152,7 +162,7 @@ public class AudioLevelEventDispatcher {
              * which we have just calculated the audio level of.
              */
             synchronized (this) {
-                if ((this.data == null) && (this.listener == null)
+                if ((this.data == null) && (data != null) && (this.listener == null)
                         && ((this.cache == null) || (this.ssrc == -1))) {
                     this.data = data;
                 }
@@ -197,6 +207,26 @@ public class AudioLevelEventDispatcher {
         }
     }
 
+    /**
+     * Adds an audio level already measured by the caller, e.g. by the audio mixer in the same pass in
+     * which it mixes the audio, to be dispatched without calculating it from data again.
+     *
+     * @param audioLevel the audio level in -dBov as defined by RFC 6465
+     */
+    public synchronized void addLevel(byte audioLevel) {
+        /*
+         * If no one is interested in the audio level, do not even add it.
+         */
+        if ((listener == null) && ((cache == null) || (ssrc == -1)))
+            return;
+
+        measuredLevel = audioLevel;
+        if (thread == null)
+            startThread();
+        else
+            notify();
+    }
+
     /**
      * Sets the new listener that will be gathering all events from this dispatcher.
      *
@@ -233,7 +263,7 @@ public class AudioLevelEventDispatcher {
             thread = null;
             notify();
         }
-        else if ((data != null) && (dataLength > 0)) {
+        else if (((data != null) && (dataLength > 0)) || (measuredLevel != -1)) {
             if (thread == null)
                 startThread();
             else
@@ -260,8 +290,7 @@ public class AudioLevelEventDispatcher {
                          */
                         if ((thread == null)
                                 && ((listener != null) || ((cache != null) && (ssrc != -1)))
-                                && (data != null)
-                                && (dataLength > 0))
+                                && (((data != null) && (dataLength > 0)) || (measuredLevel != -1)))
                             startThread();
                     }
                 }
@@ -10,6 +10,7 @@ import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.codec.Constants;
 import org.atalk.service.neomedia.control.PacketLossAwareEncoder;
+import org.atalk.util.ConfigUtils;
 
 import java.awt.Component;
 
@@ -142,12 +143,12 @@ public class JavaEncoder extends AbstractCodec2 implements PacketLossAwareEncode
         ConfigurationService cfg = LibJitsi.getConfigurationService();
         // TODO: we should have a default value dependent on the SDP parameters
         // here.
-        useFec = cfg.getBoolean(Constants.PROP_SILK_FEC, true);
-        alwaysAssumePacketLoss = cfg.getBoolean(Constants.PROP_SILK_ASSUME_PL, true);
+        useFec = ConfigUtils.getBoolean(cfg, Constants.PROP_SILK_FEC, true);
+        alwaysAssumePacketLoss = ConfigUtils.getBoolean(cfg, Constants.PROP_SILK_ASSUME_PL, true);
 
         // Update the statically defined value for "speech activity threshold"
         // according to our configuration
-        String satStr = cfg.getString(Constants.PROP_SILK_FEC_SAT, "0.5");
+        String satStr = ConfigUtils.getString(cfg, Constants.PROP_SILK_FEC_SAT, "0.5");
         float sat = DefineFLP.LBRR_SPEECH_ACTIVITY_THRES;
         if ((satStr != null) && (satStr.length() != 0)) {
             try {
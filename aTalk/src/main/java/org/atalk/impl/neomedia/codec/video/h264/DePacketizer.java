@@ -226,8 +226,7 @@ public class DePacketizer extends AbstractCodec2
             octet = 0; // Ignored later on.
         }
 
-        byte[] out = validateByteArraySize(
-                outBuffer, outBuffer.getOffset() + newOutLength + outputPaddingSize, true);
+        byte[] out = growOutput(outBuffer, outBuffer.getOffset() + newOutLength + outputPaddingSize);
 
         if (start_bit) {
             // Copy in the NAL start sequence and the (reconstructed) octet.
@@ -269,8 +268,7 @@ public class DePacketizer extends AbstractCodec2
 
         int outOffset = outBuffer.getOffset();
         int newOutLength = NAL_PREFIX.length + inLength;
-        byte[] out = validateByteArraySize(
-                outBuffer, outOffset + newOutLength + outputPaddingSize, true);
+        byte[] out = growOutput(outBuffer, outOffset + newOutLength + outputPaddingSize);
 
         System.arraycopy(NAL_PREFIX, 0, out, outOffset, NAL_PREFIX.length);
         outOffset += NAL_PREFIX.length;
@@ -283,6 +281,24 @@ public class DePacketizer extends AbstractCodec2
         return BUFFER_PROCESSED_OK;
     }
 
+    /**
+     * Ensures that the data of a specific output <code>Buffer</code> can hold a specific number of
+     * bytes, preserving its contents. The fragments of a NAL unit are appended in place to the
+     * output, so the array grows geometrically rather than by one fragment at a time, and is kept
+     * by the <code>Buffer</code> for the following NAL units.
+     *
+     * @param outBuffer the output <code>Buffer</code>
+     * @param size the number of bytes the data of <code>outBuffer</code> must hold
+     * @return the data of <code>outBuffer</code>
+     */
+    private static byte[] growOutput(Buffer outBuffer, int size)
+    {
+        Object data = outBuffer.getData();
+        int capacity = (data instanceof byte[]) ? ((byte[]) data).length : 0;
+
+        return validateByteArraySize(outBuffer, (capacity < size) ? Math.max(size, 2 * capacity) : size, true);
+    }
+
     /**
      * Close the <code>Codec</code>.
      */
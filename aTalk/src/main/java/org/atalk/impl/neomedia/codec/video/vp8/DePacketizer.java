@@ -12,14 +12,6 @@ import org.atalk.service.neomedia.codec.Constants;
 import org.atalk.util.ByteArrayBuffer;
 import org.atalk.util.RTPUtils;
 
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Queue;
-import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.concurrent.ArrayBlockingQueue;
-
 import javax.media.Buffer;
 import javax.media.ResourceUnavailableException;
 import javax.media.format.VideoFormat;
@@ -32,7 +24,9 @@ import timber.log.Timber;
  * See {@link "https://tools.ietf.org/html/draft-ietf-payload-vp8-17"}
  *
  * Stores the RTP payloads (VP8 payload descriptor stripped) from RTP packets belonging to a
- * single VP8 compressed frame. Maps an RTP sequence number to a buffer which contains the payload.
+ * single VP8 compressed frame. Maps an RTP sequence number to a buffer which contains the payload,
+ * in a ring of slots indexed by the sequence number, so that the reordering and the loss detection
+ * need no per-packet allocation; the buffers of the slots are reused from frame to frame.
  *
  * @author Boris Grozev
  * @author George Politis
@@ -40,18 +34,30 @@ import timber.log.Timber;
  */
 public class DePacketizer extends AbstractCodec2
 {
-    private final SortedMap<Integer, Container> data = new TreeMap<>(RTPUtils.sequenceNumberComparator);
+    /**
+     * The number of slots of {@link #data}, i.e. the maximum span of sequence numbers of a VP8
+     * compressed frame. Must be a power of two.
+     */
+    private static final int SLOT_COUNT = 512;
 
     /**
-     * Stores unused <code>Container</code>'s.
+     * The <code>Container</code>s of the packets of the current frame, at the index of their sequence
+     * number modulo {@link #SLOT_COUNT}. A slot holds a packet of the current frame only if the
+     * sequence number of its <code>Container</code> matches.
      */
-    private final Queue<Container> free = new ArrayBlockingQueue<>(100);
+    private final Container[] data = new Container[SLOT_COUNT];
 
     /**
-     * Stores the first (earliest) sequence number stored in <code>data</code>, or -1 if <code>data</code> is empty.
+     * Stores the first (earliest) sequence number of the current frame, or -1 if <code>data</code> is empty.
      */
     private int firstSeq = -1;
 
+    /**
+     * Stores the earliest sequence number stored in <code>data</code>, or -1 if <code>data</code> is
+     * empty. May precede {@link #firstSeq} when the latter has been re-synced.
+     */
+    private int earliestSeq = -1;
+
     /**
      * Stores the last (latest) sequence number stored in <code>data</code>, or -1 if <code>data</code> is empty.
      */
@@ -136,20 +142,34 @@ public class DePacketizer extends AbstractCodec2
      */
     private void reinit()
     {
-        firstSeq = lastSeq = -1;
+        if (earliestSeq != -1) {
+            for (int s = earliestSeq; ; s = (s + 1) & 0xffff) {
+                Container container = data[s & (SLOT_COUNT - 1)];
+                if (container != null && container.seq == s)
+                    container.seq = -1;
+                if (s == lastSeq)
+                    break;
+            }
+        }
+
+        firstSeq = earliestSeq = lastSeq = -1;
         timestamp = -1L;
         pictureId = -1;
         empty = true;
         haveEnd = haveStart = false;
         frameLength = 0;
+    }
 
-        Iterator<Map.Entry<Integer, Container>> it = data.entrySet().iterator();
-        Map.Entry<Integer, Container> e;
-        while (it.hasNext()) {
-            e = it.next();
-            free.offer(e.getValue());
-            it.remove();
-        }
+    /**
+     * Gets the <code>Container</code> of the packet with a specific sequence number if it is stored in <code>data</code>.
+     *
+     * @param seq the RTP sequence number
+     * @return the <code>Container</code> of the packet with sequence number <code>seq</code> or <code>null</code>
+     */
+    private Container getContainer(int seq)
+    {
+        Container container = data[seq & (SLOT_COUNT - 1)];
+        return (container != null && container.seq == seq) ? container : null;
     }
 
     /**
@@ -172,10 +192,9 @@ public class DePacketizer extends AbstractCodec2
      */
     private boolean haveMissing()
     {
-        Set<Integer> seqs = data.keySet();
         int s = firstSeq;
         while (s != lastSeq) {
-            if (!seqs.contains(s))
+            if (getContainer(s) == null)
                 return true;
             s = (s + 1) & 0xffff;
         }
@@ -255,27 +274,44 @@ public class DePacketizer extends AbstractCodec2
         }
 
         // add to this.data
-        Container container = free.poll();
-        if (container == null)
-            container = new Container();
-        if (container.buf == null || container.buf.length < inPayloadLength)
-            container.buf = new byte[inPayloadLength];
-
-        if (data.get(inSeq) != null) {
+        if (getContainer(inSeq) != null) {
             Timber.i("(Probable) duplicate packet detected, discarding %s", inSeq);
             outBuffer.setDiscard(true);
             return BUFFER_PROCESSED_OK;
         }
 
+        if (!empty) {
+            int earliest = (RTPUtils.sequenceNumberComparator.compare(inSeq, earliestSeq) < 0) ? inSeq : earliestSeq;
+            int latest = (RTPUtils.sequenceNumberComparator.compare(inSeq, lastSeq) > 0) ? inSeq : lastSeq;
+
+            // The slots of the packets would collide; the held frame is beyond repair anyway.
+            if (((latest - earliest) & 0xffff) >= SLOT_COUNT) {
+                Timber.i("Discarding saved packets spanning more than %s sequence numbers: %s; %s",
+                        SLOT_COUNT, inSeq, earliestSeq);
+                reinit();
+            }
+        }
+
+        Container container = data[inSeq & (SLOT_COUNT - 1)];
+        if (container == null) {
+            container = new Container();
+            data[inSeq & (SLOT_COUNT - 1)] = container;
+        }
+        if (container.buf == null || container.buf.length < inPayloadLength)
+            container.buf = new byte[inPayloadLength];
+
         System.arraycopy(inData, inOffset + inPdSize, container.buf, 0, inPayloadLength);
         container.len = inPayloadLength;
-        data.put(inSeq, container);
+        container.seq = inSeq;
 
         // update fields
         frameLength += inPayloadLength;
         if (firstSeq == -1
                 || (RTPUtils.sequenceNumberComparator.compare(firstSeq, inSeq) > 0))
             firstSeq = inSeq;
+        if (earliestSeq == -1
+                || (RTPUtils.sequenceNumberComparator.compare(earliestSeq, inSeq) > 0))
+            earliestSeq = inSeq;
         if (lastSeq == -1
                 || (RTPUtils.sequenceNumberComparator.compare(inSeq, lastSeq) > 0))
             lastSeq = inSeq;
@@ -296,11 +332,14 @@ public class DePacketizer extends AbstractCodec2
         if (frameComplete()) {
             byte[] outData = validateByteArraySize(outBuffer, frameLength, false);
             int ptr = 0;
-            Container b;
-            for (Map.Entry<Integer, Container> entry : data.entrySet()) {
-                b = entry.getValue();
-                System.arraycopy(b.buf, 0, outData, ptr, b.len);
-                ptr += b.len;
+            for (int s = earliestSeq; ; s = (s + 1) & 0xffff) {
+                Container b = getContainer(s);
+                if (b != null) {
+                    System.arraycopy(b.buf, 0, outData, ptr, b.len);
+                    ptr += b.len;
+                }
+                if (s == lastSeq)
+                    break;
             }
 
             outBuffer.setOffset(0);
@@ -836,5 +875,10 @@ public class DePacketizer extends AbstractCodec2
          * Length used.
          */
         private int len = 0;
+
+        /**
+         * The RTP sequence number of the packet held, or -1 if this <code>Container</code> is unused.
+         */
+        private int seq = -1;
     }
 }
@@ -816,6 +816,19 @@ public class AudioMixer
         return ((input instanceof AudioFormat) && input.isSameEncoding(pattern));
     }
 
+    /**
+     * Notifies this <code>AudioMixer</code> about the audio level of the media read from a specific
+     * input <code>DataSource</code>, measured in the same pass in which the media is summed for the
+     * audio mixing. Allows extenders to dispatch the audio levels without measuring the media read
+     * in {@link #read(PushBufferStream, Buffer, DataSource)} again.
+     *
+     * @param dataSource the input <code>DataSource</code> from which the measured media originated
+     * @param audioLevel the audio level in -dBov as defined by RFC 6465
+     */
+    protected void audioLevelMeasured(DataSource dataSource, byte audioLevel)
+    {
+    }
+
     /**
      * Reads media from a specific <code>PushBufferStream</code> which belongs to a specific
      * <code>DataSource</code> into a specific output <code>Buffer</code>. Allows extenders to tap into the
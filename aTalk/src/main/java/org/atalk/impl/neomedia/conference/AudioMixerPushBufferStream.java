@@ -6,10 +6,13 @@
 package org.atalk.impl.neomedia.conference;
 
 import org.atalk.android.plugin.timberlog.TimberLog;
+import org.atalk.impl.neomedia.audiolevel.AudioLevelCalculator;
 import org.atalk.impl.neomedia.control.ControlsAdapter;
 import org.atalk.impl.neomedia.protocol.CachingPushBufferStream;
 import org.atalk.impl.neomedia.protocol.StreamSubstituteBufferTransferHandler;
+import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.util.ArrayIOUtils;
+import org.atalk.util.ConfigUtils;
 
 import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
@@ -47,6 +50,20 @@ import timber.log.Timber;
  */
 class AudioMixerPushBufferStream extends ControlsAdapter implements PushBufferStream
 {
+    /**
+     * The name of the <code>ConfigurationService</code> property which specifies whether the mixes of
+     * more than two input streams are derived by subtraction from a single sum of all the input
+     * streams (mix-minus) rather than mixed anew from all the other input streams for each output
+     * stream. The former costs O(N) instead of O(N^2) per frame for N participants.
+     */
+    public static final String MIX_MINUS_PNAME = AudioMixerPushBufferStream.class.getName() + ".MIX_MINUS";
+
+    /**
+     * The value of the <code>ConfigurationService</code> property {@link #MIX_MINUS_PNAME}.
+     */
+    private static final boolean MIX_MINUS
+            = ConfigUtils.getBoolean(LibJitsi.getConfigurationService(), MIX_MINUS_PNAME, true);
+
     /**
      * The <code>AudioMixer</code> which created this <code>AudioMixerPushBufferStream</code>.
      */
@@ -128,6 +145,24 @@ class AudioMixerPushBufferStream extends ControlsAdapter implements PushBufferSt
      */
     private AudioMixingPushBufferStream[] unmodifiableOutStreams;
 
+    /**
+     * The sum of the input audio samples of the last frame in mix-minus mode. Cached in order to
+     * reduce allocations and garbage collection.
+     */
+    private int[] inSampleSum;
+
+    /**
+     * The mix-minus of one output stream being computed from {@link #inSampleSum}. Cached in order to
+     * reduce allocations and garbage collection.
+     */
+    private int[] mixMinus;
+
+    /**
+     * The mix-minus audio samples pushed to the output streams during the current frame, to be
+     * returned to {@link #shortArrayCache} once all of them have been pushed.
+     */
+    private short[][] mixMinusSamples;
+
     /**
      * Initializes a new <code>AudioMixerPushBufferStream</code> instance to output data in a specific
      * <code>AudioFormat</code> for a specific <code>AudioMixer</code>.
@@ -793,6 +828,144 @@ class AudioMixerPushBufferStream extends ControlsAdapter implements PushBufferSt
         outStream.setInSamples(inSamples, maxInSampleCount, inSampleDesc.getTimeStamp());
     }
 
+    /**
+     * Pushes to a specific <code>AudioMixingPushBufferStream</code> its mix of a specific set of input
+     * audio samples, derived from the sum of all of them by subtracting the audio samples which the
+     * <code>AudioMixingPushBufferDataSource</code> owner of the <code>AudioMixingPushBufferStream</code>
+     * has specified to not be included in its output mix. The effect is the same as
+     * {@link #setInSamples(AudioMixingPushBufferStream, InSampleDesc, int)} but the mixing is done
+     * here once per output stream with a cost independent of the number of input streams.
+     *
+     * @param outStream the <code>AudioMixingPushBufferStream</code> to push the mix to
+     * @param inSampleDesc the set of audio samples to be mixed for <code>outStream</code>
+     * @param inSampleSum the sum of all the audio samples of <code>inSampleDesc</code>
+     * @param maxInSampleCount the maximum number of audio samples available in <code>inSamples</code>
+     * @return the <code>short</code> array allocated from {@link #shortArrayCache} and pushed to
+     * <code>outStream</code>
+     */
+    private short[] setMixMinusSamples(AudioMixingPushBufferStream outStream, InSampleDesc inSampleDesc,
+            int[] inSampleSum, int maxInSampleCount)
+    {
+        short[][] inSamples = inSampleDesc.inSamples;
+        InStreamDesc[] inStreams = inSampleDesc.inStreams;
+
+        CaptureDevice captureDevice = audioMixer.captureDevice;
+        AudioMixingPushBufferDataSource outDataSource = outStream.getDataSource();
+        boolean outDataSourceIsSendingDTMF
+                = (captureDevice instanceof AudioMixingPushBufferDataSource)
+                && outDataSource.isSendingDTMF();
+        boolean outDataSourceIsMute = outDataSource.isMute();
+
+        short[] toneSignal = null;
+        int outSampleCount = maxInSampleCount;
+
+        if (outDataSourceIsSendingDTMF) {
+            for (InStreamDesc inStreamDesc : inStreams) {
+                if (inStreamDesc.inDataSourceDesc.inDataSource == captureDevice) {
+                    PushBufferStream inStream = (PushBufferStream) inStreamDesc.getInStream();
+                    AudioFormat inStreamFormat = (AudioFormat) inStream.getFormat();
+                    // Generate the inband DTMF signal.
+                    toneSignal = outDataSource.getNextToneSignal(
+                            inStreamFormat.getSampleRate(), inStreamFormat.getSampleSizeInBits());
+                    if (outSampleCount < toneSignal.length)
+                        outSampleCount = toneSignal.length;
+                    break;
+                }
+            }
+        }
+
+        int[] mix = this.mixMinus;
+        if ((mix == null) || (mix.length < outSampleCount))
+            this.mixMinus = mix = new int[outSampleCount];
+        System.arraycopy(inSampleSum, 0, mix, 0, maxInSampleCount);
+        if (outSampleCount > maxInSampleCount)
+            Arrays.fill(mix, maxInSampleCount, outSampleCount, 0);
+
+        for (int i = 0; i < inSamples.length; i++) {
+            short[] inStreamSamples = inSamples[i];
+            if (inStreamSamples == null)
+                continue;
+
+            InStreamDesc inStreamDesc = inStreams[i];
+            DataSource inDataSource = inStreamDesc.inDataSourceDesc.inDataSource;
+
+            if (((toneSignal != null) && (inDataSource == captureDevice))
+                    || outDataSource.equals(inStreamDesc.getOutDataSource())
+                    || (outDataSourceIsMute && (inDataSource == captureDevice))) {
+                AudioMixingKernel.subtract(inStreamSamples, mix,
+                        Math.min(inStreamSamples.length, maxInSampleCount));
+            }
+        }
+        if (toneSignal != null)
+            AudioMixingKernel.accumulate(toneSignal, mix, toneSignal.length);
+
+        short[] outSamples = shortArrayCache.allocateShortArray(outSampleCount);
+        AudioMixingKernel.getLimiter().limit(mix, outSamples, outSampleCount);
+
+        short[][] outStreamInSamples = outStream.mixMinusInSamples;
+        outStreamInSamples[0] = outSamples;
+        outStream.setInSamples(outStreamInSamples, outSampleCount, inSampleDesc.getTimeStamp());
+        return outSamples;
+    }
+
+    /**
+     * Sums a specific set of input audio samples into {@link #inSampleSum} and, in the same pass,
+     * measures the audio level of each of them for {@link AudioMixer#audioLevelMeasured(DataSource, byte)}.
+     *
+     * @param inSampleDesc the set of audio samples to sum
+     * @param sampleCount the maximum number of audio samples available in <code>inSamples</code>
+     * @return the sum of the audio samples of <code>inSampleDesc</code>
+     */
+    private int[] sumInSamples(InSampleDesc inSampleDesc, int sampleCount)
+    {
+        short[][] inSamples = inSampleDesc.inSamples;
+        InStreamDesc[] inStreams = inSampleDesc.inStreams;
+
+        int[] sum = this.inSampleSum;
+        if ((sum == null) || (sum.length < sampleCount))
+            this.inSampleSum = sum = new int[sampleCount];
+        else
+            Arrays.fill(sum, 0, sampleCount, 0);
+
+        for (int i = 0; i < inSamples.length; i++) {
+            short[] inStreamSamples = inSamples[i];
+
+            if (inStreamSamples != null) {
+                int count = Math.min(inStreamSamples.length, sampleCount);
+                long energy = AudioMixingKernel.accumulate(inStreamSamples, sum, count);
+
+                audioMixer.audioLevelMeasured(inStreams[i].inDataSourceDesc.inDataSource,
+                        AudioLevelCalculator.calculateAudioLevel(energy, count));
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Measures the audio level of each of a specific set of input audio samples for
+     * {@link AudioMixer#audioLevelMeasured(DataSource, byte)}, without summing them.
+     *
+     * @param inSampleDesc the set of audio samples to measure
+     * @param sampleCount the maximum number of audio samples available in <code>inSamples</code>
+     */
+    private void measureInSamples(InSampleDesc inSampleDesc, int sampleCount)
+    {
+        short[][] inSamples = inSampleDesc.inSamples;
+        InStreamDesc[] inStreams = inSampleDesc.inStreams;
+
+        for (int i = 0; i < inSamples.length; i++) {
+            short[] inStreamSamples = inSamples[i];
+
+            if (inStreamSamples != null) {
+                int count = Math.min(inStreamSamples.length, sampleCount);
+                long energy = AudioMixingKernel.energy(inStreamSamples, count);
+
+                audioMixer.audioLevelMeasured(inStreams[i].inDataSourceDesc.inDataSource,
+                        AudioLevelCalculator.calculateAudioLevel(energy, count));
+            }
+        }
+    }
+
     /**
      * Sets the <code>SourceStream</code>s (in the form of <code>InStreamDesc</code>) from which this
      * instance is to read audio samples and push them to the <code>AudioMixingPushBufferStream</code>s
@@ -954,8 +1127,27 @@ class AudioMixerPushBufferStream extends ControlsAdapter implements PushBufferSt
                         .toArray(new AudioMixingPushBufferStream[this.outStreams.size()]);
             }
         }
-        for (AudioMixingPushBufferStream outStream : outStreams)
-            setInSamples(outStream, inSampleDesc, maxInSampleCount);
+        if (MIX_MINUS && (inSamples.length > 2)) {
+            // Sum the input samples for mix-minus and measure their audio levels in one pass.
+            int[] inSampleSum = sumInSamples(inSampleDesc, maxInSampleCount);
+            short[][] mixMinusSamples = this.mixMinusSamples;
+            if ((mixMinusSamples == null) || (mixMinusSamples.length < outStreams.length))
+                this.mixMinusSamples = mixMinusSamples = new short[outStreams.length][];
+
+            for (int i = 0; i < outStreams.length; i++) {
+                mixMinusSamples[i]
+                        = setMixMinusSamples(outStreams[i], inSampleDesc, inSampleSum, maxInSampleCount);
+            }
+            for (int i = 0; i < outStreams.length; i++) {
+                shortArrayCache.deallocateShortArray(mixMinusSamples[i]);
+                mixMinusSamples[i] = null;
+            }
+        }
+        else {
+            measureInSamples(inSampleDesc, maxInSampleCount);
+            for (AudioMixingPushBufferStream outStream : outStreams)
+                setInSamples(outStream, inSampleDesc, maxInSampleCount);
+        }
 
         /*
          * The input samples have already been delivered to the output streams and are no longer
@@ -0,0 +1,206 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.conference;
+
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.libjitsi.LibJitsi;
+
+import timber.log.Timber;
+
+/**
+ * Implements the arithmetic of the audio mixing of <code>AudioMixerPushBufferStream</code> and
+ * <code>AudioMixingPushBufferStream</code>: the 16-bit input audio samples are summed into <code>int</code>
+ * accumulators, measuring the energy of each input in the same pass for the purposes of its audio
+ * level, and the sums are brought back into the range of <code>short</code> by a {@link Limiter} once
+ * all the inputs have been accumulated.
+ * <p>
+ * The accumulation loops are kept free of branches and calls so that the compiler (HotSpot C2 or ART)
+ * is able to unroll and vectorize them. The limiters are not: the {@link SoftKneeLimiter} branches on
+ * the knee for each sample, a branch which is well predicted as long as the mix stays below the knee.
+ * </p>
+ *
+ * @author Eng Chong Meng
+ */
+public class AudioMixingKernel
+{
+    /**
+     * The name of the <code>ConfigurationService</code> property which specifies the class name of the
+     * {@link Limiter} to be used by the audio mixing. The class must have a public no-argument
+     * constructor. The default is {@link SoftKneeLimiter}.
+     */
+    public static final String LIMITER_PNAME = AudioMixingKernel.class.getName() + ".LIMITER";
+
+    /**
+     * The <code>Limiter</code> used by the audio mixing, initialized on first use.
+     */
+    private static Limiter limiter;
+
+    /**
+     * Prevents the initialization of <code>AudioMixingKernel</code> instances.
+     */
+    private AudioMixingKernel()
+    {
+    }
+
+    /**
+     * Adds a specific set of audio samples to a specific accumulator and measures their energy.
+     *
+     * @param samples the audio samples to add
+     * @param sum the accumulator to add <code>samples</code> to
+     * @param length the number of audio samples to add
+     * @return the energy i.e. the sum of the squares of the first <code>length</code> samples
+     */
+    public static long accumulate(short[] samples, int[] sum, int length)
+    {
+        long energy = 0;
+
+        for (int i = 0; i < length; i++) {
+            int sample = samples[i];
+
+            sum[i] += sample;
+            energy += sample * sample;
+        }
+        return energy;
+    }
+
+    /**
+     * Measures the energy of a specific set of audio samples, for the inputs which are not summed.
+     *
+     * @param samples the audio samples to measure
+     * @param length the number of audio samples to measure
+     * @return the energy i.e. the sum of the squares of the first <code>length</code> samples
+     */
+    public static long energy(short[] samples, int length)
+    {
+        long energy = 0;
+
+        for (int i = 0; i < length; i++) {
+            int sample = samples[i];
+
+            energy += sample * sample;
+        }
+        return energy;
+    }
+
+    /**
+     * Subtracts a specific set of audio samples from a specific accumulator.
+     *
+     * @param samples the audio samples to subtract
+     * @param sum the accumulator to subtract <code>samples</code> from
+     * @param length the number of audio samples to subtract
+     */
+    public static void subtract(short[] samples, int[] sum, int length)
+    {
+        for (int i = 0; i < length; i++)
+            sum[i] -= samples[i];
+    }
+
+    /**
+     * Gets the <code>Limiter</code> configured by {@link #LIMITER_PNAME} for the audio mixing.
+     *
+     * @return the <code>Limiter</code> to be used by the audio mixing
+     */
+    public static synchronized Limiter getLimiter()
+    {
+        if (limiter == null) {
+            ConfigurationService cfg = LibJitsi.getConfigurationService();
+            String className = (cfg == null) ? null : cfg.getString(LIMITER_PNAME);
+
+            if ((className != null) && (className.length() != 0)) {
+                try {
+                    limiter = Class.forName(className).asSubclass(Limiter.class)
+                            .getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    Timber.w(e, "Failed to initialize audio mixing limiter %s", className);
+                }
+            }
+            if (limiter == null)
+                limiter = new SoftKneeLimiter();
+        }
+        return limiter;
+    }
+
+    /**
+     * Brings the sums of 16-bit audio samples back into the range of <code>short</code>.
+     */
+    public interface Limiter
+    {
+        /**
+         * Limits a specific set of sums of audio samples to the range of <code>short</code>.
+         *
+         * @param sum the sums of audio samples to limit
+         * @param out the array to write the limited audio samples into
+         * @param length the number of audio samples to limit
+         */
+        void limit(int[] sum, short[] out, int length);
+    }
+
+    /**
+     * Implements a <code>Limiter</code> which saturates the sums at the full scale.
+     */
+    public static class HardLimiter
+            implements Limiter
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void limit(int[] sum, short[] out, int length)
+        {
+            for (int i = 0; i < length; i++)
+                out[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sum[i]));
+        }
+    }
+
+    /**
+     * Implements a <code>Limiter</code> which passes the sums up to 3/4 of the full scale unchanged
+     * and compresses the sums above it smoothly so that they approach but never reach the full scale,
+     * instead of clipping them.
+     */
+    public static class SoftKneeLimiter
+            implements Limiter
+    {
+        /**
+         * The absolute sample value above which the sums are compressed.
+         */
+        private static final int KNEE = 3 * Short.MAX_VALUE / 4;
+
+        /**
+         * The room between {@link #KNEE} and the full scale into which the sums above the knee are
+         * compressed.
+         */
+        private static final long HEADROOM = Short.MAX_VALUE - KNEE;
+
+        /**
+         * Compresses the excess of a sum above {@link #KNEE} into {@link #HEADROOM} with a curve of
+         * slope 1 at the knee.
+         *
+         * @param over the positive excess of a sum above the knee
+         * @return the compressed excess, less than the headroom
+         */
+        private static int compress(int over)
+        {
+            return (int) (HEADROOM * over / (over + HEADROOM));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void limit(int[] sum, short[] out, int length)
+        {
+            for (int i = 0; i < length; i++) {
+                int sample = sum[i];
+
+                if (sample > KNEE)
+                    sample = KNEE + compress(sample - KNEE);
+                else if (sample < -KNEE)
+                    sample = -(KNEE + compress(-sample - KNEE));
+                out[i] = (short) sample;
+            }
+        }
+    }
+}
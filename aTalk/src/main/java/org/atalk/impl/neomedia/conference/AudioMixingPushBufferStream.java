@@ -15,7 +15,6 @@ import java.util.Arrays;
 import javax.media.Buffer;
 import javax.media.Format;
 import javax.media.format.AudioFormat;
-import javax.media.format.UnsupportedFormatException;
 import javax.media.protocol.BufferTransferHandler;
 import javax.media.protocol.ContentDescriptor;
 import javax.media.protocol.PushBufferStream;
@@ -32,30 +31,6 @@ import timber.log.Timber;
 public class AudioMixingPushBufferStream extends ControlsAdapter
         implements PushBufferStream
 {
-    /**
-     * Gets the maximum possible value for an audio sample of a specific <code>AudioFormat</code>.
-     *
-     * @param outFormat the <code>AudioFormat</code> of which to get the maximum possible value for an audio
-     * sample
-     * @return the maximum possible value for an audio sample of the specified <code>AudioFormat</code>
-     * @throws UnsupportedFormatException if the specified <code>outFormat</code> is not supported by the underlying implementation
-     */
-    private static int getMaxOutSample(AudioFormat outFormat)
-            throws UnsupportedFormatException
-    {
-        switch (outFormat.getSampleSizeInBits()) {
-            case 8:
-                return Byte.MAX_VALUE;
-            case 16:
-                return Short.MAX_VALUE;
-            case 32:
-                return Integer.MAX_VALUE;
-            case 24:
-            default:
-                throw new UnsupportedFormatException("Format.getSampleSizeInBits()", outFormat);
-        }
-    }
-
     /**
      * The <code>AudioMixerPushBufferStream</code> which reads data from the input <code>DataSource</code>s
      * and pushes it to this instance to be mixed.
@@ -85,6 +60,19 @@ public class AudioMixingPushBufferStream extends ControlsAdapter
      */
     private int maxInSampleCount;
 
+    /**
+     * The single-stream holder through which {@link AudioMixerPushBufferStream} hands the
+     * mix-minus samples of this stream to {@link #setInSamples(short[][], int, long)}. Reused
+     * across frames in order to reduce allocations and garbage collection.
+     */
+    final short[][] mixMinusInSamples = new short[1][];
+
+    /**
+     * The <code>int</code> accumulator of the last invocation of {@link #mix(short[][], AudioFormat, int)}.
+     * Cached in order to reduce allocations and garbage collection.
+     */
+    private int[] mixSum;
+
     /**
      * The audio samples output by the last invocation of {@link #mix(short[][], AudioFormat, int)}.
      * Cached in order to reduce allocations and garbage collection.
@@ -247,32 +235,26 @@ public class AudioMixingPushBufferStream extends ControlsAdapter
             return outSamples;
         }
 
-        outSamples = allocateOutSamples(outSampleCount);
-        Arrays.fill(outSamples, 0, outSampleCount, (short) 0);
-
-        float maxOutSample;
-
-        try {
-            maxOutSample = getMaxOutSample(outFormat);
-        } catch (UnsupportedFormatException ufex) {
-            throw new UnsupportedOperationException(ufex);
+        if (outFormat.getSampleSizeInBits() != 16) {
+            throw new UnsupportedOperationException(
+                    "AudioMixingPushBufferStream.mix(short[][], AudioFormat, int)");
         }
 
+        int[] mixSum = this.mixSum;
+        if ((mixSum == null) || (mixSum.length < outSampleCount))
+            this.mixSum = mixSum = new int[outSampleCount];
+        else
+            Arrays.fill(mixSum, 0, outSampleCount, 0);
+
         for (short[] inStreamSamples : inSamples) {
             if (inStreamSamples != null) {
-
-                int inStreamSampleCount = Math.min(inStreamSamples.length, outSampleCount);
-                if (inStreamSampleCount != 0) {
-                    for (int i = 0; i < inStreamSampleCount; i++) {
-                        int inStreamSample = inStreamSamples[i];
-                        int outSample = outSamples[i];
-
-                        outSamples[i] = (short) (inStreamSample + outSample
-                                - Math.round(inStreamSample * (outSample / maxOutSample)));
-                    }
-                }
+                AudioMixingKernel.accumulate(inStreamSamples, mixSum,
+                        Math.min(inStreamSamples.length, outSampleCount));
             }
         }
+
+        outSamples = allocateOutSamples(outSampleCount);
+        AudioMixingKernel.getLimiter().limit(mixSum, outSamples, outSampleCount);
         return outSamples;
     }
 
@@ -297,31 +297,21 @@ public class AudioMixerMediaDevice extends AbstractMediaDevice
                 }
 
                 @Override
-                protected void read(PushBufferStream stream, Buffer buffer, DataSource dataSource)
-                        throws IOException
+                protected void audioLevelMeasured(DataSource dataSource, byte audioLevel)
                 {
-                    super.read(stream, buffer, dataSource);
-
-                    /*
-                     * XXX The audio read from the specified stream has not been made available to
-                     * the mixing yet. Slow code here is likely to degrade the performance of the
-                     * whole mixer.
-                     */
-
                     if (dataSource == captureDevice) {
                         /*
-                         * The audio of the very CaptureDevice to be contributed to the mix.
+                         * The audio of the very CaptureDevice contributed to the mix.
                          */
                         synchronized (localUserAudioLevelListenersSyncRoot) {
                             if (localUserAudioLevelListeners.isEmpty())
                                 return;
                         }
-                        localUserAudioLevelDispatcher.addData(buffer);
-
+                        localUserAudioLevelDispatcher.addLevel(audioLevel);
                     }
                     else if (dataSource instanceof ReceiveStreamPushBufferDataSource) {
                         /*
-                         * The audio of a ReceiveStream to be contributed to the mix.
+                         * The audio of a ReceiveStream contributed to the mix.
                          */
                         ReceiveStream receiveStream
                                 = ((ReceiveStreamPushBufferDataSource) dataSource).getReceiveStream();
@@ -330,10 +320,30 @@ public class AudioMixerMediaDevice extends AbstractMediaDevice
                         synchronized (streamAudioLevelListeners) {
                             streamEventDispatcher = streamAudioLevelListeners.get(receiveStream);
                         }
-                        if ((streamEventDispatcher != null) && !buffer.isDiscard()
-                                && (buffer.getLength() > 0) && (buffer.getData() != null)) {
-                            streamEventDispatcher.addData(buffer);
-                        }
+                        if (streamEventDispatcher != null)
+                            streamEventDispatcher.addLevel(audioLevel);
+                    }
+                }
+
+                @Override
+                protected void read(PushBufferStream stream, Buffer buffer, DataSource dataSource)
+                        throws IOException
+                {
+                    super.read(stream, buffer, dataSource);
+
+                    /*
+                     * XXX The audio read from the specified stream has not been made available to
+                     * the mixing yet. Slow code here is likely to degrade the performance of the
+                     * whole mixer. The audio levels are measured by the mixing itself, see
+                     * audioLevelMeasured(DataSource, byte).
+                     */
+
+                    if (dataSource instanceof ReceiveStreamPushBufferDataSource) {
+                        /*
+                         * The audio of a ReceiveStream to be contributed to the mix.
+                         */
+                        ReceiveStream receiveStream
+                                = ((ReceiveStreamPushBufferDataSource) dataSource).getReceiveStream();
 
                         ReceiveStreamBufferListener receiveStreamBufferListener
                                 = AudioMixerMediaDevice.this.receiveStreamBufferListener;
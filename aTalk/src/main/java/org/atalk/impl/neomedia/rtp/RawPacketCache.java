@@ -16,28 +16,34 @@
 package org.atalk.impl.neomedia.rtp;
 
 import org.atalk.android.plugin.timberlog.TimberLog;
-import org.atalk.impl.neomedia.transform.CachingTransformer;
 import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.RawPacket;
+import org.atalk.service.neomedia.RawPacketPool;
+import org.atalk.util.ConfigUtils;
 import org.atalk.util.concurrent.MonotonicAtomicLong;
 import org.atalk.util.logging.Logger;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import timber.log.Timber;
 
 /**
  * An simple interface which allows a packet to be retrieved from a
  * cache/storage by an SSRC identifier and a sequence number.
+ * <p>
+ * The packets of each SSRC are kept in a ring indexed by the RTP sequence number modulo a power
+ * of two, so that the send path inserts without taking a lock and the NACK handler looks up
+ * packets without blocking the send path. A slot is only ever replaced by an atomic swap and the
+ * replaced packet is released afterwards; a reader takes its own reference on the packet and then
+ * checks that the slot still holds it, so a packet is never read after it returned to the
+ * {@link RawPacketPool}.
  *
  * @author Boris Grozev
  * @author George Politis
@@ -74,12 +80,12 @@ public class RawPacketCache implements AutoCloseable
      *
      * FIXME(gp) the cache size should be adaptive based on the RTT.
      */
-    private static int SIZE_MILLIS = cfg.getInt(NACK_CACHE_SIZE_MILLIS, 1000);
+    private static int SIZE_MILLIS = ConfigUtils.getInt(cfg, NACK_CACHE_SIZE_MILLIS, 1000);
 
     /**
      * The maximum number of different SSRCs for which a cache will be created.
      */
-    private static int MAX_SSRC_COUNT = cfg.getInt(NACK_CACHE_SIZE_STREAMS, 50);
+    private static int MAX_SSRC_COUNT = ConfigUtils.getInt(cfg, NACK_CACHE_SIZE_STREAMS, 50);
 
     /**
      * The maximum number of packets cached for each SSRC. A 1080p stream maxes
@@ -87,12 +93,15 @@ public class RawPacketCache implements AutoCloseable
      * 250packets/500ms packet cache is just enough. In order to be on the safe
      * side, we use the double as defaults.
      */
-    private static int MAX_SIZE_PACKETS = cfg.getInt(NACK_CACHE_SIZE_PACKETS, 500);
+    private static int MAX_SIZE_PACKETS
+            = Math.max(1, Math.min(ConfigUtils.getInt(cfg, NACK_CACHE_SIZE_PACKETS, 500), 0x1_0000));
 
     /**
-     * The size of {@link #pool} and {@link #containersPool}.
+     * The number of slots of the ring of each {@link Cache}: the smallest power of two which is not
+     * less than {@link #MAX_SIZE_PACKETS}. It divides 2^16, so that the slot of a packet only depends
+     * on its RTP sequence number.
      */
-    private static int POOL_SIZE = 100;
+    private static final int RING_SIZE = Integer.highestOneBit(MAX_SIZE_PACKETS * 2 - 1);
 
     /**
      * The amount of time, after which the cache for an SSRC will be cleared,
@@ -100,42 +109,25 @@ public class RawPacketCache implements AutoCloseable
      */
     private static int SSRC_TIMEOUT_MILLIS = SIZE_MILLIS + 50;
 
-    /**
-     * The pool of <code>RawPacket</code>s which we use to avoid allocation and GC.
-     */
-    private final Queue<RawPacket> pool = new LinkedBlockingQueue<>(POOL_SIZE);
-
-    /**
-     * A cache of unused {@link Container} instances.
-     */
-    private final Queue<Container> containersPool = new LinkedBlockingQueue<>(POOL_SIZE);
-
-    /**
-     * An object used to synchronize access to {@link #sizeInBytes},
-     * {@link #maxSizeInBytes}, {@link #sizeInPackets} and
-     * {@link #maxSizeInPackets}.
-     */
-    private final Object sizesSyncRoot = new Object();
-
     /**
      * The current size in bytes of the cache (for all SSRCs combined).
      */
-    private int sizeInBytes = 0;
+    private final AtomicInteger sizeInBytes = new AtomicInteger();
 
     /**
      * The maximum reached size in bytes of the cache (for all SSRCs combined).
      */
-    private int maxSizeInBytes = 0;
+    private final MonotonicAtomicLong maxSizeInBytes = new MonotonicAtomicLong();
 
     /**
      * The current number of packets in the cache (for all SSRCs combined).
      */
-    private int sizeInPackets = 0;
+    private final AtomicInteger sizeInPackets = new AtomicInteger();
 
     /**
      * The maximum reached number of packets in the cache (for all SSRCs combined).
      */
-    private int maxSizeInPackets = 0;
+    private final MonotonicAtomicLong maxSizeInPackets = new MonotonicAtomicLong();
 
     /**
      * Counts the number of requests (calls to {@link #get(long, int)}) which
@@ -157,7 +149,13 @@ public class RawPacketCache implements AutoCloseable
     /**
      * Contains a <code>Cache</code> instance for each SSRC.
      */
-    private final Map<Long, Cache> caches = new HashMap<>();
+    private final Map<Long, Cache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * The <code>Cache</code> which was last used, checked before {@link #caches} because a stream
+     * usually sends a single SSRC (or a few, one after the other).
+     */
+    private volatile Cache lastCache;
 
     /**
      * The age in milliseconds of the oldest packet retrieved from any of the
@@ -171,7 +169,7 @@ public class RawPacketCache implements AutoCloseable
     private final int streamId;
 
     /**
-     * Initializes a new {@link CachingTransformer} instance.
+     * Initializes a new {@link RawPacketCache} instance.
      *
      * @param streamId the identifier of the owning stream.
      */
@@ -192,11 +190,11 @@ public class RawPacketCache implements AutoCloseable
                     Logger.Category.STATISTICS, streamId, maxSizeInBytes, maxSizeInPackets, totalHits.get(),
                     totalMisses.get(), totalPacketsAdded.get(), oldestHit);
         }
-        synchronized (caches) {
-            caches.clear();
+        lastCache = null;
+        for (Cache cache : caches.values()) {
+            cache.empty();
         }
-        pool.clear();
-        containersPool.clear();
+        caches.clear();
     }
 
     /**
@@ -253,19 +251,22 @@ public class RawPacketCache implements AutoCloseable
      */
     private Cache getCache(long ssrc, boolean create)
     {
-        synchronized (caches) {
-            Cache cache = caches.get(ssrc);
-            if (cache == null && create) {
-                if (caches.size() < MAX_SSRC_COUNT) {
-                    cache = new Cache();
-                    caches.put(ssrc, cache);
-                }
-                else {
-                    Timber.w("Not creating a new cache for SSRC %s: too many SSRCs already cached.", ssrc);
-                }
-            }
+        Cache cache = lastCache;
+        if (cache != null && cache.ssrc == ssrc)
             return cache;
+
+        cache = caches.get(ssrc);
+        if (cache == null && create) {
+            if (caches.size() < MAX_SSRC_COUNT) {
+                cache = caches.computeIfAbsent(ssrc, Cache::new);
+            }
+            else {
+                Timber.w("Not creating a new cache for SSRC %s: too many SSRCs already cached.", ssrc);
+            }
         }
+        if (cache != null)
+            lastCache = cache;
+        return cache;
     }
 
     /**
@@ -284,76 +285,42 @@ public class RawPacketCache implements AutoCloseable
         }
     }
 
-    /**
-     * Gets an unused <code>RawPacket</code> with at least <code>len</code> bytes of
-     * buffer space.
-     *
-     * @param len the minimum available length
-     * @return An unused <code>RawPacket</code> with at least <code>len</code> bytes of
-     * buffer space.
-     */
-    private RawPacket getFreePacket(int len)
-    {
-        RawPacket pkt = pool.poll();
-        if (pkt == null)
-            pkt = new RawPacket(new byte[len], 0, 0);
-
-        if (pkt.getBuffer() == null || pkt.getBuffer().length < len)
-            pkt.setBuffer(new byte[len]);
-        pkt.setOffset(0);
-        pkt.setLength(0);
-        return pkt;
-    }
-
-    /**
-     * @return an unused {@link Container} instance.
-     */
-    private Container getFreeContainer()
-    {
-        Container container = containersPool.poll();
-        if (container == null) {
-            container = new Container();
-        }
-        return container;
-    }
-
     /**
      * Checks for {@link Cache} instances which have not received new packets
      * for a period longer than {@link #SSRC_TIMEOUT_MILLIS} and removes them.
+     * Drops the expired packets of the others.
      */
     public void clean(long now)
     {
-        synchronized (caches) {
-            Timber.log(TimberLog.FINER, "Cleaning CachingTransformer %s", hashCode());
-
-            Iterator<Map.Entry<Long, Cache>> iter = caches.entrySet().iterator();
-            while (iter.hasNext()) {
-                Map.Entry<Long, Cache> entry = iter.next();
-                Cache cache = entry.getValue();
-                if (cache.lastInsertTime + SSRC_TIMEOUT_MILLIS < now) {
-                    Timber.log(TimberLog.FINER, "Removing cache for SSRC %s", entry.getKey());
-                    cache.empty();
-                    iter.remove();
-                }
+        Timber.log(TimberLog.FINER, "Cleaning CachingTransformer %s", hashCode());
+
+        Iterator<Map.Entry<Long, Cache>> iter = caches.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Long, Cache> entry = iter.next();
+            Cache cache = entry.getValue();
+            if (cache.lastInsertTime + SSRC_TIMEOUT_MILLIS < now) {
+                Timber.log(TimberLog.FINER, "Removing cache for SSRC %s", entry.getKey());
+                iter.remove();
+                if (lastCache == cache)
+                    lastCache = null;
+                cache.empty();
+            }
+            else {
+                cache.clean(now);
             }
         }
     }
 
     /**
-     * Returns a {@link Container} and its {@link RawPacket} to the list of free containers (and
-     * packets).
+     * Accounts for a packet which has been removed from a {@link Cache} and releases it.
      *
-     * @param container the container to return.
+     * @param container the container of the removed packet.
      */
-    private void returnContainer(Container container)
+    private void removed(Container container)
     {
-        if (container != null) {
-            if (container.pkt != null) {
-                pool.offer(container.pkt);
-            }
-            container.pkt = null;
-            containersPool.offer(container);
-        }
+        sizeInPackets.decrementAndGet();
+        sizeInBytes.addAndGet(-container.pkt.getLength());
+        container.pkt.release();
     }
 
     /**
@@ -365,7 +332,8 @@ public class RawPacketCache implements AutoCloseable
      * @param bytes the maximum total size of the packets to retrieve.
      * @return the set of the most recent packets to retrieve, not exceeding the
      * number of bytes specified as an argument, or null if there are no packets
-     * in the cache
+     * in the cache. The packets of the returned containers are retained and must be
+     * released by the caller.
      */
     public Set<Container> getMany(long ssrc, int bytes)
     {
@@ -386,81 +354,91 @@ public class RawPacketCache implements AutoCloseable
     {
         Cache cache = getCache(ssrc, false);
         if (cache != null) {
-            synchronized (cache) {
-                Container container = cache.doGet(seq);
-                if (container != null) {
-                    container.timeAdded = ts;
-                }
+            Container container = cache.peek(seq);
+            if (container != null) {
+                container.timeAdded = ts;
             }
         }
     }
 
     /**
      * Implements a cache for the packets of a specific SSRC.
+     * <p>
+     * Packets are inserted by a single thread at a time (the send or receive path of the SSRC);
+     * lookups and cleaning may happen concurrently from any thread.
      */
     private class Cache
     {
         /**
-         * The underlying container. It maps a packet index (based on its RTP
-         * sequence number, in the same way as used in SRTP (RFC3711)) to the
-         * <code>RawPacket</code> with the packet contents.
+         * The SSRC of the packets of this cache.
+         */
+        private final long ssrc;
+
+        /**
+         * The underlying ring. The slot of a packet is its RTP sequence number modulo
+         * {@link #RING_SIZE}; the container records the packet index (based on its RTP sequence
+         * number, in the same way as used in SRTP (RFC3711)) to tell apart a packet from the one a
+         * ring length before or after it.
          */
-        private TreeMap<Integer, Container> cache = new TreeMap<>();
+        private final AtomicReferenceArray<Container> ring = new AtomicReferenceArray<>(RING_SIZE);
 
         /**
          * Last system time of insertion of a packet in this cache.
          */
-        private long lastInsertTime = -1;
+        private volatile long lastInsertTime = -1;
 
         /**
-         * A Roll Over Counter (as in by RFC3711).
+         * The highest index of a packet inserted in this cache.
+         */
+        private volatile int highestIndex = -1;
+
+        /**
+         * A Roll Over Counter (as in by RFC3711). Only accessed by the inserting thread.
          */
         private int ROC = 0;
 
         /**
-         * The highest received sequence number (as in RFC3711).
+         * The highest received sequence number (as in RFC3711). Only accessed by the inserting thread.
          */
         private int s_l = -1;
 
+        /**
+         * Initializes a new <code>Cache</code> instance.
+         *
+         * @param ssrc the SSRC of the packets of the new cache.
+         */
+        private Cache(long ssrc)
+        {
+            this.ssrc = ssrc;
+        }
+
         /**
          * Inserts a packet into this <code>Cache</code>.
          *
          * @param pkt the packet to insert.
          */
-        private synchronized void insert(RawPacket pkt)
+        private void insert(RawPacket pkt)
         {
             int len = pkt.getLength();
-            RawPacket cachePacket = getFreePacket(len);
-            System.arraycopy(pkt.getBuffer(), pkt.getOffset(), cachePacket.getBuffer(), 0, len);
-            cachePacket.setLength(len);
+            RawPacket cachePacket = RawPacketPool.copyOf(pkt.getBuffer(), pkt.getOffset(), len);
 
             int index = calculateIndex(pkt.getSequenceNumber());
-            Container container = getFreeContainer();
-            container.pkt = cachePacket;
-            container.timeAdded = System.currentTimeMillis();
+            long now = System.currentTimeMillis();
 
             // If the packet is already in the cache, we want to update the
             // timeAdded field for retransmission purposes. This is implemented
             // by simply replacing the old packet.
-            Container oldContainer = cache.put(index, container);
-
-            synchronized (sizesSyncRoot) {
-                sizeInPackets++;
-                sizeInBytes += len;
-                if (oldContainer != null) {
-                    sizeInPackets--;
-                    sizeInBytes -= oldContainer.pkt.getLength();
-                }
-                if (sizeInPackets > maxSizeInPackets)
-                    maxSizeInPackets = sizeInPackets;
-                if (sizeInBytes > maxSizeInBytes)
-                    maxSizeInBytes = sizeInBytes;
-            }
-            returnContainer(oldContainer);
-            lastInsertTime = System.currentTimeMillis();
-            clean();
-        }
+            Container oldContainer = ring.getAndSet(index & (RING_SIZE - 1), new Container(cachePacket, now, index));
+
+            if (index > highestIndex)
+                highestIndex = index;
+            lastInsertTime = now;
 
+            maxSizeInPackets.increase(sizeInPackets.incrementAndGet());
+            maxSizeInBytes.increase(sizeInBytes.addAndGet(len));
+            if (oldContainer != null)
+                removed(oldContainer);
+        }
 
         /**
          * Calculates the index of an RTP packet based on its RTP sequence
@@ -479,11 +457,13 @@ public class RawPacketCache implements AutoCloseable
             }
 
             int v = ROC;
-            if (s_l < 0x8000)
+            if (s_l < 0x8000) {
                 if (seq - s_l > 0x8000)
                     v = (int) ((ROC - 1) & 0xffff_ffffL);
-                else if (s_l - 0x1_0000 > seq)
-                    v = (int) ((ROC + 1) & 0xffff_ffffL);
+            }
+            else if (s_l - 0x8000 > seq) {
+                v = (int) ((ROC + 1) & 0xffff_ffffL);
+            }
 
             if (v == ROC && seq > s_l)
                 s_l = seq;
@@ -495,108 +475,115 @@ public class RawPacketCache implements AutoCloseable
         }
 
         /**
-         * Returns a copy of the RTP packet with sequence number {@code seq}
-         * from the cache, or {@code null} if the cache does not contain a
+         * Determines whether a specific container is within the size and time limits of this cache,
+         * i.e. whether it is one of the {@link #MAX_SIZE_PACKETS} most recent packets and was added
+         * at most {@link #SIZE_MILLIS} milliseconds before the newest packet.
+         *
+         * @param container the container to check.
+         * @param now the time (in milliseconds since the epoch) to check against.
+         * @return <code>true</code> if <code>container</code> is to be kept; otherwise, <code>false</code>.
+         */
+        private boolean isLive(Container container, long now)
+        {
+            return container.index > highestIndex - MAX_SIZE_PACKETS
+                    && container.timeAdded >= 0
+                    && container.timeAdded > now - SIZE_MILLIS;
+        }
+
+        /**
+         * Returns the container of the RTP packet with sequence number {@code seq} without
+         * taking a reference on its packet, or {@code null} if the cache does not contain a
          * packet with this sequence number.
          *
          * @param seq the RTP sequence number of the packet to get.
-         * @return a copy of the RTP packet with sequence number {@code seq}
-         * from the cache, or {@code null} if the cache does not contain a
-         * packet with this sequence number.
+         * @return the container of the RTP packet with sequence number {@code seq}.
          */
-        private synchronized Container get(int seq)
+        private Container peek(int seq)
         {
-            Container container = doGet(seq);
-
-            return container == null
-                    ? null
-                    : new Container(new RawPacket(container.pkt.getBuffer().clone(),
-                    container.pkt.getOffset(),
-                    container.pkt.getLength()),
-                    container.timeAdded);
+            // Since sequence numbers wrap at 2^16, we can't know with absolute
+            // certainty which packet the request refers to. The ring holds the
+            // latest packet with this sequence number, and the size and time
+            // limits make sure that it does not refer to a previous ROC.
+            Container container = ring.get(seq & (RING_SIZE - 1));
+
+            return (container != null
+                    && (container.index & 0xffff) == seq
+                    && isLive(container, lastInsertTime)) ? container : null;
         }
 
         /**
-         * Returns the RTP packet with sequence number {@code seq}
+         * Takes a reference on the packet of a container found in slot <code>slot</code> of the ring.
+         *
+         * @param slot the slot of the ring in which <code>container</code> was found.
+         * @param container the container to take a reference on the packet of.
+         * @return <code>true</code> if a reference was taken and must be released by the caller;
+         * <code>false</code> if the packet has been replaced (and possibly released) in the meantime.
+         */
+        private boolean retain(int slot, Container container)
+        {
+            if (!container.pkt.tryRetain())
+                return false;
+
+            // A packet is only released after its container left the ring, so the reference was
+            // taken on the cached packet and not on a recycled one if the container is still there.
+            if (ring.get(slot) != container) {
+                container.pkt.release();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Returns a copy of the RTP packet with sequence number {@code seq}
          * from the cache, or {@code null} if the cache does not contain a
          * packet with this sequence number.
          *
          * @param seq the RTP sequence number of the packet to get.
-         * @return the RTP packet with sequence number {@code seq}
+         * @return a copy of the RTP packet with sequence number {@code seq}
          * from the cache, or {@code null} if the cache does not contain a
          * packet with this sequence number.
          */
-        private synchronized Container doGet(int seq)
+        private Container get(int seq)
         {
-            // Since sequence numbers wrap at 2^16, we can't know with absolute
-            // certainty which packet the request refers to. We assume that it
-            // is for the latest packet (i.e. the one with the highest index).
-            Container container = cache.get(seq + ROC * 0x1_0000);
-
-            // Maybe the ROC was just bumped recently.
-            if (container == null && ROC > 0)
-                container = cache.get(seq + (ROC - 1) * 0x1_0000);
-
-            // Since the cache only stores <code>SIZE_MILLIS</code> milliseconds of
-            // packets, we assume that it doesn't contain packets spanning
-            // more than one ROC.
-            return container;
+            Container container = peek(seq);
+
+            if (container == null || !retain(seq & (RING_SIZE - 1), container))
+                return null;
+
+            RawPacket pkt = container.pkt;
+            try {
+                return new Container(
+                        RawPacketPool.copyOf(pkt.getBuffer(), pkt.getOffset(), pkt.getLength()),
+                        container.timeAdded);
+            } finally {
+                pkt.release();
+            }
         }
 
         /**
-         * Drops the oldest packets from the cache until:
-         * 1. The cache contains at most {@link #MAX_SIZE_PACKETS} packets, and
-         * 2. The cache only contains packets at most {@link #SIZE_MILLIS}
-         * milliseconds older than the newest packet in the cache.
+         * Drops the packets which are not within the size and time limits of this cache any more.
+         *
+         * @param now the current time (in milliseconds since the epoch).
          */
-        private synchronized void clean()
+        private void clean(long now)
         {
-            int size = cache.size();
-            if (size <= 0)
-                return;
-
-            long cleanBefore = System.currentTimeMillis() - SIZE_MILLIS;
-            Iterator<Map.Entry<Integer, Container>> iter = cache.entrySet().iterator();
-            int removedPackets = 0;
-            int removedBytes = 0;
-            while (iter.hasNext()) {
-                Container container = iter.next().getValue();
-                RawPacket pkt = container.pkt;
-
-                if (size > MAX_SIZE_PACKETS) {
-                    // Remove until we go under the max size, regardless of the timestamps.
-                    size--;
-                }
-                else if (container.timeAdded >= 0
-                        && container.timeAdded > cleanBefore) {
-                    // We reached a packet with a timestamp after 'cleanBefore'.
-                    // The rest of the packets are even more recent.
-                    break;
-                }
-
-                iter.remove();
-                removedBytes += pkt.getLength();
-                removedPackets++;
-                returnContainer(container);
-            }
-            synchronized (sizesSyncRoot) {
-                sizeInBytes -= removedBytes;
-                sizeInPackets -= removedPackets;
+            for (int i = 0; i < RING_SIZE; i++) {
+                Container container = ring.get(i);
+                if (container != null && !isLive(container, now) && ring.compareAndSet(i, container, null))
+                    removed(container);
             }
         }
 
-        synchronized private void empty()
+        /**
+         * Drops all packets of this cache.
+         */
+        private void empty()
         {
-            int removedBytes = 0;
-            for (Container container : cache.values()) {
-                removedBytes += container.pkt.getBuffer().length;
-                returnContainer(container);
+            for (int i = 0; i < RING_SIZE; i++) {
+                Container container = ring.getAndSet(i, null);
+                if (container != null)
+                    removed(container);
             }
-            synchronized (sizesSyncRoot) {
-                sizeInPackets -= cache.size();
-                sizeInBytes -= removedBytes;
-            }
-            cache.clear();
         }
 
         /**
@@ -608,27 +595,29 @@ public class RawPacketCache implements AutoCloseable
          * the number of bytes specified as an argument, or null if there are
          * no packets in the cache.
          */
-        public synchronized Set<Container> getMany(int bytes)
+        public Set<Container> getMany(int bytes)
         {
-            if (cache.isEmpty() || bytes < 1) {
+            int highestIndex = this.highestIndex;
+            if (highestIndex < 0 || bytes < 1) {
                 return null;
             }
 
-            // XXX(gp) This is effectively Copy-on-Read and is inefficient. We
-            // should implement a Copy-on-Write method or something else that is
-            // more efficient than this..
             Set<Container> set = new HashSet<>();
+            long lastInsertTime = this.lastInsertTime;
+
+            for (int index = highestIndex; index > highestIndex - MAX_SIZE_PACKETS && index >= 0 && bytes > 0; index--) {
+                int slot = index & (RING_SIZE - 1);
+                Container container = ring.get(slot);
 
-            Iterator<Map.Entry<Integer, Container>> it
-                    = cache.descendingMap().entrySet().iterator();
-            while (it.hasNext() && bytes > 0) {
-                Container container = it.next().getValue();
-                if (container != null && container.pkt != null) {
-                    set.add(container);
+                if (container != null && container.index == index
+                        && isLive(container, lastInsertTime) && retain(slot, container)) {
+                    // Containers are shared with the ring; hand out a new one
+                    // holding its own reference to the packet.
+                    set.add(new Container(container.pkt, container.timeAdded));
                     bytes -= container.pkt.getLength();
                 }
             }
-            return set;
+            return set.isEmpty() ? null : set;
         }
     }
 
@@ -646,7 +635,12 @@ public class RawPacketCache implements AutoCloseable
          * The time (in milliseconds since the epoch) that the packet was
          * added to the cache.
          */
-        public long timeAdded;
+        public volatile long timeAdded;
+
+        /**
+         * The index of the packet (its RTP sequence number extended with a ROC) within its cache.
+         */
+        private final int index;
 
         /**
          * Initializes a new empty {@link Container} instance.
@@ -663,9 +657,22 @@ public class RawPacketCache implements AutoCloseable
          * @param timeAdded the time the packet was added.
          */
         public Container(RawPacket pkt, long timeAdded)
+        {
+            this(pkt, timeAdded, -1);
+        }
+
+        /**
+         * Initializes a new {@link Container} instance for the ring of a {@link Cache}.
+         *
+         * @param pkt the packet to hold.
+         * @param timeAdded the time the packet was added.
+         * @param index the index of the packet within its cache.
+         */
+        private Container(RawPacket pkt, long timeAdded, int index)
         {
             this.pkt = pkt;
             this.timeAdded = timeAdded;
+            this.index = index;
         }
     }
 }
@@ -29,7 +29,6 @@ import org.atalk.service.neomedia.RawPacket;
 import org.atalk.service.neomedia.TransmissionFailedException;
 import org.atalk.service.neomedia.VideoMediaStream;
 import org.atalk.service.neomedia.rtp.CallStatsObserver;
-import org.atalk.util.LRUCache;
 import org.atalk.util.RTPUtils;
 import org.atalk.util.logging.DiagnosticContext;
 import org.atalk.util.logging.TimeSeriesLogger;
@@ -42,6 +41,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import timber.log.Timber;
 
@@ -64,11 +64,30 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
     private static final int MAX_INCOMING_PACKETS_HISTORY = 200;
 
     /**
-     * The maximum number of received packets and their timestamps to save.
+     * The number of sent packets whose send time and length are saved, which is the size of the ring
+     * buffer {@link #sentPackets}. A power of two, so that the slot of a transport-wide sequence
+     * number is given by its low bits.
      *
      * XXX this is an uninformed value.
      */
-    private static final int MAX_OUTGOING_PACKETS_HISTORY = 1000;
+    static final int MAX_OUTGOING_PACKETS_HISTORY = 1024;
+
+    /**
+     * The mask of the slot of a transport-wide sequence number in {@link #sentPackets}.
+     */
+    private static final int SENT_PACKETS_SLOT_MASK = MAX_OUTGOING_PACKETS_HISTORY - 1;
+
+    /**
+     * The number of bits of the transport-wide sequence numbers above the bits of their slot in
+     * {@link #sentPackets}.
+     */
+    private static final int SENT_PACKETS_SEQ_SHIFT = Integer.numberOfTrailingZeros(MAX_OUTGOING_PACKETS_HISTORY);
+
+    /**
+     * The mask of the send time in ms, relative to {@link #sentPacketsBaseTimeMs}, of a packed entry of
+     * {@link #sentPackets}.
+     */
+    private static final long SENT_PACKET_TIME_MASK = (1L << 41) - 1;
 
     /**
      * The {@link TimeSeriesLogger} to be used by this instance to print time series.
@@ -127,11 +146,6 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
      */
     private final Object incomingPacketsSyncRoot = new Object();
 
-    /**
-     * Used to synchronize access to {@link #sentPacketDetails}.
-     */
-    private final Object sentPacketsSyncRoot = new Object();
-
     /**
      * The {@link DiagnosticContext} to be used by this instance when printing diagnostic information.
      */
@@ -158,10 +172,18 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
      */
     private long localReferenceTimeMs = -1;
     /**
-     * Holds a key value pair of the packet sequence number and an object made
-     * up of the packet send time and the packet size.
+     * The ring buffer of the sent packets, indexed by the low bits of their transport-wide sequence
+     * number. Each slot packs, in a single <code>long</code> so that it is written and consumed atomically
+     * without locking: a valid flag (bit 63), the high bits of the sequence number (bits 57-62), the
+     * packet length (bits 41-56) and the send time in ms relative to {@link #sentPacketsBaseTimeMs}
+     * (bits 0-40). A slot is zero when empty or consumed by a TCC feedback packet.
      */
-    private Map<Integer, PacketDetail> sentPacketDetails = new LRUCache<>(MAX_OUTGOING_PACKETS_HISTORY);
+    private final AtomicLongArray sentPackets = new AtomicLongArray(MAX_OUTGOING_PACKETS_HISTORY);
+
+    /**
+     * The time in ms since the epoch which the send times in {@link #sentPackets} are relative to.
+     */
+    private final long sentPacketsBaseTimeMs = System.currentTimeMillis();
 
     /**
      * Used for estimating the bitrate from RTCP TCC feedback packets
@@ -386,6 +408,8 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
     @Override
     public void tccReceived(RTCPTCCPacket tccPacket)
     {
+        // Read without locking the sent packets which are acknowledged by tccPacket, while the
+        // EgressEngine keeps writing further sent packets into other slots.
         RTCPTCCPacket.PacketMap packetMap = tccPacket.getPackets();
         long previousArrivalTimeMs = -1;
         for (Map.Entry<Integer, Long> entry : packetMap.entrySet()) {
@@ -400,12 +424,8 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
                 localReferenceTimeMs = System.currentTimeMillis();
             }
 
-            PacketDetail packetDetail;
-            synchronized (sentPacketsSyncRoot) {
-                packetDetail = sentPacketDetails.remove(entry.getKey());
-            }
-
-            if (packetDetail == null) {
+            long sentPacket = removeSentPacket(entry.getKey());
+            if (sentPacket == 0) {
                 continue;
             }
 
@@ -429,11 +449,73 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
             }
 
             previousArrivalTimeMs = arrivalTimeMs;
-            long sendTime24bits = RemoteBitrateEstimatorAbsSendTime.convertMsTo24Bits(packetDetail.packetSendTimeMs);
+            long sendTime24bits
+                    = RemoteBitrateEstimatorAbsSendTime.convertMsTo24Bits(getSendTimeMs(sentPacket));
+
+            bitrateEstimatorAbsSendTime.incomingPacketInfo(arrivalTimeMs, sendTime24bits,
+                    getPacketLength(sentPacket), tccPacket.getSourceSSRC());
+        }
+    }
+
+    /**
+     * Saves the send time and the length of a sent packet into {@link #sentPackets}, overwriting the
+     * packet sent {@link #MAX_OUTGOING_PACKETS_HISTORY} transport-wide sequence numbers earlier.
+     *
+     * @param seq the transport-wide sequence number of the sent packet
+     * @param length the length in bytes of the sent packet
+     * @param sendTimeMs the send time in ms since the epoch of the sent packet
+     */
+    void putSentPacket(int seq, int length, long sendTimeMs)
+    {
+        long time = Math.max(0, sendTimeMs - sentPacketsBaseTimeMs) & SENT_PACKET_TIME_MASK;
+
+        sentPackets.set(seq & SENT_PACKETS_SLOT_MASK, Long.MIN_VALUE
+                | ((long) (seq >>> SENT_PACKETS_SEQ_SHIFT) << 57)
+                | ((long) Math.min(length, 0xffff) << 41)
+                | time);
+    }
 
-            bitrateEstimatorAbsSendTime.incomingPacketInfo(
-                    arrivalTimeMs, sendTime24bits, packetDetail.packetLength, tccPacket.getSourceSSRC());
+    /**
+     * Takes the saved entry of a sent packet out of {@link #sentPackets}, so that a packet acknowledged
+     * by more than one TCC feedback packet is only taken into account once.
+     *
+     * @param seq the transport-wide sequence number of the sent packet
+     * @return the packed entry of the sent packet or <code>0</code> if it has not been saved, has been
+     * overwritten or has been taken already
+     */
+    long removeSentPacket(int seq)
+    {
+        int slot = seq & SENT_PACKETS_SLOT_MASK;
+        long sentPacket = sentPackets.get(slot);
+
+        if (sentPacket >= 0 // empty
+                || ((int) (sentPacket >>> 57) & 0x3f) != (seq >>> SENT_PACKETS_SEQ_SHIFT)
+                || !sentPackets.compareAndSet(slot, sentPacket, 0)) {
+            return 0;
         }
+        return sentPacket;
+    }
+
+    /**
+     * Gets the send time of a packed entry of {@link #sentPackets}.
+     *
+     * @param sentPacket the packed entry of a sent packet
+     * @return the send time in ms since the epoch of the sent packet
+     */
+    long getSendTimeMs(long sentPacket)
+    {
+        return sentPacketsBaseTimeMs + (sentPacket & SENT_PACKET_TIME_MASK);
+    }
+
+    /**
+     * Gets the packet length of a packed entry of {@link #sentPackets}.
+     *
+     * @param sentPacket the packed entry of a sent packet
+     * @return the length in bytes of the sent packet
+     */
+    static int getPacketLength(long sentPacket)
+    {
+        return (int) (sentPacket >>> 41) & 0xffff;
     }
 
     /**
@@ -506,24 +588,6 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
         }
     }
 
-    /**
-     * {@link PacketDetail} is an object that holds the
-     * length(size) of the packet in {@link #packetLength}
-     * and the time stamps of the outgoing packet
-     * in {@link #packetSendTimeMs}
-     */
-    private class PacketDetail
-    {
-        int packetLength;
-        long packetSendTimeMs;
-
-        PacketDetail(int length, long time)
-        {
-            packetLength = length;
-            packetSendTimeMs = time;
-        }
-    }
-
     /**
      * Handles outgoing RTP packets for this {@link TransportCCEngine}.
      */
@@ -562,9 +626,7 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
                             .addField("pt", RawPacket.getPayloadType(pkt))
                             .addField("tcc_seq", seq));
                 }
-                synchronized (sentPacketsSyncRoot) {
-                    sentPacketDetails.put(seq, new PacketDetail(pkt.getLength(), System.currentTimeMillis()));
-                }
+                putSentPacket(seq, pkt.getLength(), System.currentTimeMillis());
             }
             return pkt;
         }
@@ -29,6 +29,7 @@ import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.MediaStream;
 import org.atalk.service.neomedia.RawPacket;
+import org.atalk.service.neomedia.RawPacketPool;
 import org.atalk.service.neomedia.TransmissionFailedException;
 import org.atalk.service.neomedia.codec.Constants;
 import org.atalk.service.neomedia.format.MediaFormat;
@@ -310,8 +311,9 @@ public class RtxTransformer implements TransformEngine
         int len = pkt.getLength();
         int off = pkt.getOffset();
 
-        byte[] newBuf = new byte[len + 2];
-        RawPacket rtxPkt = new RawPacket(newBuf, 0, len + 2);
+        RawPacket rtxPkt = RawPacketPool.acquire(len + 2);
+        byte[] newBuf = rtxPkt.getBuffer();
+        rtxPkt.setLength(len + 2);
 
         int osn = pkt.getSequenceNumber();
         int headerLength = pkt.getHeaderLength();
@@ -338,6 +340,9 @@ public class RtxTransformer implements TransformEngine
             } catch (TransmissionFailedException tfe) {
                 Timber.w("Failed to transmit an RTX packet.");
                 return false;
+            } finally {
+                // injectPacket copies the packet data into the output stream.
+                rtxPkt.release();
             }
         }
         return true;
@@ -429,6 +434,8 @@ public class RtxTransformer implements TransformEngine
                         stats.rtpPacketNotRetransmitted(mediaSSRC, container.pkt.getLength());
                         i.remove();
                     }
+                    // The container holds a pooled copy of the cached packet.
+                    container.pkt.release();
 
                 }
                 else {
@@ -524,6 +531,8 @@ public class RtxTransformer implements TransformEngine
                 }
             }
         }
+        for (RawPacketCache.Container container : lastNPackets)
+            container.pkt.release();
         return bytes;
     }
 
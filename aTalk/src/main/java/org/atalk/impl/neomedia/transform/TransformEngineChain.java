@@ -5,18 +5,122 @@
  */
 package org.atalk.impl.neomedia.transform;
 
+import org.atalk.impl.neomedia.transform.fec.FECTransformEngine;
+import org.atalk.impl.neomedia.transform.rtcp.StatisticsEngine;
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.RawPacket;
+import org.atalk.service.neomedia.SrtpControl;
+import org.atalk.util.ConfigUtils;
+import org.atalk.util.concurrent.ExecutorFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import timber.log.Timber;
 
 /**
  * The engine chain allows using numerous <code>TransformEngine</code>s on a single stream.
+ * <p>
+ * If {@link #PIPELINED_PNAME} is enabled, the reverse transformation of received packets is
+ * pipelined: the cheap engines which only inspect or rewrite headers run inline on the receiving
+ * thread, while each of the expensive engines (SRTP, FEC and RTCP statistics) starts a stage which
+ * runs on a shared thread pool. A stage processes the packets of its stream one at a time and in
+ * the order they were received, so that the per-SSRC order is preserved while the stages of a
+ * stream (e.g. the decryption of a video packet and the FEC of the previous one) run in parallel.
+ * When the engine chain changes, the pipeline of the previous chain is drained and closed before
+ * the pipeline of the new chain delivers any packet.
  *
  * @author Emil Ivov
  * @author Lyubomir Marinov
  */
 public class TransformEngineChain implements TransformEngine {
+    /**
+     * The name of the <code>ConfigurationService</code> property which enables the pipelined reverse
+     * transformation of the received packets.
+     */
+    public static final String PIPELINED_PNAME = TransformEngineChain.class.getName() + ".PIPELINED";
+
+    /**
+     * The name of the <code>ConfigurationService</code> property which specifies the number of
+     * packets a pipeline stage may hold; the packets which overflow a stage are dropped.
+     */
+    public static final String PIPELINE_QUEUE_CAPACITY_PNAME
+            = TransformEngineChain.class.getName() + ".PIPELINE_QUEUE_CAPACITY";
+
+    /**
+     * The maximum number of packets a stage processes before yielding its pool thread to the
+     * stages of the other streams.
+     */
+    private static final int MAX_PACKETS_PER_RUN = 16;
+
+    /**
+     * The maximum time in ms the receiving thread waits for the pipeline of the previous engine
+     * chain to deliver its packets, when the engine chain changes; the packets left are dropped.
+     */
+    private static final long PIPELINE_DRAIN_TIMEOUT = 200;
+
+    /**
+     * The thread pool shared by the pipeline stages of all chains, created on demand.
+     */
+    private static ExecutorService pipelineExecutor;
+
+    /**
+     * Gets the thread pool shared by the pipeline stages of all chains.
+     *
+     * @return the <code>ExecutorService</code> of the pipeline stages
+     */
+    private static synchronized ExecutorService getPipelineExecutor() {
+        if (pipelineExecutor == null) {
+            pipelineExecutor = ExecutorFactory.createCPUBoundScheduledExecutor(
+                    TransformEngineChain.class.getName() + ".pipeline", 60, TimeUnit.SECONDS);
+        }
+        return pipelineExecutor;
+    }
+
+    /**
+     * Determines whether the <code>PacketTransformer</code> of a specific engine is expensive enough to
+     * run as a separate stage of a pipeline.
+     *
+     * @param engine the <code>TransformEngine</code> to check
+     * @return <code>true</code> if <code>engine</code> is to start a pipeline stage
+     */
+    private static boolean isPipelineStage(TransformEngine engine) {
+        if (engine instanceof TransformEngineWrapper)
+            engine = ((TransformEngineWrapper<?>) engine).getWrapped();
+
+        return (engine instanceof SrtpControl.TransformEngine)
+                || (engine instanceof FECTransformEngine)
+                || (engine instanceof StatisticsEngine);
+    }
+
+    /**
+     * Receives the packets which went through the whole reverse transformation pipeline.
+     */
+    public interface PacketSink {
+        /**
+         * Accepts reverse-transformed packets; always called by one thread at a time, in order.
+         *
+         * @param pkts the reverse-transformed packets
+         */
+        void accept(RawPacket[] pkts);
+    }
+
+    /**
+     * Whether {@link PacketTransformerChain#reverseTransform(RawPacket[], PacketSink)} is pipelined.
+     */
+    private final boolean pipelined;
+
+    /**
+     * The number of packets a pipeline stage may hold.
+     */
+    private final int pipelineQueueCapacity;
     /**
      * The sequence of <code>TransformEngine</code>s whose <code>PacketTransformer</code>s this engine chain
      * will be applying to RTP and RTCP packets. Implemented as copy-on-write storage for the
@@ -50,6 +154,7 @@ public class TransformEngineChain implements TransformEngine {
      * on outgoing packets.
      */
     public TransformEngineChain(TransformEngine[] engineChain) {
+        this();
         setEngineChain(engineChain.clone());
     }
 
@@ -59,6 +164,9 @@ public class TransformEngineChain implements TransformEngine {
      */
     protected TransformEngineChain() {
         // Extenders must initialize this.engineChain
+        ConfigurationService cfg = LibJitsi.getConfigurationService();
+        pipelined = ConfigUtils.getBoolean(cfg, PIPELINED_PNAME, false);
+        pipelineQueueCapacity = Math.max(1, ConfigUtils.getInt(cfg, PIPELINE_QUEUE_CAPACITY_PNAME, 128));
     }
 
     /**
@@ -273,6 +381,50 @@ public class TransformEngineChain implements TransformEngine {
             this.rtp = rtp;
         }
 
+        /**
+         * The pipeline stages of the reverse transformation, built on demand for the current
+         * {@link #engineChain}.
+         */
+        private volatile Pipeline pipeline;
+
+        /**
+         * Determines whether {@link #reverseTransform(RawPacket[], PacketSink)} is pipelined, i.e.
+         * may deliver the packets asynchronously on another thread.
+         *
+         * @return <code>true</code> if the reverse transformation is pipelined
+         */
+        public boolean isPipelined() {
+            return pipelined;
+        }
+
+        /**
+         * Reverse-transforms the given packets like {@link #reverseTransform(RawPacket[])} and hands the
+         * result to a specific <code>PacketSink</code>: immediately on the calling thread, or later on
+         * a pipeline thread if this chain {@link #isPipelined()}.
+         *
+         * @param pkts the packets to reverse-transform
+         * @param sink the <code>PacketSink</code> to deliver the reverse-transformed packets to
+         */
+        public void reverseTransform(RawPacket[] pkts, PacketSink sink) {
+            if (!pipelined) {
+                sink.accept(reverseTransform(pkts));
+                return;
+            }
+
+            TransformEngine[] engineChain = TransformEngineChain.this.engineChain;
+            Pipeline pipeline = this.pipeline;
+            if (pipeline == null || pipeline.engineChain != engineChain || pipeline.sink != sink) {
+                // Do not let the packets of the two pipelines be delivered concurrently and out of order.
+                if (pipeline != null) {
+                    pipeline.drain(PIPELINE_DRAIN_TIMEOUT);
+                    pipeline.close();
+                }
+                pipeline = new Pipeline(engineChain, sink);
+                this.pipeline = pipeline;
+            }
+            pipeline.start(pkts);
+        }
+
         /**
          * Close the transformer and underlying transform engines.
          *
@@ -280,6 +432,11 @@ public class TransformEngineChain implements TransformEngine {
          */
         @Override
         public void close() {
+            Pipeline pipeline = this.pipeline;
+            if (pipeline != null) {
+                this.pipeline = null;
+                pipeline.close();
+            }
             for (TransformEngine engine : engineChain) {
                 PacketTransformer pTransformer
                         = rtp ? engine.getRTPTransformer() : engine.getRTCPTransformer();
@@ -300,8 +457,21 @@ public class TransformEngineChain implements TransformEngine {
         @Override
         public RawPacket[] reverseTransform(RawPacket[] pkts) {
             TransformEngine[] engineChain = TransformEngineChain.this.engineChain;
+            return reverseTransform(pkts, engineChain, engineChain.length - 1, 0);
+        }
 
-            for (int i = engineChain.length - 1; i >= 0; i--) {
+        /**
+         * Reverse-transforms the given packets using the engines of a specific range of a specific
+         * engine chain, in reverse order.
+         *
+         * @param pkts the packets to reverse-transform
+         * @param engineChain the engine chain
+         * @param from the index of the first engine to apply
+         * @param to the index of the last engine to apply, lower than or equal to <code>from</code>
+         * @return the reverse-transformed packets
+         */
+        private RawPacket[] reverseTransform(RawPacket[] pkts, TransformEngine[] engineChain, int from, int to) {
+            for (int i = from; i >= to && pkts != null; i--) {
                 TransformEngine engine = engineChain[i];
                 PacketTransformer pTransformer
                         = rtp ? engine.getRTPTransformer() : engine.getRTCPTransformer();
@@ -314,6 +484,217 @@ public class TransformEngineChain implements TransformEngine {
             return pkts;
         }
 
+        /**
+         * Releases the packets of a batch which is dropped.
+         *
+         * @param pkts the packets to release
+         */
+        private void release(RawPacket[] pkts) {
+            for (RawPacket pkt : pkts) {
+                if (pkt != null)
+                    pkt.release();
+            }
+        }
+
+        /**
+         * The reverse transformation pipeline of a specific engine chain: an inline range of cheap
+         * engines followed by the {@link Stage}s which start at the expensive engines. The last stage
+         * delivers the packets under the lock of the pipeline, so that none is delivered once
+         * {@link #close()} returns.
+         */
+        private class Pipeline {
+            final TransformEngine[] engineChain;
+
+            final PacketSink sink;
+
+            /**
+             * The index (in <code>engineChain</code>) of the last engine applied inline, on the thread
+             * which delivers the packets.
+             */
+            private final int inlineTo;
+
+            /**
+             * The first stage or <code>null</code> if no engine of the chain is expensive.
+             */
+            private final Stage firstStage;
+
+            /**
+             * The number of batches offered to the first stage and neither delivered nor dropped yet;
+             * guarded by <code>this</code>.
+             */
+            private int inFlight = 0;
+
+            /**
+             * Whether this pipeline is closed; guarded by <code>this</code>.
+             */
+            private boolean closed = false;
+
+            Pipeline(TransformEngine[] engineChain, PacketSink sink) {
+                this.engineChain = engineChain;
+                this.sink = sink;
+
+                // The engines are applied in reverse order; each expensive engine starts a stage.
+                List<Integer> stageStarts = new ArrayList<>();
+                for (int i = engineChain.length - 1; i >= 0; i--) {
+                    if (isPipelineStage(engineChain[i]))
+                        stageStarts.add(i);
+                }
+                inlineTo = stageStarts.isEmpty() ? 0 : stageStarts.get(0) + 1;
+
+                Stage next = null;
+                for (int s = stageStarts.size() - 1; s >= 0; s--) {
+                    int from = stageStarts.get(s);
+                    int to = (s + 1 < stageStarts.size()) ? stageStarts.get(s + 1) + 1 : 0;
+                    next = new Stage(this, from, to, next);
+                }
+                firstStage = next;
+            }
+
+            void start(RawPacket[] pkts) {
+                pkts = reverseTransform(pkts, engineChain, engineChain.length - 1, inlineTo);
+                if (firstStage == null)
+                    sink.accept(pkts);
+                else if (pkts != null) {
+                    synchronized (this) {
+                        inFlight++;
+                    }
+                    firstStage.offer(pkts);
+                }
+            }
+
+            /**
+             * Delivers the packets of a batch which went through the last stage, unless this pipeline
+             * is closed.
+             *
+             * @param pkts the reverse-transformed packets
+             */
+            synchronized void deliver(RawPacket[] pkts) {
+                if (!closed)
+                    sink.accept(pkts);
+                else if (pkts != null)
+                    release(pkts);
+                done();
+            }
+
+            /**
+             * Notes that a batch left the pipeline, delivered or dropped.
+             */
+            synchronized void done() {
+                if (--inFlight <= 0)
+                    notifyAll();
+            }
+
+            /**
+             * Waits until the batches started so far have left the pipeline, for at most a specific time.
+             *
+             * @param timeout the maximum time to wait in ms
+             */
+            synchronized void drain(long timeout) {
+                long deadline = System.currentTimeMillis() + timeout;
+                long wait;
+                while (inFlight > 0 && (wait = deadline - System.currentTimeMillis()) > 0) {
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                if (inFlight > 0)
+                    Timber.w("Pipeline not drained in %s ms, dropping %s batches", timeout, inFlight);
+            }
+
+            void close() {
+                synchronized (this) {
+                    closed = true;
+                }
+                for (Stage stage = firstStage; stage != null; stage = stage.next)
+                    stage.close();
+            }
+        }
+
+        /**
+         * A stage of a {@link Pipeline}: applies a range of engines to the packets queued into it,
+         * one batch at a time and in order, on the shared pipeline thread pool.
+         */
+        private class Stage implements Runnable {
+            private final Pipeline pipeline;
+
+            private final int from;
+
+            private final int to;
+
+            final Stage next;
+
+            private final ArrayBlockingQueue<RawPacket[]> queue
+                    = new ArrayBlockingQueue<>(pipelineQueueCapacity);
+
+            /**
+             * Whether this stage is scheduled on (or running in) the pool.
+             */
+            private final AtomicBoolean scheduled = new AtomicBoolean();
+
+            private final AtomicLong dropped = new AtomicLong();
+
+            Stage(Pipeline pipeline, int from, int to, Stage next) {
+                this.pipeline = pipeline;
+                this.from = from;
+                this.to = to;
+                this.next = next;
+            }
+
+            void offer(RawPacket[] pkts) {
+                if (!queue.offer(pkts)) {
+                    // The stage can not keep up; drop like an overflowing receive buffer would.
+                    release(pkts);
+                    pipeline.done();
+                    long count = dropped.incrementAndGet();
+                    if (count == 1 || count % 1000 == 0)
+                        Timber.w("Pipeline stage overflow, dropped %s packets", count);
+                    return;
+                }
+                if (scheduled.compareAndSet(false, true))
+                    getPipelineExecutor().execute(this);
+            }
+
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < MAX_PACKETS_PER_RUN; i++) {
+                        RawPacket[] pkts = queue.poll();
+                        if (pkts == null)
+                            break;
+
+                        try {
+                            pkts = reverseTransform(pkts, pipeline.engineChain, from, to);
+                            if (next == null)
+                                pipeline.deliver(pkts);
+                            else if (pkts != null)
+                                next.offer(pkts);
+                            else
+                                pipeline.done();
+                        } catch (Exception e) {
+                            Timber.e(e, "Failed to reverse-transform packets");
+                            pipeline.done();
+                        }
+                    }
+                } finally {
+                    scheduled.set(false);
+                }
+                // Packets queued while this run was finishing or left after the batch.
+                if (!queue.isEmpty() && scheduled.compareAndSet(false, true))
+                    getPipelineExecutor().execute(this);
+            }
+
+            void close() {
+                RawPacket[] pkts;
+                while ((pkts = queue.poll()) != null) {
+                    release(pkts);
+                    pipeline.done();
+                }
+            }
+        }
+
         /**
          * {@inheritDoc}
          *
@@ -25,6 +25,20 @@ public abstract class TransformInputStream<T extends Closeable> extends RTPConne
      */
     private PacketTransformer transformer;
 
+    /**
+     * Receives the packets reverse-transformed by a pipelined <code>PacketTransformerChain</code>.
+     */
+    private final TransformEngineChain.PacketSink pipelineSink = pkts -> {
+        if (pkts != null)
+            transferData(pkts);
+    };
+
+    /**
+     * The array returned by {@link #createRawPacket(DatagramPacket)} when the packets are delivered
+     * later by a pipelined <code>PacketTransformerChain</code>.
+     */
+    private static final RawPacket[] NO_PACKETS = new RawPacket[0];
+
     /**
      * Initializes a new <code>TransformInputStream</code> which is to transform the packets received
      * from a specific (network) socket.
@@ -56,10 +70,21 @@ public abstract class TransformInputStream<T extends Closeable> extends RTPConne
         // Don't try to transform invalid (e.g. empty) packets.
         for (int i = 0; i < pkts.length; i++) {
             RawPacket pkt = pkts[i];
-            if (pkt != null && pkt.isInvalid())
+            if (pkt != null && pkt.isInvalid()) {
                 pkts[i] = null; // null elements are ignored
+                pkt.release();
+            }
         }
         PacketTransformer transformer = getTransformer();
+        if (transformer instanceof TransformEngineChain.PacketTransformerChain) {
+            TransformEngineChain.PacketTransformerChain chain
+                    = (TransformEngineChain.PacketTransformerChain) transformer;
+
+            if (chain.isPipelined()) {
+                chain.reverseTransform(pkts, pipelineSink);
+                return NO_PACKETS;
+            }
+        }
         return (transformer == null) ? pkts : transformer.reverseTransform(pkts);
     }
 
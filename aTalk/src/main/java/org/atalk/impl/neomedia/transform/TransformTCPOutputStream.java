@@ -52,14 +52,11 @@ public class TransformTCPOutputStream extends RTPConnectorTCPOutputStream
 	/**
 	 * {@inheritDoc}
 	 *
-	 * Transforms the array of {@code RawPacket}s returned by the super
-	 * {@link #packetize(byte[],int,int,Object)} implementation using the associated
-	 * {@code PacketTransformer}.
+	 * Transforms the specified {@code pkts} using the associated {@code PacketTransformer}.
 	 */
 	@Override
-	protected RawPacket[] packetize(byte[] buf, int off, int len, Object context)
+	protected RawPacket[] transform(RawPacket[] pkts, Object context)
 	{
-		RawPacket[] pkts = super.packetize(buf, off, len, context);
 		return _impl.transform(pkts, context);
 	}
 
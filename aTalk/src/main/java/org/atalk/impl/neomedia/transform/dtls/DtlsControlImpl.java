@@ -166,15 +166,15 @@ public class DtlsControlImpl extends AbstractSrtpControl<DtlsTransformEngine> im
      * The <code>SRTPProtectionProfile</code>s supported by <code>DtlsControlImpl</code>.
      */
     static final int[] SRTP_PROTECTION_PROFILES = {
+            // RFC 7714 14.2.
+            SRTPProtectionProfile.SRTP_AEAD_AES_128_GCM,
+            SRTPProtectionProfile.SRTP_AEAD_AES_256_GCM,
+
             // RFC 5764 4.1.2.
             SRTPProtectionProfile.SRTP_AES128_CM_HMAC_SHA1_80,
             SRTPProtectionProfile.SRTP_AES128_CM_HMAC_SHA1_32,
             // SRTPProtectionProfile.SRTP_NULL_HMAC_SHA1_80,
             // SRTPProtectionProfile.SRTP_NULL_HMAC_SHA1_32,
-
-            // RFC 7714 14.2.
-            // SRTPProtectionProfile.SRTP_AEAD_AES_128_GCM,
-            // SRTPProtectionProfile.SRTP_AEAD_AES_256_GCM
     };
 
     /**
@@ -554,27 +554,25 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
              * authentication tag field provided by SRTP/SRTCP.
              */
             case SRTPProtectionProfile.SRTP_AEAD_AES_128_GCM:
-                Timber.w("Unsupported RFC-7714 SRTP profile: %s", SRTPProtectionProfile.SRTP_AEAD_AES_128_GCM);
-                cipher = SrtpPolicy.AESCM_ENCRYPTION;
+                cipher = SrtpPolicy.AESGCM_ENCRYPTION;
                 cipher_key_length = 128 / 8;
                 cipher_salt_length = 96 / 8;
                 aead_auth_tag_length = 16; // 16 octets
-                auth_function = SrtpPolicy.NULL_ENCRYPTION;
+                auth_function = SrtpPolicy.NULL_AUTHENTICATION;
                 auth_key_length = 0;        // NA
-                RTP_auth_tag_length = 0;    // NA
-                RTCP_auth_tag_length = 0;   // NA
+                // SrtpPolicy carries the aead_auth_tag_length of AESGCM_ENCRYPTION as its auth tag length
+                RTP_auth_tag_length = RTCP_auth_tag_length = aead_auth_tag_length;
                 break;
 
             case SRTPProtectionProfile.SRTP_AEAD_AES_256_GCM:
-                Timber.w("Unsupported RFC-7714 SRTP profile: %s", SRTPProtectionProfile.SRTP_AEAD_AES_256_GCM);
-                cipher = SrtpPolicy.AESCM_ENCRYPTION;
+                cipher = SrtpPolicy.AESGCM_ENCRYPTION;
                 cipher_key_length = 256 / 8;
                 cipher_salt_length = 96 / 8;
                 aead_auth_tag_length = 16; // 16 octets
-                auth_function = SrtpPolicy.NULL_ENCRYPTION;
+                auth_function = SrtpPolicy.NULL_AUTHENTICATION;
                 auth_key_length = 0;        // NA
-                RTP_auth_tag_length = 0;    // NA
-                RTCP_auth_tag_length = 0;   // NA
+                // SrtpPolicy carries the aead_auth_tag_length of AESGCM_ENCRYPTION as its auth tag length
+                RTP_auth_tag_length = RTCP_auth_tag_length = aead_auth_tag_length;
                 break;
 
             default:
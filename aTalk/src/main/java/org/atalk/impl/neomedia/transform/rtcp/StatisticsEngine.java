@@ -56,14 +56,11 @@ import org.atalk.util.MediaType;
 import org.atalk.util.RTCPUtils;
 import org.atalk.util.RTPUtils;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import javax.media.control.JitterBufferControl;
 import javax.media.rtp.ReceiveStream;
@@ -113,6 +110,64 @@ public class StatisticsEngine extends SinglePacketTransformer implements Transfo
         return -1;
     }
 
+    /**
+     * Determines whether a specific compound RTCP packet is well-formed i.e. it consists of RTCP
+     * packets only and its SR and RR packets are long enough for their reception report count, and
+     * whether any of its RTCP packets is to be parsed into an <code>RTCPPacket</code> for the purposes of
+     * the <code>MediaStreamStats</code>. Does not allocate.
+     *
+     * @param buf the buffer of the compound RTCP packet
+     * @param off the offset in <code>buf</code> at which the compound RTCP packet starts
+     * @param len the length in bytes of the compound RTCP packet
+     * @param listeners <code>true</code> if there are <code>RTCPPacketListener</code>s to be notified about
+     * the received SR and RTCP feedback packets
+     * @return <code>-1</code> if the compound RTCP packet is malformed, <code>1</code> if it is to be parsed
+     * into <code>RTCPPacket</code>s and <code>0</code> otherwise
+     */
+    private static int scanRTCPCompoundPacket(byte[] buf, int off, int len, boolean listeners)
+    {
+        int parse = 0;
+
+        for (int end = off + len; off < end; ) {
+            int rtcpPktLen = getLengthIfRTCP(buf, off, end - off);
+            if (rtcpPktLen <= 0) // Not an RTCP packet.
+                return -1;
+
+            int pt = 0xff & buf[off + 1]; // payload type (PT)
+
+            switch (pt) {
+                case RTCPPacket.SR:
+                case RTCPPacket.RR:
+                    int rc = 0x1f & buf[off]; // reception report count
+                    int minRTCPPktLen = (2 + rc * 6) * 4;
+
+                    if (pt == RTCPPacket.SR) {
+                        minRTCPPktLen += 5 * 4;
+                        if (listeners)
+                            parse = 1;
+                    }
+                    if (rtcpPktLen < minRTCPPktLen)
+                        return -1;
+                    break;
+
+                case RTCPFBPacket.PSFB:
+                case RTCPFBPacket.RTPFB:
+                    if (listeners)
+                        parse = 1;
+                    break;
+
+                case RTCPExtendedReport.XR:
+                    parse = 1;
+                    break;
+
+                default:
+                    break;
+            }
+            off += rtcpPktLen;
+        }
+        return parse;
+    }
+
     /**
      * The minimum inter arrival jitter value we have reported, in RTP timestamp units.
      */
@@ -134,14 +189,10 @@ public class StatisticsEngine extends SinglePacketTransformer implements Transfo
     private long minInterArrivalJitter = -1;
 
     /**
-     * The number of RTCP sender reports (SR) and/or receiver reports (RR) sent. Mapped per ssrc.
+     * The number of RTCP sender reports (SR) and/or receiver reports (RR) sent and the sum of the
+     * jitter values we have reported in them, in RTP timestamp units. Mapped per ssrc.
      */
-    private final Map<Long, Long> numberOfRTCPReportsMap = new HashMap<>();
-
-    /**
-     * The sum of the jitter values we have reported in RTCP reports, in RTP timestamp units.
-     */
-    private final Map<Long, Long> jitterSumMap = new HashMap<>();
+    private final SSRCReportCounters sentReportCounters = new SSRCReportCounters();
 
     /**
      * The {@link RTCPPacketParserEx} which this instance will use to parse RTCP packets.
@@ -302,22 +353,16 @@ public class StatisticsEngine extends SinglePacketTransformer implements Transfo
                     }
 
                     int senderSSRC = RTPUtils.readInt(buf, off + 4);
-                    // Collect the SSRCs of the RTP data packet sources being
-                    // reported upon by the RTCP RR/SR packet because they may
-                    // be of concern to the RTCP XR packet (e.g. VoIP Metrics Report Block).
-                    int[] sourceSSRCs = new int[rc];
-
-                    for (int i = 0; i < rc; i++) {
-                        sourceSSRCs[i] = RTPUtils.readInt(buf, receptionReportBlockOff);
-                        receptionReportBlockOff += 6 * 4;
-                    }
 
-                    // Initialize an RTCP XR packet.
-                    RTCPExtendedReport rtcpXR = createRTCPExtendedReport(senderSSRC, sourceSSRCs, sdpParams);
+                    // Initialize an RTCP XR packet reporting upon the RTP data packet sources
+                    // reported upon by the RTCP RR/SR packet because they may be of concern to
+                    // the RTCP XR packet (e.g. VoIP Metrics Report Block).
+                    RTCPExtendedReport rtcpXR = createRTCPExtendedReport(senderSSRC,
+                            buf, receptionReportBlockOff, rc, sdpParams);
 
                     if (rtcpXR != null) {
                         if (rtcpXRs == null)
-                            rtcpXRs = new LinkedList<>();
+                            rtcpXRs = new ArrayList<>(1);
                         rtcpXRs.add(rtcpXR);
                     }
                 }
@@ -342,17 +387,24 @@ public class StatisticsEngine extends SinglePacketTransformer implements Transfo
      *
      * @param senderSSRC the synchronization source identifier (SSRC) of the originator of the new RTCP XR
      * packet
-     * @param sourceSSRCs the SSRCs of the RTP data packet sources to be reported upon by the new RTCP XR packet
+     * @param buf the buffer of the RTCP RR/SR packet
+     * @param receptionReportBlockOff the offset in <code>buf</code> of the reception report blocks of the
+     * RTCP RR/SR packet, which hold the SSRCs of the RTP data packet sources to be reported upon by the
+     * new RTCP XR packet
+     * @param rc the reception report count of the RTCP RR/SR packet
      * @param sdpParams
-     * @return a new RTCP XR packet with originator <code>senderSSRC</code> and reporting upon <code>sourceSSRCs</code>
+     * @return a new RTCP XR packet with originator <code>senderSSRC</code> and reporting upon the sources
+     * of the reception report blocks
      */
-    private RTCPExtendedReport createRTCPExtendedReport(int senderSSRC, int[] sourceSSRCs, String sdpParams)
+    private RTCPExtendedReport createRTCPExtendedReport(int senderSSRC,
+            byte[] buf, int receptionReportBlockOff, int rc, String sdpParams)
     {
         RTCPExtendedReport xr = null;
-        if ((sourceSSRCs != null) && (sourceSSRCs.length != 0)
+        if ((rc != 0)
                 && (sdpParams != null) && sdpParams.contains(RTCPExtendedReport.VoIPMetricsReportBlock.SDP_PARAMETER)) {
             xr = new RTCPExtendedReport();
-            for (int sourceSSRC : sourceSSRCs) {
+            for (int i = 0; i < rc; i++, receptionReportBlockOff += 6 * 4) {
+                int sourceSSRC = RTPUtils.readInt(buf, receptionReportBlockOff);
                 RTCPExtendedReport.VoIPMetricsReportBlock reportBlock
                         = createVoIPMetricsReportBlock(senderSSRC, sourceSSRC);
 
@@ -641,10 +693,7 @@ public class StatisticsEngine extends SinglePacketTransformer implements Transfo
      */
     public double getAvgInterArrivalJitter()
     {
-        long numberOfRTCPReports = getCumulativeValue(numberOfRTCPReportsMap);
-        long jitterSum = getCumulativeValue(jitterSumMap);
-
-        return numberOfRTCPReports == 0 ? 0 : ((double) jitterSum) / numberOfRTCPReports;
+        return sentReportCounters.getAvgJitter();
     }
 
     /**
@@ -720,6 +769,11 @@ public class StatisticsEngine extends SinglePacketTransformer implements Transfo
     /**
      * Parses incoming RTCP packets and notifies the {@link MediaStreamStats} of this instance
      * about the reception of packets with known types (currently these are RR, SR, XR, REMB, NACK).
+     * <p>
+     * The compound RTCP packet is walked in place in the buffer of <code>pkt</code>. It is parsed into
+     * <code>RTCPPacket</code>s only if it contains an RTCP XR packet or there are
+     * <code>RTCPPacketListener</code>s to be notified about its SR and RTCP feedback packets.
+     * </p>
      *
      * @param pkt the packet to reverse-transform
      * @return the packet which is the result of the reverse-transform
@@ -727,26 +781,32 @@ public class StatisticsEngine extends SinglePacketTransformer implements Transfo
     @Override
     public RawPacket reverseTransform(RawPacket pkt)
     {
-        // SRTP may send non-RTCP packets.
-        if (RTCPUtils.isRtcp(pkt.getBuffer(), pkt.getOffset(), pkt.getLength())) {
-            mediaStreamStats.rtcpPacketReceived(pkt.getRTCPSSRC(), pkt.getLength());
+        byte[] buf = pkt.getBuffer();
+        int off = pkt.getOffset();
+        int len = pkt.getLength();
 
-            RTCPCompoundPacket compound;
-            Exception ex;
-            try {
-                compound = (RTCPCompoundPacket) parser.parse(pkt.getBuffer(), pkt.getOffset(), pkt.getLength());
-                ex = null;
-            } catch (BadFormatException | IllegalStateException e) {
-                // In some parsing failures, FMJ swallows the original
-                // IOException and throws a runtime IllegalStateException.
-                // Handle it as if parsing failed.
-                compound = null;
-                ex = e;
+        // SRTP may send non-RTCP packets.
+        if (RTCPUtils.isRtcp(buf, off, len)) {
+            mediaStreamStats.rtcpPacketReceived(pkt.getRTCPSSRC(), len);
+
+            int parse = scanRTCPCompoundPacket(buf, off, len, mediaStreamStats.hasRTCPPacketListeners());
+            RTCPPacket[] packets = null;
+            Exception ex = null;
+
+            if (parse > 0) {
+                try {
+                    RTCPCompoundPacket compound = (RTCPCompoundPacket) parser.parse(buf, off, len);
+                    if (compound != null && compound.packets != null && compound.packets.length != 0)
+                        packets = compound.packets;
+                } catch (BadFormatException | IllegalStateException e) {
+                    // In some parsing failures, FMJ swallows the original
+                    // IOException and throws a runtime IllegalStateException.
+                    // Handle it as if parsing failed.
+                    ex = e;
+                }
             }
 
-            if (compound == null
-                    || compound.packets == null
-                    || compound.packets.length == 0) {
+            if (parse < 0 || (parse > 0 && packets == null)) {
                 Timber.i("Failed to parse an incoming RTCP packet: %s", (ex == null ? "null" : ex.getMessage()));
 
                 // Either this is an empty packet, or parsing failed. In any
@@ -757,7 +817,7 @@ public class StatisticsEngine extends SinglePacketTransformer implements Transfo
             }
 
             try {
-                updateReceivedMediaStreamStats(compound.packets);
+                updateReceivedMediaStreamStats(buf, off, len, packets);
             } catch (Throwable t) {
                 if (t instanceof ThreadDeath) {
                     throw (ThreadDeath) t;
@@ -771,16 +831,53 @@ public class StatisticsEngine extends SinglePacketTransformer implements Transfo
     }
 
     /**
-     * Processes the {@link RTCPPacket}s from {@code in} as received RTCP
-     * packets and updates the {@link MediaStreamStats}. Adds to {@code out} the
-     * ones which were not consumed and should be output from this instance.
+     * Processes a received compound RTCP packet and updates the {@link MediaStreamStats}. The SR and
+     * RR reports are read directly from the buffer of the compound RTCP packet; the other RTCP
+     * packets are processed from {@code in} if the compound RTCP packet has been parsed.
      *
-     * @param in the input packets
+     * @param buf the buffer of the compound RTCP packet
+     * @param off the offset in <code>buf</code> at which the compound RTCP packet starts
+     * @param len the length in bytes of the compound RTCP packet
+     * @param in the <code>RTCPPacket</code>s parsed from the compound RTCP packet or <code>null</code>
+     * if it has not been parsed
      */
-    private void updateReceivedMediaStreamStats(RTCPPacket[] in)
+    private void updateReceivedMediaStreamStats(byte[] buf, int off, int len, RTCPPacket[] in)
     {
         MediaStreamStatsImpl streamStats = mediaStream.getMediaStreamStats();
 
+        for (int end = off + len; off < end; ) {
+            int rtcpPktLen = getLengthIfRTCP(buf, off, end - off);
+            int pt = 0xff & buf[off + 1]; // payload type (PT)
+
+            switch (pt) {
+                case RTCPPacket.SR:
+                    // The parsed RTCPSRPacket, if any, is handled below.
+                    if (in == null) {
+                        streamStats.srReceived(RTPUtils.readUint32AsLong(buf, off + 8),
+                                RTPUtils.readUint32AsLong(buf, off + 12));
+                    }
+                case RTCPPacket.RR:
+                    RTCPReport report;
+                    try {
+                        report = parseRTCPReport(pt, buf, off, rtcpPktLen);
+                    } catch (IOException ioe) {
+                        Timber.e(ioe, "Failed to parse an RTCP report.");
+                        report = null;
+                    }
+                    if (report != null) {
+                        streamStats.getRTCPReports().rtcpReportReceived(report);
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+            off += rtcpPktLen;
+        }
+
+        if (in == null)
+            return;
+
         for (RTCPPacket rtcp : in) {
             switch (rtcp.type) {
                 case RTCPFBPacket.PSFB:
@@ -796,20 +893,6 @@ public class StatisticsEngine extends SinglePacketTransformer implements Transfo
                     if (rtcp instanceof RTCPSRPacket) {
                         streamStats.srReceived((RTCPSRPacket) rtcp);
                     }
-                case RTCPPacket.RR:
-                    RTCPReport report;
-                    try {
-                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                        rtcp.assemble(new DataOutputStream(baos));
-                        byte[] buf = baos.toByteArray();
-                        report = parseRTCPReport(rtcp.type, buf, 0, buf.length);
-                    } catch (IOException ioe) {
-                        Timber.e(ioe, "Failed to assemble an RTCP report.");
-                        report = null;
-                    }
-                    if (report != null) {
-                        streamStats.getRTCPReports().rtcpReportReceived(report);
-                    }
                     break;
 
                 case RTCPFBPacket.RTPFB:
@@ -917,7 +1000,7 @@ public class StatisticsEngine extends SinglePacketTransformer implements Transfo
                 long ssrc = feedback.getSSRC();
                 long jitter = feedback.getJitter();
 
-                incrementSSRCCounter(numberOfRTCPReportsMap, ssrc, 1);
+                long numberOfRTCPReports = sentReportCounters.reportSent(ssrc, jitter);
 
                 if (jitter < getMinInterArrivalJitter()
                         || getMinInterArrivalJitter() == -1) {
@@ -926,10 +1009,7 @@ public class StatisticsEngine extends SinglePacketTransformer implements Transfo
                 if (getMaxInterArrivalJitter() < jitter)
                     maxInterArrivalJitter = jitter;
 
-                incrementSSRCCounter(jitterSumMap, ssrc, jitter);
-
                 if (TimberLog.isTraceEnable) {
-                    long numberOfRTCPReports = getMapValue(numberOfRTCPReportsMap, ssrc);
                     // As sender reports are sent on every 5 seconds, print
                     // every 4th packet, on every 20 seconds.
                     if (numberOfRTCPReports % 4 == 1) {
@@ -962,56 +1042,73 @@ public class StatisticsEngine extends SinglePacketTransformer implements Transfo
     }
 
     /**
-     * Computes the sum of the values of a specific {@code Map} with {@code Long} values.
-     *
-     * @param map the {@code Map} with {@code Long} values to sum up. Note that
-     * we synchronize on this object!
-     * @return the sum of the values of the specified {@code map}
+     * The number of RTCP reports sent and the sum of the jitter values reported in them, per SSRC, in
+     * primitive arrays instead of maps with boxed keys and values. A stream reports upon a handful of
+     * SSRCs at most, so they are looked up linearly.
      */
-    private static long getCumulativeValue(Map<?, Long> map)
+    private static class SSRCReportCounters
     {
-        long cumulativeValue = 0;
+        /**
+         * The SSRCs reported upon; the first {@link #size} are in use.
+         */
+        private long[] ssrcs = new long[4];
+
+        /**
+         * The number of RTCP reports sent per SSRC in {@link #ssrcs}.
+         */
+        private long[] reportCounts = new long[4];
+
+        /**
+         * The sum of the jitter values reported per SSRC in {@link #ssrcs}, in RTP timestamp units.
+         */
+        private long[] jitterSums = new long[4];
 
-        synchronized (map) {
-            for (Long value : map.values()) {
-                if (value == null)
-                    continue;
-                cumulativeValue += value;
+        /**
+         * The number of SSRCs in use in {@link #ssrcs}.
+         */
+        private int size = 0;
+
+        /**
+         * Counts an RTCP report sent upon a specific SSRC.
+         *
+         * @param ssrc the SSRC reported upon
+         * @param jitter the reported jitter, in RTP timestamp units
+         * @return the number of RTCP reports sent upon <code>ssrc</code>, including this one
+         */
+        synchronized long reportSent(long ssrc, long jitter)
+        {
+            int i = 0;
+            while (i < size && ssrcs[i] != ssrc)
+                i++;
+
+            if (i == size) {
+                if (size == ssrcs.length) {
+                    ssrcs = Arrays.copyOf(ssrcs, 2 * size);
+                    reportCounts = Arrays.copyOf(reportCounts, 2 * size);
+                    jitterSums = Arrays.copyOf(jitterSums, 2 * size);
+                }
+                ssrcs[i] = ssrc;
+                size++;
             }
+            jitterSums[i] += jitter;
+            return ++reportCounts[i];
         }
-        return cumulativeValue;
-    }
 
-    /**
-     * Utility method to return a value from a map and perform unboxing only if
-     * the result value is not null.
-     *
-     * @param map the map to get the value. Note that we synchronize on that object!
-     * @param ssrc the key
-     * @return the result value or 0 if nothing is found.
-     */
-    private static long getMapValue(Map<?, Long> map, long ssrc)
-    {
-        synchronized (map) {
-            // there can be no entry, or the value can be null
-            Long res = map.get(ssrc);
-            return res == null ? 0 : res;
-        }
-    }
+        /**
+         * Gets the average of the jitter values reported over all SSRCs.
+         *
+         * @return the average reported jitter, in RTP timestamp units
+         */
+        synchronized double getAvgJitter()
+        {
+            long numberOfRTCPReports = 0;
+            long jitterSum = 0;
 
-    /**
-     * Utility method to increment map value with specified step. If entry is missing add it.
-     *
-     * @param map the map holding the values. Note that we synchronize on that
-     * object!
-     * @param ssrc the key of the value to increment
-     * @param step increment step value
-     */
-    private static void incrementSSRCCounter(Map<Long, Long> map, long ssrc, long step)
-    {
-        synchronized (map) {
-            Long count = map.get(ssrc);
-            map.put(ssrc, (count == null) ? step : (count + step));
+            for (int i = 0; i < size; i++) {
+                numberOfRTCPReports += reportCounts[i];
+                jitterSum += jitterSums[i];
+            }
+            return numberOfRTCPReports == 0 ? 0 : ((double) jitterSum) / numberOfRTCPReports;
         }
     }
 
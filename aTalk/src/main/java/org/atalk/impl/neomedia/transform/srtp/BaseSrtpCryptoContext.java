@@ -30,6 +30,7 @@ import org.atalk.impl.neomedia.transform.srtp.crypto.SrtpCipherCtr;
 import org.atalk.impl.neomedia.transform.srtp.crypto.SrtpCipherCtrJava;
 import org.atalk.impl.neomedia.transform.srtp.crypto.SrtpCipherCtrOpenSsl;
 import org.atalk.impl.neomedia.transform.srtp.crypto.SrtpCipherF8;
+import org.atalk.impl.neomedia.transform.srtp.crypto.SrtpCipherGcm;
 import org.atalk.util.ByteArrayBuffer;
 import org.bouncycastle.crypto.Mac;
 import org.bouncycastle.crypto.engines.TwofishEngine;
@@ -74,11 +75,21 @@ public class BaseSrtpCryptoContext
      */
     protected final SrtpCipherF8 cipherF8;
 
+    /**
+     * implements the AEAD Galois/Counter Mode cipher for RTP according to RFC 7714
+     */
+    protected final SrtpCipherGcm cipherGcm;
+
     /**
      * Temp store.
      */
     protected final byte[] ivStore = new byte[16];
 
+    /**
+     * Temp store for the 12 bytes AEAD initialization vector.
+     */
+    protected final byte[] ivStoreGcm = new byte[SrtpCipherGcm.IV_LENGTH];
+
     /**
      * The HMAC object we used to do packet authentication
      */
@@ -126,6 +137,7 @@ public class BaseSrtpCryptoContext
 
         cipherCtr = null;
         cipherF8 = null;
+        cipherGcm = null;
         mac = null;
         policy = null;
         saltKey = null;
@@ -165,6 +177,7 @@ public class BaseSrtpCryptoContext
 
         SrtpCipherCtr cipherCtr = null;
         SrtpCipherF8 cipherF8 = null;
+        SrtpCipherGcm cipherGcm = null;
         byte[] saltKey = null;
 
         switch (policy.getEncType()) {
@@ -187,6 +200,11 @@ public class BaseSrtpCryptoContext
                 saltKey = new byte[saltKeyLength];
                 break;
 
+            case SrtpPolicy.AESGCM_ENCRYPTION:
+                cipherGcm = SrtpCipherGcm.createCipher(encKeyLength);
+                saltKey = new byte[saltKeyLength];
+                break;
+
             case SrtpPolicy.TWOFISHF8_ENCRYPTION:
                 cipherF8 = new SrtpCipherF8(new TwofishEngine());
                 //$FALL-THROUGH$
@@ -198,6 +216,7 @@ public class BaseSrtpCryptoContext
         }
         this.cipherCtr = cipherCtr;
         this.cipherF8 = cipherF8;
+        this.cipherGcm = cipherGcm;
         this.saltKey = saltKey;
 
         Mac mac;
@@ -146,17 +146,25 @@ public class SRTPTransformer extends SinglePacketTransformer
     {
         // only accept RTP version 2 (SNOM phones send weird packages when on
         // hold, ignore them with this check (RTP Version must be equal to 2)
-        if ((pkt.readByte(0) & 0xC0) != 0x80)
+        if ((pkt.readByte(0) & 0xC0) != 0x80) {
+            pkt.release();
             return null;
+        }
 
         SrtpCryptoContext context = getContext(pkt.getSSRC(), reverseFactory, pkt.getSequenceNumber());
 
         boolean skipDecryption = (pkt.getFlags() & (Buffer.FLAG_DISCARD | Buffer.FLAG_SILENCE)) != 0;
 
         if (context == null) {
+            pkt.release();
+            return null;
+        }
+        if (context.reverseTransformPacket(pkt, skipDecryption) != SrtpErrorStatus.OK) {
+            // The packet failed authentication or replay check and is dropped; return it into the pool.
+            pkt.release();
             return null;
         }
-        return (context.reverseTransformPacket(pkt, skipDecryption) == SrtpErrorStatus.OK) ? pkt : null;
+        return pkt;
     }
 
     /**
@@ -23,6 +23,7 @@
  */
 package org.atalk.impl.neomedia.transform.srtp;
 
+import org.atalk.impl.neomedia.transform.srtp.crypto.SrtpCipherGcm;
 import org.atalk.impl.neomedia.transform.srtp.utils.SrtcpPacketUtils;
 import org.atalk.impl.neomedia.transform.srtp.utils.SrtpPacketUtils;
 import org.atalk.util.ByteArrayBuffer;
@@ -142,6 +143,12 @@ public class SrtcpCryptoContext extends BaseSrtpCryptoContext
             cipherCtr.init(encKey);
             Arrays.fill(encKey, (byte) 0);
         }
+        else if (cipherGcm != null) {
+            byte[] encKey = new byte[policy.getEncKeyLength()];
+            kdf.deriveSessionKey(encKey, SrtpKdf.LABEL_RTCP_ENCRYPTION);
+            cipherGcm.init(encKey);
+            Arrays.fill(encKey, (byte) 0);
+        }
 
         // compute the session authentication key
         if (mac != null) {
@@ -233,6 +240,71 @@ public class SrtcpCryptoContext extends BaseSrtpCryptoContext
         cipherF8.process(pkt.getBuffer(), pkt.getOffset() + payloadOffset, payloadLength, ivStore);
     }
 
+    /**
+     * Performs AEAD AES-GCM encryption/decryption and authentication as defined in RFC 7714. The
+     * SRTCP packet layout is: RTCP header (8 bytes) || ciphertext || tag (16 bytes) || E-flag|index
+     * (4 bytes); the RTCP header and the E-flag|index are the additional authenticated data. For an
+     * unencrypted (E-flag cleared) packet, the whole RTCP packet is authenticated data.
+     *
+     * @param pkt the RTCP packet to be encrypted/decrypted; the E-flag|index is already appended
+     * @param indexEflag the SRTCP index and E-flag of the packet
+     * @param encrypt <code>true</code> to encrypt the packet; <code>false</code> to decrypt it
+     * @return <code>true</code> on success; <code>false</code> if the packet could not be encrypted or
+     * failed authentication
+     */
+    private boolean processPacketAesGcm(ByteArrayBuffer pkt, int indexEflag, boolean encrypt)
+    {
+        int ssrc = SrtcpPacketUtils.getSenderSsrc(pkt);
+        int index = indexEflag & ~0x80000000;
+
+        /*
+         * Compute the GCM IV (refer to chapter 9.1 in RFC 7714):
+         *
+         *   0  1  2  3  4  5  6  7  8  9 10 11
+         * +--+--+--+--+--+--+--+--+--+--+--+--+
+         * |00|00|    SSRC   |00|00|0+SRTCP Idx|---+
+         * +--+--+--+--+--+--+--+--+--+--+--+--+   |
+         *                                         |
+         * +--+--+--+--+--+--+--+--+--+--+--+--+   |
+         * |         Encryption Salt           |->(+)
+         * +--+--+--+--+--+--+--+--+--+--+--+--+   |
+         */
+        ivStoreGcm[0] = saltKey[0];
+        ivStoreGcm[1] = saltKey[1];
+        ivStoreGcm[2] = (byte) ((ssrc >> 24) ^ saltKey[2]);
+        ivStoreGcm[3] = (byte) ((ssrc >> 16) ^ saltKey[3]);
+        ivStoreGcm[4] = (byte) ((ssrc >> 8) ^ saltKey[4]);
+        ivStoreGcm[5] = (byte) (ssrc ^ saltKey[5]);
+        ivStoreGcm[6] = saltKey[6];
+        ivStoreGcm[7] = saltKey[7];
+        ivStoreGcm[8] = (byte) ((index >> 24) ^ saltKey[8]);
+        ivStoreGcm[9] = (byte) ((index >> 16) ^ saltKey[9]);
+        ivStoreGcm[10] = (byte) ((index >> 8) ^ saltKey[10]);
+        ivStoreGcm[11] = (byte) (index ^ saltKey[11]);
+
+        if (!cipherGcm.start(ivStoreGcm, encrypt))
+            return false;
+
+        byte[] buf = pkt.getBuffer();
+        int off = pkt.getOffset();
+        int trailerOffset = pkt.getLength() - 4;
+        int aadLength = ((indexEflag & 0x80000000) != 0)
+                ? 8 : (encrypt ? trailerOffset : trailerOffset - SrtpCipherGcm.TAG_LENGTH);
+
+        cipherGcm.updateAAD(buf, off, aadLength);
+        cipherGcm.updateAAD(buf, off + trailerOffset, 4);
+
+        // Keep the E-flag|index, the processing overwrites it with the tag on encryption.
+        pkt.readRegionToBuff(trailerOffset, 4, rbStore);
+        int len = cipherGcm.process(buf, off + aadLength, trailerOffset - aadLength);
+        if (len < 0)
+            return false;
+
+        pkt.setLength(aadLength + len);
+        pkt.append(rbStore, 4);
+        return true;
+    }
+
     /**
      * Transform a SRTCP packet into a RTCP packet. The method is called when an
      * SRTCP packet was received. Operations done by the method include:
@@ -257,7 +329,7 @@ public class SrtcpCryptoContext extends BaseSrtpCryptoContext
             /* Too short to be a valid SRTCP packet */
             return SrtpErrorStatus.INVALID_PACKET;
 
-        int indexEflag = SrtcpPacketUtils.getIndex(pkt, tagLength);
+        int indexEflag = SrtcpPacketUtils.getIndex(pkt, (cipherGcm != null) ? 0 : tagLength);
 
         if ((indexEflag & 0x80000000) == 0x80000000)
             decrypt = true;
@@ -271,6 +343,17 @@ public class SrtcpCryptoContext extends BaseSrtpCryptoContext
             return err;
         }
 
+        /* Authenticate and decrypt the packet using the AEAD Galois/Counter Mode */
+        if (cipherGcm != null) {
+            if (!processPacketAesGcm(pkt, indexEflag, false))
+                return SrtpErrorStatus.AUTH_FAIL;
+
+            // Remove the index, the tag has been removed by the decryption.
+            pkt.shrink(4);
+            update(index);
+            return SrtpErrorStatus.OK;
+        }
+
         /* Authenticate the packet */
         if (policy.getAuthType() != SrtpPolicy.NULL_AUTHENTICATION) {
             // get original authentication data and store in tempStore
@@ -323,6 +406,26 @@ public class SrtcpCryptoContext extends BaseSrtpCryptoContext
      */
     synchronized public SrtpErrorStatus transformPacket(ByteArrayBuffer pkt)
     {
+        /* Encrypt and authenticate the packet using the AEAD Galois/Counter Mode */
+        if (cipherGcm != null) {
+            int indexEflag = sentIndex | 0x80000000;
+
+            // Grow packet storage in one step and append the E-flag|index as the tag goes before it.
+            pkt.grow(4 + SrtpCipherGcm.TAG_LENGTH);
+            rbStore[0] = (byte) (indexEflag >> 24);
+            rbStore[1] = (byte) (indexEflag >> 16);
+            rbStore[2] = (byte) (indexEflag >> 8);
+            rbStore[3] = (byte) indexEflag;
+            pkt.append(rbStore, 4);
+
+            if (!processPacketAesGcm(pkt, indexEflag, true))
+                return SrtpErrorStatus.FAIL;
+
+            sentIndex++;
+            sentIndex &= ~0x80000000; // clear possible overflow
+            return SrtpErrorStatus.OK;
+        }
+
         boolean encrypt = false;
         /* Encrypt the packet using Counter Mode encryption */
         if (policy.getEncType() == SrtpPolicy.AESCM_ENCRYPTION
@@ -34,6 +34,7 @@
  */
 package org.atalk.impl.neomedia.transform.srtp;
 
+import org.atalk.impl.neomedia.transform.srtp.crypto.SrtpCipherGcm;
 import org.atalk.impl.neomedia.transform.srtp.utils.SrtpPacketUtils;
 import org.atalk.util.ByteArrayBuffer;
 import org.bouncycastle.crypto.params.KeyParameter;
@@ -230,6 +231,12 @@ public class SrtpCryptoContext extends BaseSrtpCryptoContext
             cipherCtr.init(encKey);
             Arrays.fill(encKey, (byte) 0);
         }
+        else if (cipherGcm != null) {
+            byte[] encKey = new byte[policy.getEncKeyLength()];
+            kdf.deriveSessionKey(encKey, SrtpKdf.LABEL_RTP_ENCRYPTION);
+            cipherGcm.init(encKey);
+            Arrays.fill(encKey, (byte) 0);
+        }
 
         // compute the session authentication key
         if (mac != null) {
@@ -330,6 +337,68 @@ public class SrtpCryptoContext extends BaseSrtpCryptoContext
                 ivStore);
     }
 
+    /**
+     * Performs AEAD AES-GCM encryption/decryption and authentication as defined in RFC 7714. The
+     * RTP header is the additional authenticated data. On encryption the 16 bytes authentication
+     * tag is appended to the packet; on decryption it is verified and removed.
+     *
+     * @param pkt the RTP packet to be encrypted/decrypted
+     * @param encrypt <code>true</code> to encrypt the packet; <code>false</code> to decrypt it
+     * @return <code>true</code> on success; <code>false</code> if the packet could not be encrypted or
+     * failed authentication
+     */
+    private boolean processPacketAesGcm(ByteArrayBuffer pkt, boolean encrypt)
+    {
+        int ssrc = SrtpPacketUtils.getSsrc(pkt);
+        int seqNo = SrtpPacketUtils.getSequenceNumber(pkt);
+        int roc = guessedROC;
+
+        /*
+         * Compute the GCM IV (refer to chapter 8.1 in RFC 7714):
+         *
+         *   0  0  0  0  0  0  0  0  0  0  1  1
+         *   0  1  2  3  4  5  6  7  8  9  0  1
+         * +--+--+--+--+--+--+--+--+--+--+--+--+
+         * |00|00|    SSRC   |     ROC   | SEQ |---+
+         * +--+--+--+--+--+--+--+--+--+--+--+--+   |
+         *                                         |
+         * +--+--+--+--+--+--+--+--+--+--+--+--+   |
+         * |         Encryption Salt           |->(+)
+         * +--+--+--+--+--+--+--+--+--+--+--+--+   |
+         */
+        ivStoreGcm[0] = saltKey[0];
+        ivStoreGcm[1] = saltKey[1];
+        ivStoreGcm[2] = (byte) ((ssrc >> 24) ^ saltKey[2]);
+        ivStoreGcm[3] = (byte) ((ssrc >> 16) ^ saltKey[3]);
+        ivStoreGcm[4] = (byte) ((ssrc >> 8) ^ saltKey[4]);
+        ivStoreGcm[5] = (byte) (ssrc ^ saltKey[5]);
+        ivStoreGcm[6] = (byte) ((roc >> 24) ^ saltKey[6]);
+        ivStoreGcm[7] = (byte) ((roc >> 16) ^ saltKey[7]);
+        ivStoreGcm[8] = (byte) ((roc >> 8) ^ saltKey[8]);
+        ivStoreGcm[9] = (byte) (roc ^ saltKey[9]);
+        ivStoreGcm[10] = (byte) ((seqNo >> 8) ^ saltKey[10]);
+        ivStoreGcm[11] = (byte) (seqNo ^ saltKey[11]);
+
+        if (!cipherGcm.start(ivStoreGcm, encrypt))
+            return false;
+
+        int rtpHeaderLength = SrtpPacketUtils.getTotalHeaderLength(pkt);
+        int payloadLength = pkt.getLength() - rtpHeaderLength;
+        if (encrypt)
+            pkt.grow(SrtpCipherGcm.TAG_LENGTH);
+
+        byte[] buf = pkt.getBuffer();
+        int off = pkt.getOffset();
+
+        cipherGcm.updateAAD(buf, off, rtpHeaderLength);
+        int len = cipherGcm.process(buf, off + rtpHeaderLength, payloadLength);
+        if (len < 0)
+            return false;
+
+        pkt.setLength(rtpHeaderLength + len);
+        return true;
+    }
+
     /**
      * Transforms an SRTP packet into an RTP packet. The method is called when
      * an SRTP packet is received. Operations done by the this operation
@@ -374,8 +443,19 @@ public class SrtpCryptoContext extends BaseSrtpCryptoContext
 
         // Replay control
         if (policy.isReceiveReplayDisabled() || ((err = checkReplay(seqNo, guessedIndex)) == SrtpErrorStatus.OK)) {
+            if (cipherGcm != null) {
+                // The AEAD cipher authenticates while decrypting, so the decryption cannot be skipped.
+                if (processPacketAesGcm(pkt, false)) {
+                    update(seqNo, guessedIndex);
+                    ret = SrtpErrorStatus.OK;
+                }
+                else {
+                    Timber.w("SRTP auth failed for SSRC %s", ssrc);
+                    ret = SrtpErrorStatus.AUTH_FAIL;
+                }
+            }
             // Authenticate the packet.
-            if ((err = authenticatePacket(pkt)) == SrtpErrorStatus.OK) {
+            else if ((err = authenticatePacket(pkt)) == SrtpErrorStatus.OK) {
                 if (!skipDecryption) {
                     switch (policy.getEncType()) {
                         // Decrypt the packet using Counter Mode encryption.
@@ -460,6 +540,12 @@ public class SrtpCryptoContext extends BaseSrtpCryptoContext
             case SrtpPolicy.TWOFISHF8_ENCRYPTION:
                 processPacketAesF8(pkt);
                 break;
+
+            // Encrypt and authenticate the packet using the AEAD Galois/Counter Mode.
+            case SrtpPolicy.AESGCM_ENCRYPTION:
+                if (!processPacketAesGcm(pkt, true))
+                    return SrtpErrorStatus.FAIL;
+                break;
         }
 
         /* Authenticate the packet. */
@@ -89,6 +89,7 @@ class SrtpKdf
         switch (policy.getEncType()) {
             case SrtpPolicy.AESF8_ENCRYPTION:
             case SrtpPolicy.AESCM_ENCRYPTION:
+            case SrtpPolicy.AESGCM_ENCRYPTION:
                 // use OpenSSL if available and AES128 is in use
                 if (OpenSslWrapperLoader.isLoaded() && encKeyLength == 16) {
                     cipherCtr = new SrtpCipherCtrOpenSsl();
@@ -133,12 +134,12 @@ class SrtpKdf
             return;
         }
 
-        assert (masterSalt.length == 14);
+        // RFC 7714 section 11: the 96 bits master salt of the AEAD profiles is padded with zeros.
+        assert (masterSalt.length == 14 || masterSalt.length == 12);
         System.arraycopy(masterSalt, 0, ivStore, 0, masterSalt.length);
+        Arrays.fill(ivStore, masterSalt.length, ivStore.length, (byte) 0);
 
         ivStore[7] ^= label;
-        ivStore[14] = 0;
-        ivStore[15] = 0;
 
         Arrays.fill(sessKey, (byte) 0);
         cipherCtr.process(sessKey, 0, sessKey.length, ivStore);
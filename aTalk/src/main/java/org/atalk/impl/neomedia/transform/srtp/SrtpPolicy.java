@@ -36,6 +36,14 @@ public class SrtpPolicy
      * F8 Mode TwoFish Cipher
      */
     public final static int TWOFISHF8_ENCRYPTION = 4;
+
+    /**
+     * Galois/Counter Mode AES AEAD Cipher, defined in RFC 7714. The cipher authenticates the packets
+     * itself, so the authentication type is {@link #NULL_AUTHENTICATION} and the authentication tag
+     * length is the length of the AEAD authentication tag (16 bytes).
+     */
+    public final static int AESGCM_ENCRYPTION = 5;
+
     /**
      * Null Authentication, no authentication
      */
@@ -5,8 +5,6 @@
  */
 package org.atalk.impl.neomedia.transform.srtp.crypto;
 
-import android.text.TextUtils;
-
 import org.bouncycastle.crypto.BlockCipher;
 import org.bouncycastle.crypto.CipherParameters;
 import org.bouncycastle.crypto.engines.AESEngine;
@@ -442,7 +440,7 @@ public class Aes
         Class<?> clazz = factory.getClass();
         String className = clazz.getSimpleName();
 
-        if (TextUtils.isEmpty(className))
+        if (className.isEmpty())
             className = clazz.getName();
 
         String suffix = BLOCK_CIPHER_FACTORY_SIMPLE_CLASS_NAME;
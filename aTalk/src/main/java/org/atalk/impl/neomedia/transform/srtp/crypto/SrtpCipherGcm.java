@@ -0,0 +1,238 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.srtp.crypto;
+
+import java.util.Arrays;
+
+import timber.log.Timber;
+
+/**
+ * SrtpCipherGcm implementations implement the AEAD_AES_128_GCM and AEAD_AES_256_GCM algorithms
+ * used by SRTP/SRTCP as defined in RFC 7714.
+ *
+ * Unlike the counter mode ciphers, the AEAD cipher authenticates the packet itself: the additional
+ * authenticated data (the RTP header, or the SRTCP header and index) is passed through
+ * {@link #updateAAD(byte[], int, int)} and the 16 bytes authentication tag is appended to (or
+ * verified and stripped from) the end of the processed data.
+ *
+ * A packet is processed by calling {@link #start(byte[], boolean)}, then
+ * {@link #updateAAD(byte[], int, int)} for each part of the associated data and finally
+ * {@link #process(byte[], int, int)}.
+ *
+ * @author Eng Chong Meng
+ */
+public abstract class SrtpCipherGcm
+{
+    /**
+     * The length in bytes of the AEAD authentication tag, see RFC 7714 section 14.2.
+     */
+    public static final int TAG_LENGTH = 16;
+
+    /**
+     * The length in bytes of the GCM initialization vector, see RFC 7714 section 8.1.
+     */
+    public static final int IV_LENGTH = 12;
+
+    /**
+     * Creates a new <code>SrtpCipherGcm</code> instance. The platform AES/GCM implementation (which is
+     * backed by BoringSSL with hardware AES/PMULL support on Android) is preferred and BouncyCastle is
+     * used as fallback.
+     *
+     * @param keyLength the length of the AES key in bytes (16 or 32)
+     * @return a new <code>SrtpCipherGcm</code> instance
+     */
+    public static SrtpCipherGcm createCipher(int keyLength)
+    {
+        try {
+            return new SrtpCipherGcmJce();
+        } catch (Exception e) {
+            Timber.w("AES/GCM not available from the security providers, using BouncyCastle: %s", e.getMessage());
+            return new SrtpCipherGcmJava(Aes.createBlockCipher(keyLength));
+        }
+    }
+
+    /**
+     * The initial capacity of the buffers of the last encrypted packet.
+     */
+    private static final int INITIAL_BUFFER_LENGTH = 1500;
+
+    /**
+     * The iv, the input (the additional authenticated data followed by the plaintext) and the
+     * output of the last encrypted packet. The platform and BouncyCastle ciphers refuse to encrypt
+     * twice in a row with the same key and iv, which is however what the retransmission of the same
+     * packet (same SSRC, sequence number and ROC) does; the identical packet gets the cached output.
+     */
+    private final byte[] lastIv = new byte[IV_LENGTH];
+    private byte[] lastInput = new byte[INITIAL_BUFFER_LENGTH];
+    private int lastInputLength = -1;
+    private byte[] lastOutput = new byte[INITIAL_BUFFER_LENGTH + TAG_LENGTH];
+    private int lastOutputLength;
+
+    /**
+     * The input of the packet being encrypted.
+     */
+    private byte[] input = new byte[INITIAL_BUFFER_LENGTH];
+    private int inputLength;
+
+    /**
+     * Whether the packet being processed is encrypted, and whether it is encrypted with the iv of
+     * the last encrypted packet.
+     */
+    private boolean encrypting;
+    private boolean repeating;
+
+    /**
+     * (Re)Initialize the cipher with key
+     *
+     * @param key the key. key.length == 16 or 32
+     */
+    public void init(byte[] key)
+    {
+        lastInputLength = -1;
+        doInit(key);
+    }
+
+    /**
+     * Starts the processing of a new packet.
+     *
+     * @param iv the 12 bytes initialization vector of the packet; MUST never be reused for encryption
+     * but by the retransmission of the same packet
+     * @param forEncryption <code>true</code> to encrypt the packet; <code>false</code> to decrypt it
+     * @return <code>true</code> if the cipher was set up; <code>false</code> if the packet must be dropped
+     */
+    public boolean start(byte[] iv, boolean forEncryption)
+    {
+        encrypting = forEncryption;
+        inputLength = 0;
+        repeating = forEncryption && (lastInputLength >= 0) && Arrays.equals(iv, lastIv);
+        if (repeating)
+            return true;
+
+        if (!doStart(iv, forEncryption))
+            return false;
+        if (forEncryption) {
+            System.arraycopy(iv, 0, lastIv, 0, IV_LENGTH);
+            lastInputLength = -1;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a part of the additional authenticated data of the packet being processed.
+     *
+     * @param data byte array holding the additional authenticated data
+     * @param off the offset
+     * @param len the length
+     */
+    public void updateAAD(byte[] data, int off, int len)
+    {
+        if (encrypting)
+            appendInput(data, off, len);
+        if (!repeating)
+            doUpdateAAD(data, off, len);
+    }
+
+    /**
+     * Encrypts or decrypts the data of the packet being processed in place. For encryption, the
+     * tag is written after the <code>len</code> bytes of ciphertext so <code>data</code> must have room
+     * for {@link #TAG_LENGTH} more bytes. For decryption, <code>len</code> includes the tag.
+     *
+     * @param data byte array to be processed
+     * @param off the offset
+     * @param len the length
+     * @return the number of bytes written at <code>off</code> (<code>len + TAG_LENGTH</code> for encryption,
+     * <code>len - TAG_LENGTH</code> for decryption), or <code>-1</code> if the authentication failed or
+     * the iv of the last encrypted packet is reused for a different packet
+     */
+    public int process(byte[] data, int off, int len)
+    {
+        if (!encrypting)
+            return doProcess(data, off, len);
+
+        appendInput(data, off, len);
+        if (repeating) {
+            if (!isLastInput())
+                return -1;
+            System.arraycopy(lastOutput, 0, data, off, lastOutputLength);
+            return lastOutputLength;
+        }
+
+        int outLen = doProcess(data, off, len);
+        if (outLen >= 0) {
+            byte[] swap = lastInput;
+            lastInput = input;
+            lastInputLength = inputLength;
+            input = swap;
+
+            if (lastOutput.length < outLen)
+                lastOutput = new byte[outLen];
+            System.arraycopy(data, off, lastOutput, 0, outLen);
+            lastOutputLength = outLen;
+        }
+        return outLen;
+    }
+
+    /**
+     * Appends data to the input of the packet being encrypted.
+     */
+    private void appendInput(byte[] data, int off, int len)
+    {
+        if (input.length < inputLength + len)
+            input = Arrays.copyOf(input, Math.max(2 * input.length, inputLength + len));
+        System.arraycopy(data, off, input, inputLength, len);
+        inputLength += len;
+    }
+
+    /**
+     * Determines whether the packet being encrypted is identical to the last encrypted packet.
+     */
+    private boolean isLastInput()
+    {
+        if (inputLength != lastInputLength)
+            return false;
+        for (int i = 0; i < inputLength; i++) {
+            if (input[i] != lastInput[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * (Re)Initializes the cipher with a key; see {@link #init(byte[])}.
+     *
+     * @param key the key. key.length == 16 or 32
+     */
+    protected abstract void doInit(byte[] key);
+
+    /**
+     * Sets up the cipher for a new packet; see {@link #start(byte[], boolean)}.
+     *
+     * @param iv the 12 bytes initialization vector of the packet
+     * @param forEncryption <code>true</code> to encrypt the packet; <code>false</code> to decrypt it
+     * @return <code>true</code> if the cipher was set up; <code>false</code> if the packet must be dropped
+     */
+    protected abstract boolean doStart(byte[] iv, boolean forEncryption);
+
+    /**
+     * Passes a part of the additional authenticated data to the cipher; see
+     * {@link #updateAAD(byte[], int, int)}.
+     *
+     * @param data byte array holding the additional authenticated data
+     * @param off the offset
+     * @param len the length
+     */
+    protected abstract void doUpdateAAD(byte[] data, int off, int len);
+
+    /**
+     * Encrypts or decrypts data in place with the cipher; see {@link #process(byte[], int, int)}.
+     *
+     * @param data byte array to be processed
+     * @param off the offset
+     * @param len the length
+     * @return the number of bytes written at <code>off</code>, or <code>-1</code> if the authentication failed
+     */
+    protected abstract int doProcess(byte[] data, int off, int len);
+}
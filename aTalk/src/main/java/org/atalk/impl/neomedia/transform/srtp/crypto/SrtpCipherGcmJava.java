@@ -0,0 +1,82 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.srtp.crypto;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+/**
+ * @see SrtpCipherGcm
+ * SrtpCipherGcm implementation using the BouncyCastle <code>GCMBlockCipher</code> and an AES
+ * <code>BlockCipher</code>.
+ *
+ * @author Eng Chong Meng
+ */
+public class SrtpCipherGcmJava extends SrtpCipherGcm
+{
+    private final GCMBlockCipher cipher;
+
+    /**
+     * The key to (re)initialize {@link #cipher} with on the next packet. The key is only passed
+     * once, because <code>GCMBlockCipher</code> recomputes its GHASH tables whenever it gets a key.
+     */
+    private KeyParameter pendingKey;
+
+    public SrtpCipherGcmJava(BlockCipher cipher)
+    {
+        this.cipher = new GCMBlockCipher(cipher);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void doInit(byte[] key)
+    {
+        if (key.length != 16 && key.length != 24 && key.length != 32)
+            throw new IllegalArgumentException("Not an AES key length");
+
+        pendingKey = new KeyParameter(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean doStart(byte[] iv, boolean forEncryption)
+    {
+        try {
+            cipher.init(forEncryption, new AEADParameters(pendingKey, TAG_LENGTH * 8, iv));
+        } catch (IllegalArgumentException e) {
+            // nonce reuse for encryption or missing key
+            return false;
+        }
+        pendingKey = null;
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void doUpdateAAD(byte[] data, int off, int len)
+    {
+        cipher.processAADBytes(data, off, len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected int doProcess(byte[] data, int off, int len)
+    {
+        try {
+            int outLen = cipher.processBytes(data, off, len, data, off);
+            return outLen + cipher.doFinal(data, off + outLen);
+        } catch (InvalidCipherTextException | IllegalStateException e) {
+            return -1;
+        }
+    }
+}
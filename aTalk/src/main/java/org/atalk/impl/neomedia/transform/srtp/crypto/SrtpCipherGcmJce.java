@@ -0,0 +1,83 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.srtp.crypto;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * @see SrtpCipherGcm
+ * SrtpCipherGcm implementation using the <code>AES/GCM/NoPadding</code> <code>Cipher</code> of the
+ * installed security providers.
+ *
+ * @author Eng Chong Meng
+ */
+public class SrtpCipherGcmJce extends SrtpCipherGcm
+{
+    private final Cipher cipher;
+
+    private SecretKeySpec key;
+
+    /**
+     * Initializes a new <code>SrtpCipherGcmJce</code> instance.
+     *
+     * @throws GeneralSecurityException if no security provider implements <code>AES/GCM/NoPadding</code>
+     */
+    public SrtpCipherGcmJce()
+            throws GeneralSecurityException
+    {
+        cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void doInit(byte[] key)
+    {
+        if (key.length != 16 && key.length != 24 && key.length != 32)
+            throw new IllegalArgumentException("Not an AES key length");
+
+        this.key = new SecretKeySpec(key, "AES");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean doStart(byte[] iv, boolean forEncryption)
+    {
+        try {
+            cipher.init(forEncryption ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, key,
+                    new GCMParameterSpec(TAG_LENGTH * 8, iv));
+            return true;
+        } catch (GeneralSecurityException e) {
+            // The providers refuse to encrypt twice with the same key and iv.
+            return false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void doUpdateAAD(byte[] data, int off, int len)
+    {
+        cipher.updateAAD(data, off, len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected int doProcess(byte[] data, int off, int len)
+    {
+        try {
+            return cipher.doFinal(data, off, len, data, off);
+        } catch (GeneralSecurityException | IllegalStateException e) {
+            return -1;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import android.text.TextUtils;
 import android.util.Base64;
 
 import net.java.sip.communicator.impl.configuration.SQLiteConfigurationStore;
+import net.java.sip.communicator.impl.history.HistoryStore;
 import net.java.sip.communicator.impl.msghistory.MessageSourceService;
 import net.java.sip.communicator.service.callhistory.CallHistoryService;
 import net.java.sip.communicator.service.contactlist.MetaContactGroup;
@@ -85,7 +86,7 @@ public class DatabaseBackend extends SQLiteOpenHelper {
      * Increment DATABASE_VERSION when there is a change in database records
      */
     public static final String DATABASE_NAME = "dbRecords.db";
-    private static final int DATABASE_VERSION = 6;
+    private static final int DATABASE_VERSION = 9;
     private static DatabaseBackend instance = null;
     private ProtocolProviderService mProvider;
 
@@ -166,6 +167,18 @@ public class DatabaseBackend extends SQLiteOpenHelper {
             + ", " + ChatSession.ENTITY_JID
             + ") ON CONFLICT REPLACE);";
 
+    /**
+     * Indexes of the chat message table: the messages of a session in timestamp order, with the
+     * message uuid as tie-breaker for keyset paging; and the server message id for receipts.
+     */
+    public static final String[] CREATE_CHAT_MESSAGE_INDEX_STATEMENTS = {
+            "CREATE INDEX IF NOT EXISTS " + ChatMessage.TABLE_NAME + "_session_time_idx ON "
+                    + ChatMessage.TABLE_NAME + "(" + ChatMessage.SESSION_UUID + ", "
+                    + ChatMessage.TIME_STAMP + ", " + ChatMessage.UUID + ");",
+            "CREATE INDEX IF NOT EXISTS " + ChatMessage.TABLE_NAME + "_server_msg_id_idx ON "
+                    + ChatMessage.TABLE_NAME + "(" + ChatMessage.SERVER_MSG_ID + ");"
+    };
+
     private DatabaseBackend(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
@@ -225,6 +238,7 @@ public class DatabaseBackend extends SQLiteOpenHelper {
      * f. chatMessages
      * g. callHistory
      * f. recentMessages
+     * h. history service: histories, historyRecords & historyProperties
      * i. Axolotl tables: identities, sessions, preKeys, signed_preKeys
      * <p>
      * # Initialize and initial data migration
@@ -344,6 +358,13 @@ public class DatabaseBackend extends SQLiteOpenHelper {
                 + ChatSession.TABLE_NAME + "(" + ChatSession.SESSION_UUID
                 + ") ON DELETE CASCADE, UNIQUE(" + ChatMessage.UUID
                 + ") ON CONFLICT REPLACE);");
+        for (String statement : CREATE_CHAT_MESSAGE_INDEX_STATEMENTS) {
+            db.execSQL(statement);
+        }
+        MessageSearchIndex.create(db, false);
+
+        // History service tables
+        HistoryStore.create(db);
 
         // Call history table
         db.execSQL("CREATE TABLE " + CallHistoryService.TABLE_NAME + " ("
@@ -0,0 +1,371 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.persistance;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import org.atalk.android.gui.chat.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * The full text search index of the chat message bodies. The index is a FTS5 virtual table (or
+ * FTS4 if the platform SQLite is built without FTS5) whose rowid is the rowid of the indexed
+ * message; it is kept up to date by triggers on the messages table.
+ * <p>
+ * The messages table is <code>UNIQUE(uuid) ON CONFLICT REPLACE</code>, and the row deleted by a REPLACE
+ * does not fire the delete trigger; so the insert triggers drop the index row of the message being
+ * replaced themselves. The messages table has no INTEGER PRIMARY KEY, so its rowids are only stable
+ * as long as the database is not VACUUMed; a VACUUM must be followed by {@link #rebuild(SQLiteDatabase)}.
+ * <p>
+ * On upgrade, the index of the existing messages is built by {@link #backfill(SQLiteDatabase)} in
+ * the background, newest messages first; until it completes, the keyword queries fall back to
+ * <code>LIKE</code> scans so that the results stay complete. The scans match the keywords at the start
+ * of a word too, as the index does, so the results do not change when the backfill completes; but
+ * <code>LIKE</code> only folds the case of ASCII letters and does not fold diacritics, and only splits
+ * words at whitespace and common punctuation (see {@link #WORD_SEPARATORS}).
+ *
+ * @author Eng Chong Meng
+ */
+public class MessageSearchIndex {
+    public static final String TABLE_NAME = ChatMessage.TABLE_NAME + "_fts";
+
+    /**
+     * One row table holding the highest message rowid still to be indexed by the backfill.
+     */
+    private static final String BACKFILL_TABLE_NAME = TABLE_NAME + "_backfill";
+    private static final String LAST_ROWID = "lastRowid";
+
+    /**
+     * The number of messages indexed per backfill transaction, small enough not to hold the
+     * database lock against the message writes of the UI for long.
+     */
+    private static final int BACKFILL_CHUNK = 2000;
+
+    private static final int STATE_UNKNOWN = 0;
+    private static final int STATE_ABSENT = 1;
+    private static final int STATE_BUILDING = 2;
+    private static final int STATE_READY = 3;
+
+    private static volatile int state = STATE_UNKNOWN;
+
+    /**
+     * <code>true</code> if the index is a FTS5 table, which supports ranking by its bm25 <code>rank</code> column.
+     */
+    private static volatile boolean isFts5;
+
+    private static final String MSG_BODY = ChatMessage.TABLE_NAME + "." + ChatMessage.MSG_BODY;
+
+    /**
+     * The characters after which the <code>LIKE</code> scans match a keyword as the start of a word.
+     */
+    private static final String[] WORD_SEPARATORS = {
+            " ", "\n", "\t", ".", ",", ";", ":", "!", "?", "(", ")", "[", "]", "\"", "'", "-", "/", "@", "#"
+    };
+
+    private static final String[] TRIGGER_NAMES = {
+            TABLE_NAME + "_bi", TABLE_NAME + "_ai", TABLE_NAME + "_ad", TABLE_NAME + "_au"
+    };
+
+    private static final String[] CREATE_TRIGGER_STATEMENTS = {
+            // Drops the index row of the message which the insert replaces, if any.
+            "CREATE TRIGGER IF NOT EXISTS " + TABLE_NAME + "_bi BEFORE INSERT ON "
+                    + ChatMessage.TABLE_NAME + " BEGIN "
+                    + "DELETE FROM " + TABLE_NAME + " WHERE rowid IN (SELECT rowid FROM " + ChatMessage.TABLE_NAME
+                    + " WHERE " + ChatMessage.UUID + " = new." + ChatMessage.UUID + "); END;",
+            // OR REPLACE: overwrites a stale index row left at the rowid of the new message.
+            "CREATE TRIGGER IF NOT EXISTS " + TABLE_NAME + "_ai AFTER INSERT ON "
+                    + ChatMessage.TABLE_NAME + " WHEN new." + ChatMessage.MSG_BODY + " IS NOT NULL BEGIN "
+                    + "INSERT OR REPLACE INTO " + TABLE_NAME + "(rowid, " + ChatMessage.MSG_BODY + ") VALUES (new.rowid, new."
+                    + ChatMessage.MSG_BODY + "); END;",
+            "CREATE TRIGGER IF NOT EXISTS " + TABLE_NAME + "_ad AFTER DELETE ON "
+                    + ChatMessage.TABLE_NAME + " BEGIN "
+                    + "DELETE FROM " + TABLE_NAME + " WHERE rowid = old.rowid; END;",
+            "CREATE TRIGGER IF NOT EXISTS " + TABLE_NAME + "_au AFTER UPDATE OF " + ChatMessage.MSG_BODY
+                    + " ON " + ChatMessage.TABLE_NAME + " BEGIN "
+                    + "DELETE FROM " + TABLE_NAME + " WHERE rowid = old.rowid; "
+                    + "INSERT INTO " + TABLE_NAME + "(rowid, " + ChatMessage.MSG_BODY + ") SELECT new.rowid, new."
+                    + ChatMessage.MSG_BODY + " WHERE new." + ChatMessage.MSG_BODY + " IS NOT NULL; END;"
+    };
+
+    /**
+     * Creates the search index table and its maintenance triggers.
+     *
+     * @param db SQLite database
+     * @param backfill <code>true</code> if the messages table may hold messages which are to be indexed by
+     * {@link #backfill(SQLiteDatabase)}; <code>false</code> for a new database
+     */
+    public static void create(SQLiteDatabase db, boolean backfill) {
+        try {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_NAME + " USING fts5("
+                    + ChatMessage.MSG_BODY + ")");
+        } catch (SQLException e) {
+            Timber.i("FTS5 is not available, using FTS4 for the message search index: %s", e.getMessage());
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_NAME + " USING fts4("
+                    + ChatMessage.MSG_BODY + ", tokenize=unicode61)");
+        }
+        for (String statement : CREATE_TRIGGER_STATEMENTS) {
+            db.execSQL(statement);
+        }
+
+        if (backfill) {
+            // The triggers index all messages inserted from now on; the backfill only needs to
+            // cover the rowids up to the current maximum.
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + BACKFILL_TABLE_NAME + "(" + LAST_ROWID + " INTEGER);");
+            db.execSQL("DELETE FROM " + BACKFILL_TABLE_NAME + ";");
+            db.execSQL("INSERT INTO " + BACKFILL_TABLE_NAME + " SELECT IFNULL(MAX(rowid), 0) FROM "
+                    + ChatMessage.TABLE_NAME + ";");
+        }
+        state = STATE_UNKNOWN;
+    }
+
+    /**
+     * Drops the search index and builds it again from the messages table: the triggers at once, the
+     * index of the existing messages by {@link #backfill(SQLiteDatabase)}.
+     *
+     * @param db SQLite database
+     */
+    public static void rebuild(SQLiteDatabase db) {
+        for (String trigger : TRIGGER_NAMES) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + trigger + ";");
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME + ";");
+        create(db, true);
+    }
+
+    /**
+     * Determines the state of the search index from the database schema.
+     *
+     * @param db SQLite database
+     * @return one of the <code>STATE_</code> constants
+     */
+    private static int getState(SQLiteDatabase db) {
+        int s = state;
+        if (s != STATE_UNKNOWN)
+            return s;
+
+        s = STATE_ABSENT;
+        boolean fts5 = false;
+        Cursor cursor = db.rawQuery("SELECT name, sql FROM sqlite_master WHERE type='table' AND name IN (?,?)",
+                new String[]{TABLE_NAME, BACKFILL_TABLE_NAME});
+        try {
+            boolean hasIndex = false, hasBackfill = false;
+            while (cursor.moveToNext()) {
+                if (TABLE_NAME.equals(cursor.getString(0))) {
+                    hasIndex = true;
+                    String sql = cursor.getString(1);
+                    fts5 = (sql != null) && sql.toLowerCase().contains("fts5");
+                }
+                else {
+                    hasBackfill = true;
+                }
+            }
+            if (hasIndex)
+                s = hasBackfill ? STATE_BUILDING : STATE_READY;
+        } finally {
+            cursor.close();
+        }
+        isFts5 = fts5;
+        state = s;
+        return s;
+    }
+
+    /**
+     * Indexes the messages which existed before the search index was created, in chunks of
+     * {@link #BACKFILL_CHUNK} messages, newest first. Returns immediately if there is nothing to
+     * index. Safe to be interrupted at any point (e.g. the process being killed) and to be resumed
+     * on the next start.
+     *
+     * @param db SQLite database
+     */
+    public static void backfill(SQLiteDatabase db) {
+        if (getState(db) != STATE_BUILDING)
+            return;
+
+        long startTime = System.currentTimeMillis();
+        while (true) {
+            boolean done;
+            db.beginTransaction();
+            try {
+                long lastRowid = DatabaseUtils.longForQuery(db,
+                        "SELECT " + LAST_ROWID + " FROM " + BACKFILL_TABLE_NAME, null);
+                done = (lastRowid <= 0);
+                if (done) {
+                    db.execSQL("DROP TABLE IF EXISTS " + BACKFILL_TABLE_NAME + ";");
+                }
+                else {
+                    long firstRowid = Math.max(0, lastRowid - BACKFILL_CHUNK);
+                    db.execSQL("INSERT INTO " + TABLE_NAME + "(rowid, " + ChatMessage.MSG_BODY + ") SELECT rowid, "
+                                    + ChatMessage.MSG_BODY + " FROM " + ChatMessage.TABLE_NAME + " WHERE rowid>? AND rowid<=? AND "
+                                    + ChatMessage.MSG_BODY + " IS NOT NULL;",
+                            new Object[]{firstRowid, lastRowid});
+                    db.execSQL("UPDATE " + BACKFILL_TABLE_NAME + " SET " + LAST_ROWID + "=?;",
+                            new Object[]{firstRowid});
+                }
+                db.setTransactionSuccessful();
+            } catch (SQLException e) {
+                Timber.e(e, "Message search index backfill failed; keyword search stays on LIKE scans");
+                return;
+            } finally {
+                db.endTransaction();
+            }
+
+            if (done)
+                break;
+            Thread.yield();
+        }
+        state = STATE_READY;
+        Timber.d("Message search index built in %s ms", System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Queries the messages which satisfy a specific selection and contain any of the specified
+     * keywords. The keywords are matched through the search index as (case insensitive) word
+     * prefixes; before the index is complete, as word prefixes with <code>LIKE</code>. If
+     * <code>caseSensitive</code>, the matched messages must contain one of the keywords with the exact case.
+     *
+     * @param db SQLite database
+     * @param selection the filter on the messages table columns, e.g. the chat session; may be <code>null</code>
+     * @param selectionArgs the arguments of <code>selection</code>
+     * @param keywords the keywords of which any must be found in the message body
+     * @param caseSensitive whether the keywords are case sensitive
+     * @param ranked <code>true</code> to sort by relevance when the index supports it, then by <code>orderBy</code>
+     * @param orderBy the ORDER BY clause (on the messages table columns)
+     * @param limit the LIMIT clause, or <code>null</code>
+     * @return the <code>Cursor</code> over the matching rows of the messages table
+     */
+    public static Cursor query(SQLiteDatabase db, String selection, String[] selectionArgs, String[] keywords,
+            boolean caseSensitive, boolean ranked, String orderBy, String limit) {
+        List<String> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT " + ChatMessage.TABLE_NAME + ".* FROM " + ChatMessage.TABLE_NAME);
+        String matchQuery = (getState(db) == STATE_READY) ? toMatchQuery(keywords, isFts5) : null;
+
+        if (matchQuery != null) {
+            sql.append(" JOIN ").append(TABLE_NAME).append(" ON ").append(TABLE_NAME).append(".rowid=")
+                    .append(ChatMessage.TABLE_NAME).append(".rowid WHERE ").append(TABLE_NAME).append(" MATCH ?");
+            args.add(matchQuery);
+        }
+        else {
+            sql.append(" WHERE (");
+            appendWordPrefixFilter(sql, args, keywords);
+            sql.append(")");
+        }
+        if (caseSensitive) {
+            sql.append(" AND (");
+            appendKeywordFilter(sql, args, keywords);
+            sql.append(")");
+        }
+        if (!TextUtils.isEmpty(selection)) {
+            sql.append(" AND (").append(selection).append(")");
+            if (selectionArgs != null)
+                args.addAll(Arrays.asList(selectionArgs));
+        }
+
+        String order = orderBy;
+        if (ranked && matchQuery != null && isFts5)
+            order = TextUtils.isEmpty(orderBy) ? TABLE_NAME + ".rank" : TABLE_NAME + ".rank, " + orderBy;
+        if (!TextUtils.isEmpty(order))
+            sql.append(" ORDER BY ").append(order);
+        if (!TextUtils.isEmpty(limit))
+            sql.append(" LIMIT ").append(limit);
+
+        return db.rawQuery(sql.toString(), args.toArray(new String[0]));
+    }
+
+    /**
+     * Appends <code>(msgBody LIKE ? OR ...)</code> matching any of the keywords at the start of the
+     * message body or after one of the {@link #WORD_SEPARATORS}.
+     *
+     * @param sql the query being built
+     * @param args the query arguments
+     * @param keywords the keywords
+     */
+    private static void appendWordPrefixFilter(StringBuilder sql, List<String> args, String[] keywords) {
+        for (int i = 0; i < keywords.length; i++) {
+            if (i > 0)
+                sql.append(" OR ");
+
+            String keyword = keywords[i].replace("\\", "\\\\")
+                    .replace("%", "\\%").replace("_", "\\_");
+            sql.append(MSG_BODY).append(" LIKE ? ESCAPE '\\'");
+            args.add(keyword + "%");
+            for (String separator : WORD_SEPARATORS) {
+                sql.append(" OR ").append(MSG_BODY).append(" LIKE ? ESCAPE '\\'");
+                args.add("%" + separator + keyword + "%");
+            }
+        }
+        if (keywords.length == 0)
+            sql.append("0");
+    }
+
+    /**
+     * Appends <code>(msgBody GLOB ? OR ...)</code> matching any of the keywords as substring with
+     * the exact case.
+     *
+     * @param sql the query being built
+     * @param args the query arguments
+     * @param keywords the keywords
+     */
+    private static void appendKeywordFilter(StringBuilder sql, List<String> args, String[] keywords) {
+        for (int i = 0; i < keywords.length; i++) {
+            if (i > 0)
+                sql.append(" OR ");
+            sql.append(MSG_BODY).append(" GLOB ?");
+
+            // GLOB has no escape character, but a special character in brackets is literal.
+            String keyword = keywords[i].replace("[", "[[]").replace("*", "[*]").replace("?", "[?]");
+            args.add("*" + keyword + "*");
+        }
+        if (keywords.length == 0)
+            sql.append("0");
+    }
+
+    /**
+     * Converts the keywords to a MATCH expression matching any of them: each keyword is a quoted
+     * phrase whose last word may be a prefix, so that user input can not inject FTS operators.
+     *
+     * @param keywords the keywords
+     * @param fts5 <code>true</code> for the FTS5 syntax; <code>false</code> for FTS4
+     * @return the MATCH expression or <code>null</code> if the keywords have no indexable characters
+     */
+    private static String toMatchQuery(String[] keywords, boolean fts5) {
+        StringBuilder match = new StringBuilder();
+        for (String keyword : keywords) {
+            String phrase = keyword.replace('"', ' ').replace('*', ' ').trim();
+            // The tokenizers split on anything else than letters and digits.
+            boolean indexable = false;
+            for (int i = 0; i < phrase.length() && !indexable; i++) {
+                indexable = Character.isLetterOrDigit(phrase.charAt(i));
+            }
+            if (!indexable)
+                return null;
+
+            if (match.length() > 0)
+                match.append(" OR ");
+            match.append('"').append(phrase).append(fts5 ? "\" *" : "*\"");
+        }
+        return (match.length() == 0) ? null : match.toString();
+    }
+}
@@ -0,0 +1,18 @@
+package org.atalk.persistance.migrations;
+
+import static org.atalk.persistance.DatabaseBackend.CREATE_CHAT_MESSAGE_INDEX_STATEMENTS;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import timber.log.Timber;
+
+public class MigrationTo7
+{
+    public static void createChatMessageIndexes(SQLiteDatabase db)
+    {
+        for (String statement : CREATE_CHAT_MESSAGE_INDEX_STATEMENTS) {
+            db.execSQL(statement);
+        }
+        Timber.d("Created messages table indexes successfully!");
+    }
+}
@@ -0,0 +1,22 @@
+package org.atalk.persistance.migrations;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.atalk.persistance.MessageSearchIndex;
+
+import timber.log.Timber;
+
+public class MigrationTo8
+{
+    /**
+     * Creates the message full text search index; the existing messages are indexed in the
+     * background by the message history service, not within the upgrade transaction.
+     *
+     * @param db SQLite database
+     */
+    public static void createMessageSearchIndex(SQLiteDatabase db)
+    {
+        MessageSearchIndex.create(db, true);
+        Timber.d("Created message search index successfully!");
+    }
+}
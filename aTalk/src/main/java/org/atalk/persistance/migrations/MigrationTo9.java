@@ -0,0 +1,22 @@
+package org.atalk.persistance.migrations;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import net.java.sip.communicator.impl.history.HistoryStore;
+
+import timber.log.Timber;
+
+public class MigrationTo9
+{
+    /**
+     * Creates the history service tables; the histories of the former XML store are imported by
+     * the history service on first use, not within the upgrade transaction.
+     *
+     * @param db SQLite database
+     */
+    public static void createHistoryTables(SQLiteDatabase db)
+    {
+        HistoryStore.create(db);
+        Timber.d("Created history tables successfully!");
+    }
+}
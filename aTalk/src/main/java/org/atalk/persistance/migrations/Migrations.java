@@ -32,6 +32,12 @@ public class Migrations {
                 MigrationTo5.updateOmemoDevicesTable(db);
             case 5:
                 MigrationTo6.updateChatSessionTable(db);
+            case 6:
+                MigrationTo7.createChatMessageIndexes(db);
+            case 7:
+                MigrationTo8.createMessageSearchIndex(db);
+            case 8:
+                MigrationTo9.createHistoryTables(db);
         }
     }
 }
@@ -0,0 +1,415 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.service.httputil;
+
+import org.jivesoftware.smackx.omemo_media_sharing.AesgcmStreamDecryptor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import timber.log.Timber;
+
+/**
+ * Downloads a file over HTTP into a <code>.part</code> file next to its destination, decrypting it on
+ * the fly if it is an OMEMO media sharing file, and renames it to its destination when complete.
+ * <p>
+ * A <code>.part</code> file left by an interrupted download is resumed with a <code>Range</code>
+ * request; if the server does not honour it, the download restarts from the beginning. The resumed
+ * request carries an <code>If-Range</code> header with the strong ETag or the Last-Modified date of
+ * the response that started the download, kept in a <code>.validator</code> file next to the
+ * <code>.part</code> file, so that a file changed on the server is downloaded again in full. An
+ * unencrypted download whose server gave neither is restarted from the beginning; an encrypted one
+ * is resumed regardless, since a mismatched file fails its authentication. The progress is reported
+ * to a {@link ProgressListener} as the data arrives.
+ * </p>
+ *
+ * @author Eng Chong Meng
+ */
+public class HttpFileDownloader
+{
+    /**
+     * Receives the progress of a download.
+     */
+    public interface ProgressListener
+    {
+        /**
+         * Called as the file is being received, at most every {@link #PROGRESS_INTERVAL} ms.
+         *
+         * @param received the number of bytes of the file received so far, including a resumed part
+         * @param total the size of the file in bytes or -1 if unknown
+         */
+        void onProgress(long received, long total);
+    }
+
+    /**
+     * The suffix of the file holding the data received so far.
+     */
+    public static final String PART_SUFFIX = ".part";
+
+    /**
+     * The suffix appended to the <code>.part</code> file name of the file holding the validator of the
+     * download.
+     */
+    public static final String VALIDATOR_SUFFIX = ".validator";
+
+    /**
+     * The minimum interval in ms between two progress reports.
+     */
+    public static final long PROGRESS_INTERVAL = 250;
+
+    /**
+     * The read timeout in s, after which a stalled download is abandoned.
+     */
+    private static final int READ_TIMEOUT = 60;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-\\d+/(\\d+|\\*)");
+
+    /**
+     * The HTTP client for downloads, without the call timeout of <code>buildHttpClient</code>, which a
+     * large file would exceed.
+     */
+    private static final OkHttpClient httpClient = HttpConnectionManager.OK_HTTP_CLIENT.newBuilder()
+            .readTimeout(READ_TIMEOUT, TimeUnit.SECONDS)
+            .build();
+
+    private final String url;
+
+    private final File destination;
+
+    private final File partFile;
+
+    private final File validatorFile;
+
+    private final AesgcmStreamDecryptor decryptor;
+
+    private final ProgressListener listener;
+
+    private volatile Call call;
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * Creates a <code>HttpFileDownloader</code>.
+     *
+     * @param url the http(s) url of the file
+     * @param destination the file to save the downloaded file to
+     * @param decryptor the decryptor of an OMEMO media sharing file or <code>null</code> if not encrypted
+     * @param listener the listener to report the progress to or <code>null</code>
+     */
+    public HttpFileDownloader(String url, File destination, AesgcmStreamDecryptor decryptor,
+            ProgressListener listener)
+    {
+        this.url = url;
+        this.destination = destination;
+        this.partFile = new File(destination.getPath() + PART_SUFFIX);
+        this.validatorFile = new File(partFile.getPath() + VALIDATOR_SUFFIX);
+        this.decryptor = decryptor;
+        this.listener = listener;
+    }
+
+    /**
+     * Queries the size of a file with a <code>HEAD</code> request.
+     *
+     * @param url the http(s) url of the file
+     * @return the size of the file in bytes or -1 if unknown
+     */
+    public static long queryFileSize(String url)
+    {
+        Request request = new Request.Builder().url(url).head().build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (response.isSuccessful()) {
+                String length = response.header("Content-Length");
+                if (length != null)
+                    return Long.parseLong(length);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Timber.w("Query file size failed for %s: %s", url, e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * Downloads the file, resuming a previously interrupted download. Blocks until the file has
+     * been saved to its destination, the download failed or it has been cancelled.
+     *
+     * @throws IOException if the download failed or has been cancelled; a failed download leaves
+     * its <code>.part</code> file for a resumption
+     * @throws GeneralSecurityException if an encrypted file cannot be decrypted or fails its
+     * authentication; its <code>.part</code> file is deleted
+     */
+    public void download()
+            throws IOException, GeneralSecurityException
+    {
+        long offset = resume();
+        Response response = execute(offset, (offset > 0) ? readValidator() : null);
+        try {
+            if ((response.code() == 416) && (offset > 0)) {
+                // The part file is either complete (unencrypted) or does not match the file any more
+                response.close();
+                offset = restart();
+                response = execute(offset, null);
+            }
+            if (!response.isSuccessful())
+                throw new IOException("HTTP " + response.code() + " " + response.message());
+
+            long total = -1;
+            ResponseBody body = response.body();
+            if (response.code() == 206) {
+                Matcher m = CONTENT_RANGE.matcher(String.valueOf(response.header("Content-Range")));
+                if (!m.matches() || (Long.parseLong(m.group(1)) != offset))
+                    throw new IOException("Unexpected Content-Range: " + response.header("Content-Range"));
+                if (!"*".equals(m.group(2)))
+                    total = Long.parseLong(m.group(2));
+            }
+            else {
+                if (offset > 0) {
+                    Timber.d("Server ignored the range request or the file changed, restarting the download of %s", url);
+                    offset = restart();
+                }
+                writeValidator(response);
+                if ((body != null) && (body.contentLength() >= 0))
+                    total = body.contentLength();
+            }
+
+            if (body != null)
+                receive(body.byteStream(), offset, total);
+        } finally {
+            response.close();
+        }
+
+        if (decryptor != null) {
+            try {
+                finishDecryption();
+            } catch (GeneralSecurityException e) {
+                // The plaintext is not authentic
+                partFile.delete();
+                validatorFile.delete();
+                throw e;
+            }
+        }
+
+        if (cancelled)
+            throw new InterruptedIOException("Download cancelled");
+        if ((destination.exists() && !destination.delete()) || !partFile.renameTo(destination))
+            throw new IOException("Cannot rename " + partFile + " to " + destination);
+        validatorFile.delete();
+    }
+
+    /**
+     * Cancels the download and deletes its <code>.part</code> and <code>.validator</code> files.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+        Call call = this.call;
+        if (call != null)
+            call.cancel();
+        partFile.delete();
+        validatorFile.delete();
+    }
+
+    /**
+     * Returns whether the download has been cancelled.
+     *
+     * @return <code>true</code> if {@link #cancel()} has been called
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Prepares the resumption of the download from the <code>.part</code> file.
+     *
+     * @return the number of bytes of the file received previously
+     */
+    private long resume()
+            throws IOException
+    {
+        long offset = partFile.length();
+        if ((decryptor == null) && (offset > 0) && (readValidator() == null)) {
+            // Without a validator, the part file may hold the beginning of an older version
+            Timber.d("No validator for the part file, restarting the download of %s", url);
+            return restart();
+        }
+        if ((decryptor != null) && (offset > 0)) {
+            // The part file holds the plaintext of the first offset bytes of the ciphertext
+            decryptor.reset();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream in = new FileInputStream(partFile)) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    decryptor.replay(buffer, 0, n);
+                }
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Discards the <code>.part</code> file to restart the download from the beginning.
+     *
+     * @return the offset to download from, i.e. 0
+     */
+    private long restart()
+            throws IOException
+    {
+        new FileOutputStream(partFile).close();
+        validatorFile.delete();
+        if (decryptor != null)
+            decryptor.reset();
+        return 0;
+    }
+
+    /**
+     * Reads the validator of the download saved in the <code>.validator</code> file.
+     *
+     * @return the strong ETag or the Last-Modified date of the file or <code>null</code> if none
+     */
+    private String readValidator()
+    {
+        if (!validatorFile.isFile())
+            return null;
+
+        byte[] buffer = new byte[(int) Math.min(validatorFile.length(), BUFFER_SIZE)];
+        try (InputStream in = new FileInputStream(validatorFile)) {
+            int length = 0;
+            int n;
+            while ((length < buffer.length) && ((n = in.read(buffer, length, buffer.length - length)) != -1))
+                length += n;
+            String validator = new String(buffer, 0, length, StandardCharsets.UTF_8).trim();
+            return validator.isEmpty() ? null : validator;
+        } catch (IOException e) {
+            Timber.w("Cannot read %s: %s", validatorFile, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Saves the validator of the response starting the download to the <code>.validator</code> file,
+     * or deletes the file if the response has none that <code>If-Range</code> accepts.
+     *
+     * @param response the response holding the file from its beginning
+     */
+    private void writeValidator(Response response)
+            throws IOException
+    {
+        // If-Range must not use a weak ETag
+        String validator = response.header("ETag");
+        if ((validator == null) || validator.startsWith("W/"))
+            validator = response.header("Last-Modified");
+
+        if (validator == null) {
+            validatorFile.delete();
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(validatorFile)) {
+            out.write(validator.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Sends the request for the file from the given offset.
+     *
+     * @param offset the number of bytes of the file received previously
+     * @param validator the validator of the file for the <code>If-Range</code> header or <code>null</code>
+     * @return the response
+     */
+    private Response execute(long offset, String validator)
+            throws IOException
+    {
+        Request.Builder builder = new Request.Builder().url(url);
+        if (offset > 0) {
+            builder.header("Range", "bytes=" + offset + "-");
+            if (validator != null)
+                builder.header("If-Range", validator);
+        }
+
+        call = httpClient.newCall(builder.build());
+        if (cancelled)
+            call.cancel();
+        return call.execute();
+    }
+
+    /**
+     * Appends the last plaintext bytes, held back by the decryptor with the tag, to the
+     * <code>.part</code> file once the tag is verified.
+     */
+    private void finishDecryption()
+            throws IOException, GeneralSecurityException
+    {
+        byte[] plaintext = new byte[AesgcmStreamDecryptor.TAG_LENGTH];
+        int n = decryptor.doFinal(plaintext, 0);
+        if (n > 0) {
+            try (OutputStream out = new FileOutputStream(partFile, true)) {
+                out.write(plaintext, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Appends the received file data to the <code>.part</code> file, decrypted if need be.
+     *
+     * @param in the response body stream
+     * @param offset the number of bytes of the file received previously
+     * @param total the size of the file in bytes or -1 if unknown
+     */
+    private void receive(InputStream in, long offset, long total)
+            throws IOException
+    {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] plaintext = (decryptor != null) ? new byte[BUFFER_SIZE + AesgcmStreamDecryptor.TAG_LENGTH] : null;
+        long received = offset;
+        long lastProgress = 0;
+
+        try (OutputStream out = new FileOutputStream(partFile, true)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                if (decryptor != null)
+                    out.write(plaintext, 0, decryptor.update(buffer, 0, n, plaintext, 0));
+                else
+                    out.write(buffer, 0, n);
+
+                received += n;
+                long now = System.currentTimeMillis();
+                if ((listener != null) && (now - lastProgress >= PROGRESS_INTERVAL)) {
+                    lastProgress = now;
+                    listener.onProgress(received, total);
+                }
+            }
+        }
+        if (listener != null)
+            listener.onProgress(received, total);
+    }
+}
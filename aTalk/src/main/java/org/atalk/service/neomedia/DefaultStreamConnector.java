@@ -8,10 +8,13 @@ package org.atalk.service.neomedia;
 import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.libjitsi.LibJitsi;
 
+import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.DatagramChannel;
 
 import timber.log.Timber;
 
@@ -38,6 +41,13 @@ public class DefaultStreamConnector implements StreamConnector
      */
     public static final String BIND_RETRIES_PROPERTY_NAME = "media.BIND_RETRIES";
 
+    /**
+     * The name of the boolean property which specifies whether the <code>DatagramSocket</code>s are to be
+     * backed by <code>DatagramChannel</code>s, so that the media implementation may receive on them from
+     * a shared selector instead of a thread per socket. Disabled by default.
+     */
+    public static final String DATAGRAM_CHANNEL_PROPERTY_NAME = "media.DATAGRAM_CHANNEL";
+
     /**
      * The name of the property that contains the maximum port number that we'd like our RTP managers to bind upon.
      */
@@ -81,6 +91,7 @@ public class DefaultStreamConnector implements StreamConnector
                 maxPort = cfg.getInt(MAX_PORT_NUMBER_PROPERTY_NAME, maxPort);
         }
 
+        boolean useChannel = (cfg != null) && cfg.getBoolean(DATAGRAM_CHANNEL_PROPERTY_NAME, false);
         for (int i = 0; i < bindRetries; i++) {
             if ((minPort < 0) || (minPort > maxPort)) {
                 minPort = 5000;
@@ -92,6 +103,8 @@ public class DefaultStreamConnector implements StreamConnector
             int port = minPort++;
 
             try {
+                if (useChannel)
+                    return createChannelDatagramSocket(bindAddr, port);
                 return (bindAddr == null) ? new DatagramSocket(port) : new DatagramSocket(port, bindAddr);
             } catch (SocketException se) {
                 Timber.w(se, "Retrying a bind because of a failure to bind to address %s and port %d", bindAddr, port);
@@ -100,6 +113,48 @@ public class DefaultStreamConnector implements StreamConnector
         return null;
     }
 
+    /**
+     * Creates a new <code>DatagramSocket</code> which is backed by a <code>DatagramChannel</code> so that
+     * a selector can be used to receive on it.
+     *
+     * @param bindAddr the local <code>InetAddress</code> the new <code>DatagramSocket</code> is to bind to
+     * @param port the local port the new <code>DatagramSocket</code> is to bind to
+     * @return a new <code>DatagramSocket</code> bound to the specified local address and port
+     * @throws SocketException if the channel could not be opened or bound
+     */
+    private static DatagramSocket createChannelDatagramSocket(InetAddress bindAddr, int port)
+            throws SocketException
+    {
+        DatagramChannel channel = null;
+        try {
+            channel = DatagramChannel.open();
+            DatagramSocket socket = channel.socket();
+            socket.bind((bindAddr == null) ? new InetSocketAddress(port) : new InetSocketAddress(bindAddr, port));
+            return socket;
+        } catch (SocketException se) {
+            closeQuietly(channel);
+            throw se;
+        } catch (IOException ioe) {
+            closeQuietly(channel);
+            throw new SocketException(ioe.getMessage());
+        }
+    }
+
+    /**
+     * Closes a specific <code>DatagramChannel</code> ignoring any <code>IOException</code>.
+     *
+     * @param channel the <code>DatagramChannel</code> to close; may be <code>null</code>
+     */
+    private static void closeQuietly(DatagramChannel channel)
+    {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
     /**
      * The local <code>InetAddress</code> this <code>StreamConnector</code> attempts to bind to on demand.
      */
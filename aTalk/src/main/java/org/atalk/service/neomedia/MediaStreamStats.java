@@ -83,6 +83,13 @@ public interface MediaStreamStats
 	 */
 	int getJitterBufferDelayPackets();
 
+	/**
+	 * Returns the target delay in milliseconds of the jitter buffer.
+	 *
+	 * @return the target delay in milliseconds of the jitter buffer
+	 */
+	int getJitterBufferTargetDelayMs();
+
 	/**
 	 * Returns the local IP address of the <code>MediaStream</code>.
 	 *
@@ -22,6 +22,9 @@ import org.atalk.util.RTPUtils;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import timber.log.Timber;
 
 /**
  * When using TransformConnector, a RTP/RTCP packet is represented using
@@ -62,6 +65,12 @@ public class RawPacket implements ByteArrayBuffer
      */
     private static final int RTCP_MIN_SIZE = 8;
 
+    /**
+     * The updater of {@link #refCount}; avoids an <code>AtomicInteger</code> allocation per packet.
+     */
+    private static final AtomicIntegerFieldUpdater<RawPacket> REF_COUNT_UPDATER
+            = AtomicIntegerFieldUpdater.newUpdater(RawPacket.class, "refCount");
+
     /**
      * The bitmask for the RTP sequence number field.
      */
@@ -109,6 +118,18 @@ public class RawPacket implements ByteArrayBuffer
      */
     private boolean skipStats = false;
 
+    /**
+     * The number of references held to this packet if it was obtained from {@link RawPacketPool};
+     * zero if this packet is not managed by the pool.
+     */
+    private volatile int refCount = 0;
+
+    /**
+     * Whether this packet has been handed out by {@link RawPacketPool}, i.e. it goes back into the
+     * pool when its last reference is released.
+     */
+    private volatile boolean pooled = false;
+
     /**
      * Initializes a new empty <tt>RawPacket</tt> instance.
      */
@@ -403,7 +424,7 @@ public class RawPacket implements ByteArrayBuffer
         }
         else {
             // We need a new buffer. We will place the payload to the very right.
-            newBuffer = new byte[maxRequiredLength];
+            newBuffer = RawPacketPool.acquireBuffer(maxRequiredLength);
             newPayloadOffset = newBuffer.length - payloadLength;
             System.arraycopy(buffer, getPayloadOffset(),
                     newBuffer, newPayloadOffset,
@@ -1408,7 +1429,7 @@ public class RawPacket implements ByteArrayBuffer
         int newLength = length + howMuch;
 
         if (newLength > buffer.length - offset) {
-            byte[] newBuffer = new byte[newLength];
+            byte[] newBuffer = RawPacketPool.acquireBuffer(newLength);
 
             System.arraycopy(buffer, offset, newBuffer, 0, length);
             offset = 0;
@@ -1416,6 +1437,70 @@ public class RawPacket implements ByteArrayBuffer
         }
     }
 
+    /**
+     * Marks this packet as handed out by {@link RawPacketPool} with a single reference.
+     */
+    void acquired()
+    {
+        pooled = true;
+        refCount = 1;
+    }
+
+    /**
+     * Adds a reference to this packet so that it is not returned into the {@link RawPacketPool} before
+     * the matching {@link #release()}. Has no effect on packets not managed by the pool.
+     *
+     * @return this <code>RawPacket</code>
+     */
+    public RawPacket retain()
+    {
+        tryRetain();
+        return this;
+    }
+
+    /**
+     * Adds a reference to this packet if it is managed by the {@link RawPacketPool} and still
+     * referenced, i.e. it has not been returned into the pool by its last {@link #release()}.
+     *
+     * @return <code>true</code> if a reference was added and must be released by the caller;
+     * otherwise, <code>false</code>
+     */
+    public boolean tryRetain()
+    {
+        int count;
+        do {
+            count = refCount;
+            if (count <= 0)
+                return false;
+        } while (!REF_COUNT_UPDATER.compareAndSet(this, count, count + 1));
+        return true;
+    }
+
+    /**
+     * Releases a reference to this packet. The packet and its buffer return into the
+     * {@link RawPacketPool} when the last reference is released; neither may be used afterwards.
+     * <p>
+     * Releasing a packet which is not managed by the pool (e.g. created by a transformer) has no
+     * effect; it is left to the garbage collector. Releasing a pooled packet which holds no more
+     * references is a caller error: it is logged and ignored, so that the packet does not enter the
+     * pool twice and get handed out to two owners.
+     */
+    public void release()
+    {
+        int count;
+        do {
+            count = refCount;
+            if (count <= 0) {
+                if (pooled)
+                    Timber.w(new IllegalStateException(), "Released RawPacket which holds no reference");
+                return;
+            }
+        } while (!REF_COUNT_UPDATER.compareAndSet(this, count, count - 1));
+
+        if (count == 1)
+            RawPacketPool.recycle(this);
+    }
+
     /**
      * Perform checks on the packet represented by this instance and
      * return <code>true</code> if it is found to be invalid. A return value of
@@ -1554,8 +1639,12 @@ public class RawPacket implements ByteArrayBuffer
      */
     public void setBuffer(byte[] buffer)
     {
-        this.buffer = buffer;
-        headerExtensions = new HeaderExtensions();
+        // The HeaderExtensions iterator is bound to the buffer; it is recreated lazily by
+        // getHeaderExtensions() so that reusing a pooled packet does not allocate.
+        if (this.buffer != buffer) {
+            this.buffer = buffer;
+            headerExtensions = null;
+        }
     }
 
     /**
@@ -0,0 +1,182 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.service.neomedia;
+
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.util.ConfigUtils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A process-wide pool of <code>RawPacket</code>s (and their <code>byte</code> buffers) shared by the
+ * connector input/output streams, the transform engines and <code>RawPacketCache</code> so that the
+ * RTP send and receive paths do not allocate per packet in steady state.
+ * <p>
+ * A <code>RawPacket</code> obtained through {@link #acquire(int)} is reference counted: a component
+ * which keeps a packet beyond the call it received it in must {@link RawPacket#retain()} it and
+ * {@link RawPacket#release()} it when done. The packet returns into this pool when the last reference is
+ * released. A packet which is never released is simply garbage collected.
+ *
+ * @author Eng Chong Meng
+ */
+public final class RawPacketPool
+{
+    /**
+     * The name of the property which specifies the maximum number of <code>RawPacket</code>s kept in the pool.
+     */
+    public static final String POOL_CAPACITY_PNAME = RawPacketPool.class.getName() + ".POOL_CAPACITY";
+
+    /**
+     * The minimum length of the buffers allocated by the pool, large enough for any packet received
+     * on a 1500 bytes MTU path plus SRTP/RTX overhead, so that the buffers are interchangeable.
+     */
+    public static final int MIN_BUFFER_LENGTH = 1500;
+
+    /**
+     * Buffers larger than this are not pooled, so that a single oversized packet does not pin memory.
+     */
+    private static final int MAX_POOLED_BUFFER_LENGTH = 4 * 1024;
+
+    /**
+     * The <code>RawPacket</code>s available for reuse.
+     */
+    private static final ArrayBlockingQueue<RawPacket> pool;
+
+    /**
+     * The number of times {@link #acquire(int)} had to allocate a new <code>RawPacket</code> or buffer.
+     */
+    private static final AtomicLong allocations = new AtomicLong();
+
+    /**
+     * The number of times {@link #acquire(int)} was served from the pool.
+     */
+    private static final AtomicLong hits = new AtomicLong();
+
+    static {
+        ConfigurationService cfg = LibJitsi.getConfigurationService();
+        pool = new ArrayBlockingQueue<>(Math.max(1, ConfigUtils.getInt(cfg, POOL_CAPACITY_PNAME, 256)));
+    }
+
+    /**
+     * Prevents the initialization of <code>RawPacketPool</code> instances.
+     */
+    private RawPacketPool()
+    {
+    }
+
+    /**
+     * Gets a <code>RawPacket</code> with a buffer of at least <code>length</code> bytes, zero offset and
+     * zero length. The returned packet holds a single reference.
+     *
+     * @param length the minimum length of the buffer of the returned <code>RawPacket</code>
+     * @return a <code>RawPacket</code> with a buffer of at least <code>length</code> bytes
+     */
+    public static RawPacket acquire(int length)
+    {
+        RawPacket pkt = pool.poll();
+
+        if (pkt == null) {
+            pkt = new RawPacket(new byte[Math.max(length, MIN_BUFFER_LENGTH)], 0, 0);
+            allocations.incrementAndGet();
+        }
+        else {
+            byte[] buffer = pkt.getBuffer();
+            if (buffer == null || buffer.length < length) {
+                pkt.setBuffer(new byte[Math.max(length, MIN_BUFFER_LENGTH)]);
+                allocations.incrementAndGet();
+            }
+            else {
+                hits.incrementAndGet();
+            }
+            pkt.setOffset(0);
+            pkt.setLength(0);
+            pkt.setFlags(0);
+        }
+        pkt.acquired();
+        return pkt;
+    }
+
+    /**
+     * Gets a pooled copy of a specific region of a <code>byte</code> array.
+     *
+     * @param buf the <code>byte</code> array to copy from
+     * @param off the offset in <code>buf</code> at which the data to copy starts
+     * @param len the number of bytes to copy
+     * @return a <code>RawPacket</code> holding a single reference and a copy of the specified data at offset zero
+     */
+    public static RawPacket copyOf(byte[] buf, int off, int len)
+    {
+        RawPacket pkt = acquire(len);
+
+        System.arraycopy(buf, off, pkt.getBuffer(), 0, len);
+        pkt.setLength(len);
+        return pkt;
+    }
+
+    /**
+     * Gets a <code>byte</code> buffer of at least <code>length</code> bytes for a <code>RawPacket</code>
+     * which needs to grow its buffer, preferring one from the pool.
+     *
+     * @param length the minimum length of the returned buffer
+     * @return a <code>byte</code> array of at least <code>length</code> bytes
+     */
+    static byte[] acquireBuffer(int length)
+    {
+        RawPacket pkt = pool.poll();
+        byte[] buffer = (pkt == null) ? null : pkt.getBuffer();
+
+        if (buffer == null || buffer.length < length) {
+            // The packet (if any) goes back for a subsequent smaller request.
+            if (pkt != null)
+                pool.offer(pkt);
+            allocations.incrementAndGet();
+            return new byte[Math.max(length, MIN_BUFFER_LENGTH)];
+        }
+        hits.incrementAndGet();
+        pkt.setBuffer(null);
+        return buffer;
+    }
+
+    /**
+     * Returns a <code>RawPacket</code> whose last reference has been released into the pool.
+     *
+     * @param pkt the <code>RawPacket</code> to return into the pool
+     */
+    static void recycle(RawPacket pkt)
+    {
+        byte[] buffer = pkt.getBuffer();
+
+        if (buffer != null && buffer.length <= MAX_POOLED_BUFFER_LENGTH) {
+            pkt.setFlags(0);
+            pkt.setLength(0);
+            pkt.setOffset(0);
+            pool.offer(pkt);
+        }
+    }
+
+    /**
+     * Gets the number of <code>RawPacket</code>s or buffers that had to be allocated because the pool was
+     * empty or held too small buffers.
+     *
+     * @return the number of allocations performed by the pool
+     */
+    public static long getAllocationCount()
+    {
+        return allocations.get();
+    }
+
+    /**
+     * Gets the number of requests served from the pool without allocation.
+     *
+     * @return the number of requests served from the pool
+     */
+    public static long getHitCount()
+    {
+        return hits.get();
+    }
+}
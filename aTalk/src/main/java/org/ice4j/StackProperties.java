@@ -232,7 +232,8 @@ public class StackProperties
             = "org.ice4j.ice.harvest.USE_DYNAMIC_HOST_HARVESTER";
 
     /**
-     * Timeout, in seconds, of how long to wait for an individual harvest before timing out
+     * Timeout, in seconds, of how long to wait for the harvesters of a harvest, which run
+     * concurrently, before timing out the ones still running
      */
     public static final String HARVESTING_TIMEOUT = "org.ice4j.ice.harvest.HARVESTING_TIMEOUT";
 
@@ -36,7 +36,6 @@ import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channel;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Arrays;
@@ -54,11 +53,11 @@ import java.util.logging.Logger;
  * handshake). The handling of the accepted sessions (e.g. handling in ICE) is
  * left to the implementations.
  *
- * This instance runs two threads: {@link #acceptThread} and
- * {@link #readThread}. The 'accept' thread just accepts new <tt>Socket</tt>s
- * and passes them over to the 'read' thread. The 'read' thread reads a STUN
- * message from an accepted socket and, based on the STUN username, passes it
- * to the appropriate session.
+ * This instance runs no threads of its own: its channels are served by the
+ * {@link SelectorLoop} shared by all listeners. When a <tt>ServerSocketChannel</tt>
+ * is acceptable, the new <tt>SocketChannel</tt>s are accepted and registered for
+ * reading. When an accepted channel is readable, its first STUN message is read
+ * and, based on the STUN username, the socket is passed to the appropriate session.
  *
  * @author Boris Grozev
  * @author Lyubomir Marinov
@@ -114,14 +113,9 @@ public abstract class AbstractTcpListener
     }
 
     /**
-     * The thread which <tt>accept</tt>s TCP connections from the sockets in {@link #serverSocketChannels}.
+     * Triggers the termination of the accepting and reading of this instance.
      */
-    private AcceptThread acceptThread;
-
-    /**
-     * Triggers the termination of the threads of this instance.
-     */
-    private boolean close = false;
+    private volatile boolean close = false;
 
     /**
      * The list of transport addresses which we have found to be listening on,
@@ -130,19 +124,15 @@ public abstract class AbstractTcpListener
     protected final List<TransportAddress> localAddresses = new LinkedList<>();
 
     /**
-     * Channels pending to be added to the list that {@link #readThread} reads from.
+     * The accepted channels which are being read from for their first datagram and have not been
+     * passed to a session yet.
      */
-    private final List<SocketChannel> newChannels = new LinkedList<>();
+    private final Set<SocketChannel> readChannels = Collections.synchronizedSet(new HashSet<>());
 
     /**
-     * The <tt>Selector</tt> used by {@link #readThread}.
+     * The {@link SelectorLoop} which serves the channels of this instance.
      */
-    private final Selector readSelector = Selector.open();
-
-    /**
-     * The thread which reads from the already <tt>accept</tt>ed sockets.
-     */
-    private ReadThread readThread;
+    private final SelectorLoop selectorLoop = SelectorLoop.getInstance();
 
     /**
      * The list of <tt>ServerSocketChannel</tt>s that we will <tt>accept</tt> on.
@@ -280,15 +270,26 @@ public abstract class AbstractTcpListener
     }
 
     /**
-     * Triggers the termination of the threads of this <tt>MultiplexingTcpHarvester</tt>.
+     * Stops the accepting and reading of this <tt>MultiplexingTcpHarvester</tt> and closes its
+     * channels.
      */
     public void close()
     {
         close = true;
+
+        // Closing the channels also cancels their registrations with the SelectorLoop.
+        for (ServerSocketChannel serverSocketChannel : serverSocketChannels)
+            closeNoExceptions(serverSocketChannel);
+
+        synchronized (readChannels) {
+            for (SocketChannel channel : readChannels)
+                closeNoExceptions(channel);
+            readChannels.clear();
+        }
     }
 
     /**
-     * Initializes {@link #serverSocketChannels}, creates and starts the threads used by this instance.
+     * Initializes {@link #serverSocketChannels} and registers them with the {@link SelectorLoop}.
      *
      * @throws IOException if an I/O error occurs
      */
@@ -310,11 +311,8 @@ public abstract class AbstractTcpListener
             addSocketChannel(addressToBind);
         }
 
-        acceptThread = new AcceptThread();
-        acceptThread.start();
-
-        readThread = new ReadThread();
-        readThread.start();
+        for (ServerSocketChannel channel : serverSocketChannels)
+            selectorLoop.register(channel, SelectionKey.OP_ACCEPT, this::acceptFromChannel);
     }
 
     /**
@@ -345,120 +343,41 @@ public abstract class AbstractTcpListener
             throws IOException, IllegalStateException;
 
     /**
-     * A <tt>Thread</tt> which will accept new <tt>SocketChannel</tt>s from all
-     * <tt>ServerSocketChannel</tt>s in {@link #serverSocketChannels}.
+     * Accepts the new <tt>SocketChannel</tt>s pending on one of the <tt>ServerSocketChannel</tt>s in
+     * {@link #serverSocketChannels} and registers them with the {@link SelectorLoop} for reading
+     * their first datagram. Called on the thread of the <tt>SelectorLoop</tt>.
+     *
+     * @param key the <tt>SelectionKey</tt> of the acceptable <tt>ServerSocketChannel</tt>
      */
-    private class AcceptThread
-            extends Thread
+    private void acceptFromChannel(SelectionKey key)
     {
-        /**
-         * The <tt>Selector</tt> used to select a specific <tt>ServerSocketChannel</tt> which is ready to <tt>accept</tt>.
-         */
-        private final Selector selector;
-
-        /**
-         * Initializes a new <tt>AcceptThread</tt>.
-         */
-        public AcceptThread()
-                throws IOException
-        {
-            setName("TcpHarvester AcceptThread");
-            setDaemon(true);
-
-            selector = Selector.open();
-            for (ServerSocketChannel channel : serverSocketChannels) {
-                channel.configureBlocking(false);
-                channel.register(selector, SelectionKey.OP_ACCEPT);
-            }
-        }
-
-        /**
-         * Notifies {@link #readThread} that new channels have been added.
-         */
-        private void notifyReadThread()
-        {
-            readSelector.wakeup();
-        }
-
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public void run()
-        {
-            do {
-                if (close) {
-                    break;
-                }
-
-                IOException exception = null;
-                List<SocketChannel> channelsToAdd = new LinkedList<>();
-                // Allow to go on, so we can quit if closed.
-                long selectTimeout = 3000;
-
-                for (SelectionKey key : selector.keys()) {
-                    if (key.isValid()) {
-                        SocketChannel channel;
-                        boolean acceptable = key.isAcceptable();
-
-                        try {
-                            channel = ((ServerSocketChannel) key.channel()).accept();
-                        } catch (IOException ioe) {
-                            exception = ioe;
-                            break;
-                        }
+        while (!close) {
+            SocketChannel channel;
 
-                        // Add the accepted channel to newChannels to allow the 'read' thread to it up.
-                        if (channel != null) {
-                            channelsToAdd.add(channel);
-                        }
-                        else if (acceptable) {
-                            // The SelectionKey reported the channel as
-                            // acceptable but channel#accept() did not accept a
-                            // non-null SocketChannel. Give the channel a little
-                            // time to get its act together.
-                            selectTimeout = 100;
-                        }
-                    }
-                }
-                // We accepted from all serverSocketChannels.
-                selector.selectedKeys().clear();
-
-                if (!channelsToAdd.isEmpty()) {
-                    synchronized (newChannels) {
-                        newChannels.addAll(channelsToAdd);
-                    }
-                    notifyReadThread();
-                }
-
-                if (exception != null) {
-                    logger.info("Failed to accept a socket, which should have been ready to accept: " + exception);
-                    break;
-                }
-
-                try {
-                    // Allow to go on, so we can quit if closed.
-                    selector.select(selectTimeout);
-                } catch (IOException ioe) {
-                    logger.info("Failed to select an accept-ready socket: " + ioe);
-                    break;
-                }
+            try {
+                channel = ((ServerSocketChannel) key.channel()).accept();
+            } catch (IOException ioe) {
+                logger.info("Failed to accept a socket, which should have been ready to accept: " + ioe);
+                return;
             }
-            while (true);
-
-            //now clean up and exit
-            for (ServerSocketChannel serverSocketChannel : serverSocketChannels)
-                closeNoExceptions(serverSocketChannel);
+            if (channel == null)
+                return;
 
+            ChannelDesc channelDesc = new ChannelDesc(channel);
+            readChannels.add(channel);
             try {
-                selector.close();
-            } catch (IOException ignore) {
+                selectorLoop.register(channel, SelectionKey.OP_READ,
+                        readKey -> readFromChannel(channelDesc, readKey));
+            } catch (IOException ioe) {
+                logger.info("Failed to register channel: " + ioe);
+                readChannels.remove(channel);
+                closeNoExceptions(channel);
             }
         }
     }
 
     /**
-     * Contains a <tt>SocketChannel</tt> that <tt>ReadThread</tt> is reading from.
+     * Contains a <tt>SocketChannel</tt> that is being read from for its first datagram.
      */
     private static class ChannelDesc
     {
@@ -619,272 +538,179 @@ public abstract class AbstractTcpListener
         }
     }
 
-    private class ReadThread
-            extends Thread
+    /**
+     * Tries to read, without blocking, from <tt>channel</tt> to its
+     * buffer. If after reading the buffer is filled, handles the data in the buffer.
+     *
+     * This works in three stages:
+     * 1 (optional): Read a fixed-size message. If it matches the
+     * hard-coded pseudo SSL ClientHello, sends the hard-coded ServerHello.
+     * 2: Read two bytes as an unsigned int and interpret it as the length to read in the next stage.
+     * 3: Read number of bytes indicated in stage2 and try to interpret them as a STUN message.
+     *
+     * If a datagram is successfully read it is passed on to
+     * {@link #processFirstDatagram(byte[], ChannelDesc, SelectionKey)}
+     *
+     * @param channel the <tt>SocketChannel</tt> to read from.
+     * @param key the <tt>SelectionKey</tt> associated with <tt>channel</tt>,
+     * which is to be canceled in case no further reading is required from the channel.
+     */
+    private void readFromChannel(ChannelDesc channel, SelectionKey key)
     {
-        /**
-         * Initializes a new <tt>ReadThread</tt>.
-         */
-        public ReadThread()
-        {
-            setName("TcpHarvester ReadThread");
-            setDaemon(true);
-        }
+        if (channel.buffer == null) {
+            // Set up a buffer with a pre-determined size
 
-        /**
-         * Registers the channels from {@link #newChannels} in
-         * {@link #readSelector}.
-         */
-        private void checkForNewChannels()
-        {
-            synchronized (newChannels) {
-                for (SocketChannel channel : newChannels) {
-                    try {
-                        channel.configureBlocking(false);
-                        channel.register(
-                                readSelector,
-                                SelectionKey.OP_READ,
-                                new ChannelDesc(channel));
-                    } catch (IOException ioe) {
-                        logger.info("Failed to register channel: " + ioe);
-                        closeNoExceptions(channel);
-                    }
-                }
-                newChannels.clear();
+            if (!channel.checkedForSSLHandshake && channel.length == -1) {
+                channel.buffer = ByteBuffer.allocate(GoogleTurnSSLCandidateHarvester.SSL_CLIENT_HANDSHAKE.length);
+            }
+            else if (channel.length == -1) {
+                channel.buffer = ByteBuffer.allocate(2);
+            }
+            else {
+                channel.buffer = ByteBuffer.allocate(channel.length);
             }
         }
 
-        /**
-         * Tries to read, without blocking, from <tt>channel</tt> to its
-         * buffer. If after reading the buffer is filled, handles the data in the buffer.
-         *
-         * This works in three stages:
-         * 1 (optional): Read a fixed-size message. If it matches the
-         * hard-coded pseudo SSL ClientHello, sends the hard-coded ServerHello.
-         * 2: Read two bytes as an unsigned int and interpret it as the length to read in the next stage.
-         * 3: Read number of bytes indicated in stage2 and try to interpret them as a STUN message.
-         *
-         * If a datagram is successfully read it is passed on to
-         * {@link #processFirstDatagram(byte[], ChannelDesc, SelectionKey)}
-         *
-         * @param channel the <tt>SocketChannel</tt> to read from.
-         * @param key the <tt>SelectionKey</tt> associated with <tt>channel</tt>,
-         * which is to be canceled in case no further reading is required from the channel.
-         */
-        private void readFromChannel(ChannelDesc channel, SelectionKey key)
-        {
-            if (channel.buffer == null) {
-                // Set up a buffer with a pre-determined size
+        try {
+            int read = channel.channel.read(channel.buffer);
 
-                if (!channel.checkedForSSLHandshake && channel.length == -1) {
-                    channel.buffer = ByteBuffer.allocate(GoogleTurnSSLCandidateHarvester.SSL_CLIENT_HANDSHAKE.length);
-                }
-                else if (channel.length == -1) {
-                    channel.buffer = ByteBuffer.allocate(2);
-                }
-                else {
-                    channel.buffer = ByteBuffer.allocate(channel.length);
-                }
-            }
+            if (read == -1)
+                throw new IOException("End of stream!");
 
-            try {
-                int read = channel.channel.read(channel.buffer);
+            if (!channel.buffer.hasRemaining()) {
+                // We've filled in the buffer.
+                if (!channel.checkedForSSLHandshake) {
+                    byte[] bytesRead= new byte[GoogleTurnSSLCandidateHarvester.SSL_CLIENT_HANDSHAKE.length];
+
+                    channel.buffer.flip();
+                    channel.buffer.get(bytesRead);
 
-                if (read == -1)
-                    throw new IOException("End of stream!");
+                    // Set to null, so that we re-allocate it for the next stage
+                    channel.buffer = null;
+                    channel.checkedForSSLHandshake = true;
 
-                if (!channel.buffer.hasRemaining()) {
-                    // We've filled in the buffer.
-                    if (!channel.checkedForSSLHandshake) {
-                        byte[] bytesRead= new byte[GoogleTurnSSLCandidateHarvester.SSL_CLIENT_HANDSHAKE.length];
+                    if (Arrays.equals(bytesRead, GoogleTurnSSLCandidateHarvester.SSL_CLIENT_HANDSHAKE)) {
+                        ByteBuffer byteBuffer = ByteBuffer.wrap(GoogleTurnSSLCandidateHarvester.SSL_SERVER_HANDSHAKE);
+                        channel.channel.write(byteBuffer);
+                    }
+                    else {
+                        int fb = bytesRead[0];
+                        int sb = bytesRead[1];
 
-                        channel.buffer.flip();
-                        channel.buffer.get(bytesRead);
+                        channel.length = (((fb & 0xff) << 8) | (sb & 0xff));
 
-                        // Set to null, so that we re-allocate it for the next stage
-                        channel.buffer = null;
-                        channel.checkedForSSLHandshake = true;
+                        byte[] preBuffered = Arrays.copyOfRange(bytesRead, 2, bytesRead.length);
 
-                        if (Arrays.equals(bytesRead, GoogleTurnSSLCandidateHarvester.SSL_CLIENT_HANDSHAKE)) {
-                            ByteBuffer byteBuffer = ByteBuffer.wrap(GoogleTurnSSLCandidateHarvester.SSL_SERVER_HANDSHAKE);
-                            channel.channel.write(byteBuffer);
+                        // if we had read enough data
+                        if (channel.length <= bytesRead.length - 2) {
+                            processFirstDatagram(preBuffered, channel, key);
                         }
                         else {
-                            int fb = bytesRead[0];
-                            int sb = bytesRead[1];
-
-                            channel.length = (((fb & 0xff) << 8) | (sb & 0xff));
+                            // not enough data, store what was read and continue
+                            channel.preBuffered = preBuffered;
 
-                            byte[] preBuffered = Arrays.copyOfRange(bytesRead, 2, bytesRead.length);
-
-                            // if we had read enough data
-                            if (channel.length <= bytesRead.length - 2) {
-                                processFirstDatagram(preBuffered, channel, key);
-                            }
-                            else {
-                                // not enough data, store what was read and continue
-                                channel.preBuffered = preBuffered;
-
-                                channel.length -= channel.preBuffered.length;
-                            }
+                            channel.length -= channel.preBuffered.length;
                         }
                     }
-                    else if (channel.length == -1) {
-                        channel.buffer.flip();
+                }
+                else if (channel.length == -1) {
+                    channel.buffer.flip();
 
-                        int fb = channel.buffer.get();
-                        int sb = channel.buffer.get();
+                    int fb = channel.buffer.get();
+                    int sb = channel.buffer.get();
 
-                        channel.length = (((fb & 0xff) << 8) | (sb & 0xff));
+                    channel.length = (((fb & 0xff) << 8) | (sb & 0xff));
 
-                        // Set to null, so that we re-allocate it for the next stage
-                        channel.buffer = null;
+                    // Set to null, so that we re-allocate it for the next stage
+                    channel.buffer = null;
+                }
+                else {
+                    byte[] bytesRead = new byte[channel.length];
+
+                    channel.buffer.flip();
+                    channel.buffer.get(bytesRead);
+
+                    if (channel.preBuffered != null) {
+                        // will store preBuffered and currently read data
+                        byte[] newBytesRead = new byte[channel.preBuffered.length + bytesRead.length];
+
+                        // copy old data
+                        System.arraycopy(
+                                channel.preBuffered, 0,
+                                newBytesRead, 0,
+                                channel.preBuffered.length);
+                        // and new data
+                        System.arraycopy(
+                                bytesRead, 0,
+                                newBytesRead, channel.preBuffered.length,
+                                bytesRead.length);
+
+                        // use that data for processing
+                        bytesRead = newBytesRead;
+
+                        channel.preBuffered = null;
                     }
-                    else {
-                        byte[] bytesRead = new byte[channel.length];
-
-                        channel.buffer.flip();
-                        channel.buffer.get(bytesRead);
-
-                        if (channel.preBuffered != null) {
-                            // will store preBuffered and currently read data
-                            byte[] newBytesRead = new byte[channel.preBuffered.length + bytesRead.length];
-
-                            // copy old data
-                            System.arraycopy(
-                                    channel.preBuffered, 0,
-                                    newBytesRead, 0,
-                                    channel.preBuffered.length);
-                            // and new data
-                            System.arraycopy(
-                                    bytesRead, 0,
-                                    newBytesRead, channel.preBuffered.length,
-                                    bytesRead.length);
-
-                            // use that data for processing
-                            bytesRead = newBytesRead;
-
-                            channel.preBuffered = null;
-                        }
 
-                        processFirstDatagram(bytesRead, channel, key);
-                    }
+                    processFirstDatagram(bytesRead, channel, key);
                 }
-            } catch (Exception e) {
-                // The ReadThread should continue running no matter what
-                // exceptions occur in the code above (we've observed exceptions
-                // due to failures to allocate resources) because otherwise
-                // the #newChannels list is never pruned leading to a leak of sockets.
-                logger.info("Failed to handle TCP socket " + channel.channel.socket() + ": " + e.getMessage());
-                key.cancel();
-                closeNoExceptions(channel.channel);
-            }
-        }
-
-        /**
-         * Process the first RFC4571-framed datagram read from a socket.
-         *
-         * If the datagram contains a STUN Binding Request, and it has a
-         * USERNAME attribute, the local &quot;ufrag&quot; is extracted from the
-         * attribute value, and the socket is passed to
-         * {@link #acceptSession(Socket, String, DatagramPacket)}.
-         *
-         * @param bytesRead bytes to be processed
-         * @param channel the <tt>SocketChannel</tt> to read from.
-         * @param key the <tt>SelectionKey</tt> associated with
-         * <tt>channel</tt>, which is to be canceled in case no further reading is required from the channel.
-         * @throws IOException if the datagram does not contain s STUN Binding Request with a USERNAME attribute.
-         * @throws IllegalStateException if the session for the extracted
-         * username fragment cannot be accepted for implementation reasons
-         * (e.g. no ICE Agent with the given local ufrag is found).
-         */
-        private void processFirstDatagram(
-                byte[] bytesRead,
-                ChannelDesc channel, SelectionKey key)
-                throws IOException, IllegalStateException
-        {
-            // Does this look like a STUN binding request? What's the username?
-            String ufrag = AbstractUdpListener.getUfrag(bytesRead,
-                    (char) 0,
-                    (char) bytesRead.length);
-
-            if (ufrag == null) {
-                throw new IOException("Cannot extract ufrag");
             }
-
-            // The rest of the stack will read from the socket's
-            // InputStream. We cannot change the blocking mode
-            // before the channel is removed from the selector (by cancelling the key)
+        } catch (Exception e) {
+            // The SelectorLoop should continue running no matter what
+            // exceptions occur in the code above (we've observed exceptions
+            // due to failures to allocate resources) and the channel must be
+            // closed because otherwise it leaks.
+            logger.info("Failed to handle TCP socket " + channel.channel.socket() + ": " + e.getMessage());
             key.cancel();
-            channel.channel.configureBlocking(true);
-
-            // Construct a DatagramPacket from the just-read packet which is to be pushed back
-            DatagramPacket p = new DatagramPacket(bytesRead, bytesRead.length);
-            Socket socket = channel.channel.socket();
-
-            p.setAddress(socket.getInetAddress());
-            p.setPort(socket.getPort());
-
-            acceptSession(socket, ufrag, p);
+            readChannels.remove(channel.channel);
+            closeNoExceptions(channel.channel);
         }
+    }
 
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public void run()
-        {
-            do {
-                synchronized (AbstractTcpListener.this) {
-                    if (close)
-                        break;
-                }
-
-                checkForNewChannels();
-
-                for (SelectionKey key : readSelector.keys()) {
-                    if (key.isValid()) {
-                        ChannelDesc channelDesc = (ChannelDesc) key.attachment();
-                        readFromChannel(channelDesc, key);
-                    }
-                }
-                // We read from all SocketChannels.
-                readSelector.selectedKeys().clear();
+    /**
+     * Process the first RFC4571-framed datagram read from a socket.
+     *
+     * If the datagram contains a STUN Binding Request, and it has a
+     * USERNAME attribute, the local &quot;ufrag&quot; is extracted from the
+     * attribute value, and the socket is passed to
+     * {@link #acceptSession(Socket, String, DatagramPacket)}.
+     *
+     * @param bytesRead bytes to be processed
+     * @param channel the <tt>SocketChannel</tt> to read from.
+     * @param key the <tt>SelectionKey</tt> associated with
+     * <tt>channel</tt>, which is to be canceled in case no further reading is required from the channel.
+     * @throws IOException if the datagram does not contain s STUN Binding Request with a USERNAME attribute.
+     * @throws IllegalStateException if the session for the extracted
+     * username fragment cannot be accepted for implementation reasons
+     * (e.g. no ICE Agent with the given local ufrag is found).
+     */
+    private void processFirstDatagram(
+            byte[] bytesRead,
+            ChannelDesc channel, SelectionKey key)
+            throws IOException, IllegalStateException
+    {
+        // Does this look like a STUN binding request? What's the username?
+        String ufrag = AbstractUdpListener.getUfrag(bytesRead,
+                (char) 0,
+                (char) bytesRead.length);
 
-                try {
-                    readSelector.select(MuxServerSocketChannelFactory.SOCKET_CHANNEL_READ_TIMEOUT / 2);
-                } catch (IOException ioe) {
-                    logger.info("Failed to select a read-ready channel.");
-                }
-            }
-            while (true);
+        if (ufrag == null) {
+            throw new IOException("Cannot extract ufrag");
+        }
 
-            //we are all done, clean up.
-            synchronized (newChannels) {
-                for (SocketChannel channel : newChannels) {
-                    closeNoExceptions(channel);
-                }
-                newChannels.clear();
-            }
+        // The rest of the stack will read from the socket's
+        // InputStream. We cannot change the blocking mode
+        // before the channel is removed from the selector (by cancelling the key)
+        key.cancel();
+        readChannels.remove(channel.channel);
+        channel.channel.configureBlocking(true);
 
-            for (SelectionKey key : readSelector.keys()) {
-                // An invalid key specifies that either the channel was closed
-                // (in which case we do not have to do anything else to it) or
-                // that we no longer control the channel (i.e. we do not want to
-                // do anything else to it).
-                if (key.isValid()) {
-                    Channel channel = key.channel();
+        // Construct a DatagramPacket from the just-read packet which is to be pushed back
+        DatagramPacket p = new DatagramPacket(bytesRead, bytesRead.length);
+        Socket socket = channel.channel.socket();
 
-                    if (channel.isOpen())
-                        closeNoExceptions(channel);
-                }
-            }
+        p.setAddress(socket.getInetAddress());
+        p.setPort(socket.getPort());
 
-            try {
-                readSelector.close();
-            } catch (IOException ioe) {
-                // ignore
-            }
-        }
+        acceptSession(socket, ufrag, p);
     }
 }
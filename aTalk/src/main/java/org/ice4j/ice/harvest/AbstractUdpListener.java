@@ -33,16 +33,20 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * A class which holds a {@link DatagramSocket} and runs a thread
- * ({@link #thread}) which perpetually reads from it.
+ * A class which holds a {@link DatagramChannel} and reads from it whenever it is
+ * readable on the thread of the {@link SelectorLoop} shared by all listeners.
  *
  * When a datagram from an unknown source is received, it is parsed as a STUN
  * Binding Request, and if it has a USERNAME attribute, its ufrag is extracted.
@@ -81,6 +85,13 @@ public abstract class AbstractUdpListener
      */
     private static final int POOL_SIZE = 256;
 
+    /**
+     * The number of times {@link MySocket#send(DatagramPacket)} retries a
+     * datagram which does not fit in the full send buffer of the channel
+     * before dropping it.
+     */
+    private static final int SEND_RETRIES = 5;
+
     /**
      * Returns the list of {@link TransportAddress}es, one for each allowed IP
      * address found on each allowed network interface, with the given port.
@@ -174,7 +185,7 @@ public abstract class AbstractUdpListener
     /**
      * The map which keeps the known remote addresses and their associated
      * candidateSockets.
-     * {@link #thread} is the only thread which adds new entries, while
+     * The {@link SelectorLoop} thread is the only thread which adds new entries, while
      * other threads remove entries when candidates are freed.
      */
     private final Map<SocketAddress, MySocket> sockets
@@ -193,19 +204,20 @@ public abstract class AbstractUdpListener
     protected final TransportAddress localAddress;
 
     /**
-     * The "main" socket that this harvester reads from.
+     * The "main" channel that this harvester reads from.
      */
-    private final DatagramSocket socket;
+    private final DatagramChannel channel;
 
     /**
-     * The thread reading from {@link #socket}.
+     * Triggers the termination of the reading of this instance.
      */
-    private final Thread thread;
+    private volatile boolean close = false;
 
     /**
-     * Triggers the termination of the threads of this instance.
+     * The number of datagrams dropped by {@link MySocket#send(DatagramPacket)}
+     * because the send buffer of {@link #channel} stayed full.
      */
-    private boolean close = false;
+    private final AtomicInteger numDroppedPackets = new AtomicInteger();
 
     /**
      * Initializes a new <tt>SinglePortUdpHarvester</tt> instance which is to
@@ -232,7 +244,9 @@ public abstract class AbstractUdpListener
                                 );
         }
 
-        socket = new DatagramSocket( tempAddress );
+        channel = DatagramChannel.open();
+        DatagramSocket socket = channel.socket();
+        socket.bind(tempAddress);
 
         int receiveBufferSize = StackProperties.getInt(SO_RCVBUF_PNAME, -1);
         if (receiveBufferSize > 0)
@@ -260,75 +274,78 @@ public abstract class AbstractUdpListener
         }
         logger.info(logMessage);
 
-        thread = new Thread()
+        try
         {
-            @Override
-            public void run()
-            {
-                AbstractUdpListener.this.runInHarvesterThread();
-            }
-        };
-
-        thread.setName(AbstractUdpListener.class.getName() + " thread for " + this.localAddress);
-        thread.setDaemon(true);
-        thread.start();
+            SelectorLoop.getInstance().register(channel, SelectionKey.OP_READ,
+                    key -> readFromChannel());
+        }
+        catch (IOException ioe)
+        {
+            channel.close();
+            throw ioe;
+        }
     }
 
     /**
-     * Triggers the termination of the threads of this instance.
+     * Stops the reading of this instance and closes its sockets.
      */
     public void close()
     {
         close = true;
-        socket.close(); // causes socket#receive to stop blocking.
+        try
+        {
+            // Also cancels the registration with the SelectorLoop.
+            channel.close();
+        }
+        catch (IOException ignore)
+        {
+        }
+
+        for (MySocket candidateSocket : new ArrayList<>(sockets.values()))
+        {
+            candidateSocket.close();
+        }
     }
 
     /**
-     * Perpetually reads datagrams from {@link #socket} and handles them
-     * accordingly.
+     * Reads all the datagrams available on {@link #channel} and handles them accordingly. Called
+     * on the thread of the {@link SelectorLoop} shared by all listeners whenever the channel is
+     * readable.
      *
-     * It is important that this blocks are little as possible (except on
-     * socket.receive(), of course),  because it could potentially delay the
-     * reception of both ICE and media packets for the whole application.
+     * It is important that this does not block, because it would delay the reception of both
+     * ICE and media packets for the whole application.
      */
-    private void runInHarvesterThread()
+    private void readFromChannel()
     {
-        Buffer buf;
-        DatagramPacket pkt = null;
-        MySocket destinationSocket;
-        InetSocketAddress remoteAddress;
-
-        do
+        while (!close)
         {
-            if (close)
-            {
-                break;
-            }
-
-            buf = getFreeBuffer();
-
-            if (pkt == null)
-                pkt = new DatagramPacket(buf.buffer, 0, buf.buffer.length);
-            else
-                pkt.setData(buf.buffer, 0, buf.buffer.length);
+            Buffer buf = getFreeBuffer();
+            InetSocketAddress remoteAddress;
 
+            buf.byteBuffer.clear();
             try
             {
-                socket.receive(pkt);
+                remoteAddress = (InetSocketAddress) channel.receive(buf.byteBuffer);
             }
             catch (IOException ioe)
             {
+                pool.offer(buf);
                 if (!close)
                 {
                     logger.error("Failed to receive from socket: " + ioe.getMessage());
+                    close();
                 }
-                break;
+                return;
             }
-            buf.len = pkt.getLength();
-
+            if (remoteAddress == null)
+            {
+                // No more datagrams for now.
+                pool.offer(buf);
+                return;
+            }
+            buf.len = buf.byteBuffer.position();
 
-            remoteAddress = (InetSocketAddress) pkt.getSocketAddress();
-            destinationSocket = sockets.get(remoteAddress);
+            MySocket destinationSocket = sockets.get(remoteAddress);
             if (destinationSocket != null)
             {
                 //make 'pkt' available for reading through destinationSocket
@@ -342,6 +359,7 @@ public abstract class AbstractUdpListener
                 {
                     // Not a STUN Binding Request or doesn't have a valid
                     // USERNAME attribute. Drop it.
+                    pool.offer(buf);
                     continue;
                 }
 
@@ -349,14 +367,6 @@ public abstract class AbstractUdpListener
                 // Maybe add to #sockets here in the base class?
             }
         }
-        while (true);
-
-        // now clean up and exit
-        for (MySocket candidateSocket : new ArrayList<>(sockets.values()))
-        {
-            candidateSocket.close();
-        }
-        socket.close();
     }
 
     /**
@@ -366,9 +376,9 @@ public abstract class AbstractUdpListener
      * Implementations may choose to e.g. create a socket and pass it to their
      * ICE stack.
      *
-     * Note that this is meant to only be executed by
-     * {@link AbstractUdpListener}'s read thread, and should not be called from
-     * implementing classes.
+     * Note that this is meant to only be executed by the {@link SelectorLoop}
+     * thread of {@link AbstractUdpListener}, must not block and should not be
+     * called from implementing classes.
      *
      * @param buf the UDP payload of the first datagram received on the newly
      * accepted socket.
@@ -401,8 +411,8 @@ public abstract class AbstractUdpListener
      * Creates a new {@link MySocket} instance and associates it with the given
      * remote address. Returns the created instance.
      *
-     * Note that this is meant to only execute in {@link AbstractUdpListener}'s
-     * read thread.
+     * Note that this is meant to only execute in the {@link SelectorLoop}
+     * thread of {@link AbstractUdpListener}.
      *
      * @param remoteAddress the remote address with which to associate the new
      * socket instance.
@@ -671,13 +681,32 @@ public abstract class AbstractUdpListener
         /**
          * {@inheritDoc}
          *
-         * Delegates to the actual socket of the harvester.
+         * Delegates to the actual socket of the harvester. The channel is
+         * non-blocking and sends nothing while its send buffer is full, so
+         * the datagram is retried briefly and then dropped, as a full UDP
+         * path would do.
          */
         @Override
         public void send(DatagramPacket p)
             throws IOException
         {
-            socket.send(p);
+            ByteBuffer data
+                = ByteBuffer.wrap(p.getData(), p.getOffset(), p.getLength());
+            SocketAddress target = p.getSocketAddress();
+
+            for (int i = 0; i <= SEND_RETRIES; i++)
+            {
+                if (channel.send(data, target) != 0)
+                    return;
+                Thread.yield();
+            }
+
+            int dropped = numDroppedPackets.incrementAndGet();
+            if (dropped == 1 || dropped % 1000 == 0)
+            {
+                logger.warn("Dropped " + dropped + " datagrams on a full send buffer."
+                        + " Remote address = " + remoteAddress + " ufrag=" + ufrag);
+            }
         }
     }
 
@@ -693,6 +722,11 @@ public abstract class AbstractUdpListener
          */
         byte[] buffer;
 
+        /**
+         * The <tt>ByteBuffer</tt> view of {@link #buffer} into which datagrams are received.
+         */
+        final ByteBuffer byteBuffer;
+
         /**
          * The number of elements of {@link #buffer} actually used.
          */
@@ -706,6 +740,7 @@ public abstract class AbstractUdpListener
         private Buffer(byte[] buffer, int len)
         {
             this.buffer = buffer;
+            this.byteBuffer = ByteBuffer.wrap(buffer);
             this.len = len;
         }
     }
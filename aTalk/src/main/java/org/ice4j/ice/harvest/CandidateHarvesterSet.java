@@ -17,6 +17,7 @@
  */
 package org.ice4j.ice.harvest;
 
+import org.atalk.util.concurrent.ExecutorFactory;
 import org.ice4j.StackProperties;
 import org.ice4j.ice.Component;
 
@@ -34,7 +35,6 @@ import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -42,7 +42,11 @@ import java.util.logging.Logger;
 
 /**
  * Implements {@link Set} of <tt>CandidateHarvester</tt>s which runs the
- * gathering of candidate addresses performed by its elements in parallel.
+ * gathering of candidate addresses performed by its elements in parallel,
+ * under a single deadline of {@link StackProperties#HARVESTING_TIMEOUT} for all
+ * of them rather than a full timeout for each. A harvester which has not
+ * completed by the deadline is disabled and cancelled, so that it adds no
+ * candidates after the harvest has returned.
  *
  * @author Lyubomir Marinov
  * @author Eng Chong Meng
@@ -63,7 +67,8 @@ public class CandidateHarvesterSet
     /**
      * A pool of thread used for gathering process.
      */
-    private static final ExecutorService threadPool = Executors.newCachedThreadPool();
+    private static final ExecutorService threadPool
+            = ExecutorFactory.createCachedThreadPool("ice4j.CandidateHarvesterSet-");
 
     /**
      * Initializes a new <tt>CandidateHarvesterSet</tt> instance.
@@ -171,8 +176,11 @@ public class CandidateHarvesterSet
         }
 
         /*
-         * Wait for all harvesters to be given a chance to execute their CandidateHarvester#harvest(Component) method.
+         * Wait for all harvesters to be given a chance to execute their CandidateHarvester#harvest(Component)
+         * method, all of them together until a single deadline rather than each of them for the full timeout.
          */
+        long deadline = System.nanoTime()
+                + TimeUnit.SECONDS.toNanos(StackProperties.getInt(StackProperties.HARVESTING_TIMEOUT, 15));
         Iterator<Map.Entry<CandidateHarvesterSetTask, Future<?>>> taskIter = tasks.entrySet().iterator();
         while (taskIter.hasNext()) {
             Map.Entry<CandidateHarvesterSetTask, Future<?>> task = taskIter.next();
@@ -180,13 +188,15 @@ public class CandidateHarvesterSet
 
             do {
                 try {
-                    future.get(StackProperties.getInt(StackProperties.HARVESTING_TIMEOUT, 15), TimeUnit.SECONDS);
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
                     break;
                 } catch (TimeoutException te) {
                     CandidateHarvesterSetElement harvester = task.getKey().getHarvester();
                     if (harvester != null) {
                         harvester.setEnabled(false);
                     }
+                    // Do not let the late harvester add candidates after the harvest is over.
+                    future.cancel(true);
                     logger.warning("timed out while harvesting from " + harvester);
                     break;
                 } catch (CancellationException ce) {
@@ -0,0 +1,201 @@
+/*
+ * ice4j, the OpenSource Java Solution for NAT and Firewall Traversal.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single daemon thread running a <tt>Selector</tt> which is shared by all the
+ * {@link AbstractUdpListener}s and {@link AbstractTcpListener}s, instead of each of them
+ * running its own threads blocked on its sockets. The ready channels are handled directly
+ * on the thread of the loop, so the {@link Handler}s must not block.
+ *
+ * @author Eng Chong Meng
+ */
+final class SelectorLoop
+{
+    /**
+     * Our class logger.
+     */
+    private static final Logger logger = Logger.getLogger(SelectorLoop.class.getName());
+
+    /**
+     * The <tt>SelectorLoop</tt> shared by all listeners.
+     */
+    private static SelectorLoop instance;
+
+    /**
+     * Gets the <tt>SelectorLoop</tt> shared by all listeners, starting it on first use.
+     *
+     * @return the shared <tt>SelectorLoop</tt>
+     * @throws IOException if the <tt>Selector</tt> cannot be opened
+     */
+    static synchronized SelectorLoop getInstance()
+            throws IOException
+    {
+        if (instance == null)
+            instance = new SelectorLoop();
+        return instance;
+    }
+
+    /**
+     * The <tt>Selector</tt> of this loop.
+     */
+    private final Selector selector;
+
+    /**
+     * The tasks to be run on the thread of this loop before its next select, e.g. the
+     * registrations of channels which can only be done while the selector is not selecting.
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The initial delay in milliseconds before selecting again after a failed select.
+     */
+    private static final long MIN_SELECT_BACKOFF = 10;
+
+    /**
+     * The maximum delay in milliseconds before selecting again after successive failed selects.
+     */
+    private static final long MAX_SELECT_BACKOFF = 1000;
+
+    /**
+     * Initializes a new <tt>SelectorLoop</tt> and starts its thread.
+     *
+     * @throws IOException if the <tt>Selector</tt> cannot be opened
+     */
+    private SelectorLoop()
+            throws IOException
+    {
+        selector = Selector.open();
+
+        Thread thread = new Thread(this::run, "ice4j.SelectorLoop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Registers a specific channel with this loop. The channel is switched to non-blocking mode
+     * and the registration happens asynchronously on the thread of this loop.
+     *
+     * @param channel the channel to register
+     * @param ops the interest set of the registration
+     * @param handler the <tt>Handler</tt> to be called when the channel is ready
+     * @throws IOException if the channel cannot be switched to non-blocking mode
+     */
+    void register(SelectableChannel channel, int ops, Handler handler)
+            throws IOException
+    {
+        channel.configureBlocking(false);
+        execute(() -> {
+            try {
+                channel.register(selector, ops, handler);
+            } catch (ClosedChannelException e) {
+                logger.fine("Not registering a closed channel.");
+            }
+        });
+    }
+
+    /**
+     * Runs a specific task on the thread of this loop before its next select.
+     *
+     * @param task the task to run
+     */
+    void execute(Runnable task)
+    {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Selects the ready channels and calls their <tt>Handler</tt>s, forever.
+     */
+    private void run()
+    {
+        long selectBackoff = 0;
+
+        while (true) {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    logger.log(Level.WARNING, "Failed to run a selector loop task.", t);
+                }
+            }
+
+            try {
+                selector.select();
+                selectBackoff = 0;
+            } catch (IOException ioe) {
+                // Back off so that a persistent failure does not spin the thread.
+                if (selectBackoff == 0) {
+                    logger.log(Level.WARNING, "Failed to select ready channels.", ioe);
+                    selectBackoff = MIN_SELECT_BACKOFF;
+                }
+                else {
+                    selectBackoff = Math.min(2 * selectBackoff, MAX_SELECT_BACKOFF);
+                }
+                try {
+                    Thread.sleep(selectBackoff);
+                } catch (InterruptedException ignore) {
+                    // The loop runs for the lifetime of the application.
+                }
+                continue;
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                if (key.isValid()) {
+                    try {
+                        ((Handler) key.attachment()).ready(key);
+                    } catch (Throwable t) {
+                        // The loop serves all listeners and must survive any of them.
+                        logger.log(Level.WARNING, "Failed to handle a ready channel.", t);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles a channel of a {@link SelectorLoop} which is ready for the operations it was
+     * registered for.
+     */
+    interface Handler
+    {
+        /**
+         * Handles the channel of a specific <tt>SelectionKey</tt> which is ready. Must not block.
+         *
+         * @param key the <tt>SelectionKey</tt> of the ready channel
+         */
+        void ready(SelectionKey key);
+    }
+}
@@ -35,14 +35,23 @@ import org.ice4j.socket.IceUdpSocketWrapper;
 import org.ice4j.socket.MultiplexingDatagramSocket;
 
 import java.net.InetAddress;
+import java.net.NetworkInterface;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.FutureTask;
 
 /**
  * Implements a <code>CandidateHarvester</code> which gathers <code>Candidate</code>s
  * for a specified {@link Component} using UPnP.
+ * <p>
+ * The discovery of the UPnP gateway is shared by all <code>UPNPHarvester</code>s and the found
+ * gateway is reused until its local address is no longer assigned to this host (i.e. the network
+ * has changed); the lack of a gateway is cached for {@link #NO_GATEWAY_CACHE_TIME} ms, so that
+ * only the first harvest waits for the discovery rather than the harvest of every call. The
+ * external IP address of the gateway may change while its local address does not, so it is
+ * queried from the gateway on every harvest.
  *
  * @author Sebastien Vincent
  * @author Eng Chong Meng
@@ -69,19 +78,82 @@ public class UPNPHarvester extends AbstractCandidateHarvester
     };
 
     /**
-     * Synchronization object.
+     * The time in milliseconds for which a discovery which found no UPnP gateway is reused, since
+     * there is no local address to tell whether the network has changed since.
      */
-    private final Object rootSync = new Object();
+    private static final long NO_GATEWAY_CACHE_TIME = 60000;
 
     /**
-     * Gateway device.
+     * The shared discovery of the UPnP gateway, started by the first harvest; guarded by
+     * <code>UPNPHarvester.class</code>.
      */
-    private GatewayDevice device = null;
+    private static FutureTask<Gateway> discovery = null;
 
     /**
-     * Number of UPnP discover threads that have finished.
+     * Gets the shared discovery of the UPnP gateway, starting it if it has not been started yet or
+     * its result is stale.
+     *
+     * @return the shared discovery of the UPnP gateway
+     */
+    private static synchronized FutureTask<Gateway> getDiscovery()
+    {
+        if ((discovery != null) && discovery.isDone()) {
+            Gateway gateway = null;
+            try {
+                gateway = discovery.get();
+            } catch (Exception e) {
+                // A failed discovery is retried.
+            }
+            if ((gateway == null) || !gateway.isCurrent())
+                discovery = null;
+        }
+        if (discovery == null) {
+            discovery = new FutureTask<>(UPNPHarvester::discover);
+
+            Thread thread = new Thread(discovery, "ice4j.UPNPHarvester");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return discovery;
+    }
+
+    /**
+     * Discovers the UPnP gateway.
+     *
+     * @return the discovered <code>Gateway</code> with a <code>null</code> device if none was found
      */
-    private boolean threadStarted = false;
+    private static Gateway discover()
+    {
+        GatewayDevice device = null;
+        try {
+            GatewayDiscover gd = new GatewayDiscover(ST_IP_PPP);
+            gd.discover();
+            device = gd.getValidGateway();
+        } catch (Throwable e) {
+            logger.info("Failed to harvest UPnP: " + e);
+
+            /*
+             * The Javadoc on ThreadDeath says: If ThreadDeath is caught by
+             * a method, it is important that it be rethrown so that the
+             * thread actually dies.
+             */
+            if (e instanceof ThreadDeath)
+                throw (ThreadDeath) e;
+        }
+        return new Gateway(device);
+    }
+
+    /**
+     * Discards the shared discovery of the UPnP gateway if it is still a specific one, so that the
+     * next harvest discovers the gateway again.
+     *
+     * @param staleDiscovery the discovery whose gateway no longer responds
+     */
+    private static synchronized void discardDiscovery(FutureTask<Gateway> staleDiscovery)
+    {
+        if (discovery == staleDiscovery)
+            discovery = null;
+    }
 
     /**
      * Gathers UPnP candidates for all host <code>Candidate</code>s that are already present in the specified
@@ -96,36 +168,37 @@ public class UPNPHarvester extends AbstractCandidateHarvester
         Collection<LocalCandidate> candidates = new HashSet<>();
         int retries = 0;
 
-        logger.info("Begin UPnP harvesting! started: " + threadStarted + "; device: " + device);
         try {
-            if (device == null) {
-                // do it only once
-                if (!threadStarted) {
-                    try {
-                        UPNPThread wanIP_PPPThread = new UPNPThread(ST_IP_PPP);
-                        wanIP_PPPThread.start();
-                        threadStarted = true;
-
-                        synchronized (rootSync) {
-                            rootSync.wait();
-                        }
+            FutureTask<Gateway> gatewayDiscovery = getDiscovery();
+            GatewayDevice device;
+            try {
+                // Interrupted when the harvest times out.
+                device = gatewayDiscovery.get().device;
+            } catch (Throwable e) {
+                logger.warn("UPnP discovery failed: " + e.getMessage());
+                return candidates;
+            }
 
-                        if (wanIP_PPPThread.getDevice() != null) {
-                            device = wanIP_PPPThread.getDevice();
-                        }
-                    } catch (Throwable e) {
-                        logger.warn("UPnP discovery failed: " + e.getMessage());
-                    }
-                }
+            if (device == null) {
+                logger.warn("UPnP harvesting found zero device");
+                return candidates;
+            }
 
-                if (device == null) {
-                    logger.warn("UPnP harvesting found zero device");
-                    return candidates;
-                }
+            String externalIPAddress;
+            try {
+                externalIPAddress = device.getExternalIPAddress();
+            } catch (Exception e) {
+                externalIPAddress = null;
             }
+            if (externalIPAddress == null) {
+                // The gateway no longer answers; discover it again on the next harvest.
+                logger.warn("UPnP gateway did not report its external IP address: " + device);
+                discardDiscovery(gatewayDiscovery);
+                return candidates;
+            }
+            logger.info("Begin UPnP harvesting! device: " + device);
 
             InetAddress localAddress = device.getLocalAddress();
-            String externalIPAddress = device.getExternalIPAddress();
             PortMappingEntry portMapping = new PortMappingEntry();
 
             IceSocketWrapper socket = new IceUdpSocketWrapper(
@@ -209,65 +282,40 @@ public class UPNPHarvester extends AbstractCandidateHarvester
     }
 
     /**
-     * UPnP discover thread.
+     * The result of a UPnP gateway discovery.
      */
-    private class UPNPThread extends Thread
+    private static class Gateway
     {
         /**
-         * Gateway device.
+         * The discovered gateway device or <code>null</code> if none was found.
          */
-        private GatewayDevice device = null;
+        final GatewayDevice device;
 
         /**
-         * ST search field.
+         * The time in milliseconds at which the discovery completed.
          */
-        private final String[] st;
+        final long timestamp = System.currentTimeMillis();
 
-        /**
-         * Constructor.
-         *
-         * @param st ST search field
-         */
-        public UPNPThread(String[] st)
+        Gateway(GatewayDevice device)
         {
-            this.st = st;
+            this.device = device;
         }
 
         /**
-         * Returns gateway device.
+         * Determines whether this discovery result still applies to the network this host is on,
+         * i.e. this host still has the local address the gateway was found through or, if none was
+         * found, the discovery is recent.
          *
-         * @return gateway device
-         */
-        public GatewayDevice getDevice()
-        {
-            return device;
-        }
-
-        /**
-         * Thread Entry point.
+         * @return <code>true</code> if this result may be reused; <code>false</code>, otherwise
          */
-        public void run()
+        boolean isCurrent()
         {
+            if (device == null)
+                return (System.currentTimeMillis() - timestamp) < NO_GATEWAY_CACHE_TIME;
             try {
-                GatewayDiscover gd = new GatewayDiscover(st);
-                gd.discover();
-                if (gd.getValidGateway() != null) {
-                    device = gd.getValidGateway();
-                }
-            } catch (Throwable e) {
-                logger.info("Failed to harvest UPnP: " + e);
-
-                /*
-                 * The Javadoc on ThreadDeath says: If ThreadDeath is caught by
-                 * a method, it is important that it be rethrown so that the
-                 * thread actually dies.
-                 */
-                if (e instanceof ThreadDeath)
-                    throw (ThreadDeath) e;
-            } finally {
-                synchronized (rootSync) {
-                    rootSync.notify();
-                }
+                return NetworkInterface.getByInetAddress(device.getLocalAddress()) != null;
+            } catch (Exception e) {
+                return false;
             }
         }
     }
@@ -36,6 +36,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
@@ -62,12 +63,22 @@ class NetAccessManager implements ErrorHandler {
     private static final Logger logger = Logger.getLogger(NetAccessManager.class.getName());
 
     /**
-     * Thread pool to execute {@link MessageProcessingTask}s across all
-     * {@link NetAccessManager}s.
+     * Thread pool to execute the draining of the {@link MessageProcessingTask}s
+     * of all {@link NetAccessManager}s. Each <tt>NetAccessManager</tt> has at
+     * most one drain scheduled or running, so the number of threads is bounded
+     * by the number of managers rather than of messages, and a handler which
+     * blocks only holds up the messages of its own manager.
      */
     private static ExecutorService messageProcessingExecutor
             = ExecutorFactory.createCachedThreadPool("ice4j.NetAccessManager-");
 
+    /**
+     * Maximum number of {@link MessageProcessingTask}s to run in one drain of
+     * {@link #pendingTasks} before yielding the thread to the other
+     * <tt>NetAccessManager</tt>s.
+     */
+    private static final int MAX_TASKS_PER_DRAIN = 64;
+
     /**
      * Maximum number of {@link MessageProcessingTask} to keep in object pool.
      * Each {@link NetAccessManager} has it's own pool, small pool size is enough to save allocations.
@@ -87,6 +98,25 @@ class NetAccessManager implements ErrorHandler {
      */
     private final ConcurrentHashMap.KeySetView<MessageProcessingTask, Boolean> activeTasks = ConcurrentHashMap.newKeySet();
 
+    /**
+     * The {@link MessageProcessingTask}s waiting to be run, in the order in
+     * which their messages were received. They are run serially by
+     * {@link #drainPendingTasks()} instead of being submitted one by one to
+     * {@link #messageProcessingExecutor}.
+     */
+    private final ConcurrentLinkedQueue<MessageProcessingTask> pendingTasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Indicates whether {@link #drainPendingTasks()} is scheduled or running.
+     */
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    /**
+     * The task which runs {@link #drainPendingTasks()}, kept in order to not
+     * allocate a new one per drain.
+     */
+    private final Runnable drainTask = this::drainPendingTasks;
+
     /**
      * All <tt>Connectors</tt> currently in use with UDP. The table maps a local
      * <tt>TransportAddress</tt> and and a remote <tt>TransportAddress</tt> to
@@ -412,6 +442,7 @@ class NetAccessManager implements ErrorHandler {
             messageProcessingTask.cancel();
         }
         activeTasks.clear();
+        pendingTasks.clear();
 
         for (Object o : new Object[]{udpConnectors, tcpConnectors}) {
             Map<TransportAddress, Map<TransportAddress, Connector>>
@@ -463,7 +494,8 @@ class NetAccessManager implements ErrorHandler {
 
     /**
      * Enqueues incoming {@link RawMessage} for asynchronous
-     * processing by {@link #messageProcessingExecutor}
+     * processing by {@link #drainPendingTasks()} on {@link #messageProcessingExecutor}.
+     * A drain is submitted only if none is scheduled or running already.
      *
      * @param message <tt>RawMessage</tt> to process
      */
@@ -488,10 +520,35 @@ class NetAccessManager implements ErrorHandler {
         messageProcessingTask.setMessage(message, onRawMessageProcessed);
 
         activeTasks.add(messageProcessingTask);
+        pendingTasks.add(messageProcessingTask);
+
+        if (draining.compareAndSet(false, true)) {
+            // Use overload which does not return Future object to avoid
+            // unnecessary allocation
+            messageProcessingExecutor.execute(drainTask);
+        }
+    }
 
-        // Use overload which does not return Future object to avoid
-        // unnecessary allocation
-        messageProcessingExecutor.execute(messageProcessingTask);
+    /**
+     * Runs the {@link #pendingTasks} serially, at most {@link #MAX_TASKS_PER_DRAIN}
+     * at a time, and resubmits itself if more tasks remain.
+     */
+    private void drainPendingTasks() {
+        MessageProcessingTask messageProcessingTask;
+        int count = 0;
+
+        while ((count < MAX_TASKS_PER_DRAIN)
+                && ((messageProcessingTask = pendingTasks.poll()) != null)) {
+            messageProcessingTask.run();
+            count++;
+        }
+
+        draining.set(false);
+        // A task may have been added after the last poll but before the reset
+        // of the flag, in which case no one else has submitted a drain.
+        if (!pendingTasks.isEmpty() && !isStopped.get() && draining.compareAndSet(false, true)) {
+            messageProcessingExecutor.execute(drainTask);
+        }
     }
 
     //--------------- SENDING MESSAGES -----------------------------------------
@@ -16,7 +16,6 @@
  */
 package org.jivesoftware.smackx.httpfileupload;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -25,9 +24,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.security.GeneralSecurityException;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -35,9 +32,6 @@ import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
-import javax.crypto.NoSuchPaddingException;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
@@ -57,6 +51,7 @@ import org.jivesoftware.smackx.httpfileupload.UploadService.Version;
 import org.jivesoftware.smackx.httpfileupload.element.Slot;
 import org.jivesoftware.smackx.httpfileupload.element.SlotRequest;
 import org.jivesoftware.smackx.httpfileupload.element.SlotRequest_V0_2;
+import org.jivesoftware.smackx.omemo_media_sharing.AesgcmStreamEncryptor;
 import org.jivesoftware.smackx.omemo_media_sharing.AesgcmUrl;
 import org.jivesoftware.smackx.omemo_media_sharing.OmemoMediaSharingUtils;
 import org.jivesoftware.smackx.xdata.FormField;
@@ -269,7 +264,7 @@ public final class HttpFileUploadManager extends Manager {
         final long fileSize = file.length();
         // Construct the FileInputStream first to make sure we can actually read the file.
         final FileInputStream fis = new FileInputStream(file);
-        upload(fis, fileSize, slot, listener);
+        upload(fis, null, fileSize, slot, listener);
         return slot.getGetUrl();
     }
 
@@ -315,7 +310,7 @@ public final class HttpFileUploadManager extends Manager {
             throw new IllegalArgumentException("File size cannot be negative");
         }
         final Slot slot = requestSlot(fileName, fileSize, "application/octet-stream");
-        upload(inputStream, fileSize, slot, listener);
+        upload(inputStream, null, fileSize, slot, listener);
         return slot.getGetUrl();
     }
 
@@ -372,16 +367,12 @@ public final class HttpFileUploadManager extends Manager {
      * @throws InterruptedException  If the calling thread was interrupted.
      * @throws XMPPException.XMPPErrorException if there was an XMPP error returned.
      * @throws SmackException If Smack detected an exceptional situation.
-     * @throws NoSuchPaddingException if the requested padding mechanism is not available.
-     * @throws NoSuchAlgorithmException if no such algorithm is available.
-     * @throws InvalidAlgorithmParameterException if the provided arguments are invalid.
-     * @throws InvalidKeyException if the key is invalid.
+     * @throws GeneralSecurityException if the platform does not provide AES or the key is invalid.
      *
      * @see <a href="https://xmpp.org/extensions/inbox/omemo-media-sharing.html">XEP-XXXX: OMEMO Media Sharing</a>
      */
     public AesgcmUrl uploadFileEncrypted(File file, UploadProgressListener listener) throws IOException,
-            InterruptedException, XMPPException.XMPPErrorException, SmackException, NoSuchPaddingException,
-            NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
+            InterruptedException, XMPPException.XMPPErrorException, SmackException, GeneralSecurityException {
         if (!file.isFile()) {
             throw new FileNotFoundException("The path " + file.getAbsolutePath() + " is not a file");
         }
@@ -395,13 +386,11 @@ public final class HttpFileUploadManager extends Manager {
         // fresh AES key + iv
         byte[] key = OmemoMediaSharingUtils.generateRandomKey();
         byte[] iv = OmemoMediaSharingUtils.generateRandomIV();
-        Cipher cipher = OmemoMediaSharingUtils.encryptionCipherFrom(key, iv);
+        AesgcmStreamEncryptor encryptor = new AesgcmStreamEncryptor(key, iv);
 
+        // encrypt the file on the fly - encryption actually happens in the UploadPipeline reader
         FileInputStream fis = new FileInputStream(file);
-        // encrypt the file on the fly - encryption actually happens below in uploadFile()
-        CipherInputStream cis = new CipherInputStream(fis, cipher);
-
-        upload(cis, cipherFileLength, slot, listener);
+        upload(fis, encryptor, cipherFileLength, slot, listener);
         return new AesgcmUrl(slotUrl, key, iv);
     }
 
@@ -518,7 +507,8 @@ public final class HttpFileUploadManager extends Manager {
         this.tlsSocketFactory = tlsContext.getSocketFactory();
     }
 
-    private void upload(InputStream iStream, long fileSize, Slot slot, UploadProgressListener listener) throws IOException {
+    private void upload(InputStream iStream, AesgcmStreamEncryptor encryptor, long fileSize, Slot slot,
+            UploadProgressListener listener) throws IOException {
         final URL putUrl = slot.getPutUrl();
         final XMPPConnection connection = connection();
         final HttpURLConnection urlConnection = createURLConnection(connection, putUrl);
@@ -541,34 +531,14 @@ public final class HttpFileUploadManager extends Manager {
         try {
             OutputStream outputStream = urlConnection.getOutputStream();
 
-            long bytesSend = 0;
-
             if (listener != null) {
                 listener.onUploadProgress(0, fileSize);
             }
 
-            BufferedInputStream inputStream = new BufferedInputStream(iStream);
-
-            // TODO Factor in extra static method (and re-use e.g. in bytestream code).
-            byte[] buffer = new byte[4096];
-            int bytesRead;
+            // Read and encrypt on the pipeline reader thread while this thread writes to the connection.
             try {
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
-                    bytesSend += bytesRead;
-
-                    if (listener != null) {
-                        listener.onUploadProgress(bytesSend, fileSize);
-                    }
-                }
+                new UploadPipeline(iStream, encryptor).transferTo(outputStream, fileSize, listener);
             } finally {
-                try {
-                    inputStream.close();
-                }
-                // Must include IllegalStateException: GCM cipher cannot be reused for encryption (happen on Note-5)
-                catch (IOException | IllegalStateException e) {
-                    LOGGER.log(Level.WARNING, "Exception while closing input stream", e);
-                }
                 try {
                     outputStream.close();
                 } catch (IOException e) {
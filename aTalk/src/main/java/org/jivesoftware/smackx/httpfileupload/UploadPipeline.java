@@ -0,0 +1,177 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.httpfileupload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.util.Async;
+import org.jivesoftware.smackx.omemo_media_sharing.AesgcmStreamEncryptor;
+
+/**
+ * Copies the content of an upload to the HTTP connection in two stages: a reader thread reads
+ * (and encrypts) the content in large blocks, while the calling thread writes the blocks to the
+ * connection. The two stages exchange a fixed set of {@link #BLOCK_COUNT} blocks, which bounds the
+ * memory used, and the reader blocks when the network falls behind.
+ *
+ * @author Eng Chong Meng
+ */
+final class UploadPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger(UploadPipeline.class.getName());
+
+    /**
+     * The size in bytes of the blocks read and written.
+     */
+    static final int BLOCK_SIZE = 256 * 1024;
+
+    /**
+     * The number of blocks in the pipeline.
+     */
+    private static final int BLOCK_COUNT = 4;
+
+    private static final class Block {
+        private final byte[] data;
+        private int length;
+
+        private Block(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The marker of the end of the content, queued by the reader when it stops.
+     */
+    private static final Block END = new Block(new byte[0], 0);
+
+    private final BlockingQueue<Block> freeBlocks = new ArrayBlockingQueue<>(BLOCK_COUNT);
+
+    /**
+     * The blocks ready to be written; with room for the last ciphertext bytes and tag, and the end marker.
+     */
+    private final BlockingQueue<Block> filledBlocks = new ArrayBlockingQueue<>(BLOCK_COUNT + 2);
+
+    private final InputStream inputStream;
+
+    private final AesgcmStreamEncryptor encryptor;
+
+    private volatile boolean closed = false;
+
+    private volatile Exception readException;
+
+    /**
+     * Creates an <code>UploadPipeline</code>.
+     *
+     * @param inputStream the content to upload, closed when read
+     * @param encryptor the encryptor of an OMEMO media sharing upload or null to upload the content as is
+     */
+    UploadPipeline(InputStream inputStream, AesgcmStreamEncryptor encryptor) {
+        this.inputStream = inputStream;
+        this.encryptor = encryptor;
+    }
+
+    /**
+     * Uploads the content; returns when all of it has been written to <code>outputStream</code>.
+     *
+     * @param outputStream the output stream of the HTTP connection
+     * @param fileSize the number of bytes to upload, for the progress report
+     * @param listener upload progress listener or null
+     * @throws IOException if the content cannot be read or written
+     */
+    void transferTo(OutputStream outputStream, long fileSize, UploadProgressListener listener) throws IOException {
+        for (int i = 0; i < BLOCK_COUNT; i++) {
+            freeBlocks.add(new Block(new byte[BLOCK_SIZE], 0));
+        }
+        Thread reader = Async.go(this::read, "HTTP upload reader");
+
+        long bytesSend = 0;
+        try {
+            Block block;
+            while ((block = filledBlocks.take()) != END) {
+                outputStream.write(block.data, 0, block.length);
+                bytesSend += block.length;
+                freeBlocks.offer(block);
+
+                if (listener != null) {
+                    listener.onUploadProgress(bytesSend, fileSize);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Upload interrupted");
+        } finally {
+            closed = true;
+            reader.interrupt();
+        }
+
+        Exception e = readException;
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e != null) {
+            throw (RuntimeException) e;
+        }
+    }
+
+    /**
+     * Reads and encrypts the content into the free blocks, until its end or until the writer stops.
+     */
+    private void read() {
+        try {
+            boolean eof = false;
+            while (!eof && !closed) {
+                Block block = freeBlocks.take();
+                block.length = 0;
+                int bytesRead;
+                while (block.length < BLOCK_SIZE
+                        && (bytesRead = inputStream.read(block.data, block.length, BLOCK_SIZE - block.length)) != -1) {
+                    block.length += bytesRead;
+                }
+                eof = block.length < BLOCK_SIZE;
+
+                if (block.length > 0) {
+                    if (encryptor != null) {
+                        // The blocks are whole AES blocks but the last, which the encryptor holds back in part.
+                        block.length = encryptor.update(block.data, 0, block.length, block.data, 0);
+                    }
+                    filledBlocks.put(block);
+                }
+            }
+            if (eof && encryptor != null) {
+                byte[] last = encryptor.doFinal();
+                filledBlocks.put(new Block(last, last.length));
+            }
+        } catch (IOException | RuntimeException e) {
+            // Rethrown by transferTo(), which would otherwise take the END queued below for a complete upload
+            readException = e;
+        } catch (InterruptedException e) {
+            // The writer has stopped
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Exception while closing input stream", e);
+            }
+            filledBlocks.offer(END);
+        }
+    }
+}
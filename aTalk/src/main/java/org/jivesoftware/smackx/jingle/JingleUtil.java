@@ -223,6 +223,46 @@ public class JingleUtil {
         return sessionInfo;
     }
 
+    /**
+     * Creates a {@link Jingle} <code>session-info</code> packet carrying an application payload for a content,
+     * e.g. the checksum of a file transfer. The content is named in the session-info too, for peers which
+     * route the session-info by its content.
+     *
+     * @param recipient their full jid
+     * @param sessionId the ID of the Jingle session this IQ will belong to.
+     * @param contentCreator the creator of the content the payload is for.
+     * @param contentName the name of the content the payload is for.
+     * @param payload the application payload.
+     * @return a {@link Jingle} <code>session-info</code> packet carrying the payload.
+     */
+    public Jingle createSessionInfo(FullJid recipient, String sessionId,
+            JingleContent.Creator contentCreator, String contentName, ExtensionElement payload) {
+        JingleContent.Builder cb = JingleContent.getBuilder();
+        cb.setCreator(contentCreator)
+                .setName(contentName);
+
+        Jingle.Builder jb = Jingle.builder(mConnection);
+        jb.setAction(JingleAction.session_info)
+                .setSessionId(sessionId)
+                .setInitiator(mConnection.getUser())
+                .addJingleContent(cb.build())
+                .addExtension(payload);
+
+        Jingle sessionInfo = jb.build();
+        sessionInfo.setFrom(mConnection.getUser());
+        sessionInfo.setTo(recipient);
+
+        return sessionInfo;
+    }
+
+    public IQ sendSessionInfo(FullJid recipient, String sessionId,
+            JingleContent.Creator contentCreator, String contentName, ExtensionElement payload)
+            throws SmackException.NotConnectedException, InterruptedException,
+            XMPPException.XMPPErrorException, SmackException.NoResponseException {
+        Jingle jingle = createSessionInfo(recipient, sessionId, contentCreator, contentName, payload);
+        return mConnection.createStanzaCollectorAndSend(jingle).nextResultOrThrow();
+    }
+
     /**
      * Creates a {@link Jingle} <code>session-terminate</code> packet with the specified recipient, sessionId, and reason.
      *
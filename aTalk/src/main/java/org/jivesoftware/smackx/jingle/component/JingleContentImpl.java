@@ -207,6 +207,9 @@ public class JingleContentImpl implements JingleTransportCallback, JingleSecurit
 
     private IQ handleSessionInfo(Jingle request, XMPPConnection connection) {
         mConnection = connection;
+        if (description != null) {
+            description.handleSessionInfo(request);
+        }
         return IQ.createResultIQ(request);
     }
 
@@ -47,5 +47,13 @@ public abstract class JingleDescription<D extends JingleContentDescription> {
 
     public abstract void onBytestreamReady(BytestreamSession bytestreamSession);
 
+    /**
+     * Handles the payload of a session-info addressed to this content; ignored by default.
+     *
+     * @param sessionInfo the session-info request
+     */
+    public void handleSessionInfo(Jingle sessionInfo) {
+    }
+
     public abstract String getNamespace();
 }
@@ -265,7 +265,6 @@ public class JingleSessionImpl extends JingleSession {
             case content_modify:
             case description_info:
             case security_info:
-            case session_info:
             case transport_accept:
             case transport_info:
             case transport_reject:
@@ -282,6 +281,8 @@ public class JingleSessionImpl extends JingleSession {
                 return handleContentRemove(request);
             case session_accept:
                 return handleSessionAccept(request);
+            case session_info:
+                return handleSessionInfo(request);
             case session_initiate:
                 return handleSessionInitiate(request);
             case session_terminate:
@@ -319,6 +320,24 @@ public class JingleSessionImpl extends JingleSession {
         return IQ.createResultIQ(sessionAccept);
     }
 
+    /**
+     * A session-info may omit the content it concerns, e.g. the checksum of a file transfer (XEP-0234),
+     * which then applies to the sole content of the session.
+     *
+     * @param sessionInfo session-info stanza.
+     * @return IQResult.
+     */
+    @Override
+    protected IQ handleSessionInfo(Jingle sessionInfo) {
+        if (!sessionInfo.getContents().isEmpty()) {
+            return getSoleAffectedContentOrThrow(sessionInfo).handleJingleRequest(sessionInfo, mConnection);
+        }
+        if (contentImpls.size() == 1) {
+            return getSoleContentOrThrow().handleJingleRequest(sessionInfo, mConnection);
+        }
+        return IQ.createResultIQ(sessionInfo);
+    }
+
     @Override
     protected IQ handleSessionInitiate(Jingle sessionInitiate) {
         LOGGER.log(Level.INFO, "Create new session with '" + remote + "': " + sid);
@@ -141,12 +141,13 @@ public class JingleProvider extends IqProvider<Jingle> {
                                 ExtensionElementProvider<?> provider = ProviderManager.getExtensionProvider(tagName, namespace);
                                 if (provider != null) {
                                     LOGGER.info("Found provider for EE<" + tagName + " " + namespace + "/>");
+                                    // Any element of a registered provider, e.g. the file transfer <checksum/>
                                     ExtensionElement childExtension = provider.parse(parser);
-                                    if (childExtension instanceof AbstractXmlElement || childExtension instanceof AbstractExtensionElement) {
+                                    if (childExtension != null) {
                                         builder.addExtension(childExtension);
                                     }
                                     else
-                                        LOGGER.severe("Unknown Jingle extension element: " + tagName);
+                                        LOGGER.severe("No Jingle extension element parsed for: " + tagName);
                                 }
                                 else {
                                     // Extension element provider may not have been added properly if null
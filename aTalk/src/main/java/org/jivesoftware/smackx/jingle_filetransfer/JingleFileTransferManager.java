@@ -33,6 +33,7 @@ import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.provider.ProviderManager;
 import org.jivesoftware.smackx.disco.ServiceDiscoveryManager;
 import org.jivesoftware.smackx.jingle.JingleDescriptionManager;
 import org.jivesoftware.smackx.jingle.JingleHandler;
@@ -54,8 +55,10 @@ import org.jivesoftware.smackx.jingle_filetransfer.component.JingleOutgoingFileO
 import org.jivesoftware.smackx.jingle_filetransfer.component.JingleOutgoingFileRequest;
 import org.jivesoftware.smackx.jingle_filetransfer.controller.OutgoingFileOfferController;
 import org.jivesoftware.smackx.jingle_filetransfer.controller.OutgoingFileRequestController;
+import org.jivesoftware.smackx.jingle_filetransfer.element.JingleFileChecksum;
 import org.jivesoftware.smackx.jingle_filetransfer.listener.IncomingFileOfferListener;
 import org.jivesoftware.smackx.jingle_filetransfer.listener.IncomingFileRequestListener;
+import org.jivesoftware.smackx.jingle_filetransfer.provider.JingleFileChecksumProvider;
 import org.jivesoftware.smackx.jingle_filetransfer.provider.JingleFileTransferProvider;
 
 import org.jxmpp.jid.FullJid;
@@ -87,6 +90,10 @@ public final class JingleFileTransferManager extends Manager implements JingleDe
         JingleContentProviderManager.addJingleDescriptionAdapter(new JingleFileTransferAdapter());
         JingleContentProviderManager.addJingleDescriptionManager(this);
 
+        // <checksum/> provider - session-info sent at the end of the file streaming
+        ProviderManager.addExtensionProvider(
+                JingleFileChecksum.ELEMENT, JingleFileChecksum.NAMESPACE, new JingleFileChecksumProvider());
+
         JingleManager jingleManager = JingleManager.getInstanceFor(connection);
         jingleManager.registerDescriptionHandler(getNamespace(), this);
     }
@@ -19,7 +19,6 @@ package org.jivesoftware.smackx.jingle_filetransfer.component;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Date;
@@ -64,14 +63,15 @@ public class JingleFile extends JingleFileTransferChild {
             throw new NoSuchAlgorithmException("No algorithm for " + algorithm + " found.");
         }
 
-        FileInputStream fi = new FileInputStream(file);
-        DigestInputStream di = new DigestInputStream(fi, digest);
-
-        while (di.available() > 0) {
-            di.read();
+        byte[] buf = new byte[JingleFileTransferImpl.BUFFER_SIZE];
+        try (FileInputStream fi = new FileInputStream(file)) {
+            int length;
+            while ((length = fi.read(buf)) != -1) {
+                digest.update(buf, 0, length);
+            }
         }
 
-        byte[] d = di.getMessageDigest().digest();
+        byte[] d = digest.digest();
         return new HashElement(algorithm, d);
     }
 
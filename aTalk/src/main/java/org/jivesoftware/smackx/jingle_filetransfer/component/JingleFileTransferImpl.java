@@ -16,6 +16,10 @@
  */
 package org.jivesoftware.smackx.jingle_filetransfer.component;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -25,6 +29,7 @@ import java.util.logging.Logger;
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smackx.hashes.HashManager;
 import org.jivesoftware.smackx.jingle.JingleUtil;
 import org.jivesoftware.smackx.jingle.component.JingleDescription;
 import org.jivesoftware.smackx.jingle.component.JingleSessionImpl;
@@ -48,6 +53,17 @@ public abstract class JingleFileTransferImpl extends JingleDescription<JingleFil
     public static final String NAMESPACE_V5 = "urn:xmpp:jingle:apps:file-transfer:5";
     public static final String NAMESPACE = NAMESPACE_V5;
 
+    /**
+     * The hash algorithm of the checksum the sender computes while streaming the file.
+     */
+    public static final HashManager.ALGORITHM CHECKSUM_ALGORITHM = HashManager.ALGORITHM.SHA3_256;
+
+    /**
+     * The size of the blocks streamed between the file and the bytestream; large enough to amortize the cost
+     * of each socket, file and digest call over the block.
+     */
+    protected static final int BUFFER_SIZE = 256 * 1024;
+
     private static final Logger LOGGER = Logger.getLogger(JingleSessionImpl.class.getName());
 
     protected State mState;
@@ -55,6 +71,12 @@ public abstract class JingleFileTransferImpl extends JingleDescription<JingleFil
 
     private final List<ProgressListener> progressListeners = Collections.synchronizedList(new ArrayList<>());
 
+    /**
+     * The number of bytes and the duration in ms of the completed streaming.
+     */
+    private volatile long streamedBytes = 0;
+    private volatile long streamDuration = 0;
+
     JingleFileTransferImpl(JingleFile metadata) {
         this.metadata = metadata;
         JingleSessionImpl.addJingleSessionListener(jingleSessionListener);
@@ -79,6 +101,16 @@ public abstract class JingleFileTransferImpl extends JingleDescription<JingleFil
         progressListeners.remove(listener);
     }
 
+    @Override
+    public long getStreamedBytes() {
+        return streamedBytes;
+    }
+
+    @Override
+    public long getStreamDuration() {
+        return streamDuration;
+    }
+
     @Override
     public void cancel(XMPPConnection connection)
             throws SmackException.NotConnectedException, InterruptedException, XMPPException.XMPPErrorException, SmackException.NoResponseException {
@@ -117,6 +149,53 @@ public abstract class JingleFileTransferImpl extends JingleDescription<JingleFil
         getParent().onContentCancel();
     }
 
+    /**
+     * Streams the file data in blocks of {@link #BUFFER_SIZE} bytes, updating the digests with each block,
+     * until the end of the input stream, the given size or the user cancellation of the transfer.
+     * The bytes streamed and the duration are kept for {@link #getStreamedBytes()} and {@link #getStreamDuration()}.
+     *
+     * @param inputStream the stream to read from
+     * @param outputStream the stream to write to
+     * @param size the number of bytes to stream, or 0 to stream to the end of the input stream
+     * @param digests the digests to update with the streamed data; null ones are skipped
+     * @return the number of bytes streamed
+     * @throws IOException if reading or writing fails
+     */
+    protected long stream(InputStream inputStream, OutputStream outputStream, long size, MessageDigest... digests)
+            throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        long rwBytes = 0;
+        long startTime = System.currentTimeMillis();
+
+        while (size <= 0 || rwBytes < size) {
+            int length = inputStream.read(buf, 0, (size <= 0) ? buf.length : (int) Math.min(buf.length, size - rwBytes));
+            if (length < 0) {
+                break;
+            }
+            // User cancels the file transfer in active data streaming.
+            if (mState == State.cancelled) {
+                LOGGER.log(Level.INFO, "User canceled file transfer in active streaming.");
+                break;
+            }
+
+            for (MessageDigest digest : digests) {
+                if (digest != null) {
+                    digest.update(buf, 0, length);
+                }
+            }
+            outputStream.write(buf, 0, length);
+            rwBytes += length;
+            notifyProgressListeners((int) rwBytes);
+        }
+
+        long duration = Math.max(System.currentTimeMillis() - startTime, 1);
+        streamedBytes = rwBytes;
+        streamDuration = duration;
+        LOGGER.log(Level.INFO, "Streamed " + rwBytes + " bytes in " + duration + " ms: "
+                + (rwBytes * 1000 / 1024 / duration) + " KiB/s");
+        return rwBytes;
+    }
+
     public void notifyProgressListeners(int rwBytes) {
         for (ProgressListener p : progressListeners) {
             p.progress(rwBytes);
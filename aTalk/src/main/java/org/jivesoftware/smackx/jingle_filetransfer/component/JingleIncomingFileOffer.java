@@ -21,15 +21,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.security.DigestInputStream;
 import java.security.MessageDigest;
-import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.packet.ExtensionElement;
 import org.jivesoftware.smackx.bytestreams.BytestreamSession;
 import org.jivesoftware.smackx.hashes.HashManager;
 import org.jivesoftware.smackx.hashes.element.HashElement;
@@ -38,6 +39,7 @@ import org.jivesoftware.smackx.jingle.element.Jingle;
 import org.jivesoftware.smackx.jingle.element.JingleContentDescriptionInfo;
 import org.jivesoftware.smackx.jingle.element.JingleReason;
 import org.jivesoftware.smackx.jingle_filetransfer.controller.IncomingFileOfferController;
+import org.jivesoftware.smackx.jingle_filetransfer.element.JingleFileChecksum;
 import org.jivesoftware.smackx.jingle_filetransfer.element.JingleFileTransferChild;
 
 /**
@@ -49,8 +51,27 @@ import org.jivesoftware.smackx.jingle_filetransfer.element.JingleFileTransferChi
 public class JingleIncomingFileOffer extends AbstractJingleFileOffer implements IncomingFileOfferController {
 
     private static final Logger LOGGER = Logger.getLogger(JingleIncomingFileOffer.class.getName());
+
+    /**
+     * The hash algorithms the file is hashed with when the offer carries no hash, for the sender checksum
+     * that follows: the one aTalk sends, and sha-256, which other clients commonly send. A checksum with
+     * any other algorithm cannot be verified.
+     */
+    private static final HashManager.ALGORITHM[] RECEIVER_CHECKSUM_ALGORITHMS
+            = {CHECKSUM_ALGORITHM, HashManager.ALGORITHM.SHA_256};
+
     private OutputStream target;
 
+    /**
+     * The file hash from the sender checksum session-info; guarded by <code>this</code>.
+     */
+    private HashElement mChecksum;
+
+    /**
+     * The hashes of the received file by algorithm awaiting the sender checksum; guarded by <code>this</code>.
+     */
+    private Map<HashManager.ALGORITHM, byte[]> mFileHashes;
+
     public JingleIncomingFileOffer(JingleFileTransferChild offer) {
         super(new JingleFile(offer));
         mState = State.pending;
@@ -61,6 +82,31 @@ public class JingleIncomingFileOffer extends AbstractJingleFileOffer implements
         return null;
     }
 
+    /**
+     * Takes the file hash from the checksum the sender sends on completing the file streaming, and verifies
+     * the received file against it if the file has been received already.
+     *
+     * @param sessionInfo the session-info request
+     */
+    @Override
+    public void handleSessionInfo(Jingle sessionInfo) {
+        ExtensionElement extension = sessionInfo.getExtension(JingleFileChecksum.QNAME);
+        if (!(extension instanceof JingleFileChecksum) || ((JingleFileChecksum) extension).getHash() == null) {
+            return;
+        }
+
+        HashElement checksum = ((JingleFileChecksum) extension).getHash();
+        Map<HashManager.ALGORITHM, byte[]> fileHashes;
+        synchronized (this) {
+            mChecksum = checksum;
+            fileHashes = mFileHashes;
+            mFileHashes = null;
+        }
+        if (fileHashes != null) {
+            verifyHash(checksum, fileHashes);
+        }
+    }
+
     @Override
     public void onBytestreamReady(BytestreamSession bytestreamSession) {
         if (target == null) {
@@ -70,41 +116,23 @@ public class JingleIncomingFileOffer extends AbstractJingleFileOffer implements
         mState = State.active;
         notifyProgressListenersStarted();
 
+        // Hash the file while receiving it, with the algorithm of the offer hash or else with each algorithm
+        // the sender checksum is expected in, as its algorithm is only known once the file is received.
         HashElement hashElement = metadata.getHash();
-        MessageDigest digest = null;
-        if (hashElement != null) {
-            digest = HashManager.getMessageDigest(hashElement.getAlgorithm());
-            LOGGER.log(Level.INFO, "File offer had checksum: " + digest.toString());
+        HashManager.ALGORITHM[] algorithms = (hashElement != null)
+                ? new HashManager.ALGORITHM[]{hashElement.getAlgorithm()} : RECEIVER_CHECKSUM_ALGORITHMS;
+        MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = HashManager.getMessageDigest(algorithms[i]);
         }
 
         LOGGER.log(Level.INFO, "Receiving file");
         InputStream inputStream = null;
+        boolean received = false;
         try {
             inputStream = bytestreamSession.getInputStream();
-
-            if (digest != null) {
-                inputStream = new DigestInputStream(inputStream, digest);
-            }
-
-            int length;
-            int readByte = 0;
-            long fileSize = metadata.getSize();
-            byte[] bufbuf = new byte[4096];
-            while ((length = inputStream.read(bufbuf)) >= 0) {
-                // User cancels incoming file transfer in active progress.
-                if (mState == State.cancelled) {
-                    LOGGER.log(Level.INFO, "User canceled file offer in active transfer.");
-                    break;
-                }
-
-                target.write(bufbuf, 0, length);
-                readByte += length;
-                // LOGGER.log(Level.INFO, "Read " + readByte + " (" + length + ") of " + fileSize + " bytes.");
-                notifyProgressListeners(readByte);
-                if (readByte == fileSize) {
-                    break;
-                }
-            }
+            stream(inputStream, target, metadata.getSize(), digests);
+            received = (mState == State.active);
             LOGGER.log(Level.INFO, "Reading/Writing finished.");
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Cannot get InputStream from BytestreamSession: " + e, e);
@@ -130,17 +158,55 @@ public class JingleIncomingFileOffer extends AbstractJingleFileOffer implements
             }
         }
 
-        if (digest != null) {
-            byte[] mDigest = ((DigestInputStream) inputStream).getMessageDigest().digest();
-            if (!Arrays.equals(hashElement.getHash(), mDigest)) {
-                LOGGER.log(Level.WARNING, "CHECKSUM MISMATCH!");
-            } else {
-                LOGGER.log(Level.INFO, "CHECKSUM MATCHED :)");
+        notifyProgressListenersFinished();
+        getParent().onContentFinished();
+
+        if (received) {
+            Map<HashManager.ALGORITHM, byte[]> fileHashes = new EnumMap<>(HashManager.ALGORITHM.class);
+            for (int i = 0; i < algorithms.length; i++) {
+                fileHashes.put(algorithms[i], digests[i].digest());
             }
+            verifyChecksum(hashElement, fileHashes);
         }
+    }
 
-        notifyProgressListenersFinished();
-        getParent().onContentFinished();
+    /**
+     * Verifies the received file against the offer hash, or else against the checksum the sender sends
+     * after streaming the file. The checksum may arrive shortly after the file data, in which case the
+     * verification is left to {@link #handleSessionInfo(Jingle)}, without holding up the transfer completion.
+     *
+     * @param hashElement the offer hash or null
+     * @param fileHashes the hashes of the received file by algorithm
+     */
+    private void verifyChecksum(HashElement hashElement, Map<HashManager.ALGORITHM, byte[]> fileHashes) {
+        if (hashElement == null) {
+            synchronized (this) {
+                hashElement = mChecksum;
+                if (hashElement == null) {
+                    mFileHashes = fileHashes;
+                    LOGGER.log(Level.INFO, "No checksum received yet for the file.");
+                    return;
+                }
+            }
+        }
+        verifyHash(hashElement, fileHashes);
+    }
+
+    /**
+     * Compares the hash of the received file with the offer hash or the sender checksum.
+     *
+     * @param hashElement the offer hash or the sender checksum
+     * @param fileHashes the hashes of the received file by algorithm
+     */
+    private static void verifyHash(HashElement hashElement, Map<HashManager.ALGORITHM, byte[]> fileHashes) {
+        byte[] fileHash = fileHashes.get(hashElement.getAlgorithm());
+        if (fileHash == null) {
+            LOGGER.log(Level.WARNING, "Cannot verify checksum with algorithm: " + hashElement.getAlgorithm());
+        } else if (!MessageDigest.isEqual(hashElement.getHash(), fileHash)) {
+            LOGGER.log(Level.WARNING, "CHECKSUM MISMATCH!");
+        } else {
+            LOGGER.log(Level.INFO, "CHECKSUM MATCHED :)");
+        }
     }
 
     @Override
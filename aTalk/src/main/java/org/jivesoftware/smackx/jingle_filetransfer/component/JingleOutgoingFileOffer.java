@@ -22,14 +22,24 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.MessageDigest;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smackx.bytestreams.BytestreamSession;
+import org.jivesoftware.smackx.hashes.HashManager;
+import org.jivesoftware.smackx.hashes.element.HashElement;
+import org.jivesoftware.smackx.jingle.JingleUtil;
+import org.jivesoftware.smackx.jingle.component.JingleContentImpl;
+import org.jivesoftware.smackx.jingle.component.JingleSessionImpl;
 import org.jivesoftware.smackx.jingle.element.Jingle;
 import org.jivesoftware.smackx.jingle.element.JingleContentDescriptionInfo;
 import org.jivesoftware.smackx.jingle.element.JingleReason;
 import org.jivesoftware.smackx.jingle_filetransfer.controller.OutgoingFileOfferController;
+import org.jivesoftware.smackx.jingle_filetransfer.element.JingleFileChecksum;
+import org.jivesoftware.smackx.jingle_filetransfer.element.JingleFileTransferChild;
 
 /**
  * Behind the scenes logic of an outgoing Jingle file offer.
@@ -66,29 +76,22 @@ public class JingleOutgoingFileOffer extends AbstractJingleFileOffer implements
         mState = State.active;
         notifyProgressListenersStarted();
 
+        // Hash the file while streaming it, unless the offer already carries its hash.
+        MessageDigest digest = null;
+        if (metadata.getHash() == null) {
+            digest = HashManager.getMessageDigest(CHECKSUM_ALGORITHM);
+        }
+
         OutputStream outputStream;
         try {
             outputStream = bytestreamSession.getOutputStream();
+            stream(mSource, outputStream, 0, digest);
+            outputStream.flush();
 
-            int writeByte = 0;
-            byte[] buf = new byte[8192];
-            while (true) {
-                int length = mSource.read(buf);
-                if (length < 0) {
-                    break;
-                }
-                // User cancels JFT file transfer in active data streaming.
-                if (mState == State.cancelled) {
-                    LOGGER.log(Level.INFO, "User canceled file offer in active streaming.");
-                    break;
-                }
-
-                outputStream.write(buf, 0, length);
-                writeByte += length;
-                notifyProgressListeners(writeByte);
+            // Send the checksum before closing the bytestream, for the receiver to verify the file on its completion.
+            if (digest != null && mState == State.active) {
+                sendChecksum(digest.digest());
             }
-
-            outputStream.flush();
             outputStream.close();
 
         } catch (IOException e) {
@@ -105,6 +108,29 @@ public class JingleOutgoingFileOffer extends AbstractJingleFileOffer implements
         notifyProgressListenersFinished();
     }
 
+    /**
+     * Sends the checksum of the streamed file in a session-info.
+     *
+     * @param hash the file hash computed with {@link #CHECKSUM_ALGORITHM}
+     */
+    private void sendChecksum(byte[] hash) {
+        JingleContentImpl content = getParent();
+        JingleSessionImpl session = content.getParent();
+        JingleFileTransferChild file = JingleFileTransferChild.getBuilder()
+                .setHash(new HashElement(CHECKSUM_ALGORITHM, hash))
+                .build();
+        JingleFileChecksum checksum = new JingleFileChecksum(content.getCreator(), content.getName(), file);
+
+        try {
+            new JingleUtil(session.getConnection()).sendSessionInfo(session.getRemote(), session.getSessionId(),
+                    content.getCreator(), content.getName(), checksum);
+        } catch (SmackException.NotConnectedException | InterruptedException | XMPPException.XMPPErrorException
+                | SmackException.NoResponseException e) {
+            // The file is sent all the same; the receiver simply cannot verify it.
+            LOGGER.log(Level.WARNING, "Could not send file checksum: " + e);
+        }
+    }
+
     @Override
     public boolean isOffer() {
         return true;
@@ -40,5 +40,20 @@ public interface JingleFileTransferController extends JingleDescriptionControlle
 
     JingleSessionImpl getJingleSession();
 
+    /**
+     * Returns the number of file bytes streamed, once the streaming has ended.
+     *
+     * @return the number of bytes streamed, or 0 if the streaming has not ended
+     */
+    long getStreamedBytes();
+
+    /**
+     * Returns the time taken to stream the file data, once the streaming has ended; with
+     * {@link #getStreamedBytes()}, the throughput of the transfer.
+     *
+     * @return the streaming duration in milliseconds, or 0 if the streaming has not ended
+     */
+    long getStreamDuration();
+
     void cancel(XMPPConnection connection) throws SmackException.NotConnectedException, InterruptedException, XMPPException.XMPPErrorException, SmackException.NoResponseException;
 }
@@ -0,0 +1,102 @@
+/**
+ *
+ * Copyright 2017-2022 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.jingle_filetransfer.element;
+
+import javax.xml.namespace.QName;
+
+import org.jivesoftware.smack.packet.ExtensionElement;
+import org.jivesoftware.smack.packet.XmlEnvironment;
+import org.jivesoftware.smack.util.Objects;
+import org.jivesoftware.smack.util.XmlStringBuilder;
+import org.jivesoftware.smackx.hashes.element.HashElement;
+import org.jivesoftware.smackx.jingle.element.JingleContent;
+
+/**
+ * The checksum of a file sent in a Jingle session-info, once the sender has hashed the file while streaming it.
+ * Unlike smack {@link Checksum}, the received checksum gives access to its hash for the receiver verification.
+ * @see <a href="https://xmpp.org/extensions/xep-0234.html#hash">XEP-0234: Jingle File Transfer - Checksums</a>
+ *
+ * @author Eng Chong Meng
+ */
+public class JingleFileChecksum implements ExtensionElement {
+    public static final String ELEMENT = Checksum.ELEMENT;
+    public static final String NAMESPACE = JingleFileTransfer.NAMESPACE_V5;
+
+    public static final String ATTR_CREATOR = Checksum.ATTR_CREATOR;
+    public static final String ATTR_NAME = Checksum.ATTR_NAME;
+
+    public static final QName QNAME = new QName(NAMESPACE, ELEMENT);
+
+    private final JingleContent.Creator creator;
+    private final String name;
+    private final JingleFileTransferChild file;
+
+    /**
+     * Creates a new instance of JingleFileChecksum.
+     *
+     * @param creator the creator of the content the checksum is for; may be null
+     * @param name the name of the content the checksum is for; may be null
+     * @param file the file element carrying the hash
+     */
+    public JingleFileChecksum(JingleContent.Creator creator, String name, JingleFileTransferChild file) {
+        this.creator = creator;
+        this.name = name;
+        this.file = Objects.requireNonNull(file, "file MUST NOT be null.");
+    }
+
+    public JingleContent.Creator getCreator() {
+        return creator;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public JingleFileTransferChild getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the hash of the whole file.
+     *
+     * @return the file hash, or null if the checksum covers only a range of the file.
+     */
+    public HashElement getHash() {
+        return file.getHash();
+    }
+
+    @Override
+    public String getElementName() {
+        return ELEMENT;
+    }
+
+    @Override
+    public String getNamespace() {
+        return NAMESPACE;
+    }
+
+    @Override
+    public XmlStringBuilder toXML(XmlEnvironment enclosingNamespace) {
+        XmlStringBuilder xml = new XmlStringBuilder(this, enclosingNamespace);
+        xml.optAttribute(ATTR_CREATOR, creator);
+        xml.optAttribute(ATTR_NAME, name);
+        xml.rightAngleBracket();
+        xml.append(file);
+        xml.closeElement(ELEMENT);
+        return xml;
+    }
+}
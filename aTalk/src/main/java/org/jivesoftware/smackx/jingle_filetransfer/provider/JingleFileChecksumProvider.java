@@ -0,0 +1,115 @@
+/**
+ *
+ * Copyright 2017-2022 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.jingle_filetransfer.provider;
+
+import java.io.IOException;
+
+import org.jivesoftware.smack.packet.XmlEnvironment;
+import org.jivesoftware.smack.provider.ExtensionElementProvider;
+import org.jivesoftware.smack.xml.XmlPullParser;
+import org.jivesoftware.smack.xml.XmlPullParserException;
+import org.jivesoftware.smackx.hashes.element.HashElement;
+import org.jivesoftware.smackx.hashes.provider.HashElementProvider;
+import org.jivesoftware.smackx.jingle.element.JingleContent;
+import org.jivesoftware.smackx.jingle_filetransfer.element.JingleFileChecksum;
+import org.jivesoftware.smackx.jingle_filetransfer.element.JingleFileTransferChild;
+import org.jivesoftware.smackx.jingle_filetransfer.element.Range;
+
+/**
+ * The JingleFileChecksumProvider parses the checksum sent in a Jingle File Transfer session-info;
+ * replacing smack ChecksumProvider, which fails on the element names.
+ * @see <a href="https://xmpp.org/extensions/xep-0234.html#hash">XEP-0234: Jingle File Transfer - Checksums</a>
+ *
+ * @author Eng Chong Meng
+ */
+public class JingleFileChecksumProvider extends ExtensionElementProvider<JingleFileChecksum> {
+    @Override
+    public JingleFileChecksum parse(XmlPullParser parser, int initialDepth, XmlEnvironment xmlEnvironment)
+            throws XmlPullParserException, IOException {
+        JingleContent.Creator creator = parseCreator(parser.getAttributeValue(JingleFileChecksum.ATTR_CREATOR));
+        String name = parser.getAttributeValue(JingleFileChecksum.ATTR_NAME);
+
+        JingleFileTransferChild.Builder fb = JingleFileTransferChild.getBuilder();
+        HashElement hash = null;
+        Range range = null;
+
+        while (true) {
+            XmlPullParser.Event eventType = parser.next();
+            if (eventType == XmlPullParser.Event.START_ELEMENT) {
+                String elementName = parser.getName();
+                if (elementName.equals(HashElement.ELEMENT)) {
+                    hash = HashElementProvider.INSTANCE.parse(parser);
+                } else if (elementName.equals(Range.ELEMENT)) {
+                    range = new Range(parseInt(parser.getAttributeValue(Range.ATTR_OFFSET), 0),
+                            parseInt(parser.getAttributeValue(Range.ATTR_LENGTH), -1));
+                }
+            } else if (eventType == XmlPullParser.Event.END_ELEMENT) {
+                if (parser.getDepth() == initialDepth) {
+                    break;
+                }
+                // The hash of a range is within the <range/>
+                if (parser.getName().equals(Range.ELEMENT) && range != null && hash != null) {
+                    range = new Range(range.getOffset(), range.getLength(), hash);
+                    hash = null;
+                }
+            }
+        }
+
+        if (hash != null) {
+            fb.setHash(hash);
+        }
+        if (range != null) {
+            fb.setRange(range);
+        }
+        return new JingleFileChecksum(creator, name, fb.build());
+    }
+
+    /**
+     * Parses the content creator sent by the peer.
+     *
+     * @param creatorString the creator attribute value or null
+     * @return the creator, or null if absent or unknown
+     */
+    private static JingleContent.Creator parseCreator(String creatorString) {
+        if (creatorString != null) {
+            for (JingleContent.Creator creator : JingleContent.Creator.values()) {
+                if (creator.name().equals(creatorString)) {
+                    return creator;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a range attribute sent by the peer.
+     *
+     * @param value the attribute value or null
+     * @param defaultValue the value of an absent or malformed attribute
+     * @return the attribute value
+     */
+    private static int parseInt(String value, int defaultValue) {
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                // Malformed attribute: use the default
+            }
+        }
+        return defaultValue;
+    }
+}
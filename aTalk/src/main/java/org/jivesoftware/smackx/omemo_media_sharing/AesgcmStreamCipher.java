@@ -0,0 +1,114 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.omemo_media_sharing;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+/**
+ * The AES-GCM cipher for streaming an OMEMO media sharing file through encryption or decryption.
+ * <p>
+ * The GCM <code>Cipher</code> of the platform (Conscrypt) releases no output before
+ * <code>doFinal()</code>, i.e. it holds the whole file in memory, in either direction. The
+ * <code>GCMBlockCipher</code> of Bouncy Castle instead releases its output as the data goes through,
+ * holding back at most a partial AES block, plus the tag when decrypting.
+ * </p>
+ *
+ * @author Eng Chong Meng
+ */
+public abstract class AesgcmStreamCipher {
+    /**
+     * The length in bytes of the GCM tag appended to the ciphertext.
+     */
+    public static final int TAG_LENGTH = 16;
+
+    /**
+     * The length in bytes of an AES block, the most a <code>GCMBlockCipher</code> holds back
+     * (besides the tag when decrypting).
+     */
+    public static final int BLOCK_SIZE = 16;
+
+    private final AEADParameters parameters;
+
+    private final boolean forEncryption;
+
+    /**
+     * The cipher positioned at {@link #position}.
+     */
+    protected GCMBlockCipher cipher;
+
+    /**
+     * The number of plaintext bytes processed so far.
+     */
+    protected long position;
+
+    /**
+     * Creates an <code>AesgcmStreamCipher</code> for a specific key and IV.
+     *
+     * @param key the AES key
+     * @param iv the GCM initialization vector; 12 or (as used in the wild) 16 bytes
+     * @param forEncryption <code>true</code> to encrypt, <code>false</code> to decrypt
+     *
+     * @throws GeneralSecurityException if the key or the IV is invalid
+     */
+    protected AesgcmStreamCipher(byte[] key, byte[] iv, boolean forEncryption) throws GeneralSecurityException {
+        if (key.length != 16 && key.length != 24 && key.length != 32)
+            throw new InvalidKeyException("Not an AES key length: " + key.length);
+        if (iv.length == 0)
+            throw new InvalidAlgorithmParameterException("Empty GCM IV");
+
+        parameters = new AEADParameters(new KeyParameter(key), TAG_LENGTH * 8, iv);
+        this.forEncryption = forEncryption;
+        reset();
+    }
+
+    /**
+     * Creates a new AES-GCM cipher with the key and IV of this cipher.
+     *
+     * @param forEncryption <code>true</code> to encrypt, <code>false</code> to decrypt
+     * @return the <code>GCMBlockCipher</code>, at the start of the data
+     */
+    protected GCMBlockCipher newCipher(boolean forEncryption) {
+        GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+        cipher.init(forEncryption, parameters);
+        return cipher;
+    }
+
+    /**
+     * Resets this cipher to the start of the data.
+     */
+    public void reset() {
+        // A new cipher: GCMBlockCipher refuses to be initialized again with the same IV for encryption.
+        cipher = newCipher(forEncryption);
+        position = 0;
+    }
+
+    /**
+     * Gets the number of plaintext bytes encrypted, or released by the decryption, so far.
+     *
+     * @return the number of plaintext bytes processed so far
+     */
+    public long getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.omemo_media_sharing;
+
+import java.security.GeneralSecurityException;
+import javax.crypto.AEADBadTagException;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+
+/**
+ * Decrypts an OMEMO media sharing file (AES-256-GCM, with the 16 byte tag appended to the ciphertext)
+ * as it is being received, and verifies its tag at the end, so that the plaintext can be written
+ * to its destination straight away. A partially received file can be resumed: {@link #replay}
+ * re-encrypts the plaintext already written and feeds the ciphertext to the decryption.
+ * <p>
+ * As with any streaming AEAD decryption, the plaintext released before {@link #doFinal} is not
+ * authenticated yet; the caller must discard it if <code>doFinal()</code> fails.
+ * </p>
+ *
+ * @author Eng Chong Meng
+ */
+public class AesgcmStreamDecryptor extends AesgcmStreamCipher {
+    private static final int REPLAY_CHUNK = 64 * 1024;
+
+    /**
+     * The encryption which regenerates the ciphertext of the replayed plaintext, or <code>null</code>.
+     */
+    private GCMBlockCipher replayCipher;
+
+    private byte[] replayCiphertext;
+    private byte[] replayPlaintext;
+
+    /**
+     * The number of bytes of ciphertext given to the decryption.
+     */
+    private long received;
+
+    /**
+     * The number of plaintext bytes released by the decryption, replay included.
+     */
+    private long released;
+
+    /**
+     * Whether ciphertext has been received by {@link #update}, after which no plaintext can be replayed.
+     */
+    private boolean updated;
+
+    /**
+     * The number of plaintext bytes the decryption releases again, because they were held back
+     * during the replay; they are dropped.
+     */
+    private long skip;
+
+    /**
+     * Creates an <code>AesgcmStreamDecryptor</code> for a specific key and IV.
+     *
+     * @param key the AES key
+     * @param iv the GCM initialization vector; 12 or (as used in the wild) 16 bytes
+     *
+     * @throws GeneralSecurityException if the key or the IV is invalid
+     */
+    public AesgcmStreamDecryptor(byte[] key, byte[] iv) throws GeneralSecurityException {
+        super(key, iv, false);
+    }
+
+    /**
+     * Resets this decryptor to the start of the ciphertext.
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        replayCipher = null;
+        received = 0;
+        released = 0;
+        updated = false;
+        skip = 0;
+    }
+
+    /**
+     * Advances this decryptor over plaintext which has been decrypted previously, e.g. by an
+     * interrupted download, so that the tag covers the ciphertext it was decrypted from.
+     *
+     * @param plaintext the plaintext buffer
+     * @param offset the offset of the plaintext in <code>plaintext</code>
+     * @param length the number of plaintext bytes
+     */
+    public void replay(byte[] plaintext, int offset, int length) {
+        if (updated)
+            throw new IllegalStateException("Cannot replay after ciphertext has been received");
+
+        if (replayCipher == null) {
+            replayCipher = newCipher(true);
+            if (replayCiphertext == null) {
+                replayCiphertext = new byte[REPLAY_CHUNK + BLOCK_SIZE + TAG_LENGTH];
+                replayPlaintext = new byte[replayCiphertext.length + BLOCK_SIZE + TAG_LENGTH];
+            }
+        }
+        while (length > 0) {
+            int n = Math.min(length, REPLAY_CHUNK);
+            feedReplay(replayCipher.processBytes(plaintext, offset, n, replayCiphertext, 0));
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Completes the replay with the ciphertext held back by its encryption, if a replay is pending.
+     */
+    private void finishReplay() {
+        if (replayCipher == null)
+            return;
+
+        try {
+            // The tag of the replayed plaintext is not part of the ciphertext.
+            feedReplay(replayCipher.doFinal(replayCiphertext, 0) - TAG_LENGTH);
+        } catch (InvalidCipherTextException e) {
+            throw new IllegalStateException(e);
+        }
+        replayCipher = null;
+        // The plaintext the decryption holds back is already written; drop it when it is released.
+        skip = position - released;
+    }
+
+    /**
+     * Decrypts replayed ciphertext, discarding the plaintext.
+     */
+    private void feedReplay(int length) {
+        released += cipher.processBytes(replayCiphertext, 0, length, replayPlaintext, 0);
+        received += length;
+    }
+
+    /**
+     * Decrypts the next bytes of the received file. The last {@link #TAG_LENGTH} bytes received and
+     * a partial AES block are held back, so that fewer bytes than received may be output.
+     *
+     * @param in the received bytes
+     * @param inOffset the offset of the received bytes in <code>in</code>
+     * @param length the number of received bytes
+     * @param out the buffer to write the plaintext to; at least <code>length + TAG_LENGTH</code> bytes
+     * after <code>outOffset</code> and not overlapping <code>in</code>
+     * @param outOffset the offset in <code>out</code> to write the plaintext at
+     *
+     * @return the number of plaintext bytes written to <code>out</code>
+     */
+    public int update(byte[] in, int inOffset, int length, byte[] out, int outOffset) {
+        finishReplay();
+        updated = true;
+        received += length;
+        return release(out, outOffset, cipher.processBytes(in, inOffset, length, out, outOffset));
+    }
+
+    /**
+     * Decrypts the bytes held back and verifies the tag at the end of the received file.
+     *
+     * @param out the buffer to write the last plaintext bytes to; at least <code>TAG_LENGTH</code>
+     * bytes after <code>outOffset</code>
+     * @param outOffset the offset in <code>out</code> to write the plaintext at
+     *
+     * @return the number of plaintext bytes written to <code>out</code>
+     * @throws AEADBadTagException if the file is truncated or the tag does not match its ciphertext
+     */
+    public int doFinal(byte[] out, int outOffset) throws AEADBadTagException {
+        finishReplay();
+        if (received < TAG_LENGTH)
+            throw new AEADBadTagException("Truncated ciphertext");
+
+        try {
+            return release(out, outOffset, cipher.doFinal(out, outOffset));
+        } catch (InvalidCipherTextException e) {
+            throw new AEADBadTagException("Tag mismatch");
+        }
+    }
+
+    /**
+     * Accounts for plaintext released by the decryption, dropping what the replay had already
+     * covered.
+     *
+     * @return the number of new plaintext bytes left at <code>outOffset</code>
+     */
+    private int release(byte[] out, int outOffset, int length) {
+        released += length;
+        if (skip > 0) {
+            int dropped = (int) Math.min(skip, length);
+            System.arraycopy(out, outOffset + dropped, out, outOffset, length - dropped);
+            skip -= dropped;
+            length -= dropped;
+        }
+        position += length;
+        return length;
+    }
+}
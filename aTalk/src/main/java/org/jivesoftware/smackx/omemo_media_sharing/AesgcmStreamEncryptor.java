@@ -0,0 +1,84 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.omemo_media_sharing;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+
+/**
+ * Encrypts an OMEMO media sharing file (AES-256-GCM) as it is being sent. The ciphertext has the
+ * same length as the plaintext and is followed by the tag; up to a partial AES block of it is
+ * held back until {@link #doFinal()}.
+ *
+ * @author Eng Chong Meng
+ */
+public class AesgcmStreamEncryptor extends AesgcmStreamCipher {
+    /**
+     * Creates an <code>AesgcmStreamEncryptor</code> for a specific key and IV.
+     *
+     * @param key the AES key
+     * @param iv the GCM initialization vector; 12 or (as used in the wild) 16 bytes
+     *
+     * @throws GeneralSecurityException if the key or the IV is invalid
+     */
+    public AesgcmStreamEncryptor(byte[] key, byte[] iv) throws GeneralSecurityException {
+        super(key, iv, true);
+    }
+
+    /**
+     * Encrypts the next bytes of the file.
+     *
+     * @param in the plaintext buffer
+     * @param inOffset the offset of the plaintext in <code>in</code>
+     * @param length the number of plaintext bytes
+     * @param out the buffer to write the ciphertext to, with room for <code>length + BLOCK_SIZE - 1</code>
+     * bytes after <code>outOffset</code>, or <code>length</code> bytes if all the previous updates were
+     * of whole AES blocks; may be <code>in</code> at the same offset
+     * @param outOffset the offset in <code>out</code> to write the ciphertext at
+     *
+     * @return the number of ciphertext bytes written to <code>out</code>
+     */
+    public int update(byte[] in, int inOffset, int length, byte[] out, int outOffset) {
+        if ((in == out) && (position % BLOCK_SIZE != 0)) {
+            // The ciphertext lags the plaintext by the bytes held back, and would overwrite it.
+            in = Arrays.copyOfRange(in, inOffset, inOffset + length);
+            inOffset = 0;
+        }
+        int n = cipher.processBytes(in, inOffset, length, out, outOffset);
+        position += length;
+        return n;
+    }
+
+    /**
+     * Completes the encryption.
+     *
+     * @return the ciphertext held back followed by the {@link #TAG_LENGTH} bytes tag, to append to
+     * the ciphertext
+     */
+    public byte[] doFinal() {
+        byte[] out = new byte[cipher.getOutputSize(0)];
+        try {
+            int n = cipher.doFinal(out, 0);
+            return (n == out.length) ? out : Arrays.copyOf(out, n);
+        } catch (InvalidCipherTextException e) {
+            // Only thrown by the tag check of the decryption
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import net.java.sip.communicator.service.history.HistoryID;
+import net.java.sip.communicator.service.history.HistoryWriter.HistoryRecordUpdater;
+import net.java.sip.communicator.service.history.records.HistoryRecord;
+import net.java.sip.communicator.service.history.records.HistoryRecordStructure;
+
+import org.atalk.persistance.migrations.MigrationTo9;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests the SQLite {@link HistoryStore} of the history service and the database migration which
+ * creates its tables.
+ *
+ * @author Eng Chong Meng
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class HistoryStoreTest
+{
+    private static final String[] NAMES = {"dir", "msg"};
+
+    private static final HistoryID HISTORY = id("messages", "alice", "bob");
+
+    private SQLiteDatabase db;
+
+    private HistoryStore store;
+
+    @Before
+    public void setUp()
+    {
+        db = SQLiteDatabase.create(null);
+        db.setVersion(8);
+        MigrationTo9.createHistoryTables(db);
+        store = new HistoryStore(db);
+    }
+
+    @After
+    public void tearDown()
+    {
+        db.close();
+    }
+
+    private static HistoryID id(String... components)
+    {
+        return HistoryID.createFromRawID(components);
+    }
+
+    private void add(HistoryID id, String msg, long time)
+    {
+        store.addRecord(id, NAMES, new String[]{"in", msg}, new Date(time), -1);
+    }
+
+    private List<String> messages(List<HistoryRecord> records)
+    {
+        List<String> messages = new ArrayList<>();
+        for (HistoryRecord record : records)
+            messages.add(record.getProperties().get("msg"));
+        return messages;
+    }
+
+    private List<String> find(Date startDate, Date endDate, boolean last, int count, String... keywords)
+    {
+        return messages(store.findRecords(HISTORY, startDate, endDate,
+                (keywords.length == 0) ? null : keywords, null, false, last, count));
+    }
+
+    private Set<String> tableNames()
+    {
+        Set<String> names = new HashSet<>();
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master", null);
+        while (cursor.moveToNext())
+            names.add(cursor.getString(0));
+        cursor.close();
+        return names;
+    }
+
+    @Test
+    public void migrationCreatesTablesAndIsRepeatable()
+    {
+        Set<String> names = tableNames();
+        assertTrue(names.containsAll(Arrays.asList(HistoryStore.TABLE_NAME, HistoryStore.TBL_RECORDS,
+                HistoryStore.TBL_PROPERTIES, HistoryStore.TBL_RECORDS + "_history_time_idx",
+                HistoryStore.TBL_PROPERTIES + "_record_idx")));
+
+        add(HISTORY, "kept", 1000);
+        // A migration which is run again, e.g. after a failed upgrade, keeps the stored records.
+        MigrationTo9.createHistoryTables(db);
+        assertEquals(Collections.singletonList("kept"), find(null, null, false, -1));
+    }
+
+    @Test
+    public void recordsAreReadOldestFirstWithinPeriod()
+    {
+        add(HISTORY, "c", 3000);
+        add(HISTORY, "a", 1000);
+        add(HISTORY, "b", 2000);
+        add(id("messages", "alice", "carol"), "other", 2000);
+
+        assertEquals(Arrays.asList("a", "b", "c"), find(null, null, false, -1));
+        // The start of the period is inclusive and its end exclusive.
+        assertEquals(Arrays.asList("b"), find(new Date(2000), new Date(3000), false, -1));
+        assertEquals(Arrays.asList("b", "c"), find(null, null, true, 2));
+        assertEquals(Arrays.asList("a", "b"), find(null, null, false, 2));
+        assertEquals(3, store.countRecords(HISTORY));
+    }
+
+    @Test
+    public void recordsSharingTimestampAreAllKept()
+    {
+        add(HISTORY, "first", 1000);
+        add(HISTORY, "second", 1000);
+        add(HISTORY, "third", 1000);
+
+        assertEquals(Arrays.asList("first", "second", "third"), find(null, null, false, -1));
+        assertEquals(Arrays.asList("second", "third"), find(null, null, true, 2));
+    }
+
+    @Test
+    public void maxNumberOfRecordsPrunesOldestWithProperties()
+    {
+        for (int i = 0; i < 5; i++)
+            store.addRecord(HISTORY, NAMES, new String[]{"in", "m" + i}, new Date(1000 + i), 3);
+
+        assertEquals(Arrays.asList("m2", "m3", "m4"), find(null, null, false, -1));
+        assertEquals(3 * NAMES.length, DatabaseUtils.queryNumEntries(db, HistoryStore.TBL_PROPERTIES));
+    }
+
+    @Test
+    public void keywordsAreMatchedLiterally()
+    {
+        add(HISTORY, "Price is 50% off", 1000);
+        add(HISTORY, "Price is 500 now", 2000);
+        add(HISTORY, "file_name.txt", 3000);
+        add(HISTORY, "filename.txt", 4000);
+
+        assertEquals(Arrays.asList("Price is 50% off"), find(null, null, false, -1, "50%"));
+        assertEquals(Arrays.asList("file_name.txt"), find(null, null, false, -1, "file_"));
+        assertEquals(Arrays.asList("Price is 50% off", "Price is 500 now"),
+                find(null, null, false, -1, "price", "is"));
+
+        assertEquals(new ArrayList<String>(), messages(store.findRecords(HISTORY, null, null,
+                new String[]{"price"}, null, true, false, -1)));
+        assertEquals(2, store.findRecords(HISTORY, null, null,
+                new String[]{"Price"}, "msg", true, false, -1).size());
+        assertEquals(0, store.findRecords(HISTORY, null, null,
+                new String[]{"Price"}, "dir", true, false, -1).size());
+    }
+
+    @Test
+    public void cdataSuffixIsDroppedFromPropertyNames()
+    {
+        store.addRecord(HISTORY, new String[]{"msg_CDATA"}, new String[]{"<b>hi</b>"}, new Date(1000), -1);
+
+        Map<String, String> properties = store.findRecords(HISTORY, null, null, null, null, false, false, -1)
+                .get(0).getProperties();
+        assertEquals(Collections.singletonMap("msg", "<b>hi</b>"), properties);
+    }
+
+    @Test
+    public void deleteAndMoveCoverSubHistoriesOnly()
+    {
+        HistoryID parent = id("messages", "alice");
+        HistoryID sibling = id("messages", "alicex", "bob");
+        store.putHistory(parent, new HistoryRecordStructure(NAMES));
+        add(HISTORY, "child", 1000);
+        add(sibling, "sibling", 2000);
+
+        assertEquals(Arrays.asList(HISTORY), store.getExistingHistories(parent.getID()));
+
+        HistoryID moved = id("messages", "alice2");
+        store.moveHistory(parent, moved);
+        assertTrue(store.isHistoryCreated(moved));
+        assertEquals(0, store.countRecords(HISTORY));
+        assertEquals(1, store.countRecords(id("messages", "alice2", "bob")));
+
+        store.deleteHistory(moved);
+        assertEquals(0, store.countRecords(id("messages", "alice2", "bob")));
+        assertEquals(1, store.countRecords(sibling));
+        assertEquals(NAMES.length, DatabaseUtils.queryNumEntries(db, HistoryStore.TBL_PROPERTIES));
+    }
+
+    @Test
+    public void updatesChangeNewestMatchingRecord()
+    {
+        store.addRecord(HISTORY, new String[]{"uid", "status"}, new String[]{"1", "sent"}, new Date(1000), -1);
+        store.addRecord(HISTORY, new String[]{"uid", "status"}, new String[]{"1", "sent"}, new Date(2000), -1);
+        store.addRecord(HISTORY, new String[]{"uid", "status"}, new String[]{"2", "sent"}, new Date(3000), -1);
+
+        store.updateRecord(HISTORY, "uid", "1", "status", "read");
+        List<HistoryRecord> records = store.findRecords(HISTORY, null, null, null, null, false, false, -1);
+        List<String> statuses = new ArrayList<>();
+        for (HistoryRecord record : records)
+            statuses.add(record.getProperties().get("uid") + record.getProperties().get("status"));
+        // The updated record is touched, so it is now the newest.
+        assertEquals(Arrays.asList("1sent", "2sent", "1read"), statuses);
+
+        store.updateRecords(HISTORY, new HistoryRecordUpdater()
+        {
+            private HistoryRecord record;
+
+            @Override
+            public void setHistoryRecord(HistoryRecord historyRecord)
+            {
+                record = historyRecord;
+            }
+
+            @Override
+            public boolean isMatching()
+            {
+                return "2".equals(record.getProperties().get("uid"));
+            }
+
+            @Override
+            public Map<String, String> getUpdateChanges()
+            {
+                return Collections.singletonMap("status", "read");
+            }
+        });
+        assertEquals(2, store.findRecords(HISTORY, null, null, new String[]{"read"}, "status",
+                true, false, -1).size());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.metahistory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.java.sip.communicator.service.callhistory.CallRecord;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests the k-way merge of the sorted records of the history services by
+ * {@link MetaHistoryServiceImpl#merge(List, int, boolean)}.
+ *
+ * @author Eng Chong Meng
+ */
+public class MetaHistoryServiceImplTest
+{
+    private static CallRecord record(String uuid, long time)
+    {
+        return new CallRecord(uuid, CallRecord.IN, new Date(time), new Date(time));
+    }
+
+    /**
+     * Makes the records of a service, in ascending order of their date, named after the service.
+     */
+    private static List<Object> source(String name, long... times)
+    {
+        List<Object> records = new ArrayList<>();
+        for (long time : times)
+            records.add(record(name + time, time));
+        return records;
+    }
+
+    private static List<String> uuids(List<Object> records)
+    {
+        List<String> uuids = new ArrayList<>();
+        for (Object record : records)
+            uuids.add(((CallRecord) record).getCallUuid());
+        return uuids;
+    }
+
+    private static List<List<Object>> sources()
+    {
+        return Arrays.asList(
+                source("m", 1, 4, 7, 10),
+                source("c", 2, 3, 11),
+                source("f", 5, 6, 8, 9, 12));
+    }
+
+    @Test
+    public void lastRecordsAreMostRecentInAscendingOrder()
+    {
+        assertEquals(Arrays.asList("m7", "f8", "f9", "m10", "c11", "f12"),
+                uuids(MetaHistoryServiceImpl.merge(sources(), 6, true)));
+    }
+
+    @Test
+    public void firstRecordsAreEarliestInAscendingOrder()
+    {
+        assertEquals(Arrays.asList("m1", "c2", "c3", "m4", "f5"),
+                uuids(MetaHistoryServiceImpl.merge(sources(), 5, false)));
+    }
+
+    @Test
+    public void countBeyondRecordsReturnsAll()
+    {
+        List<String> expected = Arrays.asList("m1", "c2", "c3", "m4", "f5", "f6", "m7", "f8", "f9",
+                "m10", "c11", "f12");
+        assertEquals(expected, uuids(MetaHistoryServiceImpl.merge(sources(), 100, true)));
+        assertEquals(expected, uuids(MetaHistoryServiceImpl.merge(sources(), 100, false)));
+    }
+
+    @Test
+    public void recordsSharingTimestampAreAllKept()
+    {
+        List<List<Object>> sources = Arrays.asList(source("m", 5, 5), source("c", 5), source("f", 1));
+
+        List<Object> last = MetaHistoryServiceImpl.merge(sources, 3, true);
+        assertEquals(3, last.size());
+        for (Object record : last)
+            assertEquals(5, ((CallRecord) record).getStartTime().getTime());
+        assertTrue(uuids(last).containsAll(Arrays.asList("m5", "c5")));
+
+        assertEquals(Arrays.asList("f1"), uuids(MetaHistoryServiceImpl.merge(sources, 1, false)));
+    }
+
+    @Test
+    public void noSourcesOrZeroCountReturnsNothing()
+    {
+        assertTrue(MetaHistoryServiceImpl.merge(Collections.<List<Object>>emptyList(), 10, true).isEmpty());
+        assertTrue(MetaHistoryServiceImpl.merge(sources(), 0, false).isEmpty());
+    }
+}
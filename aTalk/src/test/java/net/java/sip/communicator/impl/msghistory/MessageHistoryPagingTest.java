@@ -0,0 +1,158 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.msghistory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.atalk.android.gui.chat.ChatMessage;
+import org.atalk.persistance.DatabaseBackend;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests the keyset paging of the message history on (timeStamp, uuid), with many messages
+ * sharing a timestamp across the page boundaries.
+ *
+ * @author Eng Chong Meng
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class MessageHistoryPagingTest
+{
+    private static final String SESSION = "session";
+
+    private static final int PAGE_SIZE = 4;
+
+    private SQLiteDatabase db;
+
+    /**
+     * The uuids of the messages of SESSION, most recent first.
+     */
+    private final List<String> expected = new ArrayList<>();
+
+    @Before
+    public void setUp()
+    {
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE " + ChatMessage.TABLE_NAME + "( "
+                + ChatMessage.UUID + " TEXT, "
+                + ChatMessage.SESSION_UUID + " TEXT, "
+                + ChatMessage.TIME_STAMP + " NUMBER, "
+                + ChatMessage.MSG_BODY + " TEXT, "
+                + ChatMessage.SERVER_MSG_ID + " TEXT, UNIQUE(" + ChatMessage.UUID
+                + ") ON CONFLICT REPLACE);");
+        for (String statement : DatabaseBackend.CREATE_CHAT_MESSAGE_INDEX_STATEMENTS) {
+            db.execSQL(statement);
+        }
+
+        // 25 messages, four per timestamp, inserted out of uuid order.
+        List<String[]> messages = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            String uuid = String.format("msg%02d", (i * 7) % 25);
+            String timeStamp = String.valueOf(1000 + i / 4);
+            insert(SESSION, uuid, timeStamp);
+            messages.add(new String[]{timeStamp, uuid});
+        }
+        // A message of another session in the middle of the range.
+        insert("other", "msg99", "1003");
+
+        Collections.sort(messages, (m1, m2) -> {
+            int c = m2[0].compareTo(m1[0]);
+            return (c != 0) ? c : m2[1].compareTo(m1[1]);
+        });
+        for (String[] message : messages)
+            expected.add(message[1]);
+    }
+
+    @After
+    public void tearDown()
+    {
+        db.close();
+    }
+
+    private void insert(String session, String uuid, String timeStamp)
+    {
+        ContentValues values = new ContentValues();
+        values.put(ChatMessage.UUID, uuid);
+        values.put(ChatMessage.SESSION_UUID, session);
+        values.put(ChatMessage.TIME_STAMP, Long.parseLong(timeStamp));
+        values.put(ChatMessage.MSG_BODY, "body of " + uuid);
+        db.insert(ChatMessage.TABLE_NAME, null, values);
+    }
+
+    @Test
+    public void pagesCoverHistoryWithoutSkipOrRepeat()
+    {
+        List<String> fetched = new ArrayList<>();
+        Date date = new Date(Long.MAX_VALUE);
+        String uuid = null;
+
+        while (true) {
+            Cursor cursor = MessageHistoryServiceImpl.queryMessagesBefore(db, SESSION, date, uuid, PAGE_SIZE);
+            int count = cursor.getCount();
+            assertTrue(count <= PAGE_SIZE);
+            while (cursor.moveToNext()) {
+                uuid = cursor.getString(cursor.getColumnIndexOrThrow(ChatMessage.UUID));
+                date = new Date(cursor.getLong(cursor.getColumnIndexOrThrow(ChatMessage.TIME_STAMP)));
+                fetched.add(uuid);
+            }
+            cursor.close();
+            if (count == 0)
+                break;
+        }
+        assertEquals(expected, fetched);
+    }
+
+    @Test
+    public void pageStartsAfterPositionWithinSameTimeStamp()
+    {
+        // msg03, msg10, msg17 and msg24 share timestamp 1001.
+        Cursor cursor = MessageHistoryServiceImpl.queryMessagesBefore(db, SESSION, new Date(1001), "msg10", 3);
+        List<String> fetched = new ArrayList<>();
+        while (cursor.moveToNext())
+            fetched.add(cursor.getString(cursor.getColumnIndexOrThrow(ChatMessage.UUID)));
+        cursor.close();
+
+        int position = expected.indexOf("msg10");
+        assertEquals(expected.subList(position + 1, position + 4), fetched);
+    }
+
+    @Test
+    public void queryWithoutUuidReturnsMessagesBeforeDate()
+    {
+        Cursor cursor = MessageHistoryServiceImpl.queryMessagesBefore(db, SESSION, new Date(1002), null, 100);
+        // Timestamps 1000 and 1001 hold four messages each.
+        assertEquals(8, cursor.getCount());
+        while (cursor.moveToNext())
+            assertTrue(cursor.getLong(cursor.getColumnIndexOrThrow(ChatMessage.TIME_STAMP)) < 1002);
+        cursor.close();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.msghistory;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Tests the ordering and the commit of the writes queued in {@link MessageHistoryWriter}.
+ *
+ * @author Eng Chong Meng
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class MessageHistoryWriterTest
+{
+    private static final String TABLE = "messages";
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp()
+    {
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE " + TABLE + "(uuid TEXT, session TEXT, status INTEGER);");
+    }
+
+    @After
+    public void tearDown()
+    {
+        db.close();
+    }
+
+    private static ContentValues row(String uuid, String session)
+    {
+        ContentValues values = new ContentValues();
+        values.put("uuid", uuid);
+        values.put("session", session);
+        values.put("status", 0);
+        return values;
+    }
+
+    private long count(String selection, String... args)
+    {
+        return DatabaseUtils.queryNumEntries(db, TABLE, selection, args);
+    }
+
+    @Test
+    public void writesAreNotCommittedBeforeDelay()
+    {
+        MessageHistoryWriter writer = new MessageHistoryWriter(db, 100, 60_000);
+        writer.insert(TABLE, row("a", "s1"));
+
+        assertEquals(0, count(null));
+        writer.awaitCommitted();
+        assertEquals(1, count(null));
+    }
+
+    @Test
+    public void writesAreAppliedInQueueOrder()
+    {
+        MessageHistoryWriter writer = new MessageHistoryWriter(db, 100, 60_000);
+        writer.insert(TABLE, row("a", "s1"));
+        writer.insert(TABLE, row("b", "s1"));
+        writer.insert(TABLE, row("c", "s2"));
+        ContentValues status = new ContentValues();
+        status.put("status", 1);
+        writer.update(TABLE, status, "uuid=?", new String[]{"a"});
+        writer.delete(TABLE, "session=?", new String[]{"s1"});
+        writer.insert(TABLE, row("d", "s1"));
+        writer.awaitCommitted();
+
+        assertEquals(2, count(null));
+        assertEquals(1, count("uuid=?", "c"));
+        assertEquals(1, count("uuid=?", "d"));
+        assertEquals(0, count("status=?", "1"));
+    }
+
+    @Test
+    public void fullBatchIsCommittedWithoutReader()
+            throws Exception
+    {
+        MessageHistoryWriter writer = new MessageHistoryWriter(db, 10, 60_000);
+        for (int i = 0; i < 10; i++)
+            writer.insert(TABLE, row("m" + i, "s1"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (count(null) < 10 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(10, count(null));
+    }
+
+    @Test
+    public void delayedWritesAreCommittedWithoutReader()
+            throws Exception
+    {
+        MessageHistoryWriter writer = new MessageHistoryWriter(db, 100, 20);
+        writer.insert(TABLE, row("a", "s1"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (count(null) < 1 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(1, count(null));
+    }
+
+    @Test
+    public void flushCommitsOnCallingThread()
+    {
+        MessageHistoryWriter writer = new MessageHistoryWriter(db, 100, 60_000);
+        writer.insert(TABLE, row("a", "s1"));
+        writer.flush();
+        assertEquals(1, count(null));
+
+        // Nothing pending: returns at once.
+        writer.awaitCommitted();
+        writer.flush();
+        assertEquals(1, count(null));
+    }
+}
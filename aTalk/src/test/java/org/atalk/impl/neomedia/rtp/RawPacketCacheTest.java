@@ -0,0 +1,210 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.impl.neomedia.rtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.atalk.service.neomedia.RawPacket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests the lock-free ring of {@link RawPacketCache} with its default size of 500 packets per SSRC.
+ *
+ * @author Eng Chong Meng
+ */
+public class RawPacketCacheTest
+{
+    private static final long SSRC = 0xcafebabeL;
+
+    private static final int LENGTH = 100;
+
+    private RawPacketCache cache;
+
+    @Before
+    public void setUp()
+    {
+        cache = new RawPacketCache(0);
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        cache.close();
+    }
+
+    /**
+     * Makes an RTP packet which carries its sequence number in its payload too, so that a reader
+     * can tell a packet from one that was recycled and overwritten.
+     */
+    private static RawPacket makePacket(int seq)
+    {
+        RawPacket pkt = RawPacket.makeRTP(SSRC, 96, seq, seq * 3000L, LENGTH);
+        byte[] buf = pkt.getBuffer();
+        buf[RawPacket.FIXED_HEADER_SIZE] = (byte) (seq >> 8);
+        buf[RawPacket.FIXED_HEADER_SIZE + 1] = (byte) seq;
+        return pkt;
+    }
+
+    private static int payloadSequenceNumber(RawPacket pkt)
+    {
+        byte[] buf = pkt.getBuffer();
+        int off = pkt.getOffset() + RawPacket.FIXED_HEADER_SIZE;
+        return ((buf[off] & 0xff) << 8) | (buf[off + 1] & 0xff);
+    }
+
+    @Test
+    public void getReturnsCopyOfCachedPacket()
+    {
+        RawPacket pkt = makePacket(10);
+        cache.cachePacket(pkt);
+
+        RawPacket cached = cache.get(SSRC, 10);
+        assertNotNull(cached);
+        assertNotSame(pkt, cached);
+        assertEquals(10, cached.getSequenceNumber());
+        assertEquals(LENGTH, cached.getLength());
+        assertEquals(10, payloadSequenceNumber(cached));
+        cached.release();
+
+        assertNull(cache.get(SSRC, 11));
+        assertNull(cache.get(SSRC + 1, 10));
+    }
+
+    @Test
+    public void onlyMostRecentPacketsAreKept()
+    {
+        for (int seq = 0; seq < 1000; seq++)
+            cache.cachePacket(makePacket(seq));
+
+        for (int seq = 0; seq < 500; seq++)
+            assertNull("seq " + seq, cache.get(SSRC, seq));
+        for (int seq = 500; seq < 1000; seq++) {
+            RawPacket cached = cache.get(SSRC, seq);
+            assertNotNull("seq " + seq, cached);
+            assertEquals(seq, payloadSequenceNumber(cached));
+            cached.release();
+        }
+    }
+
+    @Test
+    public void packetsAcrossSequenceNumberWrapAreFound()
+    {
+        for (int i = 0; i < 20; i++)
+            cache.cachePacket(makePacket((0xfff6 + i) & 0xffff));
+
+        for (int i = 0; i < 20; i++) {
+            int seq = (0xfff6 + i) & 0xffff;
+            RawPacket cached = cache.get(SSRC, seq);
+            assertNotNull("seq " + seq, cached);
+            assertEquals(seq, payloadSequenceNumber(cached));
+            cached.release();
+        }
+    }
+
+    @Test
+    public void getManyDoesNotExceedByteLimit()
+    {
+        for (int seq = 0; seq < 10; seq++)
+            cache.cachePacket(makePacket(seq));
+
+        Set<RawPacketCache.Container> containers = cache.getMany(SSRC, 2 * LENGTH + LENGTH / 2);
+        assertNotNull(containers);
+        assertEquals(3, containers.size());
+        for (RawPacketCache.Container container : containers) {
+            int seq = container.pkt.getSequenceNumber();
+            assertTrue("seq " + seq, seq >= 7);
+            container.pkt.release();
+        }
+
+        assertNull(cache.getMany(SSRC, 0));
+        assertNull(cache.getMany(SSRC + 1, 1000));
+    }
+
+    @Test
+    public void cleanDropsExpiredPackets()
+    {
+        cache.cachePacket(makePacket(1));
+        long now = System.currentTimeMillis();
+
+        cache.clean(now);
+        RawPacket cached = cache.get(SSRC, 1);
+        assertNotNull(cached);
+        cached.release();
+
+        cache.clean(now + 10_000);
+        assertNull(cache.get(SSRC, 1));
+    }
+
+    @Test
+    public void concurrentLookupsNeverSeeRecycledPackets()
+            throws Exception
+    {
+        // Wraps the RTP sequence number.
+        final int count = 70_000;
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread[] readers = new Thread[3];
+        for (int i = 0; i < readers.length; i++) {
+            final int stride = 7 + i * 13;
+            readers[i] = new Thread(() -> {
+                int seq = 0;
+                while (!done.get() && failure.get() == null) {
+                    seq = (seq + stride) & 0xffff;
+                    RawPacket cached = cache.get(SSRC, seq);
+                    if (cached != null) {
+                        if (cached.getSequenceNumber() != seq || payloadSequenceNumber(cached) != seq)
+                            failure.compareAndSet(null, "got " + payloadSequenceNumber(cached) + " for " + seq);
+                        cached.release();
+                    }
+                    Set<RawPacketCache.Container> containers = cache.getMany(SSRC, 4 * LENGTH);
+                    if (containers != null) {
+                        for (RawPacketCache.Container container : containers) {
+                            RawPacket pkt = container.pkt;
+                            if (pkt.getSequenceNumber() != payloadSequenceNumber(pkt))
+                                failure.compareAndSet(null, "getMany got a recycled packet");
+                            pkt.release();
+                        }
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        for (int i = 0; i < count && failure.get() == null; i++)
+            cache.cachePacket(makePacket(i & 0xffff));
+        done.set(true);
+        for (Thread reader : readers)
+            reader.join();
+
+        assertNull(failure.get(), failure.get());
+        RawPacket last = cache.get(SSRC, (count - 1) & 0xffff);
+        assertNotNull(last);
+        last.release();
+    }
+}
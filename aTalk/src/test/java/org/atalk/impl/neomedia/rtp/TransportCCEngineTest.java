@@ -0,0 +1,153 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.impl.neomedia.rtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.atalk.util.logging.DiagnosticContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests the lock-free ring of the sent packets of {@link TransportCCEngine}.
+ *
+ * @author Eng Chong Meng
+ */
+public class TransportCCEngineTest
+{
+    private static final int HISTORY = TransportCCEngine.MAX_OUTGOING_PACKETS_HISTORY;
+
+    private TransportCCEngine engine;
+
+    @Before
+    public void setUp()
+    {
+        engine = new TransportCCEngine(new DiagnosticContext());
+    }
+
+    @Test
+    public void sentPacketIsTakenOnce()
+    {
+        long now = System.currentTimeMillis();
+        engine.putSentPacket(5, 1200, now);
+
+        long sentPacket = engine.removeSentPacket(5);
+        assertEquals(1200, TransportCCEngine.getPacketLength(sentPacket));
+        assertEquals(now, engine.getSendTimeMs(sentPacket));
+
+        // A packet acknowledged by a second TCC feedback packet.
+        assertEquals(0, engine.removeSentPacket(5));
+        assertEquals(0, engine.removeSentPacket(6));
+    }
+
+    @Test
+    public void olderPacketOfSameSlotIsOverwritten()
+    {
+        long now = System.currentTimeMillis();
+        engine.putSentPacket(7, 100, now);
+        engine.putSentPacket(7 + HISTORY, 200, now + 1);
+
+        assertEquals(0, engine.removeSentPacket(7));
+        long sentPacket = engine.removeSentPacket(7 + HISTORY);
+        assertEquals(200, TransportCCEngine.getPacketLength(sentPacket));
+        assertEquals(now + 1, engine.getSendTimeMs(sentPacket));
+    }
+
+    @Test
+    public void packetsAcrossSequenceNumberWrapAreFound()
+    {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++)
+            engine.putSentPacket((0xfff6 + i) & 0xffff, 100 + i, now + i);
+
+        for (int i = 0; i < 20; i++) {
+            int seq = (0xfff6 + i) & 0xffff;
+            long sentPacket = engine.removeSentPacket(seq);
+            assertEquals("seq " + seq, 100 + i, TransportCCEngine.getPacketLength(sentPacket));
+            assertEquals("seq " + seq, now + i, engine.getSendTimeMs(sentPacket));
+        }
+    }
+
+    @Test
+    public void lengthAndSendTimeAreClamped()
+    {
+        long now = System.currentTimeMillis();
+        engine.putSentPacket(1, 100_000, now - 60_000);
+
+        long sentPacket = engine.removeSentPacket(1);
+        assertEquals(0xffff, TransportCCEngine.getPacketLength(sentPacket));
+        // Sent before the engine was created.
+        assertEquals(engine.getSendTimeMs(0), engine.getSendTimeMs(sentPacket));
+    }
+
+    @Test
+    public void concurrentTakersSeeEachPacketOnceAndUntorn()
+            throws Exception
+    {
+        // Wraps the transport-wide sequence number.
+        final int count = 200_000;
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final Set<Integer> taken = ConcurrentHashMap.newKeySet();
+        final long now = System.currentTimeMillis();
+
+        Thread[] takers = new Thread[2];
+        for (int i = 0; i < takers.length; i++) {
+            takers[i] = new Thread(() -> {
+                int next = 0;
+                while (next < count && failure.get() == null) {
+                    int limit = written.get();
+                    if (next >= limit) {
+                        Thread.yield();
+                        continue;
+                    }
+                    // Skip what the writer has overwritten already.
+                    next = Math.max(next, limit - HISTORY / 2);
+                    for (; next < limit; next++) {
+                        int seq = next & 0xffff;
+                        long sentPacket = engine.removeSentPacket(seq);
+                        if (sentPacket == 0)
+                            continue;
+                        // The length and the time carry the sequence number, to detect torn entries.
+                        if (TransportCCEngine.getPacketLength(sentPacket) != seq
+                                || engine.getSendTimeMs(sentPacket) != now + seq)
+                            failure.compareAndSet(null, "got a torn or stale entry for " + seq);
+                        if (!taken.add(next))
+                            failure.compareAndSet(null, "took " + next + " twice");
+                    }
+                }
+            });
+            takers[i].start();
+        }
+
+        for (int i = 0; i < count && failure.get() == null; i++) {
+            int seq = i & 0xffff;
+            engine.putSentPacket(seq, seq, now + seq);
+            written.set(i + 1);
+        }
+        for (Thread taker : takers)
+            taker.join();
+
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.persistance;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.atalk.android.gui.chat.ChatMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests that the message search index follows the messages table, including the messages
+ * replaced on a uuid conflict.
+ *
+ * @author Eng Chong Meng
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class MessageSearchIndexTest
+{
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp()
+    {
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE " + ChatMessage.TABLE_NAME + "( "
+                + ChatMessage.UUID + " TEXT, "
+                + ChatMessage.SESSION_UUID + " TEXT, "
+                + ChatMessage.TIME_STAMP + " NUMBER, "
+                + ChatMessage.MSG_BODY + " TEXT, UNIQUE(" + ChatMessage.UUID
+                + ") ON CONFLICT REPLACE);");
+    }
+
+    @After
+    public void tearDown()
+    {
+        db.close();
+    }
+
+    private void insert(String uuid, String body)
+    {
+        ContentValues values = new ContentValues();
+        values.put(ChatMessage.UUID, uuid);
+        values.put(ChatMessage.SESSION_UUID, "session");
+        values.put(ChatMessage.TIME_STAMP, System.currentTimeMillis());
+        values.put(ChatMessage.MSG_BODY, body);
+        db.insert(ChatMessage.TABLE_NAME, null, values);
+    }
+
+    private List<String> search(String... keywords)
+    {
+        List<String> uuids = new ArrayList<>();
+        Cursor cursor = MessageSearchIndex.query(db, null, null, keywords, false, false,
+                ChatMessage.UUID + " ASC", null);
+        while (cursor.moveToNext())
+            uuids.add(cursor.getString(cursor.getColumnIndexOrThrow(ChatMessage.UUID)));
+        cursor.close();
+        return uuids;
+    }
+
+    private long indexSize()
+    {
+        return DatabaseUtils.queryNumEntries(db, MessageSearchIndex.TABLE_NAME);
+    }
+
+    @Test
+    public void replacedMessageLeavesNoIndexRow()
+    {
+        MessageSearchIndex.create(db, false);
+        insert("a", "hello world");
+        insert("b", "another message");
+        // Replaces message b, whose rowid is the highest, then message a.
+        insert("b", "edited message");
+        insert("a", "goodbye world");
+
+        assertEquals(2, indexSize());
+        assertEquals(new ArrayList<String>(), search("hello"));
+        assertEquals(new ArrayList<String>(), search("another"));
+        List<String> expected = new ArrayList<>();
+        expected.add("a");
+        assertEquals(expected, search("goodbye"));
+        expected.add("b");
+        assertEquals(expected, search("world", "message"));
+    }
+
+    @Test
+    public void deletedAndUpdatedMessagesFollowTable()
+    {
+        MessageSearchIndex.create(db, false);
+        insert("a", "hello world");
+        insert("b", "hello there");
+
+        db.delete(ChatMessage.TABLE_NAME, ChatMessage.UUID + "=?", new String[]{"b"});
+        ContentValues values = new ContentValues();
+        values.put(ChatMessage.MSG_BODY, "bonjour world");
+        db.update(ChatMessage.TABLE_NAME, values, ChatMessage.UUID + "=?", new String[]{"a"});
+
+        assertEquals(1, indexSize());
+        assertEquals(new ArrayList<String>(), search("hello"));
+        assertEquals(1, search("bonjour").size());
+    }
+
+    @Test
+    public void rebuildIndexesExistingMessages()
+    {
+        insert("a", "hello world");
+        insert("b", "hello there");
+        insert("c", null);
+
+        MessageSearchIndex.rebuild(db);
+        // Until the backfill completes, the keywords are matched with LIKE scans.
+        assertEquals(2, search("hello").size());
+        insert("d", "hello again");
+        MessageSearchIndex.backfill(db);
+
+        assertEquals(3, indexSize());
+        assertEquals(3, search("hello").size());
+        assertEquals(1, search("again").size());
+    }
+
+    @Test
+    public void scanMatchesWordPrefixesLikeIndex()
+    {
+        insert("a", "Hello world");
+        insert("b", "othello");
+        insert("c", "said (hello-there)");
+        insert("d", "100% sure");
+        insert("e", "1000 sure");
+
+        MessageSearchIndex.rebuild(db);
+        List<String> scanned = search("hello");
+        List<String> scannedPercent = search("100%");
+        MessageSearchIndex.backfill(db);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("a");
+        expected.add("c");
+        assertEquals(expected, scanned);
+        assertEquals(expected, search("hello"));
+        // The percent sign is matched literally by the scan, and is a word separator in the index.
+        expected.clear();
+        expected.add("d");
+        assertEquals(expected, scannedPercent);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.service.neomedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests the reference counting of the <code>RawPacket</code>s handed out by {@link RawPacketPool}.
+ *
+ * @author Eng Chong Meng
+ */
+public class RawPacketPoolTest
+{
+    /**
+     * More packets than the pool holds by default, so that draining reaches every pooled packet.
+     */
+    private static final int DRAIN_COUNT = 300;
+
+    /**
+     * Acquires <code>DRAIN_COUNT</code> packets, i.e. all pooled packets and then new ones.
+     */
+    private static List<RawPacket> drain()
+    {
+        List<RawPacket> packets = new ArrayList<>();
+        for (int i = 0; i < DRAIN_COUNT; i++)
+            packets.add(RawPacketPool.acquire(100));
+        return packets;
+    }
+
+    private static void releaseAll(List<RawPacket> packets)
+    {
+        for (RawPacket pkt : packets)
+            pkt.release();
+    }
+
+    private static boolean containsSame(List<RawPacket> packets, RawPacket pkt)
+    {
+        for (RawPacket p : packets) {
+            if (p == pkt)
+                return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void lastReleaseReturnsPacketIntoPool()
+    {
+        RawPacket pkt = RawPacketPool.acquire(100);
+        pkt.setLength(100);
+        pkt.release();
+
+        List<RawPacket> packets = drain();
+        assertTrue(containsSame(packets, pkt));
+        assertEquals(0, pkt.getLength());
+        releaseAll(packets);
+    }
+
+    @Test
+    public void retainedPacketIsNotRecycled()
+    {
+        RawPacket pkt = RawPacketPool.acquire(100);
+        pkt.retain();
+        pkt.release();
+
+        List<RawPacket> packets = drain();
+        assertFalse(containsSame(packets, pkt));
+        releaseAll(packets);
+        pkt.release();
+    }
+
+    @Test
+    public void repeatedReleaseDoesNotPoolPacketTwice()
+    {
+        // Empty the pool, so that it has room for the packet to be offered twice.
+        List<RawPacket> held = drain();
+        RawPacket pkt = RawPacketPool.acquire(100);
+        pkt.release();
+        pkt.release();
+
+        List<RawPacket> packets = drain();
+        Set<RawPacket> distinctPackets = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<byte[]> distinctBuffers = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (RawPacket p : packets) {
+            distinctPackets.add(p);
+            distinctBuffers.add(p.getBuffer());
+        }
+        assertEquals(packets.size(), distinctPackets.size());
+        assertEquals(packets.size(), distinctBuffers.size());
+        releaseAll(packets);
+        releaseAll(held);
+    }
+
+    @Test
+    public void releaseOfUnpooledPacketIsIgnored()
+    {
+        RawPacket unpooled = new RawPacket(new byte[100], 0, 100);
+        unpooled.release();
+
+        List<RawPacket> packets = drain();
+        assertFalse(containsSame(packets, unpooled));
+        assertEquals(100, unpooled.getLength());
+        releaseAll(packets);
+    }
+}
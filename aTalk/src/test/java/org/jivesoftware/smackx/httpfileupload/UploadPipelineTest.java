@@ -0,0 +1,224 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.httpfileupload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.jivesoftware.smackx.omemo_media_sharing.AesgcmStreamEncryptor;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Tests the reader and writer stages of {@link UploadPipeline}: the content and the OMEMO media
+ * sharing ciphertext written, and the propagation of the failure of either stage to the other.
+ *
+ * @author Eng Chong Meng
+ */
+public class UploadPipelineTest {
+    private final Random random = new Random(1);
+
+    private final byte[] key = randomBytes(32);
+
+    private final byte[] iv = randomBytes(12);
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * An input stream which records its closing and returns short reads, as a file or a content
+     * provider may.
+     */
+    private static class SourceStream extends FilterInputStream {
+        private volatile boolean closed = false;
+
+        private SourceStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 10_000));
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+
+        private void awaitClosed() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!closed && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue("input stream not closed", closed);
+        }
+    }
+
+    /**
+     * An endless input stream, which only stops being read when the pipeline stops its reader.
+     */
+    private static class EndlessStream extends InputStream {
+        @Override
+        public int read() {
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return len;
+        }
+    }
+
+    private byte[] jdkEncrypt(byte[] plaintext) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, iv));
+        return cipher.doFinal(plaintext);
+    }
+
+    private byte[] upload(byte[] content, AesgcmStreamEncryptor encryptor) throws Exception {
+        SourceStream source = new SourceStream(new ByteArrayInputStream(content));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long[] progress = {-1};
+        new UploadPipeline(source, encryptor).transferTo(out, content.length,
+                (uploadedBytes, totalBytes) -> progress[0] = uploadedBytes);
+
+        source.awaitClosed();
+        if (content.length > 0 || encryptor != null) {
+            assertEquals(out.size(), progress[0]);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void contentIsCopied() throws Exception {
+        for (int length : new int[]{1, UploadPipeline.BLOCK_SIZE - 1, UploadPipeline.BLOCK_SIZE + 1,
+                5 * UploadPipeline.BLOCK_SIZE + 3}) {
+            byte[] content = randomBytes(length);
+            assertArrayEquals("length " + length, content, upload(content, null));
+        }
+    }
+
+    @Test
+    public void contentIsEncrypted() throws Exception {
+        for (int length : new int[]{1, UploadPipeline.BLOCK_SIZE - 1, UploadPipeline.BLOCK_SIZE + 1,
+                5 * UploadPipeline.BLOCK_SIZE + 3}) {
+            byte[] content = randomBytes(length);
+            assertArrayEquals("length " + length, jdkEncrypt(content),
+                    upload(content, new AesgcmStreamEncryptor(key, iv)));
+        }
+    }
+
+    @Test
+    public void exactMultipleOfBlockSize() throws Exception {
+        byte[] content = randomBytes(2 * UploadPipeline.BLOCK_SIZE);
+        assertArrayEquals(content, upload(content, null));
+        assertArrayEquals(jdkEncrypt(content), upload(content, new AesgcmStreamEncryptor(key, iv)));
+    }
+
+    @Test
+    public void emptyContent() throws Exception {
+        assertEquals(0, upload(new byte[0], null).length);
+        // The tag alone
+        assertArrayEquals(jdkEncrypt(new byte[0]), upload(new byte[0], new AesgcmStreamEncryptor(key, iv)));
+    }
+
+    @Test
+    public void writerFailureStopsReader() throws Exception {
+        SourceStream source = new SourceStream(new EndlessStream());
+        IOException writeException = new IOException("Connection reset");
+        OutputStream out = new OutputStream() {
+            private int writes = 0;
+
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (++writes == 2) {
+                    throw writeException;
+                }
+            }
+        };
+
+        IOException e = assertThrows(IOException.class,
+                () -> new UploadPipeline(source, null).transferTo(out, -1, null));
+        assertSame(writeException, e);
+        source.awaitClosed();
+    }
+
+    @Test
+    public void readerIOExceptionIsRethrown() throws Exception {
+        IOException readException = new IOException("Read failed");
+        InputStream source = new SourceStream(new ByteArrayInputStream(randomBytes(UploadPipeline.BLOCK_SIZE + 1))) {
+            private int read = 0;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (read > UploadPipeline.BLOCK_SIZE) {
+                    throw readException;
+                }
+                int n = super.read(b, off, len);
+                read += Math.max(n, 0);
+                return n;
+            }
+        };
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IOException e = assertThrows(IOException.class,
+                () -> new UploadPipeline(source, null).transferTo(out, -1, null));
+        assertSame(readException, e);
+        // The blocks read before the failure have been written
+        assertEquals(UploadPipeline.BLOCK_SIZE, out.size());
+    }
+
+    @Test
+    public void runtimeExceptionIsRethrown() throws Exception {
+        IllegalStateException readerException = new IllegalStateException("Reader failed");
+        AesgcmStreamEncryptor encryptor = new AesgcmStreamEncryptor(key, iv) {
+            @Override
+            public int update(byte[] in, int inOffset, int length, byte[] out, int outOffset) {
+                throw readerException;
+            }
+        };
+        SourceStream source = new SourceStream(new ByteArrayInputStream(randomBytes(100)));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> new UploadPipeline(source, encryptor).transferTo(new ByteArrayOutputStream(), 100, null));
+        assertSame(readerException, e);
+        source.awaitClosed();
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.omemo_media_sharing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Tests the streaming AES-GCM of {@link AesgcmStreamEncryptor} and {@link AesgcmStreamDecryptor}
+ * against the GCM <code>Cipher</code> of the JDK, including the resumption from a partially
+ * received file.
+ *
+ * @author Eng Chong Meng
+ */
+public class AesgcmStreamCipherTest {
+    /**
+     * The plaintext lengths, around the AES block, the update chunks and the 64 KB
+     * replay buffer.
+     */
+    private static final int[] LENGTHS = {
+            0, 1, 15, 16, 17, 31, 32, 33, 4095, 4096, 4097, 8191, 8192, 8193, 65535, 65536, 65537, 100_003
+    };
+
+    /**
+     * The sizes of the successive update calls, used in turn.
+     */
+    private static final int[] CHUNKS = {1, 7, 16, 4096, 15, 17, 5000, 3};
+
+    private final Random random = new Random(1);
+
+    private final byte[] key = randomBytes(32);
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Encrypts with the JDK cipher.
+     *
+     * @return the ciphertext followed by the tag
+     */
+    private byte[] jdkEncrypt(byte[] iv, byte[] plaintext) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, iv));
+        return cipher.doFinal(plaintext);
+    }
+
+    private byte[] streamEncrypt(byte[] iv, byte[] plaintext) throws GeneralSecurityException {
+        AesgcmStreamEncryptor encryptor = new AesgcmStreamEncryptor(key, iv);
+        byte[] out = new byte[plaintext.length + AesgcmStreamCipher.TAG_LENGTH];
+        int offset = 0;
+        int outOffset = 0;
+        for (int i = 0; offset < plaintext.length; i++) {
+            int n = Math.min(CHUNKS[i % CHUNKS.length], plaintext.length - offset);
+            outOffset += encryptor.update(plaintext, offset, n, out, outOffset);
+            offset += n;
+        }
+        assertEquals(plaintext.length, encryptor.getPosition());
+        byte[] last = encryptor.doFinal();
+        System.arraycopy(last, 0, out, outOffset, last.length);
+        assertEquals(out.length, outOffset + last.length);
+        return out;
+    }
+
+    /**
+     * Encrypts in place, in irregular chunks, the way <code>UploadPipeline</code> encrypts its blocks.
+     */
+    private byte[] streamEncryptInPlace(byte[] iv, byte[] plaintext) throws GeneralSecurityException {
+        AesgcmStreamEncryptor encryptor = new AesgcmStreamEncryptor(key, iv);
+        ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+        byte[] block = new byte[5000 + AesgcmStreamCipher.BLOCK_SIZE];
+        int offset = 0;
+        for (int i = 0; offset < plaintext.length; i++) {
+            int n = Math.min(CHUNKS[i % CHUNKS.length], plaintext.length - offset);
+            System.arraycopy(plaintext, offset, block, 0, n);
+            ciphertext.write(block, 0, encryptor.update(block, 0, n, block, 0));
+            offset += n;
+        }
+        byte[] last = encryptor.doFinal();
+        ciphertext.write(last, 0, last.length);
+        return ciphertext.toByteArray();
+    }
+
+    /**
+     * Decrypts from <code>from</code> to the end of <code>ciphertext</code>, in irregular chunks.
+     *
+     * @return the plaintext released
+     */
+    private static byte[] streamDecrypt(AesgcmStreamDecryptor decryptor, byte[] ciphertext, int from)
+            throws GeneralSecurityException {
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        byte[] out = new byte[5000 + AesgcmStreamCipher.TAG_LENGTH];
+        int offset = from;
+        for (int i = 0; offset < ciphertext.length; i++) {
+            int n = Math.min(CHUNKS[i % CHUNKS.length], ciphertext.length - offset);
+            plaintext.write(out, 0, decryptor.update(ciphertext, offset, n, out, 0));
+            offset += n;
+        }
+        return plaintext.toByteArray();
+    }
+
+    /**
+     * Completes a decryption.
+     *
+     * @return the last plaintext bytes released
+     */
+    private static byte[] finish(AesgcmStreamDecryptor decryptor) throws GeneralSecurityException {
+        byte[] out = new byte[AesgcmStreamCipher.TAG_LENGTH];
+        return Arrays.copyOf(out, decryptor.doFinal(out, 0));
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] ab = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, ab, a.length, b.length);
+        return ab;
+    }
+
+    private void checkEncryptionMatchesJdk(int ivLength) throws GeneralSecurityException {
+        for (int length : LENGTHS) {
+            byte[] iv = randomBytes(ivLength);
+            byte[] plaintext = randomBytes(length);
+            byte[] expected = jdkEncrypt(iv, plaintext);
+            assertArrayEquals("length " + length, expected, streamEncrypt(iv, plaintext));
+            assertArrayEquals("in place, length " + length, expected, streamEncryptInPlace(iv, plaintext));
+        }
+    }
+
+    private void checkDecryptionMatchesJdk(int ivLength) throws GeneralSecurityException {
+        for (int length : LENGTHS) {
+            byte[] iv = randomBytes(ivLength);
+            byte[] plaintext = randomBytes(length);
+            AesgcmStreamDecryptor decryptor = new AesgcmStreamDecryptor(key, iv);
+            byte[] decrypted = streamDecrypt(decryptor, jdkEncrypt(iv, plaintext), 0);
+            decrypted = concat(decrypted, finish(decryptor));
+            assertArrayEquals("length " + length, plaintext, decrypted);
+            assertEquals(length, decryptor.getPosition());
+        }
+    }
+
+    @Test
+    public void encryptionWith12ByteIvMatchesJdk() throws GeneralSecurityException {
+        checkEncryptionMatchesJdk(12);
+    }
+
+    @Test
+    public void encryptionWith16ByteIvMatchesJdk() throws GeneralSecurityException {
+        checkEncryptionMatchesJdk(16);
+    }
+
+    @Test
+    public void decryptionWith12ByteIvMatchesJdk() throws GeneralSecurityException {
+        checkDecryptionMatchesJdk(12);
+    }
+
+    @Test
+    public void decryptionWith16ByteIvMatchesJdk() throws GeneralSecurityException {
+        checkDecryptionMatchesJdk(16);
+    }
+
+    @Test
+    public void resetRestartsEncryption() throws GeneralSecurityException {
+        byte[] iv = randomBytes(12);
+        byte[] plaintext = randomBytes(5000);
+        AesgcmStreamEncryptor encryptor = new AesgcmStreamEncryptor(key, iv);
+        encryptor.update(plaintext, 0, 100, new byte[100], 0);
+        encryptor.reset();
+
+        byte[] out = new byte[plaintext.length + AesgcmStreamCipher.BLOCK_SIZE];
+        int n = encryptor.update(plaintext, 0, plaintext.length, out, 0);
+        assertArrayEquals(jdkEncrypt(iv, plaintext), concat(Arrays.copyOf(out, n), encryptor.doFinal()));
+    }
+
+    /**
+     * Resumes the decryption the way <code>HttpFileDownloader</code> does: the <code>.part</code>
+     * file holds the plaintext released before the interruption, which is replayed into a reset
+     * decryptor, and the reception continues at its position. The plaintext the decryption held
+     * back at the interruption must not be released twice.
+     */
+    @Test
+    public void resumeFromPartialPlaintext() throws GeneralSecurityException {
+        for (int ivLength : new int[]{12, 16}) {
+            byte[] iv = randomBytes(ivLength);
+            byte[] plaintext = randomBytes(100_003);
+            byte[] ciphertext = jdkEncrypt(iv, plaintext);
+
+            for (int received : new int[]{1, 16, 17, 4096, 4113, 65536 + 100, 100_003 + 8}) {
+                AesgcmStreamDecryptor decryptor = new AesgcmStreamDecryptor(key, iv);
+                byte[] part = streamDecrypt(decryptor, Arrays.copyOf(ciphertext, received), 0);
+                assertEquals(part.length, decryptor.getPosition());
+
+                decryptor.reset();
+                decryptor.replay(part, 0, part.length);
+                int position = (int) decryptor.getPosition();
+                assertEquals(part.length, position);
+                byte[] rest = concat(streamDecrypt(decryptor, ciphertext, position), finish(decryptor));
+                assertArrayEquals("received " + received, plaintext, concat(part, rest));
+            }
+        }
+    }
+
+    @Test
+    public void replayAfterUpdateIsRejected() throws GeneralSecurityException {
+        byte[] iv = randomBytes(12);
+        AesgcmStreamDecryptor decryptor = new AesgcmStreamDecryptor(key, iv);
+        decryptor.update(new byte[8], 0, 8, new byte[8 + AesgcmStreamCipher.TAG_LENGTH], 0);
+        assertThrows(IllegalStateException.class, () -> decryptor.replay(new byte[8], 0, 8));
+    }
+
+    @Test
+    public void tagMismatchIsRejected() throws GeneralSecurityException {
+        byte[] iv = randomBytes(16);
+        byte[] ciphertext = jdkEncrypt(iv, randomBytes(4097));
+
+        for (int index : new int[]{0, 4096, ciphertext.length - 1}) {
+            byte[] corrupted = ciphertext.clone();
+            corrupted[index] ^= 1;
+            AesgcmStreamDecryptor decryptor = new AesgcmStreamDecryptor(key, iv);
+            streamDecrypt(decryptor, corrupted, 0);
+            AEADBadTagException e = assertThrows(AEADBadTagException.class, () -> finish(decryptor));
+            assertEquals("Tag mismatch", e.getMessage());
+        }
+
+        // The wrong IV
+        AesgcmStreamDecryptor decryptor = new AesgcmStreamDecryptor(key, randomBytes(16));
+        streamDecrypt(decryptor, ciphertext, 0);
+        assertThrows(AEADBadTagException.class, () -> finish(decryptor));
+    }
+
+    @Test
+    public void truncatedCiphertextIsRejected() throws GeneralSecurityException {
+        byte[] iv = randomBytes(12);
+        byte[] ciphertext = jdkEncrypt(iv, randomBytes(100));
+
+        // Shorter than the tag
+        AesgcmStreamDecryptor shortDecryptor = new AesgcmStreamDecryptor(key, iv);
+        streamDecrypt(shortDecryptor, Arrays.copyOf(ciphertext, AesgcmStreamCipher.TAG_LENGTH - 1), 0);
+        AEADBadTagException e = assertThrows(AEADBadTagException.class, () -> finish(shortDecryptor));
+        assertEquals("Truncated ciphertext", e.getMessage());
+
+        // The last bytes taken for the tag
+        AesgcmStreamDecryptor decryptor = new AesgcmStreamDecryptor(key, iv);
+        streamDecrypt(decryptor, Arrays.copyOf(ciphertext, ciphertext.length - 1), 0);
+        assertThrows(AEADBadTagException.class, () -> finish(decryptor));
+    }
+}
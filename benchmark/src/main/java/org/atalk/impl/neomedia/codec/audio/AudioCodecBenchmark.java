@@ -0,0 +1,179 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.impl.neomedia.codec.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.media.Buffer;
+import javax.media.Codec;
+import javax.media.Format;
+import javax.media.PlugIn;
+import javax.media.ResourceUnavailableException;
+import javax.media.format.AudioFormat;
+
+/**
+ * Benchmarks the encoding and the decoding of one audio frame by the pure Java GSM, iLBC and SILK
+ * codecs, through the FMJ <code>Codec</code> interface as used by the media processing.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AudioCodecBenchmark
+{
+    @Param({"gsm", "ilbc", "silk"})
+    public String codec;
+
+    private Codec encoder;
+
+    private Codec decoder;
+
+    private AudioFormat pcmFormat;
+
+    private Format codedFormat;
+
+    /**
+     * One frame of 16-bit PCM, as a <code>byte[]</code> or, for the codecs which take their input
+     * as such, a <code>short[]</code>.
+     */
+    private Object pcm;
+
+    private int pcmLength;
+
+    private byte[] encoded;
+
+    private final Buffer inBuffer = new Buffer();
+
+    private final Buffer outBuffer = new Buffer();
+
+    @Setup
+    public void setUp()
+            throws ResourceUnavailableException
+    {
+        double sampleRate;
+        int frameMillis;
+
+        switch (codec) {
+            case "gsm":
+                encoder = new org.atalk.impl.neomedia.codec.audio.gsm.Encoder();
+                decoder = new org.atalk.impl.neomedia.codec.audio.gsm.Decoder();
+                sampleRate = 8000;
+                frameMillis = 20;
+                break;
+            case "ilbc":
+                encoder = new org.atalk.impl.neomedia.codec.audio.ilbc.JavaEncoder();
+                decoder = new org.atalk.impl.neomedia.codec.audio.ilbc.JavaDecoder();
+                sampleRate = 8000;
+                frameMillis = 30;
+                break;
+            case "silk":
+                encoder = new org.atalk.impl.neomedia.codec.audio.silk.JavaEncoder();
+                decoder = new org.atalk.impl.neomedia.codec.audio.silk.JavaDecoder();
+                sampleRate = 16000;
+                frameMillis = 20;
+                break;
+            default:
+                throw new IllegalArgumentException(codec);
+        }
+
+        pcmFormat = null;
+        for (Format format : encoder.getSupportedInputFormats()) {
+            if (((AudioFormat) format).getSampleRate() == sampleRate) {
+                pcmFormat = (AudioFormat) format;
+                break;
+            }
+        }
+        encoder.setInputFormat(pcmFormat);
+        codedFormat = encoder.setOutputFormat(encoder.getSupportedOutputFormats(pcmFormat)[0]);
+        encoder.open();
+        decoder.setInputFormat(codedFormat);
+        decoder.setOutputFormat(decoder.getSupportedOutputFormats(codedFormat)[0]);
+        decoder.open();
+
+        // A tone with noise, so that the encoders do not take their silence shortcuts.
+        Random random = new Random(1);
+        boolean bigEndian = (pcmFormat.getEndian() == AudioFormat.BIG_ENDIAN);
+        int sampleCount = (int) (sampleRate * frameMillis / 1000);
+        short[] samples = new short[sampleCount];
+        byte[] bytes = new byte[2 * sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            int sample = (int) (8000 * Math.sin(2 * Math.PI * 440 * i / sampleRate)
+                    + random.nextGaussian() * 500);
+            samples[i] = (short) sample;
+            bytes[2 * i + (bigEndian ? 1 : 0)] = (byte) sample;
+            bytes[2 * i + (bigEndian ? 0 : 1)] = (byte) (sample >> 8);
+        }
+        if (pcmFormat.getDataType() == Format.shortArray) {
+            pcm = samples;
+            pcmLength = samples.length;
+        }
+        else {
+            pcm = bytes;
+            pcmLength = bytes.length;
+        }
+
+        if ((encode() & PlugIn.BUFFER_PROCESSED_FAILED) != 0 || outBuffer.getLength() == 0)
+            throw new IllegalStateException(codec + " encoder did not encode a frame");
+        encoded = new byte[outBuffer.getLength()];
+        System.arraycopy((byte[]) outBuffer.getData(), outBuffer.getOffset(), encoded, 0, encoded.length);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        encoder.close();
+        decoder.close();
+    }
+
+    /**
+     * Encodes one frame of 16-bit PCM.
+     */
+    @Benchmark
+    public int encode()
+    {
+        inBuffer.setData(pcm);
+        inBuffer.setOffset(0);
+        inBuffer.setLength(pcmLength);
+        inBuffer.setFormat(pcmFormat);
+        return encoder.process(inBuffer, outBuffer);
+    }
+
+    /**
+     * Decodes one encoded frame into 16-bit PCM.
+     */
+    @Benchmark
+    public int decode()
+    {
+        inBuffer.setData(encoded);
+        inBuffer.setOffset(0);
+        inBuffer.setLength(encoded.length);
+        inBuffer.setFormat(codedFormat);
+        return decoder.process(inBuffer, outBuffer);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.impl.neomedia.conference;
+
+import org.atalk.impl.neomedia.audiolevel.AudioLevelCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the mixing of one 20 ms frame of N input streams into N mix-minus output streams, as
+ * done by <code>AudioMixerPushBufferStream</code> per frame: the inputs are summed once with their
+ * audio levels, and each output is the sum less its own input, brought back into range by the
+ * {@link AudioMixingKernel.Limiter}.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AudioMixingKernelBenchmark
+{
+    @Param({"2", "4", "8"})
+    public int streams;
+
+    /**
+     * The samples per frame: 20 ms at 8 kHz and at 48 kHz.
+     */
+    @Param({"160", "960"})
+    public int samples;
+
+    @Param({"soft", "hard"})
+    public String limiter;
+
+    private short[][] inSamples;
+
+    private short[][] outSamples;
+
+    private int[] sum;
+
+    private int[] mix;
+
+    private AudioMixingKernel.Limiter lim;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(1);
+        inSamples = new short[streams][samples];
+        outSamples = new short[streams][samples];
+        for (short[] in : inSamples) {
+            // Speech-like levels, loud enough for the sums of several streams to reach the knee.
+            for (int i = 0; i < samples; i++)
+                in[i] = (short) (random.nextGaussian() * 8000);
+        }
+        sum = new int[samples];
+        mix = new int[samples];
+        lim = "hard".equals(limiter)
+                ? new AudioMixingKernel.HardLimiter() : new AudioMixingKernel.SoftKneeLimiter();
+    }
+
+    @Benchmark
+    public void mixFrame(Blackhole bh)
+    {
+        Arrays.fill(sum, 0);
+        for (short[] in : inSamples) {
+            long energy = AudioMixingKernel.accumulate(in, sum, samples);
+            bh.consume(AudioLevelCalculator.calculateAudioLevel(energy, samples));
+        }
+
+        for (int i = 0; i < streams; i++) {
+            System.arraycopy(sum, 0, mix, 0, samples);
+            AudioMixingKernel.subtract(inSamples[i], mix, samples);
+            lim.limit(mix, outSamples[i], samples);
+        }
+        bh.consume(outSamples);
+    }
+}
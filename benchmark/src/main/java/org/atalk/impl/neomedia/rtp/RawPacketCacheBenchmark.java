@@ -0,0 +1,106 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.impl.neomedia.rtp;
+
+import org.atalk.service.neomedia.RawPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the insertion of sent packets into a {@link RawPacketCache} and the lookup of a
+ * packet to retransmit, on a cache filled to its default size.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RawPacketCacheBenchmark
+{
+    private static final long SSRC = 0xcafebabeL;
+
+    private static final int LENGTH = 1200;
+
+    /**
+     * The number of packets in the cache, its default size per SSRC.
+     */
+    private static final int CACHED = 500;
+
+    private RawPacketCache cache;
+
+    private RawPacket pkt;
+
+    private int seq;
+
+    /**
+     * The age of the packet to get, stepping through the cache.
+     */
+    private int probe;
+
+    @Setup
+    public void setUp()
+    {
+        cache = new RawPacketCache(0);
+        pkt = RawPacket.makeRTP(SSRC, 96, 0, 0L, LENGTH);
+        for (seq = 0; seq < CACHED; seq++)
+            insert();
+    }
+
+    @TearDown
+    public void tearDown()
+            throws Exception
+    {
+        cache.close();
+    }
+
+    private void insert()
+    {
+        pkt.setSequenceNumber(seq & 0xffff);
+        cache.cachePacket(pkt);
+    }
+
+    /**
+     * Caches one sent packet, evicting the oldest one.
+     */
+    @Benchmark
+    public void cachePacket()
+    {
+        insert();
+        seq++;
+    }
+
+    /**
+     * Gets a copy of a cached packet, as for a NACK, and releases it.
+     */
+    @Benchmark
+    public int get()
+    {
+        probe = (probe + 31) % CACHED;
+        RawPacket cached = cache.get(SSRC, (seq - 1 - probe) & 0xffff);
+        int length = cached.getLength();
+        cached.release();
+        return length;
+    }
+}
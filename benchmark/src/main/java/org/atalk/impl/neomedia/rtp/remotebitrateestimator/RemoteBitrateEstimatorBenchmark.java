@@ -0,0 +1,95 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.impl.neomedia.rtp.remotebitrateestimator;
+
+import org.atalk.service.neomedia.rtp.RemoteBitrateEstimator;
+import org.atalk.util.logging.DiagnosticContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the per-packet work of the remote bitrate estimators on the receive path, fed with
+ * the packets of a video stream of about 1 Mbps: 1200-byte packets sent every 10 ms and received
+ * with some jitter.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RemoteBitrateEstimatorBenchmark
+{
+    private static final long SSRC = 0x12345678L;
+
+    private static final int PAYLOAD_SIZE = 1200;
+
+    private static final int SEND_INTERVAL_MS = 10;
+
+    @Param({"absSendTime", "singleStream"})
+    public String estimator;
+
+    private RemoteBitrateEstimator rbe;
+
+    private boolean absSendTime;
+
+    /**
+     * The jitter of the successive packets, in milliseconds.
+     */
+    private final int[] jitter = new int[1024];
+
+    private long startMs;
+
+    private int packets;
+
+    @Setup
+    public void setUp()
+    {
+        RemoteBitrateObserver observer = (ssrcs, bitrate) -> { };
+        absSendTime = "absSendTime".equals(estimator);
+        rbe = absSendTime
+                ? new RemoteBitrateEstimatorAbsSendTime(observer, new DiagnosticContext())
+                : new RemoteBitrateEstimatorSingleStream(observer, new DiagnosticContext());
+
+        Random random = new Random(1);
+        for (int i = 0; i < jitter.length; i++)
+            jitter[i] = random.nextInt(5);
+        startMs = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public long incomingPacketInfo()
+    {
+        long sendMs = startMs + (long) packets * SEND_INTERVAL_MS;
+        long arrivalMs = sendMs + 20 + jitter[packets & (jitter.length - 1)];
+        long timestamp = absSendTime
+                ? RemoteBitrateEstimatorAbsSendTime.convertMsTo24Bits(sendMs)
+                : (sendMs * 90) & 0xffff_ffffL;
+
+        packets++;
+        rbe.incomingPacketInfo(arrivalMs, timestamp, PAYLOAD_SIZE, SSRC);
+        return rbe.getLatestEstimate();
+    }
+}
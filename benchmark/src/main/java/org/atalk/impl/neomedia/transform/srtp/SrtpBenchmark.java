@@ -0,0 +1,166 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.impl.neomedia.transform.srtp;
+
+import org.atalk.impl.neomedia.transform.PacketTransformer;
+import org.atalk.impl.neomedia.transform.TransformEngine;
+import org.atalk.impl.neomedia.transform.TransformEngineChain;
+import org.atalk.service.neomedia.RawPacket;
+import org.atalk.service.neomedia.SrtpControl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the SRTP protection of outgoing RTP packets by an {@link SRTPTransformer}, through the
+ * RTP transformer of a <code>TransformEngineChain</code> as on the send path of a media stream; with
+ * the AES-CM (HMAC-SHA1) and the AES-GCM profiles. The AES-CM transformer uses the OpenSSL AES-CTR
+ * cipher when the jnopenssl library is found on <code>java.library.path</code>, as on the device,
+ * and the Java one otherwise; {@link SrtpCipherCtrBenchmark} compares the two.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SrtpBenchmark
+{
+    private static final int SSRC = 0x12345678;
+
+    /**
+     * The room left after the payload for the SRTP authentication tag.
+     */
+    private static final int TAG_ROOM = 16;
+
+    /**
+     * The RTP payload size in bytes: an audio frame and a video packet.
+     */
+    @Param({"160", "1200"})
+    public int payloadSize;
+
+    /**
+     * The SRTP protection profile: AES_CM_128_HMAC_SHA1_80 or AEAD_AES_128_GCM.
+     */
+    @Param({"AES_CM", "AES_GCM"})
+    public String profile;
+
+    private PacketTransformer transformer;
+
+    private byte[] template;
+
+    private final RawPacket[] pkts = new RawPacket[1];
+
+    private byte[] buf;
+
+    private int seq;
+
+    @Setup
+    public void setUp()
+    {
+        SrtpPolicy srtpPolicy;
+        SrtpPolicy srtcpPolicy;
+        if ("AES_GCM".equals(profile)) {
+            // SrtpPolicy carries the AEAD tag length of AESGCM_ENCRYPTION as its auth tag length.
+            srtpPolicy = new SrtpPolicy(SrtpPolicy.AESGCM_ENCRYPTION, 16,
+                    SrtpPolicy.NULL_AUTHENTICATION, 0, 16, 12);
+            srtcpPolicy = new SrtpPolicy(SrtpPolicy.AESGCM_ENCRYPTION, 16,
+                    SrtpPolicy.NULL_AUTHENTICATION, 0, 16, 12);
+        }
+        else {
+            srtpPolicy = new SrtpPolicy(SrtpPolicy.AESCM_ENCRYPTION, 16,
+                    SrtpPolicy.HMACSHA1_AUTHENTICATION, 20, 10, 14);
+            srtcpPolicy = new SrtpPolicy(SrtpPolicy.AESCM_ENCRYPTION, 16,
+                    SrtpPolicy.HMACSHA1_AUTHENTICATION, 20, 10, 14);
+        }
+
+        Random random = new Random(1);
+        byte[] masterKey = new byte[srtpPolicy.getEncKeyLength()];
+        byte[] masterSalt = new byte[srtpPolicy.getSaltKeyLength()];
+        random.nextBytes(masterKey);
+        random.nextBytes(masterSalt);
+
+        SrtpEngine srtpEngine = new SrtpEngine(new SRTPTransformer(
+                new SrtpContextFactory(true, masterKey, masterSalt, srtpPolicy, srtcpPolicy)));
+        transformer = new TransformEngineChain(new TransformEngine[]{srtpEngine}).getRTPTransformer();
+
+        template = RawPacket.makeRTP(SSRC, 96, 0, 0L, RawPacket.FIXED_HEADER_SIZE + payloadSize)
+                .getBuffer();
+        // Clear the padding bit and size set by makeRTP: the payload is media.
+        template[0] &= ~0x20;
+        buf = new byte[template.length + TAG_ROOM];
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        // Closes the transformers of the engines of the chain.
+        transformer.close();
+    }
+
+    /**
+     * Protects one RTP packet with a fresh sequence number, as on the send path.
+     */
+    @Benchmark
+    public RawPacket[] transform()
+    {
+        System.arraycopy(template, 0, buf, 0, template.length);
+        RawPacket pkt = new RawPacket(buf, 0, template.length);
+        pkt.setSequenceNumber(seq++ & 0xffff);
+        pkts[0] = pkt;
+        return transformer.transform(pkts);
+    }
+
+    /**
+     * The SRTP engine of the chain, as the SDES or DTLS-SRTP engine of a media stream provides it.
+     */
+    private static class SrtpEngine
+            implements SrtpControl.TransformEngine
+    {
+        private final PacketTransformer rtpTransformer;
+
+        SrtpEngine(PacketTransformer rtpTransformer)
+        {
+            this.rtpTransformer = rtpTransformer;
+        }
+
+        @Override
+        public PacketTransformer getRTPTransformer()
+        {
+            return rtpTransformer;
+        }
+
+        @Override
+        public PacketTransformer getRTCPTransformer()
+        {
+            return null;
+        }
+
+        @Override
+        public void cleanup()
+        {
+        }
+    }
+}
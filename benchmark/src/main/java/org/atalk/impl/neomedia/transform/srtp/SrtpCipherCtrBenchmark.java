@@ -0,0 +1,97 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.impl.neomedia.transform.srtp;
+
+import org.atalk.impl.neomedia.transform.srtp.crypto.Aes;
+import org.atalk.impl.neomedia.transform.srtp.crypto.OpenSslWrapperLoader;
+import org.atalk.impl.neomedia.transform.srtp.crypto.SrtpCipherCtr;
+import org.atalk.impl.neomedia.transform.srtp.crypto.SrtpCipherCtrJava;
+import org.atalk.impl.neomedia.transform.srtp.crypto.SrtpCipherCtrOpenSsl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the AES-CTR encryption of an RTP payload by the Java and the OpenSSL
+ * {@link SrtpCipherCtr}. The <code>openssl</code> variant fails its setup unless the jnopenssl
+ * library is found on <code>java.library.path</code>.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SrtpCipherCtrBenchmark
+{
+    @Param({"java", "openssl"})
+    public String ctr;
+
+    /**
+     * The RTP payload size in bytes: an audio frame and a video packet.
+     */
+    @Param({"160", "1200"})
+    public int payloadSize;
+
+    private SrtpCipherCtr cipher;
+
+    private byte[] data;
+
+    private final byte[] iv = new byte[16];
+
+    private int seq;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(1);
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+        data = new byte[payloadSize];
+        random.nextBytes(data);
+
+        if ("openssl".equals(ctr)) {
+            if (!OpenSslWrapperLoader.isLoaded())
+                throw new IllegalStateException("jnopenssl is not on java.library.path");
+            cipher = new SrtpCipherCtrOpenSsl();
+        }
+        else {
+            cipher = new SrtpCipherCtrJava(Aes.createBlockCipher(key.length));
+        }
+        cipher.init(key);
+    }
+
+    /**
+     * Encrypts one payload in place, with the counter of a fresh packet.
+     */
+    @Benchmark
+    public byte[] process()
+    {
+        iv[13] = (byte) (seq >> 8);
+        iv[14] = (byte) seq++;
+        iv[15] = 0;
+        cipher.process(data, 0, data.length, iv);
+        return data;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.service.neomedia;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the parsing of the RTP header fields and extensions of a {@link RawPacket}, and the
+ * pooled copy of a packet as done on the send and cache paths.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RawPacketBenchmark
+{
+    /**
+     * The RTP payload size in bytes: an audio frame and a video packet.
+     */
+    @Param({"160", "1200"})
+    public int payloadSize;
+
+    private RawPacket pkt;
+
+    @Setup
+    public void setUp()
+    {
+        pkt = RawPacket.makeRTP(0x12345678L, 111, 4711, 160_000L,
+                RawPacket.FIXED_HEADER_SIZE + payloadSize);
+        // Clear the padding bit set by makeRTP: the payload is media.
+        pkt.getBuffer()[0] &= ~0x20;
+        // audio level and abs-send-time, as sent with every audio packet
+        pkt.addExtension((byte) 1, new byte[]{0x10});
+        pkt.addExtension((byte) 3, new byte[]{0x01, 0x02, 0x03});
+    }
+
+    @Benchmark
+    public long parseHeader()
+    {
+        return pkt.getSSRCAsLong() + pkt.getSequenceNumber() + pkt.getTimestamp() + pkt.getPayloadType()
+                + pkt.getHeaderLength() + pkt.getPayloadLength() + (pkt.isPacketMarked() ? 1 : 0);
+    }
+
+    @Benchmark
+    public Object findHeaderExtension()
+    {
+        return pkt.getHeaderExtension((byte) 3);
+    }
+
+    @Benchmark
+    public int pooledCopy()
+    {
+        RawPacket copy = RawPacketPool.copyOf(pkt.getBuffer(), pkt.getOffset(), pkt.getLength());
+        int length = copy.getLength();
+        copy.release();
+        return length;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.impl.neomedia.transform.fec;
+
+import org.atalk.impl.neomedia.transform.TransformEngine;
+
+/**
+ * Benchmark stand-in for the FEC engine, for the pipeline stage check of
+ * <code>TransformEngineChain</code>; no benchmark chain contains it.
+ *
+ * @author Eng Chong Meng
+ */
+public abstract class FECTransformEngine implements TransformEngine
+{
+}
@@ -0,0 +1,38 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.service.libjitsi;
+
+import org.atalk.service.configuration.ConfigurationService;
+
+/**
+ * Benchmark stand-in for the LibJitsi entry point, which starts the OSGi and Android service
+ * layer: there is no configuration service, so the measured classes fall back on their defaults,
+ * or on the system properties where they read their settings through <code>ConfigUtils</code>.
+ *
+ * @author Eng Chong Meng
+ */
+public final class LibJitsi
+{
+    private LibJitsi()
+    {
+    }
+
+    public static ConfigurationService getConfigurationService()
+    {
+        return null;
+    }
+}
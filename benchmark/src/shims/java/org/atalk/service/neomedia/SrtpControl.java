@@ -0,0 +1,32 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.service.neomedia;
+
+/**
+ * Benchmark stand-in for the SRTP control of a media stream, which pulls in the whole media
+ * service: only the <code>TransformEngine</code> type which <code>TransformEngineChain</code> runs as
+ * a pipeline stage is kept.
+ *
+ * @author Eng Chong Meng
+ */
+public interface SrtpControl
+{
+    interface TransformEngine extends org.atalk.impl.neomedia.transform.TransformEngine
+    {
+        void cleanup();
+    }
+}
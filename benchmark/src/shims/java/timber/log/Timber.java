@@ -0,0 +1,110 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package timber.log;
+
+/**
+ * Benchmark stand-in for the Android-only timber library: the subset of the Timber API used by the
+ * measured classes, logging nothing but warnings and errors to stderr, so that logging does not
+ * enter the measurements.
+ *
+ * @author Eng Chong Meng
+ */
+public final class Timber
+{
+    private Timber()
+    {
+    }
+
+    private static void print(String level, Throwable t, String message, Object... args)
+    {
+        String msg = (message == null) ? "" : ((args.length == 0) ? message : String.format(message, args));
+        System.err.println(level + "/Timber: " + msg);
+        if (t != null)
+            t.printStackTrace();
+    }
+
+    public static boolean isLoggable(int priority)
+    {
+        return false;
+    }
+
+    public static void log(int priority, String message, Object... args)
+    {
+    }
+
+    public static void log(int priority, Throwable t, String message, Object... args)
+    {
+    }
+
+    public static void v(String message, Object... args)
+    {
+    }
+
+    public static void v(Throwable t, String message, Object... args)
+    {
+    }
+
+    public static void d(String message, Object... args)
+    {
+    }
+
+    public static void d(Throwable t, String message, Object... args)
+    {
+    }
+
+    public static void d(Throwable t)
+    {
+    }
+
+    public static void i(String message, Object... args)
+    {
+    }
+
+    public static void i(Throwable t, String message, Object... args)
+    {
+    }
+
+    public static void w(String message, Object... args)
+    {
+        print("W", null, message, args);
+    }
+
+    public static void w(Throwable t, String message, Object... args)
+    {
+        print("W", t, message, args);
+    }
+
+    public static void w(Throwable t)
+    {
+        print("W", t, null);
+    }
+
+    public static void e(String message, Object... args)
+    {
+        print("E", null, message, args);
+    }
+
+    public static void e(Throwable t, String message, Object... args)
+    {
+        print("E", t, message, args);
+    }
+
+    public static void e(Throwable t)
+    {
+        print("E", t, null);
+    }
+}